@@ -9,7 +9,7 @@ version = "0.0.1-SNAPSHOT"
 
 java {
 	toolchain {
-		languageVersion = JavaLanguageVersion.of(17)
+		languageVersion = JavaLanguageVersion.of(21)
 	}
 }
 
@@ -17,10 +17,49 @@ repositories {
 	mavenCentral()
 }
 
+// JMH benchmarks: src/jmh/java, run with ./gradlew jmh [-PjmhArgs="<regexp> <jmh options>"]
+sourceSets {
+	create("jmh") {
+		compileClasspath += sourceSets.main.get().output
+		runtimeClasspath += sourceSets.main.get().output
+	}
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
+// Load generator: src/load/java drives a running service over HTTP, run with ./gradlew loadTest [-PloadArgs="<options>"]
+sourceSets {
+	create("load")
+}
+
+// Reactive variant of the wallet API (WebFlux + R2DBC): src/reactive/java, run with ./gradlew bootRunReactive.
+// It reuses the model and exceptions from main but not main's dependencies, so Spring MVC and JPA stay off its classpath.
+// src/reactiveTest/java runs both variants side by side, see the reactiveTest task.
+sourceSets {
+	create("reactive") {
+		compileClasspath += sourceSets.main.get().output
+		runtimeClasspath += sourceSets.main.get().output
+	}
+	create("reactiveTest") {
+		compileClasspath += sourceSets.main.get().output + sourceSets["reactive"].output + sourceSets.test.get().output
+		runtimeClasspath += sourceSets.main.get().output + sourceSets["reactive"].output + sourceSets.test.get().output
+	}
+}
+
+configurations["reactiveAnnotationProcessor"].extendsFrom(configurations.annotationProcessor.get())
+configurations["reactiveTestImplementation"].extendsFrom(
+	configurations.testImplementation.get(), configurations["reactiveImplementation"])
+configurations["reactiveTestRuntimeOnly"].extendsFrom(
+	configurations.testRuntimeOnly.get(), configurations["reactiveRuntimeOnly"])
+
 dependencies {
 	// Spring Web
 	implementation("org.springframework.boot:spring-boot-starter-web")
 
+	// Jackson Blackbird: property access through generated lambdas instead of reflection
+	implementation("com.fasterxml.jackson.module:jackson-module-blackbird")
+
 	// Spring Data JPA
 	implementation("org.springframework.boot:spring-boot-starter-data-jpa")
 
@@ -30,21 +69,140 @@ dependencies {
 	// Liquibase
 	implementation("org.liquibase:liquibase-core")
 
-	// PostgreSQL (runtime)
-	runtimeOnly("org.postgresql:postgresql")
+	// PostgreSQL (CopyManager is used directly for bulk wallet provisioning)
+	implementation("org.postgresql:postgresql")
 
 	// Spring Boot Test
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 
+	// Property-based tests
+	testImplementation("net.jqwik:jqwik:1.9.2")
+
+	// JMH
+	"jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+	"jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+	"jmhImplementation"("io.zonky.test:embedded-postgres:2.1.0")
+	"jmhImplementation"("org.springframework:spring-test")
+
+	// Load generator: latency histograms
+	"loadImplementation"("org.hdrhistogram:HdrHistogram:2.2.2")
+
 	// Lombok
 	implementation("org.projectlombok:lombok")
 	annotationProcessor("org.projectlombok:lombok")
 
+	// Metrics: Actuator with Prometheus scrape endpoint
+	implementation("org.springframework.boot:spring-boot-starter-actuator")
+	runtimeOnly("io.micrometer:micrometer-registry-prometheus")
+
 	// Cache
 	implementation("org.springframework.boot:spring-boot-starter-cache")
 	implementation("com.github.ben-manes.caffeine:caffeine")
+
+	// Reactive variant: WebFlux on Netty and R2DBC PostgreSQL driver
+	"reactiveImplementation"("org.springframework.boot:spring-boot-starter-webflux")
+	"reactiveImplementation"("org.springframework.boot:spring-boot-starter-data-r2dbc")
+	"reactiveImplementation"("org.projectlombok:lombok")
+	"reactiveRuntimeOnly"("org.postgresql:r2dbc-postgresql")
+}
+
+// Fast-startup build (-PfastStartup): the application context is processed ahead of time with the fast-startup profile
+// and the generated classes go into bootJar; run it with -Dspring.aot.enabled=true, see docker/Dockerfile.
+// Profiles and @ConditionalOnProperty components are fixed at build time, so enable them in application-fast-startup.
+val fastStartup = providers.gradleProperty("fastStartup").isPresent
+if (fastStartup) {
+	apply(plugin = "org.springframework.boot.aot")
+	tasks.named<org.springframework.boot.gradle.tasks.aot.ProcessAot>("processAot") {
+		args("--spring.profiles.active=fast-startup")
+	}
 }
 
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+// Timed measurements (@PerformanceTest, tag "benchmark") print timings and are not run by test; see benchmark.
+// The startup measurement (tag "startup") needs the boot jar and runs only in startupBenchmark
+tasks.test {
+	useJUnitPlatform {
+		excludeTags("benchmark", "startup")
+	}
+}
+
+tasks.register<Test>("benchmark") {
+	group = "benchmark"
+	description = "Runs timed measurements of the test suite (@PerformanceTest) and prints their results."
+	testClassesDirs = sourceSets["test"].output.classesDirs
+	classpath = sourceSets["test"].runtimeClasspath
+	useJUnitPlatform {
+		includeTags("benchmark")
+	}
+	testLogging.showStandardStreams = true
+	outputs.upToDateWhen { false }
+}
+
+// StartupTimeBenchmarkTest starts the boot jar in separate JVMs; with -PfastStartup it also measures the AOT mode
+tasks.register<Test>("startupBenchmark") {
+	group = "benchmark"
+	description = "Measures startup time of the boot jar in separate JVMs and prints the results."
+	testClassesDirs = sourceSets["test"].output.classesDirs
+	classpath = sourceSets["test"].runtimeClasspath
+	useJUnitPlatform {
+		includeTags("startup")
+	}
+	dependsOn(tasks.bootJar)
+	systemProperty("wallet.startup.jar", tasks.bootJar.get().archiveFile.get().asFile.absolutePath)
+	systemProperty("wallet.startup.aot", fastStartup)
+	testLogging.showStandardStreams = true
+	outputs.upToDateWhen { false }
+}
+
+val reactiveTest = tasks.register<Test>("reactiveTest") {
+	group = "verification"
+	description = "Runs tests of the reactive variant, including the comparison with the MVC variant."
+	testClassesDirs = sourceSets["reactiveTest"].output.classesDirs
+	classpath = sourceSets["reactiveTest"].runtimeClasspath
+	useJUnitPlatform {
+		excludeTags("benchmark")
+	}
+	shouldRunAfter(tasks.test)
+}
+
+tasks.register<Test>("reactiveBenchmark") {
+	group = "benchmark"
+	description = "Runs timed measurements of the reactive variant (@PerformanceTest) and prints their results."
+	testClassesDirs = sourceSets["reactiveTest"].output.classesDirs
+	classpath = sourceSets["reactiveTest"].runtimeClasspath
+	useJUnitPlatform {
+		includeTags("benchmark")
+	}
+	testLogging.showStandardStreams = true
+	outputs.upToDateWhen { false }
+}
+
+tasks.check {
+	dependsOn(reactiveTest)
+}
+
+tasks.register<JavaExec>("bootRunReactive") {
+	group = "application"
+	description = "Runs the reactive variant of the wallet API."
+	classpath = sourceSets["reactive"].runtimeClasspath
+	mainClass = "ru.walletservice.reactive.ReactiveWalletApplication"
+}
+
+tasks.register<JavaExec>("jmh") {
+	group = "benchmark"
+	description = "Runs JMH benchmarks."
+	classpath = sourceSets["jmh"].runtimeClasspath
+	mainClass = "org.openjdk.jmh.Main"
+	args = (findProperty("jmhArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+}
+
+tasks.register<JavaExec>("loadTest") {
+	group = "benchmark"
+	description = "Runs the HTTP load generator against a running wallet service."
+	classpath = sourceSets["load"].runtimeClasspath
+	mainClass = "ru.walletservice.load.LoadGenerator"
+	args = (findProperty("loadArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+}
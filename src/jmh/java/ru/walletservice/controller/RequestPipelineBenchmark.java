@@ -0,0 +1,90 @@
+package ru.walletservice.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.walletservice.exception.GlobalExceptionHandler;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь запроса операции без базы: разбор тела, ответ с балансом или отказ с ответом об ошибке.
+ * <p>
+ * Отказ выбрасывается на глубине {@code stackDepth} вызовов, как из сервиса под фильтрами и прокси Spring,
+ * и проходит через {@link GlobalExceptionHandler}. Расход памяти на операцию: {@code -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPipelineBenchmark {
+
+    @Param("100")
+    public int stackDepth;
+
+    private ObjectReader requestReader;
+    private ObjectWriter responseWriter;
+    private ObjectWriter errorWriter;
+    private byte[] requestBody;
+    private GlobalExceptionHandler exceptionHandler;
+    private MockHttpServletRequest servletRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new BlackbirdModule()).build();
+        requestReader = objectMapper.readerFor(WalletOperationRequest.class);
+        responseWriter = objectMapper.writerFor(WalletController.BalanceResponse.class);
+        errorWriter = objectMapper.writerFor(GlobalExceptionHandler.ErrorResponse.class);
+        requestBody = objectMapper.writeValueAsBytes(new WalletOperationRequest(UUID.randomUUID(),
+                WalletOperationRequest.OperationType.WITHDRAW, 12_345, UUID.randomUUID().toString()));
+        exceptionHandler = new GlobalExceptionHandler();
+        servletRequest = new MockHttpServletRequest("POST", "/api/v1/wallets");
+    }
+
+    @Benchmark
+    public byte[] acceptedOperation() throws IOException {
+        WalletOperationRequest request = requestReader.readValue(requestBody);
+        return responseWriter.writeValueAsBytes(new WalletController.BalanceResponse(CoarseClock.now(),
+                HttpStatus.OK.value(), request.amount()));
+    }
+
+    @Benchmark
+    public byte[] rejectedOperation() throws IOException {
+        WalletOperationRequest request = requestReader.readValue(requestBody);
+        try {
+            return responseWriter.writeValueAsBytes(new WalletController.BalanceResponse(CoarseClock.now(),
+                    HttpStatus.OK.value(), withdraw(request, stackDepth)));
+        } catch (WalletInsufficientFundsException ex) {
+            return errorWriter.writeValueAsBytes(
+                    exceptionHandler.handleWalletInvalidOperationTypeException(ex, servletRequest).getBody());
+        }
+    }
+
+    private static long withdraw(WalletOperationRequest request, int depth) {
+        if (depth > 0) {
+            return withdraw(request, depth - 1);
+        }
+        throw new WalletInsufficientFundsException("Insufficient funds.");
+    }
+}
@@ -0,0 +1,62 @@
+package ru.walletservice.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор тела запроса операции и запись ответа с балансом тем же ObjectMapper, что строит Spring Boot
+ * (с модулем Blackbird, см. {@code JsonConfiguration}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private ObjectReader requestReader;
+    private ObjectWriter responseWriter;
+    private byte[] requestBody;
+    private WalletController.BalanceResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new BlackbirdModule()).build();
+        requestReader = objectMapper.readerFor(WalletOperationRequest.class);
+        responseWriter = objectMapper.writerFor(WalletController.BalanceResponse.class);
+        requestBody = objectMapper.writeValueAsBytes(new WalletOperationRequest(UUID.randomUUID(),
+                WalletOperationRequest.OperationType.DEPOSIT, 12_345, UUID.randomUUID().toString()));
+        response = new WalletController.BalanceResponse(LocalDateTime.now(), HttpStatus.OK.value(), 100_000_00);
+    }
+
+    @Benchmark
+    public WalletOperationRequest readOperationRequest() throws IOException {
+        return requestReader.readValue(requestBody);
+    }
+
+    @Benchmark
+    public byte[] writeBalanceResponse() throws IOException {
+        return responseWriter.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.walletservice.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Арифметика операции над кошельком: целые копейки в long против BigDecimal и прежнего double.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletOperationBenchmark {
+
+    private WalletOperationRequest deposit;
+    private WalletOperationRequest withdraw;
+    private long balance;
+    private BigDecimal decimalBalance;
+    private BigDecimal decimalAmount;
+    private double doubleBalance;
+
+    @Setup
+    public void setUp() {
+        UUID walletId = UUID.randomUUID();
+        deposit = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 12_345);
+        withdraw = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 12_345);
+        balance = 100_000_00;
+        decimalBalance = BigDecimal.valueOf(balance, 2);
+        decimalAmount = BigDecimal.valueOf(12_345, 2);
+        doubleBalance = balance / 100.0;
+    }
+
+    @Benchmark
+    public long longMinorUnits() {
+        balance = WalletService.applyOperation(balance, deposit);
+        balance = WalletService.applyOperation(balance, withdraw);
+        return balance;
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        decimalBalance = decimalBalance.add(decimalAmount);
+        if (decimalBalance.compareTo(decimalAmount) < 0) {
+            throw new IllegalStateException();
+        }
+        decimalBalance = decimalBalance.subtract(decimalAmount);
+        return decimalBalance;
+    }
+
+    @Benchmark
+    public double legacyDouble() {
+        doubleBalance += 123.45;
+        if (doubleBalance < 123.45) {
+            throw new IllegalStateException();
+        }
+        doubleBalance -= 123.45;
+        return doubleBalance;
+    }
+}
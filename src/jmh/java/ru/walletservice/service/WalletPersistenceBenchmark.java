@@ -0,0 +1,131 @@
+package ru.walletservice.service;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.walletservice.WalletServiceApplication;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции и чтение баланса через весь сервис против PostgreSQL.
+ * <p>
+ * По умолчанию база поднимается локально из встроенных бинарников PostgreSQL (без Docker).
+ * Чтобы измерять на своей базе, задайте {@code WALLET_BENCH_DATASOURCE_URL}
+ * (и при необходимости {@code WALLET_BENCH_DATASOURCE_USERNAME}, {@code WALLET_BENCH_DATASOURCE_PASSWORD}).
+ * <p>
+ * Нагрузка {@code CONTENDED} направляет все потоки в один кошелёк, {@code UNIFORM} — равномерно
+ * в {@link #WALLETS} кошельков. Кэш балансов по умолчанию выключен, чтобы чтения доходили до базы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(8)
+@Fork(1)
+public class WalletPersistenceBenchmark {
+
+    private static final int WALLETS = 1_000;
+
+    public enum Workload {
+        CONTENDED,
+        UNIFORM
+    }
+
+    @Param({"CONTENDED", "UNIFORM"})
+    private Workload workload;
+
+    @Param({"PESSIMISTIC", "ATOMIC"})
+    private String updateStrategy;
+
+    @Param({"false"})
+    private boolean cache;
+
+    /** Профили Spring через запятую, например {@code performance}; пустая строка — настройки по умолчанию. */
+    @Param({""})
+    private String profiles;
+
+    private EmbeddedPostgres embeddedPostgres;
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private List<UUID> walletIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String url = System.getenv("WALLET_BENCH_DATASOURCE_URL");
+        String username = System.getenv().getOrDefault("WALLET_BENCH_DATASOURCE_USERNAME", "usr");
+        String password = System.getenv().getOrDefault("WALLET_BENCH_DATASOURCE_PASSWORD", "pwd");
+        if (url == null) {
+            embeddedPostgres = EmbeddedPostgres.builder().start();
+            url = embeddedPostgres.getJdbcUrl("postgres", "postgres");
+            username = "postgres";
+            password = "";
+        }
+        context = new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profiles.isEmpty() ? new String[0] : profiles.split(","))
+                .run(
+                        "--spring.datasource.url=" + url,
+                        "--spring.datasource.username=" + username,
+                        "--spring.datasource.password=" + password,
+                        "--wallet.update-strategy=" + updateStrategy,
+                        "--wallet.cache.enabled=" + cache,
+                        // для этого бенчмарка отказ по пределу одновременных операций — шум, а не результат
+                        "--wallet.contention.max-in-flight-per-wallet=0");
+        walletService = context.getBean(WalletService.class);
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        walletIds = new ArrayList<>(WALLETS);
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 100_000_00L)).getWalletId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        if (embeddedPostgres != null) {
+            embeddedPostgres.close();
+        }
+    }
+
+    @Benchmark
+    public long operateOnWallet() {
+        return walletService.operateOnWallet(new WalletOperationRequest(
+                nextWalletId(), WalletOperationRequest.OperationType.DEPOSIT, 1));
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return walletService.getBalance(nextWalletId());
+    }
+
+    private UUID nextWalletId() {
+        return workload == Workload.CONTENDED
+                ? walletIds.get(0)
+                : walletIds.get(ThreadLocalRandom.current().nextInt(walletIds.size()));
+    }
+}
@@ -0,0 +1,103 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накладные расходы сервиса на одну операцию без базы данных: репозитории заменены хранилищем в памяти,
+ * транзакции не открываются. Измеряет всё, что сервис делает вокруг обращений к базе:
+ * допуск по кошельку, повторы, метрики, журнал и кэш.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletServiceBenchmark {
+
+    private final Map<UUID, Long> balances = new ConcurrentHashMap<>();
+    private WalletService walletService;
+    private UUID walletId;
+    private WalletOperationRequest deposit;
+    private WalletOperationRequest withdraw;
+
+    @Setup
+    public void setUp() {
+        WalletProperties properties = new WalletProperties();
+        walletService = new WalletService(inMemoryRepository(), new WalletBatchRepository(new JdbcTemplate()),
+                new InMemoryLedgerRepository(), TransactionOperations.withoutTransaction(), null,
+                new WalletBalanceCache(properties), new WriteConcurrencyLimiter(properties),
+                new WalletLockStripes(properties), new WalletContentionPolicy(properties),
+                new WalletMetrics(new SimpleMeterRegistry()), null, null, properties);
+        walletId = UUID.randomUUID();
+        balances.put(walletId, 100_000_00L);
+        deposit = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 12_345);
+        withdraw = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 12_345);
+    }
+
+    @Benchmark
+    public long operateOnWallet() {
+        walletService.operateOnWallet(deposit);
+        return walletService.operateOnWallet(withdraw);
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return walletService.getBalance(walletId);
+    }
+
+    private WalletRepository inMemoryRepository() {
+        return (WalletRepository) Proxy.newProxyInstance(WalletRepository.class.getClassLoader(),
+                new Class<?>[] {WalletRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findBalanceByWalletId" -> balances.get((UUID) args[0]);
+                    case "findByWalletId", "findByWalletIdAndLock" -> {
+                        UUID id = (UUID) args[0];
+                        Long balance = balances.get(id);
+                        yield balance != null ? new Wallet(id, balance) : null;
+                    }
+                    case "save" -> {
+                        Wallet wallet = (Wallet) args[0];
+                        balances.put(wallet.getWalletId(), wallet.getBalance());
+                        yield wallet;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static final class InMemoryLedgerRepository extends WalletLedgerRepository {
+
+        private InMemoryLedgerRepository() {
+            super(new JdbcTemplate());
+        }
+
+        @Override
+        public boolean insertIfAbsent(LedgerEntry entry) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ru.walletservice.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Задержки запросов по эндпоинтам и исходам.
+ * <p>
+ * Основная задержка отсчитывается от момента, когда запрос должен был уйти по расписанию, а не от фактической
+ * отправки: если сервис или сам генератор задерживает запросы, ожидание входит в задержку (поправка на
+ * coordinated omission). Задержка от фактической отправки сохраняется отдельно, чтобы было видно, сколько
+ * добавляет очередь. Значения хранятся в микросекундах, в отчёте — в миллисекундах.
+ */
+final class LatencyReport {
+
+    /** Значащих десятичных цифр HdrHistogram. */
+    private static final int PRECISION = 3;
+
+    private static final String HEADER = "endpoint,outcome,count,throughput,p50_ms,p90_ms,p99_ms,p99_9_ms,max_ms,"
+            + "uncorrected_p99_ms";
+
+    /** Итог по всем исходам эндпоинта. */
+    static final String ALL_OUTCOMES = "all";
+
+    private final ConcurrentMap<Key, Series> series = new ConcurrentHashMap<>();
+
+    void record(String endpoint, String outcome, long intendedNanos, long sentNanos, long completedNanos) {
+        Series target = series.computeIfAbsent(new Key(endpoint, outcome), key -> new Series());
+        target.corrected.recordValue(Math.max(0, (completedNanos - intendedNanos) / 1000));
+        target.uncorrected.recordValue(Math.max(0, (completedNanos - sentNanos) / 1000));
+    }
+
+    /**
+     * Строки отчёта: по каждому эндпоинту и исходу и итог эндпоинта по всем исходам.
+     */
+    List<Row> rows(Duration measured) {
+        Map<Key, Series> sorted = new TreeMap<>(series);
+        Map<String, Series> totals = new LinkedHashMap<>();
+        List<Row> rows = new ArrayList<>();
+        for (Map.Entry<Key, Series> entry : sorted.entrySet()) {
+            rows.add(Row.of(entry.getKey(), entry.getValue(), measured));
+            Series total = totals.computeIfAbsent(entry.getKey().endpoint(), endpoint -> new Series());
+            total.corrected.add(entry.getValue().corrected);
+            total.uncorrected.add(entry.getValue().uncorrected);
+        }
+        if (totals.size() > 0 && sorted.size() > totals.size()) {
+            totals.forEach((endpoint, total) -> rows.add(Row.of(new Key(endpoint, ALL_OUTCOMES), total, measured)));
+        }
+        return rows;
+    }
+
+    static void print(PrintStream out, List<Row> rows) {
+        out.printf("%-10s %-12s %9s %9s %9s %9s %9s %9s %9s %11s%n", "endpoint", "outcome", "count", "req/s",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 uncorr");
+        for (Row row : rows) {
+            out.printf(Locale.ROOT, "%-10s %-12s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    row.key().endpoint(), row.key().outcome(), row.count(), row.throughput(), row.p50(), row.p90(),
+                    row.p99(), row.p999(), row.max(), row.uncorrectedP99());
+        }
+    }
+
+    /**
+     * Пишет отчёт CSV; параметры запуска сохраняются строками комментариев {@code # имя=значение}.
+     */
+    static void write(Path file, Map<String, String> settings, List<Row> rows) {
+        List<String> lines = new ArrayList<>();
+        settings.forEach((name, value) -> lines.add("# " + name + "=" + value));
+        lines.add(HEADER);
+        for (Row row : rows) {
+            lines.add(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f", row.key().endpoint(),
+                    row.key().outcome(), row.count(), row.throughput(), row.p50(), row.p90(), row.p99(), row.p999(),
+                    row.max(), row.uncorrectedP99()));
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, lines);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Печатает изменение пропускной способности и перцентилей относительно отчёта прошлого запуска.
+     */
+    static void compare(PrintStream out, Path baselineFile, Map<String, String> settings, List<Row> rows) {
+        Map<String, String> baselineSettings = new LinkedHashMap<>();
+        Map<Key, Row> baseline = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(baselineFile)) {
+                if (line.startsWith("#")) {
+                    int separator = line.indexOf('=');
+                    baselineSettings.put(line.substring(1, separator).trim(), line.substring(separator + 1));
+                } else if (!line.isBlank() && !line.equals(HEADER)) {
+                    Row row = Row.parse(line);
+                    baseline.put(row.key(), row);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (!baselineSettings.equals(settings)) {
+            out.printf("warning: baseline was recorded with different settings%n  baseline: %s%n  current:  %s%n",
+                    baselineSettings, settings);
+        }
+        out.printf("%-10s %-12s %24s %24s %24s %24s%n", "endpoint", "outcome", "req/s", "p50 ms", "p99 ms",
+                "p99.9 ms");
+        for (Row row : rows) {
+            Row before = baseline.get(row.key());
+            if (before == null) {
+                out.printf("%-10s %-12s (not in baseline)%n", row.key().endpoint(), row.key().outcome());
+                continue;
+            }
+            out.printf("%-10s %-12s %24s %24s %24s %24s%n", row.key().endpoint(), row.key().outcome(),
+                    change(before.throughput(), row.throughput()), change(before.p50(), row.p50()),
+                    change(before.p99(), row.p99()), change(before.p999(), row.p999()));
+        }
+        for (Key key : baseline.keySet()) {
+            if (rows.stream().noneMatch(row -> row.key().equals(key))) {
+                out.printf("%-10s %-12s (only in baseline)%n", key.endpoint(), key.outcome());
+            }
+        }
+    }
+
+    /**
+     * Пишет распределения задержек с поправкой в формате HdrHistogram ({@code .hgrm}, в миллисекундах)
+     * для построения графиков.
+     */
+    void writeHistograms(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            for (Map.Entry<Key, Series> entry : series.entrySet()) {
+                Path file = directory.resolve(entry.getKey().endpoint() + "-" + entry.getKey().outcome() + ".hgrm");
+                try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                    entry.getValue().corrected.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String change(double before, double after) {
+        if (before == 0) {
+            return String.format(Locale.ROOT, "%.2f -> %.2f", before, after);
+        }
+        return String.format(Locale.ROOT, "%.2f -> %.2f (%+.0f%%)", before, after, (after - before) * 100 / before);
+    }
+
+    /**
+     * @param endpoint Эндпоинт: {@code deposit}, {@code withdraw} или {@code balance}.
+     * @param outcome Исход запроса, см. {@link LoadGenerator#outcome}.
+     */
+    record Key(String endpoint, String outcome) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int byEndpoint = endpoint.compareTo(other.endpoint);
+            return byEndpoint != 0 ? byEndpoint : outcome.compareTo(other.outcome);
+        }
+    }
+
+    /**
+     * Строка отчёта; задержки в миллисекундах.
+     *
+     * @param throughput Ответов в секунду за время замера.
+     * @param uncorrectedP99 99-й перцентиль задержки от фактической отправки запроса.
+     */
+    record Row(Key key, long count, double throughput, double p50, double p90, double p99, double p999, double max,
+               double uncorrectedP99) {
+
+        static Row of(Key key, Series series, Duration measured) {
+            Histogram corrected = series.corrected;
+            return new Row(key, corrected.getTotalCount(),
+                    corrected.getTotalCount() * 1000.0 / Math.max(1, measured.toMillis()),
+                    millis(corrected.getValueAtPercentile(50)), millis(corrected.getValueAtPercentile(90)),
+                    millis(corrected.getValueAtPercentile(99)), millis(corrected.getValueAtPercentile(99.9)),
+                    millis(corrected.getMaxValue()), millis(series.uncorrected.getValueAtPercentile(99)));
+        }
+
+        static Row parse(String line) {
+            String[] columns = line.split(",");
+            return new Row(new Key(columns[0], columns[1]), Long.parseLong(columns[2]),
+                    Double.parseDouble(columns[3]), Double.parseDouble(columns[4]), Double.parseDouble(columns[5]),
+                    Double.parseDouble(columns[6]), Double.parseDouble(columns[7]), Double.parseDouble(columns[8]),
+                    Double.parseDouble(columns[9]));
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+
+    private static final class Series {
+        final Histogram corrected = new ConcurrentHistogram(PRECISION);
+        final Histogram uncorrected = new ConcurrentHistogram(PRECISION);
+    }
+}
@@ -0,0 +1,191 @@
+package ru.walletservice.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки на API кошельков: пополнения, списания и чтения баланса через {@code /api/v1/wallets}
+ * запущенного сервиса (например, из docker/docker-compose.yml).
+ * <p>
+ * Нагрузка открытая: запросы отправляются с заданной частотой по расписанию, не дожидаясь ответов на предыдущие,
+ * как от множества независимых клиентов. Задержки пишутся в HdrHistogram по эндпоинтам и исходам с поправкой
+ * на coordinated omission (см. {@link LatencyReport}). Отчёт печатается, сохраняется в CSV и при заданном
+ * {@code --baseline} сравнивается с отчётом прошлого запуска.
+ * <p>
+ * Запуск: {@code ./gradlew loadTest -PloadArgs="--profile=hot-wallets --rate=2000 --duration=60s"}.
+ */
+public final class LoadGenerator {
+
+    private static final String WALLETS_PATH = "/api/v1/wallets";
+
+    private final LoadOptions options;
+    private final HttpClient client;
+    private final LatencyReport report = new LatencyReport();
+    private final Semaphore inFlight;
+    /** Наибольшее отставание фактической отправки от расписания, нс. */
+    private final AtomicLong maxDispatchLag = new AtomicLong();
+
+    LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(options.timeout())
+                .build();
+        this.inFlight = new Semaphore(options.maxInFlight());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        new LoadGenerator(options).run();
+    }
+
+    void run() throws Exception {
+        List<UUID> wallets = prepareWallets();
+        ZipfSampler sampler = new ZipfSampler(wallets.size(), options.zipfExponent());
+        System.out.printf("load: %s%n", options.describe());
+        System.out.printf("load: %d wallets, the hottest %d receive %.0f%% of requests%n", wallets.size(),
+                Math.min(10, wallets.size()), sampler.share(10) * 100);
+
+        SplittableRandom random = new SplittableRandom(options.seed());
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmup().toNanos();
+        long end = measureFrom + options.duration().toNanos();
+        for (long i = 0; ; i++) {
+            long intended = start + Math.round(i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            Call call = nextCall(random, wallets.get(sampler.next(random)));
+            // при исчерпании лимита ожидание ответа входит в задержку: отсчёт идёт от intended
+            inFlight.acquire();
+            send(call, intended, intended >= measureFrom);
+        }
+        if (!inFlight.tryAcquire(options.maxInFlight(), options.timeout().toNanos() * 2, TimeUnit.NANOSECONDS)) {
+            System.out.printf("load: %d requests still in flight after the run%n",
+                    options.maxInFlight() - inFlight.availablePermits());
+        }
+
+        List<LatencyReport.Row> rows = report.rows(options.duration());
+        System.out.printf("load: max dispatch lag %.2f ms%n", maxDispatchLag.get() / 1e6);
+        LatencyReport.print(System.out, rows);
+        LatencyReport.write(options.report(), options.describe(), rows);
+        System.out.printf("load: report written to %s%n", options.report().toAbsolutePath());
+        if (options.histograms() != null) {
+            report.writeHistograms(options.histograms());
+        }
+        if (options.baseline() != null) {
+            LatencyReport.compare(System.out, options.baseline(), options.describe(), rows);
+        }
+    }
+
+    private void send(Call call, long intended, boolean measured) {
+        long sent = System.nanoTime();
+        maxDispatchLag.accumulateAndGet(sent - intended, Math::max);
+        client.sendAsync(call.request(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long completed = System.nanoTime();
+                    inFlight.release();
+                    if (measured) {
+                        report.record(call.endpoint(), outcome(response, error), intended, sent, completed);
+                    }
+                });
+    }
+
+    private Call nextCall(SplittableRandom random, UUID walletId) {
+        if (random.nextDouble() < options.readRatio()) {
+            return new Call("balance", request(WALLETS_PATH + "/" + walletId).GET().build());
+        }
+        String operation = random.nextDouble() < options.withdrawRatio() ? "WITHDRAW" : "DEPOSIT";
+        String body = "{\"walletId\":\"" + walletId + "\",\"operationType\":\"" + operation + "\",\"amount\":"
+                + options.amount() + "}";
+        return new Call(operation.toLowerCase(Locale.ROOT), request(WALLETS_PATH)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(options.url().resolve(path)).timeout(options.timeout());
+    }
+
+    /**
+     * Исход запроса для отчёта: код ответа сервиса или ошибка соединения.
+     */
+    static String outcome(HttpResponse<?> response, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            return cause instanceof HttpTimeoutException ? "timeout" : "io-error";
+        }
+        return switch (response.statusCode()) {
+            case 200 -> "ok";
+            case 400 -> "rejected";
+            case 404 -> "not-found";
+            case 409 -> "conflict";
+            case 429 -> "throttled";
+            default -> "http-" + response.statusCode();
+        };
+    }
+
+    /**
+     * Кошельки для нагрузки: из файла {@code --wallet-ids} или созданные через
+     * {@code POST /api/v1/wallets/provisioning}. Порядок перемешивается, чтобы горячие кошельки не шли подряд.
+     */
+    private List<UUID> prepareWallets() throws IOException, InterruptedException {
+        List<String> lines;
+        if (options.walletIds() != null) {
+            lines = Files.readAllLines(options.walletIds());
+        } else {
+            URI uri = options.url().resolve(WALLETS_PATH + "/provisioning?count=" + options.wallets()
+                    + "&initialBalance=" + options.initialBalance());
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Wallet provisioning failed with " + response.statusCode() + ": "
+                        + response.body());
+            }
+            lines = response.body().lines().toList();
+        }
+        List<UUID> wallets = new ArrayList<>();
+        for (String line : lines) {
+            String id = line.split(",", 2)[0].trim();
+            if (!id.isEmpty() && !id.equals("wallet_id")) {
+                wallets.add(UUID.fromString(id));
+            }
+        }
+        if (wallets.isEmpty()) {
+            throw new IllegalStateException("No wallets to load");
+        }
+        Collections.shuffle(wallets, new Random(options.seed()));
+        return options.walletIds() != null && wallets.size() > options.wallets()
+                ? wallets.subList(0, options.wallets()) : wallets;
+    }
+
+    /**
+     * @param endpoint Имя эндпоинта в отчёте.
+     */
+    private record Call(String endpoint, HttpRequest request) {}
+}
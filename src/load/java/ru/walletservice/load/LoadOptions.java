@@ -0,0 +1,152 @@
+package ru.walletservice.load;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Параметры генератора нагрузки. Задаются аргументами {@code --имя=значение}; параметры смеси по умолчанию
+ * берутся из профиля ({@code --profile}).
+ *
+ * @param url Адрес сервиса.
+ * @param profile Профиль нагрузки.
+ * @param rate Целевая частота запросов в секунду. Запросы отправляются по расписанию независимо от ответов.
+ * @param duration Длительность замера.
+ * @param warmup Прогрев перед замером: запросы отправляются, но не учитываются в отчёте.
+ * @param wallets Количество кошельков под нагрузкой: создаваемых или первых из {@code walletIds}.
+ * @param walletIds Файл CSV с ID уже созданных кошельков в первой колонке вместо создания новых.
+ * @param zipfExponent Показатель распределения Ципфа по кошелькам; 0 — равномерное.
+ * @param readRatio Доля чтений баланса среди всех запросов.
+ * @param withdrawRatio Доля списаний среди операций.
+ * @param amount Сумма пополнения и списания в копейках.
+ * @param initialBalance Начальный баланс создаваемых кошельков в копейках.
+ * @param maxInFlight Наибольшее число запросов без ответа; при достижении отправка ждёт ответа,
+ *                    и ожидание входит в задержку следующих запросов.
+ * @param timeout Таймаут ответа.
+ * @param seed Начальное значение генератора случайных чисел: с тем же значением запуски повторяют
+ *             одну и ту же последовательность запросов.
+ * @param report Файл отчёта CSV.
+ * @param baseline Отчёт CSV прошлого запуска для сравнения.
+ * @param histograms Каталог для распределений задержек HdrHistogram ({@code .hgrm}).
+ */
+record LoadOptions(URI url, LoadProfile profile, double rate, Duration duration, Duration warmup, int wallets,
+                   Path walletIds, double zipfExponent, double readRatio, double withdrawRatio, long amount,
+                   long initialBalance, int maxInFlight, Duration timeout, long seed, Path report, Path baseline,
+                   Path histograms) {
+
+    private static final Set<String> NAMES = Set.of("url", "profile", "rate", "duration", "warmup", "wallets",
+            "wallet-ids", "zipf", "read-ratio", "withdraw-ratio", "amount", "initial-balance", "max-in-flight",
+            "timeout", "seed", "report", "baseline", "histograms");
+
+    LoadOptions {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        if (wallets <= 0) {
+            throw new IllegalArgumentException("wallets must be positive");
+        }
+        if (readRatio < 0 || readRatio > 1 || withdrawRatio < 0 || withdrawRatio > 1) {
+            throw new IllegalArgumentException("read-ratio and withdraw-ratio must be between 0 and 1");
+        }
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("zipf must not be negative");
+        }
+        if (amount <= 0 || initialBalance < 0) {
+            throw new IllegalArgumentException("amount must be positive and initial-balance not negative");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("max-in-flight must be positive");
+        }
+    }
+
+    static LoadOptions parse(String... args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            if (!NAMES.contains(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name + ", expected one of " + NAMES);
+            }
+            values.put(name, arg.substring(separator + 1));
+        }
+        LoadProfile profile = LoadProfile.of(values.getOrDefault("profile", "uniform"));
+        return new LoadOptions(
+                URI.create(values.getOrDefault("url", "http://localhost:8080")),
+                profile,
+                Double.parseDouble(values.getOrDefault("rate", "500")),
+                duration(values.getOrDefault("duration", "60s")),
+                duration(values.getOrDefault("warmup", "10s")),
+                Integer.parseInt(values.getOrDefault("wallets", "10000")),
+                path(values.get("wallet-ids")),
+                doubleOr(values.get("zipf"), profile.zipfExponent),
+                doubleOr(values.get("read-ratio"), profile.readRatio),
+                doubleOr(values.get("withdraw-ratio"), profile.withdrawRatio),
+                Long.parseLong(values.getOrDefault("amount", "100")),
+                values.containsKey("initial-balance")
+                        ? Long.parseLong(values.get("initial-balance")) : profile.initialBalance,
+                Integer.parseInt(values.getOrDefault("max-in-flight", "1000")),
+                duration(values.getOrDefault("timeout", "10s")),
+                Long.parseLong(values.getOrDefault("seed", "1")),
+                Path.of(values.getOrDefault("report", "build/load/" + profile.argumentName() + ".csv")),
+                path(values.get("baseline")),
+                path(values.get("histograms")));
+    }
+
+    /**
+     * Параметры, от которых зависит форма нагрузки: отчёты сравнимы, если они совпадают.
+     */
+    Map<String, String> describe() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("profile", profile.argumentName());
+        settings.put("rate", format(rate));
+        settings.put("duration", duration.toMillis() + "ms");
+        settings.put("wallets", Integer.toString(wallets));
+        settings.put("zipf", format(zipfExponent));
+        settings.put("read-ratio", format(readRatio));
+        settings.put("withdraw-ratio", format(withdrawRatio));
+        settings.put("amount", Long.toString(amount));
+        settings.put("initial-balance", Long.toString(initialBalance));
+        settings.put("max-in-flight", Integer.toString(maxInFlight));
+        settings.put("seed", Long.toString(seed));
+        return settings;
+    }
+
+    /**
+     * Длительность в виде {@code 500ms}, {@code 30s}, {@code 5m} или ISO-8601 ({@code PT30S}).
+     */
+    static Duration duration(String value) {
+        String text = value.trim();
+        if (text.startsWith("P") || text.startsWith("p")) {
+            return Duration.parse(text);
+        }
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        if (text.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        throw new IllegalArgumentException("Expected a duration like 500ms, 30s or 5m, got " + value);
+    }
+
+    private static double doubleOr(String value, double defaultValue) {
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    private static Path path(String value) {
+        return value != null ? Path.of(value) : null;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
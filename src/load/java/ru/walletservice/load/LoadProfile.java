@@ -0,0 +1,44 @@
+package ru.walletservice.load;
+
+import java.util.Locale;
+
+/**
+ * Готовые смеси запросов. Любой параметр профиля переопределяется своим аргументом генератора.
+ */
+public enum LoadProfile {
+    /** Равномерный выбор кошельков, половина запросов — чтение баланса, пополнения и списания поровну. */
+    UNIFORM(0, 0.5, 0.5, 1_000_000),
+    /** Горячие кошельки: выбор по закону Ципфа, основная часть операций приходится на несколько кошельков. */
+    HOT_WALLETS(1.2, 0.2, 0.5, 1_000_000),
+    /** Преимущественно чтение балансов с умеренным перекосом. */
+    READ_HEAVY(0.8, 0.9, 0.5, 1_000_000),
+    /** Поток отказов: списания с кошельков без средств, большая часть ответов — 400 «Insufficient funds». */
+    INSUFFICIENT_FUNDS(1.0, 0.1, 0.9, 0);
+
+    /** Показатель распределения Ципфа по кошелькам; 0 — равномерное. */
+    final double zipfExponent;
+    /** Доля чтений баланса среди всех запросов. */
+    final double readRatio;
+    /** Доля списаний среди операций. */
+    final double withdrawRatio;
+    /** Начальный баланс создаваемых кошельков в копейках. */
+    final long initialBalance;
+
+    LoadProfile(double zipfExponent, double readRatio, double withdrawRatio, long initialBalance) {
+        this.zipfExponent = zipfExponent;
+        this.readRatio = readRatio;
+        this.withdrawRatio = withdrawRatio;
+        this.initialBalance = initialBalance;
+    }
+
+    /**
+     * @param name Имя профиля в аргументах генератора, например {@code hot-wallets}.
+     */
+    static LoadProfile of(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    String argumentName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
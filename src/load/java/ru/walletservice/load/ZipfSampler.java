@@ -0,0 +1,40 @@
+package ru.walletservice.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Выбор номера кошелька по закону Ципфа: вероятность номера {@code k} пропорциональна {@code 1 / (k + 1)^s}.
+ * При {@code s = 0} выбор равномерный.
+ */
+final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int k = 0; k < size; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < size; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    int next(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * @return Доля запросов, приходящаяся на {@code count} самых горячих кошельков.
+     */
+    double share(int count) {
+        return cumulative[Math.min(count, cumulative.length) - 1];
+    }
+}
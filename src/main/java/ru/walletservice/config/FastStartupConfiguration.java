@@ -0,0 +1,30 @@
+package ru.walletservice.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+import ru.walletservice.controller.WalletController;
+
+import javax.sql.DataSource;
+
+/**
+ * Ленивое создание бинов в режиме быстрого старта ({@code spring.main.lazy-initialization=true},
+ * профиль {@code fast-startup}).
+ * <p>
+ * Бины создаются при первом обращении, кроме API операций и балансов кошельков с его зависимостями
+ * (сервисы, репозитории, пул соединений, Hibernate): иначе их создание досталось бы первому запросу.
+ * Выгрузка, лента изменений, массовое создание и эндпоинты Actuator создаются при первом вызове.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "spring.main", name = "lazy-initialization", havingValue = "true")
+public class FastStartupConfiguration {
+
+    @Bean
+    static LazyInitializationExcludeFilter hotPathBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(WalletController.class, DataSource.class,
+                EntityManagerFactory.class, AbstractEntityManagerFactoryBean.class);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.walletservice.config;
+
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Модуль Jackson Blackbird ({@code wallet.json.blackbird=true}, по умолчанию включён).
+ * <p>
+ * Spring Boot добавляет бины модулей в общий ObjectMapper, так что модуль действует на тела запросов и ответов,
+ * потоковые ответы и NDJSON. Модуль заменяет вызовы методов доступа и конструкторов через отражение
+ * сгенерированными лямбдами: запись ответа с балансом создаёт на 40 байт меньше (см. SerializationBenchmark).
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "wallet.json", name = "blackbird", havingValue = "true", matchIfMissing = true)
+public class JsonConfiguration {
+
+    @Bean
+    public BlackbirdModule blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
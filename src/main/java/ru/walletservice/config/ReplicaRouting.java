@@ -0,0 +1,39 @@
+package ru.walletservice.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Принудительное чтение с основного сервера в текущем потоке.
+ * <p>
+ * Транзакции только для чтения, начатые внутри {@link #onPrimary(Supplier)}, получают соединение
+ * основного сервера, а не реплики. Без включённых реплик не действует.
+ */
+public final class ReplicaRouting {
+
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    /**
+     * Выполняет действие, направляя его чтения на основной сервер.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Направлены ли чтения текущего потока на основной сервер.
+     */
+    public static boolean isPrimaryRequired() {
+        return PRIMARY.get() != null;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.walletservice.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Источники соединений при чтении с реплик ({@code wallet.replicas.enabled=true}).
+ * <p>
+ * Основной источник — {@link LazyConnectionDataSourceProxy}: физическое соединение берётся при первом
+ * операторе, когда уже известно, что транзакция только для чтения. Такие транзакции получают соединение
+ * реплики из {@link ReplicaRoutingDataSource}, остальные — соединение основного сервера.
+ * Пулы реплик настраиваются так же, как пул основного сервера ({@code spring.datasource.hikari.*}).
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "wallet.replicas", name = "enabled", havingValue = "true")
+public class ReplicaRoutingConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaDataSource(HikariDataSource primaryDataSource,
+                                                      WalletProperties properties) {
+        WalletProperties.Replicas settings = properties.getReplicas();
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : settings.getUrls()) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(url);
+            config.setPoolName("replica-" + (replicas.size() + 1));
+            config.setMaximumPoolSize(settings.getMaximumPoolSize());
+            if (config.getMinimumIdle() > settings.getMaximumPoolSize()) {
+                config.setMinimumIdle(settings.getMaximumPoolSize());
+            }
+            if (settings.getUsername() != null) {
+                config.setUsername(settings.getUsername());
+            }
+            if (settings.getPassword() != null) {
+                config.setPassword(settings.getPassword());
+            }
+            // пул запускается при первом чтении, недоступная при старте реплика не мешает запуску сервиса
+            HikariDataSource replica = new HikariDataSource();
+            config.copyStateTo(replica);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, settings.getSelection());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRoutingDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.walletservice.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Источник соединений для транзакций только для чтения: выбирает реплику
+ * по {@link WalletProperties.ReplicaSelection}.
+ * <p>
+ * Если ни одна реплика не выдала соединение, чтение выполняется на основном сервере.
+ * Внутри {@link ReplicaRouting#onPrimary} соединение сразу берётся с основного сервера.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final WalletProperties.ReplicaSelection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+
+    /**
+     * @param primary Основной сервер.
+     * @param replicas Реплики.
+     * @param selection Выбор реплики для очередного соединения.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas,
+                                    WalletProperties.ReplicaSelection selection) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.selection = selection;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReplicaRouting.isPrimaryRequired() && !replicas.isEmpty()) {
+            int first = select();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((first + i) % replicas.size());
+                try {
+                    return replica.getConnection();
+                } catch (SQLException | RuntimeException ex) {
+                    // недоступная реплика пропускается, последней попыткой остаётся основной сервер
+                    replica.failures.increment();
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Соединение с явными учётными данными выдаёт основной сервер: учётные данные реплик заданы в их пулах,
+     * и переданные не могут быть к ним применены.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryReads.increment();
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * @return Количество соединений, выданных каждой репликой.
+     */
+    public List<Long> replicaReads() {
+        return replicas.stream().map(replica -> replica.reads.sum()).toList();
+    }
+
+    /**
+     * @return Количество соединений для чтения, выданных основным сервером.
+     */
+    public long primaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * @return Индекс реплики, с которой начинается попытка получить соединение.
+     */
+    private int select() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        if (selection == WalletProperties.ReplicaSelection.ROUND_ROBIN) {
+            return start;
+        }
+        int best = start;
+        for (int i = 1; i < replicas.size(); i++) {
+            int candidate = (start + i) % replicas.size();
+            if (replicas.get(candidate).inUse.get() < replicas.get(best).inUse.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            String name = "replica-" + (i + 1);
+            Gauge.builder("wallet.replicas.connections.active", replica.inUse, AtomicInteger::get)
+                    .description("Занятые соединения реплики")
+                    .tag("replica", name)
+                    .register(registry);
+            FunctionCounter.builder("wallet.replicas.reads", replica.reads, LongAdder::sum)
+                    .description("Соединения для чтения, выданные репликой или основным сервером")
+                    .tag("target", name)
+                    .register(registry);
+            FunctionCounter.builder("wallet.replicas.failures", replica.failures, LongAdder::sum)
+                    .description("Неудачные попытки получить соединение реплики")
+                    .tag("replica", name)
+                    .register(registry);
+        }
+        FunctionCounter.builder("wallet.replicas.reads", primaryReads, LongAdder::sum)
+                .description("Соединения для чтения, выданные репликой или основным сервером")
+                .tag("target", "primary")
+                .register(registry);
+    }
+
+    /**
+     * Закрывает пулы соединений реплик.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * Реплика и число её занятых соединений.
+     */
+    private static final class Replica {
+        private final DataSource dataSource;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Выдаёт соединение, которое при закрытии уменьшает число занятых соединений реплики.
+         */
+        private Connection getConnection() throws SQLException {
+            inUse.incrementAndGet();
+            Connection connection;
+            try {
+                connection = dataSource.getConnection();
+            } catch (SQLException | RuntimeException ex) {
+                inUse.decrementAndGet();
+                throw ex;
+            }
+            reads.increment();
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            inUse.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package ru.walletservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Настройки сервиса кошельков (префикс {@code wallet}).
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "wallet")
+public class WalletProperties {
+
+    /** Способ изменения баланса при одиночной операции. */
+    private UpdateStrategy updateStrategy = UpdateStrategy.PESSIMISTIC;
+
+    private Coalescing coalescing = new Coalescing();
+
+    private Cache cache = new Cache();
+
+    private Batch batch = new Batch();
+
+    private Transfer transfer = new Transfer();
+
+    private WriteConcurrency writeConcurrency = new WriteConcurrency();
+
+    private Ledger ledger = new Ledger();
+
+    private Contention contention = new Contention();
+
+    private LockStriping lockStriping = new LockStriping();
+
+    private CreditAccumulator creditAccumulator = new CreditAccumulator();
+
+    private PartitionMigration partitionMigration = new PartitionMigration();
+
+    private Replicas replicas = new Replicas();
+
+    private Export export = new Export();
+
+    private Outbox outbox = new Outbox();
+
+    private Provisioning provisioning = new Provisioning();
+
+    private Json json = new Json();
+
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Способ изменения баланса.
+     */
+    public enum UpdateStrategy {
+        /** Блокирующая выборка сущности (SELECT ... FOR UPDATE), изменение в Java и сохранение. */
+        PESSIMISTIC,
+        /** Один оператор UPDATE ... RETURNING без удержания блокировки между запросами. */
+        ATOMIC
+    }
+
+    /**
+     * Режим объединения конкурентных операций над одним кошельком.
+     */
+    @Getter
+    @Setter
+    public static class Coalescing {
+        /** Включает объединение операций в очереди кошелька. */
+        private boolean enabled = false;
+        /** Максимальное количество операций, применяемых за одну транзакцию. */
+        private int maxBatchSize = 256;
+        /** Количество потоков, разбирающих очереди кошельков. */
+        private int workerThreads = 8;
+    }
+
+    /**
+     * Кэш балансов кошельков.
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+        /** Включает кэширование балансов. */
+        private boolean enabled = true;
+        /** Максимальное количество кошельков в кэше. */
+        private long maximumSize = 100_000;
+        /** Время жизни закэшированного баланса. */
+        private Duration expireAfterWrite = Duration.ofSeconds(60);
+        /** Время жизни отметки о несуществующем кошельке. */
+        private Duration negativeExpireAfterWrite = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Пакетные операции над кошельками.
+     */
+    @Getter
+    @Setter
+    public static class Batch {
+        /** Количество операций, применяемых в одной транзакции. */
+        private int chunkSize = 1000;
+        /** Количество кошельков, запрашиваемых одним запросом при массовом чтении балансов. */
+        private int readChunkSize = 1000;
+    }
+
+    /**
+     * Переводы между кошельками.
+     */
+    @Getter
+    @Setter
+    public static class Transfer {
+        /** Максимальное количество зачислений в одном переводе. */
+        private int maxLegs = 1000;
+    }
+
+    /**
+     * Ограничение числа одновременно выполняемых изменяющих транзакций.
+     * Позволяет держать часть пула соединений свободной для чтений, когда запросы
+     * обслуживаются виртуальными потоками и их число не ограничено пулом потоков Tomcat.
+     */
+    @Getter
+    @Setter
+    public static class WriteConcurrency {
+        /** Максимальное число одновременных изменяющих транзакций; 0 — без ограничения. */
+        private int maxConcurrentWrites = 0;
+        /** Время ожидания разрешения на изменяющую транзакцию. */
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Журнал операций над кошельками (таблица wallet_operations).
+     */
+    @Getter
+    @Setter
+    public static class Ledger {
+        /** Включает запись операций в журнал и проверку ключей идемпотентности. */
+        private boolean enabled = true;
+    }
+
+    /**
+     * Поведение при конкуренции за блокировку кошелька.
+     */
+    @Getter
+    @Setter
+    public static class Contention {
+        /**
+         * Максимальное время ожидания блокировки строки в базе.
+         * Устанавливается для каждого соединения через {@code spring.datasource.hikari.connection-init-sql}.
+         */
+        private Duration lockTimeout = Duration.ofSeconds(2);
+        /** Максимальное количество попыток выполнить транзакцию, не получившую блокировку. */
+        private int maxAttempts = 3;
+        /** Задержка перед первым повтором; каждая следующая удваивается. */
+        private Duration initialBackoff = Duration.ofMillis(10);
+        /** Верхняя граница задержки перед повтором. */
+        private Duration maxBackoff = Duration.ofMillis(200);
+        /** Максимальное число одновременно выполняемых операций над одним кошельком; 0 — без ограничения. */
+        private int maxInFlightPerWallet = 64;
+        /** Значение заголовка Retry-After для отклонённых запросов. */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    /**
+     * Блокировки кошельков внутри процесса, берущиеся до открытия транзакции.
+     */
+    @Getter
+    @Setter
+    public static class LockStriping {
+        /** Включает блокировки кошельков внутри процесса. */
+        private boolean enabled = true;
+        /** Количество полос; округляется вверх до степени двойки. */
+        private int stripes = 1024;
+        /** Выдавать блокировку полосы в порядке очереди ожидающих. */
+        private boolean fair = false;
+        /** Максимальное время ожидания блокировки полосы. */
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Отложенная запись пополнений кошельков, которые только пополняются (кэшбэк, бонусы).
+     * Пополнение подтверждается после записи в локальный журнал, а в базу попадает суммой
+     * за период вместе с другими пополнениями.
+     */
+    @Getter
+    @Setter
+    public static class CreditAccumulator {
+        /** Включает отложенную запись пополнений. */
+        private boolean enabled = false;
+        /** Кошельки, пополнения которых записываются отложенно. */
+        private Set<UUID> walletIds = new HashSet<>();
+        /** Каталог журнала пополнений. */
+        private String logDirectory = "data/credit-log";
+        /** Размер сегмента журнала. */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        /** Сбрасывать запись журнала на диск до подтверждения пополнения. */
+        private boolean sync = true;
+        /** Период записи накопленных пополнений в базу. */
+        private Duration flushInterval = Duration.ofMillis(100);
+        /** Количество накопленных пополнений, после которого они записываются в базу, не дожидаясь периода. */
+        private int flushThreshold = 1000;
+    }
+
+    /**
+     * Перенос строк кошельков в секционированную таблицу без остановки сервиса.
+     * Нужен, если при применении миграции 005 в таблице было больше
+     * {@code spring.liquibase.parameters.wallet-inline-migration-max-rows} строк.
+     */
+    @Getter
+    @Setter
+    public static class PartitionMigration {
+        /** Включает перенос при запуске сервиса. */
+        private boolean enabled = false;
+        /** Количество строк, переносимых одной транзакцией. */
+        private int chunkSize = 10_000;
+        /** Пауза между частями, ограничивающая нагрузку переноса на базу. */
+        private Duration pause = Duration.ofMillis(50);
+    }
+
+    /**
+     * Чтение балансов с реплик базы.
+     * Транзакции только для чтения (чтение баланса, массовое чтение балансов) выполняются на репликах,
+     * остальные — на основном сервере {@code spring.datasource.*}.
+     */
+    @Getter
+    @Setter
+    public static class Replicas {
+        /** Включает чтение с реплик. */
+        private boolean enabled = false;
+        /** JDBC URL реплик. */
+        private List<String> urls = new ArrayList<>();
+        /** Пользователь реплик; по умолчанию тот же, что и у основного сервера. */
+        private String username;
+        /** Пароль реплик; по умолчанию тот же, что и у основного сервера. */
+        private String password;
+        /** Выбор реплики для очередного соединения. */
+        private ReplicaSelection selection = ReplicaSelection.ROUND_ROBIN;
+        /** Размер пула соединений каждой реплики. */
+        private int maximumPoolSize = 10;
+        /**
+         * Время после изменения кошелька, в течение которого чтения клиента, предъявившего токен согласованности,
+         * выполняются на основном сервере (чтение своих записей при отставании реплик).
+         */
+        private Duration readYourWritesWindow = Duration.ofSeconds(2);
+    }
+
+    /**
+     * Выбор реплики для очередного соединения.
+     */
+    public enum ReplicaSelection {
+        /** Реплики по очереди. */
+        ROUND_ROBIN,
+        /** Реплика с наименьшим числом занятых соединений. */
+        LEAST_LOADED
+    }
+
+    /**
+     * Выгрузка всех кошельков для сверки.
+     */
+    @Getter
+    @Setter
+    public static class Export {
+        /** Количество строк, получаемых с сервера базы за раз. */
+        private int fetchSize = 1000;
+    }
+
+    /**
+     * События об изменении балансов (transactional outbox) и лента изменений для подписчиков.
+     * Событие записывается в таблицу wallet_outbox в транзакции, изменившей баланс; ретранслятор забирает
+     * события пачками и передаёт их в ленту, хранящую в памяти последние события для подписчиков.
+     */
+    @Getter
+    @Setter
+    public static class Outbox {
+        /** Включает запись событий, ретранслятор и ленту изменений. */
+        private boolean enabled = false;
+        /** Наибольшее количество событий, нумеруемых ретранслятором за одну транзакцию. */
+        private int batchSize = 1000;
+        /** Пауза ретранслятора после неполной пачки, за которую накапливается следующая. */
+        private Duration linger = Duration.ofMillis(50);
+        /** Количество последних событий, хранимых лентой в памяти; более ранние читаются из таблицы. */
+        private int feedCapacity = 100_000;
+        /** Время хранения ретранслированных событий в таблице: столько подписчик может отставать без reset. */
+        private Duration retention = Duration.ofHours(1);
+        /** Период комментария в потоке подписчика, когда событий нет; обнаруживает отключившихся подписчиков. */
+        private Duration heartbeat = Duration.ofSeconds(15);
+        /** Наибольшая длительность соединения подписчика; после неё клиент переподключается с курсором. */
+        private Duration subscriptionTimeout = Duration.ofMinutes(30);
+    }
+
+    /**
+     * Массовое создание кошельков командой COPY.
+     */
+    @Getter
+    @Setter
+    public static class Provisioning {
+        /** Наибольшее количество кошельков со сгенерированными ID в одном запросе. */
+        private long maxCount = 10_000_000;
+        /** Размер буфера строк, отправляемого серверу базы за раз. */
+        private DataSize bufferSize = DataSize.ofKilobytes(64);
+    }
+
+    /**
+     * Разбор запросов и запись ответов в JSON.
+     */
+    @Getter
+    @Setter
+    public static class Json {
+        /** Доступ к полям и конструкторам через сгенерированные лямбды (модуль Jackson Blackbird) вместо отражения. */
+        private boolean blackbird = true;
+    }
+
+    /**
+     * Метрики сервиса кошельков.
+     */
+    @Getter
+    @Setter
+    public static class Metrics {
+        /** Количество самых нагруженных кошельков, для которых публикуется число выполняемых операций. */
+        private int hotWallets = 5;
+    }
+}
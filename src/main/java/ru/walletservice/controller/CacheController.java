@@ -0,0 +1,37 @@
+package ru.walletservice.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.walletservice.service.WalletBalanceCache;
+
+@RestController
+@RequestMapping("/api/v1/cache")
+@Tag(name = "Cache API", description = "API для мониторинга кэша балансов.")
+public class CacheController {
+
+    private final WalletBalanceCache balanceCache;
+
+    public CacheController(WalletBalanceCache balanceCache) {
+        this.balanceCache = balanceCache;
+    }
+
+    @GetMapping("/balances/stats")
+    @Operation(summary = "Статистика кэша балансов",
+            description = "Возвращает количество попаданий, промахов и вытеснений кэша балансов.")
+    public ResponseEntity<CacheStatsResponse> getBalanceCacheStats() {
+        CacheStats stats = balanceCache.stats();
+        return ResponseEntity.ok(new CacheStatsResponse(
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                balanceCache.size()));
+    }
+
+    public record CacheStatsResponse(long hitCount, long missCount, double hitRate, long evictionCount, long size) {}
+}
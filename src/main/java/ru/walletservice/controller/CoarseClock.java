@@ -0,0 +1,35 @@
+package ru.walletservice.controller;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Время для поля {@code timestamp} ответов с точностью до миллисекунды.
+ * <p>
+ * {@link LocalDateTime#now()} на каждый ответ заново определяет часовой пояс и создаёт объекты времени.
+ * Здесь значение создаётся один раз за миллисекунду и отдаётся всем ответам этой миллисекунды.
+ * Часовой пояс фиксируется при загрузке класса.
+ */
+public final class CoarseClock {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static volatile Tick tick = new Tick(Long.MIN_VALUE, null);
+
+    private CoarseClock() {
+    }
+
+    public static LocalDateTime now() {
+        long millis = System.currentTimeMillis();
+        Tick current = tick;
+        if (current.millis() != millis) {
+            current = new Tick(millis, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE));
+            // гонка потоков в начале миллисекунды лишь создаст значение повторно
+            tick = current;
+        }
+        return current.time();
+    }
+
+    private record Tick(long millis, LocalDateTime time) {}
+}
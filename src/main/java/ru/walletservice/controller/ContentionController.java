@@ -0,0 +1,34 @@
+package ru.walletservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.walletservice.service.WalletContentionPolicy;
+
+@RestController
+@RequestMapping("/api/v1/contention")
+@Tag(name = "Contention API", description = "API для мониторинга конкуренции за кошельки.")
+public class ContentionController {
+
+    private final WalletContentionPolicy contentionPolicy;
+
+    public ContentionController(WalletContentionPolicy contentionPolicy) {
+        this.contentionPolicy = contentionPolicy;
+    }
+
+    @GetMapping("/stats")
+    @Operation(summary = "Статистика конкуренции",
+            description = "Возвращает количество повторов транзакций, отказов по конфликту блокировки и отклонённых запросов.")
+    public ResponseEntity<ContentionStatsResponse> getContentionStats() {
+        return ResponseEntity.ok(new ContentionStatsResponse(
+                contentionPolicy.retryCount(),
+                contentionPolicy.conflictCount(),
+                contentionPolicy.shedCount(),
+                contentionPolicy.inFlightWallets()));
+    }
+
+    public record ContentionStatsResponse(long retryCount, long conflictCount, long shedCount, int inFlightWallets) {}
+}
@@ -0,0 +1,52 @@
+package ru.walletservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.walletservice.service.WalletChangeFeed;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Лента изменений балансов: одно долгоживущее соединение вместо опроса баланса каждого кошелька.
+ * <p>
+ * Ответ асинхронный: поток сервлета сразу возвращается в пул, события пишет поток подписчика ленты,
+ * а соединение закрывается через {@code wallet.outbox.subscription-timeout}.
+ */
+@RestController
+@RequestMapping("/api/v1/wallets")
+@ConditionalOnProperty(prefix = "wallet.outbox", name = "enabled", havingValue = "true")
+@Tag(name = "Change feed API", description = "API для подписки на изменения балансов.")
+public class WalletChangeFeedController {
+
+    private final WalletChangeFeed changeFeed;
+
+    public WalletChangeFeedController(WalletChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Подписаться на изменения балансов",
+            description = "Возвращает поток server-sent events: событие balance на каждое изменение баланса "
+                    + "и событие reset, если часть изменений пропущена. Без курсора передаются только новые изменения.")
+    public ResponseEntity<ResponseBodyEmitter> changes(
+            @Parameter(description = "Курсор последнего полученного события (ID события в потоке)")
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @Parameter(description = "Курсор, если заголовок Last-Event-ID не передан")
+            @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_EVENT_STREAM, StandardCharsets.UTF_8))
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(changeFeed.subscribe(lastEventId != null ? lastEventId : cursor));
+    }
+}
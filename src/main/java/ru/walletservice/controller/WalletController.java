@@ -1,20 +1,38 @@
 package ru.walletservice.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.walletservice.exception.GlobalExceptionHandler;
+import ru.walletservice.model.WalletBalance;
 import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.model.WalletTransferRequest;
+import ru.walletservice.model.WalletTransferResult;
+import ru.walletservice.service.ReplicaReadPolicy;
+import ru.walletservice.service.WalletBatchService;
 import ru.walletservice.service.WalletService;
+import ru.walletservice.service.WalletTransferService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -22,9 +40,19 @@ import java.util.UUID;
 public class WalletController {
 
     private final WalletService walletService;
+    private final WalletBatchService walletBatchService;
+    private final WalletTransferService walletTransferService;
+    private final ObjectMapper objectMapper;
+    private final ReplicaReadPolicy replicaReadPolicy;
 
-    public WalletController(WalletService walletService) {
+    public WalletController(WalletService walletService, WalletBatchService walletBatchService,
+                            WalletTransferService walletTransferService, ObjectMapper objectMapper,
+                            ReplicaReadPolicy replicaReadPolicy) {
         this.walletService = walletService;
+        this.walletBatchService = walletBatchService;
+        this.walletTransferService = walletTransferService;
+        this.objectMapper = objectMapper;
+        this.replicaReadPolicy = replicaReadPolicy;
     }
 
     @PostMapping("/wallets")
@@ -41,9 +69,60 @@ public class WalletController {
                     content = @Content(schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class)))
     })
     public ResponseEntity<BalanceResponse> operateOnWallet(@RequestBody WalletOperationRequest request) {
-        double newAmount = walletService.operateOnWallet(request);
-        BalanceResponse operateOnWalletResponse = new BalanceResponse(LocalDateTime.now(), HttpStatus.OK.value(), newAmount);
-        return new ResponseEntity<>(operateOnWalletResponse, HttpStatus.OK);
+        long newAmount = walletService.operateOnWallet(request);
+        BalanceResponse operateOnWalletResponse = new BalanceResponse(CoarseClock.now(), HttpStatus.OK.value(), newAmount);
+        return new ResponseEntity<>(operateOnWalletResponse, consistencyHeaders(), HttpStatus.OK);
+    }
+
+    @PostMapping("/wallets/transfers")
+    @Operation(summary = "Перевести средства между кошельками",
+            description = "Списывает с кошелька отправителя сумму всех зачислений и зачисляет её получателям "
+                    + "в одной транзакции. Несколько зачислений — выплата нескольким получателям.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Перевод выполнен успешно",
+                    content = @Content(schema = @Schema(implementation = TransferResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Неверный запрос или недостаточно средств",
+                    content = @Content(schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "Кошелек не найден",
+                    content = @Content(schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Кошельки изменены другим пользователем",
+                    content = @Content(schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class)))
+    })
+    public ResponseEntity<TransferResponse> transfer(@RequestBody WalletTransferRequest request) {
+        WalletTransferResult result = walletTransferService.transfer(request);
+        TransferResponse response = new TransferResponse(CoarseClock.now(), HttpStatus.OK.value(),
+                result.transferId(), result.balance(), result.legs());
+        return new ResponseEntity<>(response, consistencyHeaders(), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/wallets/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Выполнить пакет операций с кошельками",
+            description = "Принимает массив операций и возвращает результат каждой из них. "
+                    + "Отказ отдельной операции не прерывает пакет.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Пакет обработан",
+                    content = @Content(schema = @Schema(implementation = BatchResponse.class)))
+    })
+    public ResponseEntity<BatchResponse> operateOnWallets(@RequestBody List<WalletOperationRequest> requests) {
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(requests.iterator());
+        return new ResponseEntity<>(new BatchResponse(CoarseClock.now(), HttpStatus.OK.value(), results),
+                consistencyHeaders(), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/wallets/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Выполнить пакет операций с кошельками (NDJSON)",
+            description = "Принимает поток операций по одной на строку и применяет их по мере чтения.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Пакет обработан",
+                    content = @Content(schema = @Schema(implementation = BatchResponse.class)))
+    })
+    public ResponseEntity<BatchResponse> operateOnWalletsStream(InputStream body) throws IOException {
+        try (MappingIterator<WalletOperationRequest> requests =
+                     objectMapper.readerFor(WalletOperationRequest.class).readValues(body)) {
+            List<WalletOperationResult> results = walletBatchService.operateOnWallets(requests);
+            return new ResponseEntity<>(new BatchResponse(CoarseClock.now(), HttpStatus.OK.value(), results),
+                    consistencyHeaders(), HttpStatus.OK);
+        }
     }
 
     @GetMapping("/wallets/{walletId}")
@@ -55,12 +134,93 @@ public class WalletController {
             @ApiResponse(responseCode = "404", description = "Кошелек не найден",
                     content = @Content(schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class)))
     })
-    public ResponseEntity<BalanceResponse> getBalance(@PathVariable UUID walletId) {
-        double balance = walletService.getBalance(walletId);
-        BalanceResponse response = new BalanceResponse(LocalDateTime.now(), HttpStatus.OK.value(), balance);
+    public ResponseEntity<BalanceResponse> getBalance(
+            @PathVariable UUID walletId,
+            @RequestHeader(value = ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, required = false) String consistencyToken) {
+        long balance = replicaReadPolicy.requiresPrimary(consistencyToken)
+                ? walletService.getBalance(walletId, true)
+                : walletService.getBalance(walletId);
+        BalanceResponse response = new BalanceResponse(CoarseClock.now(), HttpStatus.OK.value(), balance);
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
-    public record BalanceResponse(LocalDateTime timestamp, int status, double amount) {}
+    @PostMapping("/wallets/balances")
+    @Operation(summary = "Получить балансы нескольких кошельков",
+            description = "Принимает массив ID кошельков и возвращает их балансы потоком. "
+                    + "Для ненайденных кошельков баланс равен null.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Балансы получены успешно",
+                    content = @Content(schema = @Schema(implementation = BalancesResponse.class)))
+    })
+    public ResponseEntity<StreamingResponseBody> getBalances(
+            @RequestBody List<UUID> walletIds,
+            @RequestHeader(value = ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, required = false) String consistencyToken) {
+        return streamBalances(walletIds, replicaReadPolicy.requiresPrimary(consistencyToken));
+    }
+
+    @GetMapping(value = "/wallets", params = "ids")
+    @Operation(summary = "Получить балансы нескольких кошельков",
+            description = "Принимает ID кошельков повторяющимся параметром ids и возвращает их балансы потоком.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Балансы получены успешно",
+                    content = @Content(schema = @Schema(implementation = BalancesResponse.class)))
+    })
+    public ResponseEntity<StreamingResponseBody> getBalancesByIds(
+            @RequestParam("ids") List<UUID> walletIds,
+            @RequestHeader(value = ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, required = false) String consistencyToken) {
+        return streamBalances(walletIds, replicaReadPolicy.requiresPrimary(consistencyToken));
+    }
+
+    /**
+     * Пишет ответ {@link BalancesResponse} по мере получения балансов, не собирая его в памяти.
+     *
+     * @param fromPrimary Читать балансы с основного сервера (клиент предъявил свежий токен согласованности).
+     */
+    private ResponseEntity<StreamingResponseBody> streamBalances(List<UUID> walletIds, boolean fromPrimary) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeObjectField("timestamp", CoarseClock.now());
+                generator.writeNumberField("status", HttpStatus.OK.value());
+                generator.writeArrayFieldStart("balances");
+                Consumer<WalletBalance> writer = balance -> {
+                    try {
+                        generator.writeObject(balance);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                };
+                if (fromPrimary) {
+                    walletService.getBalances(walletIds, true, writer);
+                } else {
+                    walletService.getBalances(walletIds, writer);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Заголовки ответа на изменение: токен согласованности, если включено чтение с реплик.
+     */
+    private HttpHeaders consistencyHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        String token = replicaReadPolicy.issueToken();
+        if (token != null) {
+            headers.set(ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, token);
+        }
+        return headers;
+    }
+
+    public record BalanceResponse(LocalDateTime timestamp, int status, long amount) {}
+
+    public record TransferResponse(LocalDateTime timestamp, int status, UUID transferId, long balance,
+                                   List<WalletBalance> legs) {}
+
+    public record BatchResponse(LocalDateTime timestamp, int status, List<WalletOperationResult> results) {}
+
+    public record BalancesResponse(LocalDateTime timestamp, int status, List<WalletBalance> balances) {}
 
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package ru.walletservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.walletservice.service.WalletExportService;
+
+import java.io.IOException;
+
+/**
+ * Выгрузка кошельков для ночной сверки.
+ * <p>
+ * Ответ пишется в поток сервлета в потоке запроса, а не через {@code StreamingResponseBody}:
+ * выгрузка всей таблицы может идти дольше тайм-аута асинхронных запросов.
+ */
+@RestController
+@RequestMapping("/api/v1/wallets")
+@Tag(name = "Export API", description = "API для выгрузки и сверки кошельков.")
+public class WalletExportController {
+
+    /** Тип содержимого CSV. */
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final WalletExportService exportService;
+
+    public WalletExportController(WalletExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping(value = "/export", produces = TEXT_CSV_VALUE)
+    @Operation(summary = "Выгрузить кошельки в CSV",
+            description = "Возвращает ID и баланс каждого кошелька в заданных границах баланса. "
+                    + "При включённом журнале операций баланс сверяется с журналом.")
+    public void exportCsv(
+            @Parameter(description = "Наименьший баланс включительно") @RequestParam(required = false) Long minBalance,
+            @Parameter(description = "Наибольший баланс включительно") @RequestParam(required = false) Long maxBalance,
+            @Parameter(description = "Сверять балансы с журналом операций")
+            @RequestParam(defaultValue = "true") boolean reconcile,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(TEXT_CSV_VALUE + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("wallets.csv").build().toString());
+        exportService.writeCsv(minBalance, maxBalance, reconcile, response.getOutputStream());
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Выгрузить кошельки в NDJSON",
+            description = "Возвращает по одному кошельку на строку в заданных границах баланса. "
+                    + "При включённом журнале операций баланс сверяется с журналом.")
+    public void exportNdjson(
+            @Parameter(description = "Наименьший баланс включительно") @RequestParam(required = false) Long minBalance,
+            @Parameter(description = "Наибольший баланс включительно") @RequestParam(required = false) Long maxBalance,
+            @Parameter(description = "Сверять балансы с журналом операций")
+            @RequestParam(defaultValue = "true") boolean reconcile,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        exportService.writeNdjson(minBalance, maxBalance, reconcile, response.getOutputStream());
+    }
+}
@@ -0,0 +1,71 @@
+package ru.walletservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.walletservice.service.WalletProvisioningService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Массовое создание кошельков при подключении партнёров.
+ * <p>
+ * Как и выгрузка кошельков, загрузка выполняется в потоке запроса: создание миллионов кошельков
+ * может идти дольше тайм-аута асинхронных запросов.
+ */
+@RestController
+@RequestMapping("/api/v1/wallets")
+@Tag(name = "Provisioning API", description = "API для массового создания кошельков.")
+public class WalletProvisioningController {
+
+    private final WalletProvisioningService provisioningService;
+
+    public WalletProvisioningController(WalletProvisioningService provisioningService) {
+        this.provisioningService = provisioningService;
+    }
+
+    @PostMapping(value = "/provisioning", params = "count", produces = WalletExportController.TEXT_CSV_VALUE)
+    @Operation(summary = "Создать кошельки со сгенерированными ID",
+            description = "Создаёт заданное количество кошельков с ID, упорядоченными по времени создания, "
+                    + "и возвращает созданные кошельки в CSV. Кошельки создаются все или ни одного.")
+    public void generate(
+            @Parameter(description = "Количество кошельков") @RequestParam long count,
+            @Parameter(description = "Начальный баланс каждого кошелька")
+            @RequestParam(defaultValue = "0") long initialBalance,
+            HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.CREATED.value());
+        response.setContentType(WalletExportController.TEXT_CSV_VALUE + ";charset=UTF-8");
+        provisioningService.generate(count, initialBalance, response.getOutputStream());
+    }
+
+    @PostMapping(value = "/provisioning", consumes = WalletExportController.TEXT_CSV_VALUE)
+    @Operation(summary = "Создать кошельки из CSV",
+            description = "Принимает строки wallet_id,balance (заголовок необязателен) и создаёт кошельки "
+                    + "по мере чтения запроса. Кошельки создаются все или ни одного.")
+    public ResponseEntity<ProvisioningResponse> importCsv(InputStream body) {
+        WalletProvisioningService.ProvisioningSummary summary = provisioningService.importCsv(body);
+        return new ResponseEntity<>(new ProvisioningResponse(CoarseClock.now(), HttpStatus.CREATED.value(),
+                summary.wallets(), summary.elapsed().toMillis(), summary.walletsPerSecond()), HttpStatus.CREATED);
+    }
+
+    @GetMapping("/provisioning")
+    @Operation(summary = "Ход массового создания кошельков",
+            description = "Возвращает выполняющиеся загрузки и количество кошельков, отправленных каждой в базу.")
+    public ResponseEntity<List<WalletProvisioningService.ProvisioningProgress>> progress() {
+        return ResponseEntity.ok(provisioningService.progress());
+    }
+
+    public record ProvisioningResponse(LocalDateTime timestamp, int status, long wallets, long elapsedMillis,
+                                       long walletsPerSecond) {}
+}
@@ -1,14 +1,25 @@
 package ru.walletservice.exception;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.context.request.WebRequest;
+import ru.walletservice.controller.CoarseClock;
+import ru.walletservice.exception.walletException.WalletAlreadyExistsException;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
 import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
 import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.exception.walletException.WalletInvalidProvisioningException;
+import ru.walletservice.exception.walletException.WalletInvalidTransferException;
 import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ConcurrentModificationException;
 
@@ -16,36 +27,64 @@ import java.util.ConcurrentModificationException;
 public class GlobalExceptionHandler {
 
     @ExceptionHandler(WalletNotFoundException.class)
-    public ResponseEntity<ErrorResponse> handleWalletNotFoundException(WalletNotFoundException ex, WebRequest request) {
-        ErrorResponse error = new ErrorResponse(
-                LocalDateTime.now(),
-                HttpStatus.NOT_FOUND.value(),
-                ex.getMessage(),
-                request.getDescription(false).replace("uri=", "")
-        );
-        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
-    }
-
-    @ExceptionHandler({WalletInvalidOperationTypeException.class, WalletInsufficientFundsException.class})
-    public ResponseEntity<ErrorResponse> handleWalletInvalidOperationTypeException(RuntimeException ex, WebRequest request) {
-        ErrorResponse error = new ErrorResponse(
-                LocalDateTime.now(),
-                HttpStatus.BAD_REQUEST.value(),
-                ex.getMessage(),
-                request.getDescription(false).replace("uri=", "")
-        );
-        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
-    }
-
-    @ExceptionHandler({ConcurrentModificationException.class})
-    public ResponseEntity<ErrorResponse> handleConcurrentModificationException(RuntimeException ex, WebRequest request) {
-        ErrorResponse error = new ErrorResponse(
-                LocalDateTime.now(),
-                HttpStatus.CONFLICT.value(),
-                ex.getMessage(),
-                request.getDescription(false).replace("uri=", "")
-        );
-        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    public ResponseEntity<ErrorResponse> handleWalletNotFoundException(WalletNotFoundException ex,
+                                                                        HttpServletRequest request) {
+        return error(HttpStatus.NOT_FOUND, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler({WalletInvalidOperationTypeException.class, WalletInvalidAmountException.class,
+            WalletInsufficientFundsException.class, WalletBalanceOverflowException.class,
+            WalletInvalidTransferException.class, WalletInvalidProvisioningException.class})
+    public ResponseEntity<ErrorResponse> handleWalletInvalidOperationTypeException(RuntimeException ex,
+                                                                                    HttpServletRequest request) {
+        return error(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler(WalletIdempotencyConflictException.class)
+    public ResponseEntity<ErrorResponse> handleWalletIdempotencyConflictException(WalletIdempotencyConflictException ex,
+                                                                                 HttpServletRequest request) {
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler({ConcurrentModificationException.class, WalletAlreadyExistsException.class})
+    public ResponseEntity<ErrorResponse> handleConcurrentModificationException(RuntimeException ex,
+                                                                                HttpServletRequest request) {
+        return error(HttpStatus.CONFLICT, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler(WalletConflictException.class)
+    public ResponseEntity<ErrorResponse> handleWalletConflictException(WalletConflictException ex,
+                                                                        HttpServletRequest request) {
+        return retryLater(HttpStatus.CONFLICT, ex.getMessage(), ex.getRetryAfter(), request);
+    }
+
+    @ExceptionHandler(WalletTooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> handleWalletTooManyRequestsException(WalletTooManyRequestsException ex,
+                                                                             HttpServletRequest request) {
+        return retryLater(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), ex.getRetryAfter(), request);
+    }
+
+    private static ResponseEntity<ErrorResponse> retryLater(HttpStatus status, String message, Duration retryAfter,
+                                                            HttpServletRequest request) {
+        ErrorResponse error = errorResponse(status, message, request);
+        // Retry-After задаётся в целых секундах
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+                .body(error);
+    }
+
+    /**
+     * Ответ с отказом: сообщение исключения постоянно, путь берётся из запроса без копирования,
+     * время — из {@link CoarseClock}, так что на отказ создаётся только сама запись и тело ответа.
+     */
+    private static ResponseEntity<ErrorResponse> error(HttpStatus status, String message,
+                                                       HttpServletRequest request) {
+        return new ResponseEntity<>(errorResponse(status, message, request), status);
+    }
+
+    private static ErrorResponse errorResponse(HttpStatus status, String message, HttpServletRequest request) {
+        return new ErrorResponse(CoarseClock.now(), status.value(), message, request.getRequestURI());
     }
 
     public record ErrorResponse(LocalDateTime timestamp, int status, String error, String path) {}
@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletAlreadyExistsException extends WalletRejectedException {
+    public WalletAlreadyExistsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletBalanceOverflowException extends WalletRejectedException {
+    public WalletBalanceOverflowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package ru.walletservice.exception.walletException;
+
+import java.time.Duration;
+
+public class WalletConflictException extends WalletRejectedException {
+
+    private final Duration retryAfter;
+
+    public WalletConflictException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
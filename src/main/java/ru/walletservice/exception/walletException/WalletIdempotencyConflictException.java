@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletIdempotencyConflictException extends WalletRejectedException {
+    public WalletIdempotencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,6 @@
 package ru.walletservice.exception.walletException;
 
-public class WalletInsufficientFundsException extends RuntimeException {
+public class WalletInsufficientFundsException extends WalletRejectedException {
     public WalletInsufficientFundsException(String message) {
         super(message);
     }
@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletInvalidAmountException extends WalletRejectedException {
+    public WalletInvalidAmountException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,6 @@
 package ru.walletservice.exception.walletException;
 
-public class WalletInvalidOperationTypeException extends RuntimeException {
+public class WalletInvalidOperationTypeException extends WalletRejectedException {
     public WalletInvalidOperationTypeException(String message) {
         super(message);
     }
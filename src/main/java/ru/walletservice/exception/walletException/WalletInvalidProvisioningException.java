@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletInvalidProvisioningException extends WalletRejectedException {
+    public WalletInvalidProvisioningException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.walletservice.exception.walletException;
+
+public class WalletInvalidTransferException extends WalletRejectedException {
+    public WalletInvalidTransferException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,6 @@
 package ru.walletservice.exception.walletException;
 
-public class WalletNotFoundException extends RuntimeException {
+public class WalletNotFoundException extends WalletRejectedException {
     public WalletNotFoundException(String message) {
         super(message);
     }
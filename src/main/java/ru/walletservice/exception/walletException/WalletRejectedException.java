@@ -0,0 +1,15 @@
+package ru.walletservice.exception.walletException;
+
+/**
+ * Отказ в операции по правилам сервиса: кошелёк не найден, недостаточно средств, конфликт и т.п.
+ * <p>
+ * Такие отказы — штатный ответ клиенту, а не ошибка программы, и под потоком отказов заполнение стека вызовов
+ * становится основной частью их стоимости. Поэтому стек не заполняется; место отказа определяется по сообщению
+ * и типу исключения.
+ */
+public abstract class WalletRejectedException extends RuntimeException {
+
+    protected WalletRejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,17 @@
+package ru.walletservice.exception.walletException;
+
+import java.time.Duration;
+
+public class WalletTooManyRequestsException extends WalletRejectedException {
+
+    private final Duration retryAfter;
+
+    public WalletTooManyRequestsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.walletservice.model;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Запись журнала операций над кошельками.
+ * <p>
+ * Перевод записывается несколькими записями с общим {@code transferId}: списание с отрицательной суммой
+ * и ключом идемпотентности перевода, затем зачисления с положительными суммами в порядке запроса.
+ *
+ * @param walletId ID кошелька.
+ * @param operationType Тип операции.
+ * @param amount Сумма операции; у записей перевода — со знаком.
+ * @param balanceAfter Баланс кошелька после операции.
+ * @param idempotencyKey Ключ идемпотентности клиента или {@code null}.
+ * @param transferId ID перевода или {@code null}, если запись не относится к переводу.
+ */
+public record LedgerEntry(UUID walletId,
+                          WalletOperationRequest.OperationType operationType,
+                          long amount,
+                          long balanceAfter,
+                          String idempotencyKey,
+                          UUID transferId) {
+
+    public LedgerEntry(UUID walletId, WalletOperationRequest.OperationType operationType, long amount,
+                       long balanceAfter, String idempotencyKey) {
+        this(walletId, operationType, amount, balanceAfter, idempotencyKey, null);
+    }
+
+    public static LedgerEntry of(WalletOperationRequest request, long balanceAfter) {
+        return new LedgerEntry(request.walletId(), request.operationType(), request.amount(), balanceAfter,
+                request.idempotencyKey());
+    }
+
+    /**
+     * Запись перевода.
+     *
+     * @param transferId ID перевода.
+     * @param walletId ID кошелька.
+     * @param amount Сумма со знаком: отрицательная для списания, положительная для зачисления.
+     * @param balanceAfter Баланс кошелька после записи.
+     * @param idempotencyKey Ключ идемпотентности перевода (только у списания) или {@code null}.
+     */
+    public static LedgerEntry transfer(UUID transferId, UUID walletId, long amount, long balanceAfter,
+                                       String idempotencyKey) {
+        return new LedgerEntry(walletId, WalletOperationRequest.OperationType.TRANSFER, amount, balanceAfter,
+                idempotencyKey, transferId);
+    }
+
+    /**
+     * @return Изменение баланса: отрицательное для снятия и списания перевода.
+     */
+    public long signedAmount() {
+        return operationType == WalletOperationRequest.OperationType.WITHDRAW ? -amount : amount;
+    }
+
+    /**
+     * Проверяет, что повторный запрос с тем же ключом идемпотентности описывает ту же операцию.
+     */
+    public boolean matches(WalletOperationRequest request) {
+        return Objects.equals(walletId, request.walletId())
+                && operationType == request.operationType()
+                && amount == request.amount();
+    }
+}
@@ -18,5 +18,6 @@ public class Wallet {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private UUID walletId;
-    private double balance;
+    /** Баланс в минимальных единицах валюты (копейках). */
+    private long balance;
 }
@@ -0,0 +1,11 @@
+package ru.walletservice.model;
+
+import java.util.UUID;
+
+/**
+ * Баланс кошелька в ответе на массовый запрос балансов.
+ *
+ * @param walletId ID кошелька.
+ * @param balance Баланс или {@code null}, если кошелёк не найден.
+ */
+public record WalletBalance(UUID walletId, Long balance) {}
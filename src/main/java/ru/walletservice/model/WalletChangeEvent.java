@@ -0,0 +1,17 @@
+package ru.walletservice.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Событие об изменении баланса кошелька из таблицы wallet_outbox.
+ *
+ * @param eventId ID события; события одного кошелька следуют в порядке возрастания ID.
+ * @param walletId ID кошелька.
+ * @param amount Изменение баланса: положительное для зачисления, отрицательное для списания.
+ * @param balance Баланс кошелька после изменения.
+ * @param createdAt Время записи события (время транзакции, изменившей баланс).
+ * @param position Номер события в ленте изменений, присвоенный ретранслятором; он же курсор подписчика.
+ */
+public record WalletChangeEvent(long eventId, UUID walletId, long amount, long balance, Instant createdAt,
+                                long position) {}
@@ -0,0 +1,29 @@
+package ru.walletservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+/**
+ * Строка выгрузки кошельков.
+ * <p>
+ * Поля сверки заполняются, только если выгрузка сверяется с журналом операций. Баланс по журналу —
+ * баланс до первой операции журнала ({@code balance_after} первой операции за вычетом её суммы)
+ * плюс сумма всех операций кошелька; у кошелька без операций он не определён.
+ *
+ * @param walletId ID кошелька.
+ * @param balance Баланс кошелька.
+ * @param operations Количество операций в журнале.
+ * @param ledgerBalance Баланс по журналу или {@code null}, если операций нет.
+ * @param reconciled Совпадает ли баланс с балансом по журналу; кошелёк без операций считается сверенным.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record WalletExportRow(UUID walletId, long balance, Long operations, Long ledgerBalance, Boolean reconciled) {
+
+    /**
+     * Строка выгрузки без сверки.
+     */
+    public static WalletExportRow of(UUID walletId, long balance) {
+        return new WalletExportRow(walletId, balance, null, null, null);
+    }
+}
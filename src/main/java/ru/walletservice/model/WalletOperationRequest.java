@@ -1,21 +1,28 @@
 package ru.walletservice.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.Setter;
-
 import java.util.UUID;
 
-@Getter
-@Setter
-@AllArgsConstructor
-public class WalletOperationRequest {
-    private UUID walletId;
-    private OperationType operationType;
-    private double amount;
+/**
+ * Операция с одним кошельком.
+ *
+ * @param walletId ID кошелька.
+ * @param operationType Тип операции.
+ * @param amount Сумма в минимальных единицах валюты (копейках).
+ * @param idempotencyKey Ключ идемпотентности клиента: повтор запроса с тем же ключом возвращает исходный результат.
+ */
+public record WalletOperationRequest(UUID walletId, OperationType operationType, long amount, String idempotencyKey) {
+
+    public WalletOperationRequest(UUID walletId, OperationType operationType, long amount) {
+        this(walletId, operationType, amount, null);
+    }
 
     public enum OperationType {
         DEPOSIT,
-        WITHDRAW
+        WITHDRAW,
+        /**
+         * Перевод между кошельками, см. {@link WalletTransferRequest}.
+         * Не применяется как операция над одним кошельком; в журнале так отмечаются списание и зачисления перевода.
+         */
+        TRANSFER
     }
 }
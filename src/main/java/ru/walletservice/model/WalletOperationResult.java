@@ -0,0 +1,31 @@
+package ru.walletservice.model;
+
+import java.util.UUID;
+
+/**
+ * Результат одной операции из пакетного запроса.
+ *
+ * @param walletId ID кошелька.
+ * @param balance Баланс после операции или {@code null}, если операция не выполнена.
+ * @param error Причина отказа или {@code null}, если операция выполнена.
+ */
+public record WalletOperationResult(UUID walletId, Long balance, Error error) {
+
+    public static WalletOperationResult success(UUID walletId, long balance) {
+        return new WalletOperationResult(walletId, balance, null);
+    }
+
+    public static WalletOperationResult failure(UUID walletId, Error error) {
+        return new WalletOperationResult(walletId, null, error);
+    }
+
+    public enum Error {
+        WALLET_NOT_FOUND,
+        INSUFFICIENT_FUNDS,
+        INVALID_OPERATION_TYPE,
+        INVALID_AMOUNT,
+        BALANCE_OVERFLOW,
+        CONFLICT,
+        IDEMPOTENCY_CONFLICT
+    }
+}
@@ -0,0 +1,37 @@
+package ru.walletservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Перевод с одного кошелька на один или несколько других (выплата).
+ * Списание и все зачисления выполняются в одной транзакции.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletTransferRequest {
+    private UUID fromWalletId;
+    /** Зачисления в порядке применения. */
+    private List<Leg> legs;
+    /** Ключ идемпотентности клиента: повтор запроса с тем же ключом возвращает исходный результат. */
+    private String idempotencyKey;
+
+    public WalletTransferRequest(UUID fromWalletId, UUID toWalletId, long amount) {
+        this(fromWalletId, List.of(new Leg(toWalletId, amount)), null);
+    }
+
+    /**
+     * Зачисление перевода.
+     *
+     * @param toWalletId ID кошелька получателя.
+     * @param amount Сумма в минимальных единицах валюты (копейках).
+     */
+    public record Leg(UUID toWalletId, long amount) {}
+}
@@ -0,0 +1,13 @@
+package ru.walletservice.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Результат перевода.
+ *
+ * @param transferId ID перевода; записи журнала перевода отмечены этим ID.
+ * @param balance Баланс кошелька отправителя после перевода.
+ * @param legs Балансы получателей после каждого зачисления, в порядке запроса.
+ */
+public record WalletTransferResult(UUID transferId, long balance, List<WalletBalance> legs) {}
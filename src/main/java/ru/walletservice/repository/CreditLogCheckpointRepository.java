@@ -0,0 +1,44 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Отметки о применённых к балансам сегментах журнала пополнений (таблица credit_log_checkpoints).
+ * Отметка пишется в той же транзакции, что и балансы, поэтому сегмент не применяется повторно
+ * после сбоя между фиксацией и удалением файла. Отметка только растёт.
+ */
+@Repository
+public class CreditLogCheckpointRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CreditLogCheckpointRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param logId ID журнала.
+     * @return Номер последнего применённого сегмента; 0, если сегменты журнала ещё не применялись.
+     */
+    public long findAppliedSegment(UUID logId) {
+        List<Long> segments = jdbcTemplate.queryForList(
+                "select applied_segment from credit_log_checkpoints where log_id = ?", Long.class, logId);
+        return segments.isEmpty() ? 0 : segments.get(0);
+    }
+
+    /**
+     * Отмечает сегменты журнала с номером не больше заданного как применённые.
+     *
+     * @param logId ID журнала.
+     * @param segment Номер последнего применённого сегмента.
+     */
+    public void markApplied(UUID logId, long segment) {
+        jdbcTemplate.update("insert into credit_log_checkpoints (log_id, applied_segment) values (?, ?) "
+                + "on conflict (log_id) do update set applied_segment = "
+                + "greatest(credit_log_checkpoints.applied_segment, excluded.applied_segment)", logId, segment);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Пакетный доступ к кошелькам через JDBC.
+ * <p>
+ * Набор ID передаётся массивом и соединяется с таблицей через {@code unnest}, а не условием {@code = any(?)}.
+ * Условие {@code = any(?)} с параметром-массивом отсекает секции таблицы кошельков только в плане для конкретных
+ * значений, а в общем (generic) плане подготовленного оператора проверяет индекс каждой секции. Соединение
+ * вложенным циклом, которое выбирается для большой таблицы, ищет каждый ID только в его секции.
+ */
+@Repository
+public class WalletBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Блокирует кошельки одним запросом в порядке возрастания ID и возвращает их балансы.
+     * Единый порядок захвата блокировок исключает взаимные блокировки между пакетами.
+     *
+     * @param walletIds ID кошельков.
+     * @return Балансы найденных кошельков.
+     */
+    public Map<UUID, Long> findBalancesAndLock(Collection<UUID> walletIds) {
+        return jdbcTemplate.query(
+                """
+                        select w.wallet_id, w.balance from unnest(?::uuid[]) as ids(wallet_id)
+                        join wallets w on w.wallet_id = ids.wallet_id
+                        order by w.wallet_id for update of w
+                        """,
+                ps -> {
+                    Array ids = ps.getConnection().createArrayOf("uuid", walletIds.toArray());
+                    ps.setArray(1, ids);
+                },
+                rs -> {
+                    Map<UUID, Long> balances = new HashMap<>();
+                    while (rs.next()) {
+                        balances.put(rs.getObject(1, UUID.class), rs.getLong(2));
+                    }
+                    return balances;
+                });
+    }
+
+    /**
+     * Возвращает балансы кошельков одним запросом без блокировок.
+     * Вне изменяющей транзакции запрос выполняется в транзакции только для чтения и может быть направлен на реплику.
+     *
+     * @param walletIds ID кошельков.
+     * @return Балансы найденных кошельков.
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, Long> findBalances(Collection<UUID> walletIds) {
+        return jdbcTemplate.query(
+                """
+                        select w.wallet_id, w.balance from unnest(?::uuid[]) as ids(wallet_id)
+                        join wallets w on w.wallet_id = ids.wallet_id
+                        """,
+                ps -> {
+                    Array ids = ps.getConnection().createArrayOf("uuid", walletIds.toArray());
+                    ps.setArray(1, ids);
+                },
+                rs -> {
+                    Map<UUID, Long> balances = new HashMap<>();
+                    while (rs.next()) {
+                        balances.put(rs.getObject(1, UUID.class), rs.getLong(2));
+                    }
+                    return balances;
+                });
+    }
+
+    /**
+     * Прибавляет суммы к балансам кошельков одним оператором UPDATE.
+     * Строки блокируются в порядке возрастания ID, как и в {@link #findBalancesAndLock(Collection)}.
+     *
+     * @param amounts Суммы по кошелькам.
+     * @return Новые балансы найденных кошельков.
+     */
+    public Map<UUID, Long> addToBalances(Map<UUID, Long> amounts) {
+        Map<UUID, Long> balances = new HashMap<>();
+        if (amounts.isEmpty()) {
+            return balances;
+        }
+        List<Map.Entry<UUID, Long>> entries = new ArrayList<>(amounts.entrySet());
+        jdbcTemplate.query("""
+                        with amounts as (select unnest(?::uuid[]) as wallet_id, unnest(?::bigint[]) as amount),
+                             locked as (select w.wallet_id from amounts a join wallets w on w.wallet_id = a.wallet_id
+                                        order by w.wallet_id for update of w)
+                        update wallets w set balance = w.balance + a.amount
+                        from amounts a join locked l on l.wallet_id = a.wallet_id
+                        where w.wallet_id = a.wallet_id
+                        returning w.wallet_id, w.balance
+                        """,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("uuid",
+                            entries.stream().map(Map.Entry::getKey).toArray()));
+                    ps.setArray(2, ps.getConnection().createArrayOf("bigint",
+                            entries.stream().map(Map.Entry::getValue).toArray()));
+                },
+                rs -> {
+                    balances.put(rs.getObject(1, UUID.class), rs.getLong(2));
+                });
+        return balances;
+    }
+
+    /**
+     * Сохраняет балансы одним JDBC-пакетом.
+     *
+     * @param balances Новые балансы кошельков.
+     */
+    public void updateBalances(Map<UUID, Long> balances) {
+        if (balances.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<UUID, Long>> entries = new ArrayList<>(balances.entrySet());
+        jdbcTemplate.batchUpdate("update wallets set balance = ? where wallet_id = ?", entries, entries.size(),
+                (ps, entry) -> {
+                    ps.setLong(1, entry.getValue());
+                    ps.setObject(2, entry.getKey());
+                });
+    }
+}
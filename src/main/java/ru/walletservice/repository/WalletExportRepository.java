@@ -0,0 +1,81 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.walletservice.model.WalletExportRow;
+
+import java.sql.PreparedStatement;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Выгрузка всех кошельков одним запросом.
+ * <p>
+ * Запрос выполняется в транзакции только для чтения (при чтении с реплик — на реплике) с серверным курсором:
+ * pgjdbc получает строки порциями по {@code fetchSize}, так что память не зависит от размера таблицы.
+ * Все строки читаются из одного снимка базы.
+ */
+@Repository
+public class WalletExportRepository {
+
+    private static final String BALANCES = """
+            select wallet_id, balance from wallets where balance between ? and ?
+            """;
+
+    /**
+     * Баланс по журналу: {@code balance_after} первой операции минус её сумма плюс сумма всех операций.
+     * Журнал агрегируется в том же запросе, что и кошельки. Записи перевода (TRANSFER) хранят
+     * сумму со знаком и входят в сумму как есть.
+     */
+    private static final String RECONCILIATION = """
+            select w.wallet_id, w.balance, coalesce(l.operations, 0),
+                   f.balance_after - (case f.operation_type when 'WITHDRAW' then -f.amount else f.amount end) + l.net
+            from wallets w
+            left join (select wallet_id, count(*) as operations, min(operation_id) as first_operation_id,
+                              sum(case operation_type when 'WITHDRAW' then -amount else amount end) as net
+                       from wallet_operations group by wallet_id) l on l.wallet_id = w.wallet_id
+            left join wallet_operations f on f.operation_id = l.first_operation_id
+            where w.balance between ? and ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletExportRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Передаёт кошельки с балансом в заданных границах по мере чтения, в произвольном порядке.
+     *
+     * @param minBalance Наименьший баланс включительно.
+     * @param maxBalance Наибольший баланс включительно.
+     * @param reconcile Сверять балансы с журналом операций.
+     * @param fetchSize Количество строк, получаемых с сервера за раз.
+     * @param consumer Получатель строк выгрузки.
+     */
+    @Transactional(readOnly = true)
+    public void export(long minBalance, long maxBalance, boolean reconcile, int fetchSize,
+                       Consumer<WalletExportRow> consumer) {
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(reconcile ? RECONCILIATION : BALANCES);
+                    ps.setFetchSize(fetchSize);
+                    ps.setLong(1, minBalance);
+                    ps.setLong(2, maxBalance);
+                    return ps;
+                },
+                rs -> {
+                    UUID walletId = rs.getObject(1, UUID.class);
+                    long balance = rs.getLong(2);
+                    if (!reconcile) {
+                        consumer.accept(WalletExportRow.of(walletId, balance));
+                        return;
+                    }
+                    long operations = rs.getLong(3);
+                    long ledgerBalance = rs.getLong(4);
+                    boolean hasLedger = !rs.wasNull();
+                    consumer.accept(new WalletExportRow(walletId, balance, operations,
+                            hasLedger ? ledgerBalance : null, !hasLedger || ledgerBalance == balance));
+                });
+    }
+}
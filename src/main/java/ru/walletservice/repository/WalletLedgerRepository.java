@@ -0,0 +1,110 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.sql.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Журнал операций над кошельками (таблица wallet_operations).
+ */
+@Repository
+public class WalletLedgerRepository {
+
+    private static final String INSERT = "insert into wallet_operations "
+            + "(wallet_id, operation_type, amount, balance_after, idempotency_key, transfer_id) values (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_IF_ABSENT = INSERT
+            + " on conflict (idempotency_key) where idempotency_key is not null do nothing";
+
+    private static final RowMapper<LedgerEntry> ROW_MAPPER = (rs, rowNum) -> new LedgerEntry(
+            rs.getObject("wallet_id", UUID.class),
+            WalletOperationRequest.OperationType.valueOf(rs.getString("operation_type")),
+            rs.getLong("amount"),
+            rs.getLong("balance_after"),
+            rs.getString("idempotency_key"),
+            rs.getObject("transfer_id", UUID.class));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletLedgerRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Добавляет запись, если операция с таким ключом идемпотентности ещё не записана.
+     * Проверка дубликата выполняется уникальным индексом в том же операторе.
+     *
+     * @param entry Запись журнала.
+     * @return {@code false}, если операция с таким ключом уже есть в журнале.
+     */
+    public boolean insertIfAbsent(LedgerEntry entry) {
+        int inserted = jdbcTemplate.update(INSERT_IF_ABSENT, entry.walletId(), entry.operationType().name(), entry.amount(), entry.balanceAfter(),
+                entry.idempotencyKey(), entry.transferId());
+        return inserted > 0;
+    }
+
+    /**
+     * Добавляет записи одним JDBC-пакетом.
+     *
+     * @param entries Записи журнала.
+     */
+    public void insertAll(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT, entries, entries.size(), (ps, entry) -> {
+            ps.setObject(1, entry.walletId());
+            ps.setString(2, entry.operationType().name());
+            ps.setLong(3, entry.amount());
+            ps.setLong(4, entry.balanceAfter());
+            ps.setString(5, entry.idempotencyKey());
+            ps.setObject(6, entry.transferId());
+        });
+    }
+
+    /**
+     * @param idempotencyKey Ключ идемпотентности.
+     * @return Запись операции с этим ключом или {@code null}.
+     */
+    public LedgerEntry findByIdempotencyKey(String idempotencyKey) {
+        List<LedgerEntry> entries = jdbcTemplate.query(
+                "select * from wallet_operations where idempotency_key = ?", ROW_MAPPER, idempotencyKey);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * @param transferId ID перевода.
+     * @return Записи перевода в порядке записи: списание, затем зачисления.
+     */
+    public List<LedgerEntry> findByTransferId(UUID transferId) {
+        return jdbcTemplate.query("select * from wallet_operations where transfer_id = ? order by operation_id",
+                ROW_MAPPER, transferId);
+    }
+
+    /**
+     * @param idempotencyKeys Ключи идемпотентности.
+     * @return Записанные операции по ключам.
+     */
+    public Map<String, LedgerEntry> findByIdempotencyKeys(Collection<String> idempotencyKeys) {
+        Map<String, LedgerEntry> entries = new HashMap<>();
+        jdbcTemplate.query("select * from wallet_operations where idempotency_key = any(?)",
+                ps -> {
+                    Array keys = ps.getConnection().createArrayOf("varchar", idempotencyKeys.toArray());
+                    ps.setArray(1, keys);
+                },
+                rs -> {
+                    LedgerEntry entry = ROW_MAPPER.mapRow(rs, 0);
+                    entries.put(entry.idempotencyKey(), entry);
+                });
+        return entries;
+    }
+}
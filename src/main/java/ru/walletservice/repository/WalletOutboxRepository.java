@@ -0,0 +1,149 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletChangeEvent;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Исходящие события об изменении балансов (таблица wallet_outbox).
+ * <p>
+ * События записываются в транзакции, изменившей баланс. Ретранслятор присваивает им номера в ленте изменений
+ * ({@code feed_position}) по порядку фиксации; строки остаются в таблице, пока не устареют, и подписчики
+ * любого экземпляра сервиса читают их по номеру.
+ */
+@Repository
+public class WalletOutboxRepository {
+
+    private static final String INSERT = "insert into wallet_outbox (wallet_id, amount, balance) values (?, ?, ?)";
+
+    /**
+     * Ключ advisory-блокировки ретранслятора: номера присваивает один экземпляр сервиса за раз.
+     */
+    private static final long RELAY_LOCK = 0x77616c6c65746f62L;
+
+    /**
+     * Нумерует самые старые события без номера, продолжая с наибольшего номера в таблице. Транзакции ретрансляторов
+     * идут по очереди под advisory-блокировкой, поэтому номера фиксируются по возрастанию и без пропусков:
+     * подписчик, увидевший событие, видит и все события с меньшими номерами.
+     */
+    private static final String ASSIGN = """
+            update wallet_outbox o set feed_position = pending.feed_position
+            from (select event_id,
+                         (select coalesce(max(feed_position), 0) from wallet_outbox)
+                             + row_number() over (order by event_id) as feed_position
+                  from (select event_id from wallet_outbox where feed_position is null
+                        order by event_id limit ?) oldest) pending
+            where o.event_id = pending.event_id
+            """;
+
+    private static final String FIND_RELAYED = """
+            select event_id, wallet_id, amount, balance, created_at, feed_position from wallet_outbox
+            where feed_position > ? order by feed_position limit ?
+            """;
+
+    /**
+     * Удаляет пронумерованные события старше заданного времени. Удаляется только начало ленты: до первого
+     * неустаревшего события, и событие с наибольшим номером остаётся всегда, чтобы нумерация продолжалась с него.
+     */
+    private static final String PURGE = """
+            delete from wallet_outbox where feed_position < coalesce(
+                (select min(feed_position) from wallet_outbox where feed_position is not null and created_at >= ?),
+                (select max(feed_position) from wallet_outbox))
+            """;
+
+    private static final RowMapper<WalletChangeEvent> ROW_MAPPER = (rs, rowNum) -> new WalletChangeEvent(
+            rs.getLong("event_id"),
+            rs.getObject("wallet_id", UUID.class),
+            rs.getLong("amount"),
+            rs.getLong("balance"),
+            rs.getObject("created_at", OffsetDateTime.class).toInstant(),
+            rs.getLong("feed_position"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletOutboxRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Записывает событие об операции из журнала.
+     *
+     * @param entry Запись журнала операции.
+     */
+    public void insert(LedgerEntry entry) {
+        jdbcTemplate.update(INSERT, entry.walletId(), entry.signedAmount(), entry.balanceAfter());
+    }
+
+    /**
+     * Записывает события об операциях одним JDBC-пакетом.
+     *
+     * @param entries Записи журнала операций в порядке применения.
+     */
+    public void insertAll(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT, entries, entries.size(), (ps, entry) -> {
+            ps.setObject(1, entry.walletId());
+            ps.setLong(2, entry.signedAmount());
+            ps.setLong(3, entry.balanceAfter());
+        });
+    }
+
+    /**
+     * Присваивает номера в ленте до {@code limit} самым старым событиям без номера. Вызывается в транзакции;
+     * если номера сейчас присваивает ретранслятор другого экземпляра, ничего не делает.
+     *
+     * @param limit Наибольшее количество событий.
+     * @return Количество пронумерованных событий.
+     */
+    public int assignPositions(int limit) {
+        Boolean locked = jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class,
+                RELAY_LOCK);
+        return Boolean.TRUE.equals(locked) ? jdbcTemplate.update(ASSIGN, limit) : 0;
+    }
+
+    /**
+     * Читает пронумерованные события после заданного номера.
+     *
+     * @param after Номер последнего прочитанного события.
+     * @param limit Наибольшее количество событий.
+     * @return События в порядке номеров; номер первого больше {@code after + 1}, если события удалены по давности.
+     */
+    public List<WalletChangeEvent> findRelayed(long after, int limit) {
+        return jdbcTemplate.query(FIND_RELAYED, ROW_MAPPER, after, limit);
+    }
+
+    /**
+     * @return Наибольший присвоенный номер в ленте; {@code 0}, если событий ещё не было.
+     */
+    public long lastPosition() {
+        return jdbcTemplate.queryForObject("select coalesce(max(feed_position), 0) from wallet_outbox", Long.class);
+    }
+
+    /**
+     * Удаляет пронумерованные события, записанные раньше заданного времени.
+     *
+     * @param before Граница давности.
+     * @return Количество удалённых событий.
+     */
+    public int purge(Instant before) {
+        return jdbcTemplate.update(PURGE, Timestamp.from(before));
+    }
+
+    /**
+     * @return Количество событий, ещё не пронумерованных ретранслятором.
+     */
+    public long countPending() {
+        return jdbcTemplate.queryForObject("select count(*) from wallet_outbox where feed_position is null",
+                Long.class);
+    }
+}
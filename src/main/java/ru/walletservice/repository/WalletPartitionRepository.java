@@ -0,0 +1,72 @@
+package ru.walletservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Перенос кошельков в секционированную таблицу (миграция 005).
+ * <p>
+ * Пока перенос не завершён, сервис работает с прежней таблицей {@code wallets}, а её триггер повторяет
+ * каждое изменение в {@code wallets_partitioned}. Строки, существовавшие до миграции, копируются по частям
+ * в порядке ID; строка, уже записанная триггером, не перезаписывается.
+ */
+@Repository
+public class WalletPartitionRepository {
+
+    private static final String COPY_CHUNK = """
+            with chunk as (select wallet_id, balance from wallets %s order by wallet_id limit ?),
+                 copied as (insert into wallets_partitioned (wallet_id, balance)
+                            select wallet_id, balance from chunk
+                            on conflict (wallet_id) do nothing)
+            select wallet_id, (select count(*) from chunk) from chunk order by wallet_id desc limit 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return Ожидает ли таблица кошельков переноса в секционированную.
+     */
+    public boolean isMigrationPending() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select to_regclass('wallets_partitioned') is not null", Boolean.class));
+    }
+
+    /**
+     * Копирует очередную часть кошельков в секционированную таблицу.
+     *
+     * @param after ID последнего скопированного кошелька или {@code null} для первой части.
+     * @param size Максимальное количество строк.
+     * @return Последний скопированный ID и количество прочитанных строк; {@code null}, если строк не осталось.
+     */
+    public CopiedChunk copyChunk(UUID after, int size) {
+        List<CopiedChunk> chunks = after == null
+                ? jdbcTemplate.query(COPY_CHUNK.formatted(""),
+                (rs, row) -> new CopiedChunk(rs.getObject(1, UUID.class), rs.getInt(2)), size)
+                : jdbcTemplate.query(COPY_CHUNK.formatted("where wallet_id > ?"),
+                (rs, row) -> new CopiedChunk(rs.getObject(1, UUID.class), rs.getInt(2)), after, size);
+        return chunks.isEmpty() ? null : chunks.getFirst();
+    }
+
+    /**
+     * Подменяет таблицу кошельков секционированной. Ждёт завершения транзакций, работающих с таблицей,
+     * не дольше {@code lock_timeout} соединения.
+     */
+    public void switchToPartitioned() {
+        jdbcTemplate.execute("select switch_to_partitioned_wallets()");
+    }
+
+    /**
+     * Скопированная часть кошельков.
+     *
+     * @param lastWalletId Наибольший ID в части.
+     * @param rows Количество строк в части.
+     */
+    public record CopiedChunk(UUID lastWalletId, int rows) {}
+}
@@ -0,0 +1,93 @@
+package ru.walletservice.repository;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.walletservice.model.Wallet;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * Массовое создание кошельков командой COPY.
+ * <p>
+ * Строки кодируются в двоичный формат COPY (ID — 16 байт вместо 36 символов текста) и отправляются серверу
+ * через {@code CopyManager} pgjdbc буфером фиксированного размера по мере чтения, так что память не зависит
+ * от количества строк. Все строки загружаются одной транзакцией: при ошибке не создаётся ни один кошелёк.
+ */
+@Repository
+public class WalletProvisioningRepository {
+
+    private static final String COPY = "copy wallets (wallet_id, balance) from stdin (format binary)";
+
+    /** Заголовок двоичного формата COPY: сигнатура, флаги и длина расширения заголовка. */
+    private static final byte[] HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    /** Строка: количество полей, затем длина и значение ID и баланса. */
+    private static final int ROW_SIZE = Short.BYTES + Integer.BYTES + 16 + Integer.BYTES + Long.BYTES;
+    private static final short FIELDS = 2;
+    private static final short TRAILER = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WalletProvisioningRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Создаёт кошельки одной командой COPY.
+     *
+     * @param wallets Кошельки с ID и начальным балансом; читаются по мере отправки.
+     * @param bufferSize Количество байт, отправляемых серверу за раз.
+     * @return Количество созданных кошельков.
+     */
+    @Transactional
+    public long copy(Iterator<Wallet> wallets, int bufferSize) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(bufferSize, HEADER.length + ROW_SIZE));
+                buffer.put(HEADER);
+                while (wallets.hasNext()) {
+                    Wallet wallet = wallets.next();
+                    if (buffer.remaining() < ROW_SIZE) {
+                        send(copyIn, buffer);
+                    }
+                    buffer.putShort(FIELDS)
+                            .putInt(16)
+                            .putLong(wallet.getWalletId().getMostSignificantBits())
+                            .putLong(wallet.getWalletId().getLeastSignificantBits())
+                            .putInt(Long.BYTES)
+                            .putLong(wallet.getBalance());
+                }
+                if (buffer.remaining() < Short.BYTES) {
+                    send(copyIn, buffer);
+                }
+                buffer.putShort(TRAILER);
+                send(copyIn, buffer);
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    cancel(copyIn);
+                }
+            }
+        });
+    }
+
+    private static void send(CopyIn copyIn, ByteBuffer buffer) throws SQLException {
+        copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    private static void cancel(CopyIn copyIn) {
+        try {
+            copyIn.cancelCopy();
+        } catch (SQLException ex) {
+            // отмена завершает COPY ошибкой на сервере; наружу уходит исходная ошибка, транзакция откатывается
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.walletservice.model.Wallet;
 
 import java.util.UUID;
@@ -12,7 +13,52 @@ import java.util.UUID;
 public interface WalletRepository extends JpaRepository<Wallet, UUID> {
     Wallet findByWalletId(UUID walletId);
 
+    /**
+     * Читает только баланс кошелька в транзакции только для чтения: сущность не загружается
+     * в контекст персистентности и не проверяется на изменения при завершении транзакции.
+     *
+     * @return Баланс или {@code null}, если кошелёк не найден.
+     */
+    @Transactional(readOnly = true)
+    @Query("select w.balance from Wallet w where w.walletId = :walletId")
+    Long findBalanceByWalletId(@Param("walletId") UUID walletId);
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select w from Wallet w where w.walletId = :walletId")
     Wallet findByWalletIdAndLock(@Param("walletId") UUID walletId);
+
+    /**
+     * Пополняет кошелёк одним оператором UPDATE без предварительной блокирующей выборки.
+     *
+     * @return Новый баланс или {@code null}, если кошелёк не найден.
+     */
+    @Query(value = "update wallets set balance = balance + :amount where wallet_id = :walletId returning balance",
+            nativeQuery = true)
+    Long depositAndGetBalance(@Param("walletId") UUID walletId, @Param("amount") long amount);
+
+    /**
+     * Списывает средства одним оператором UPDATE, только если их достаточно.
+     * В том же операторе проверяется существование кошелька, чтобы отличить
+     * отсутствие кошелька от нехватки средств без повторной блокировки.
+     */
+    @Query(value = """
+            with updated as (
+                update wallets set balance = balance - :amount
+                where wallet_id = :walletId and balance >= :amount
+                returning balance)
+            select (select balance from updated) as balance,
+                   exists (select 1 from wallets where wallet_id = :walletId) as found
+            """, nativeQuery = true)
+    WithdrawResult withdrawAndGetBalance(@Param("walletId") UUID walletId, @Param("amount") long amount);
+
+    /**
+     * Результат условного списания.
+     */
+    interface WithdrawResult {
+        /** Новый баланс или {@code null}, если списание не выполнено. */
+        Long getBalance();
+
+        /** Существует ли кошелёк. */
+        boolean getFound();
+    }
 }
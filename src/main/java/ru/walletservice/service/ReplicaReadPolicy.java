@@ -0,0 +1,58 @@
+package ru.walletservice.service;
+
+import org.springframework.stereotype.Component;
+import ru.walletservice.config.WalletProperties;
+
+/**
+ * Чтение своих записей при чтении с реплик.
+ * <p>
+ * После изменения кошелька клиент получает токен согласованности — время изменения.
+ * Чтение с этим токеном в течение {@code wallet.replicas.read-your-writes-window} выполняется
+ * на основном сервере в обход кэша, так что клиент видит свою запись, даже если реплика отстаёт.
+ * Токен без подписи: подделав его, клиент может лишь отправить свои чтения на основной сервер.
+ */
+@Component
+public class ReplicaReadPolicy {
+
+    /** Заголовок, в котором токен выдаётся после изменения и принимается при чтении. */
+    public static final String CONSISTENCY_TOKEN_HEADER = "Wallet-Consistency-Token";
+
+    private final boolean enabled;
+    private final long windowMillis;
+
+    /**
+     * Конструктор.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public ReplicaReadPolicy(WalletProperties properties) {
+        this.enabled = properties.getReplicas().isEnabled();
+        this.windowMillis = properties.getReplicas().getReadYourWritesWindow().toMillis();
+    }
+
+    /**
+     * @return Токен согласованности для ответа на изменение; {@code null}, если чтение с реплик выключено.
+     */
+    public String issueToken() {
+        return enabled ? Long.toString(System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * Проверяет, должно ли чтение клиента выполняться на основном сервере.
+     *
+     * @param token Токен согласованности из запроса или {@code null}.
+     * @return {@code true}, если токен выдан не раньше, чем {@code read-your-writes-window} назад.
+     * Неразборчивый токен и токен из будущего дальше той же границы (расхождение часов экземпляров) не учитываются.
+     */
+    public boolean requiresPrimary(String token) {
+        if (!enabled || token == null) {
+            return false;
+        }
+        long issuedAt;
+        try {
+            issuedAt = Long.parseLong(token.trim());
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return Math.abs(System.currentTimeMillis() - issuedAt) < windowMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.walletservice.service;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Генератор ID кошельков, упорядоченных по времени создания (UUID версии 7, RFC 9562).
+ * <p>
+ * Старшие 48 бит — время в миллисекундах, следующие 12 бит — счётчик внутри миллисекунды, младшие 62 бита —
+ * случайные. Каждый следующий ID больше предыдущего, поэтому загрузка пишет в правый край индекса первичного
+ * ключа каждой секции таблицы кошельков, а не в случайные страницы B-дерева.
+ * <p>
+ * Часы читаются один раз: время начала сдвигается на миллисекунду каждые 4096 ID, а случайная часть берётся
+ * из генератора с заданным зерном. Поэтому генератор с теми же временем начала и зерном выдаёт ту же
+ * последовательность, и созданные ID можно вернуть после фиксации загрузки, не храня их в памяти.
+ * Загрузка создаёт меньше 4096 строк в миллисекунду, так что время в ID не опережает часы.
+ */
+final class TimeOrderedWalletIds {
+
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+
+    private final long startMillis;
+    private final SplittableRandom random;
+    private long index;
+
+    /**
+     * Конструктор.
+     * @param startMillis Время первого ID в миллисекундах от начала эпохи Unix.
+     * @param seed Зерно случайной части ID.
+     */
+    TimeOrderedWalletIds(long startMillis, long seed) {
+        this.startMillis = startMillis;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return Следующий ID.
+     */
+    UUID next() {
+        long millis = startMillis + (index >>> COUNTER_BITS);
+        long counter = index & COUNTER_MASK;
+        index++;
+        return new UUID(millis << 16 | VERSION | counter, random.nextLong() >>> 2 | VARIANT);
+    }
+}
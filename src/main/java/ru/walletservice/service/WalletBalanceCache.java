@@ -0,0 +1,216 @@
+package ru.walletservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.walletservice.config.WalletProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кэш балансов кошельков на основе Caffeine.
+ * <p>
+ * Заполняется при чтении, обновляется новым балансом после фиксации транзакции операции
+ * (откатившиеся операции в кэш не попадают). Несуществующие кошельки кэшируются отдельно
+ * с коротким временем жизни.
+ * <p>
+ * Обновления после фиксации могут выполняться не в порядке фиксации, поэтому каждое из них несёт
+ * порядковый номер, полученный под блокировкой строки: запись с меньшим номером не перезаписывает
+ * запись с большим. Кэш локален для экземпляра сервиса, изменения с других экземпляров
+ * становятся видны по истечении времени жизни записи.
+ * <p>
+ * Статистика кэша публикуется в реестр метрик под именем {@code wallet.balances}.
+ */
+@Component
+public class WalletBalanceCache implements MeterBinder {
+
+    private static final long LOADED = Long.MIN_VALUE;
+
+    private final boolean enabled;
+    private final Cache<UUID, CachedBalance> cache;
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletBalanceCache(WalletProperties properties) {
+        WalletProperties.Cache settings = properties.getCache();
+        this.enabled = settings.isEnabled();
+        long positiveTtlNanos = settings.getExpireAfterWrite().toNanos();
+        long negativeTtlNanos = settings.getNegativeExpireAfterWrite().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfter(new Expiry<UUID, CachedBalance>() {
+                    @Override
+                    public long expireAfterCreate(UUID walletId, CachedBalance value, long currentTime) {
+                        return value.found() ? positiveTtlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID walletId, CachedBalance value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(walletId, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID walletId, CachedBalance value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Возвращает баланс из кэша, при промахе загружает его.
+     *
+     * @param walletId ID кошелька.
+     * @param loader Загрузчик баланса; возвращает {@code null}, если кошелёк не найден.
+     * @return Баланс или {@code null}, если кошелёк не найден.
+     */
+    public Long getBalance(UUID walletId, Function<UUID, Long> loader) {
+        if (!enabled) {
+            return loader.apply(walletId);
+        }
+        CachedBalance cached = cache.getIfPresent(walletId);
+        if (cached == null) {
+            // Загрузка вне cache.get: иначе чтение из базы идёт под блокировкой записи кэша, и обновления после
+            // фиксации, ещё держащие соединение, ждут её, пока загрузка ждёт соединения из того же пула.
+            Long balance = loader.apply(walletId);
+            CachedBalance loaded = balance != null
+                    ? new CachedBalance(true, balance, LOADED)
+                    : new CachedBalance(false, 0, LOADED);
+            // Уже опубликованный после фиксации баланс новее загруженного.
+            CachedBalance current = cache.asMap().putIfAbsent(walletId, loaded);
+            cached = current != null ? current : loaded;
+        }
+        return cached.found() ? cached.balance() : null;
+    }
+
+    /**
+     * Возвращает балансы нескольких кошельков: найденные в кэше берутся из него,
+     * остальные загружаются одним обращением к загрузчику и добавляются в кэш.
+     *
+     * @param walletIds ID кошельков.
+     * @param loader Загрузчик балансов; возвращает балансы найденных кошельков.
+     * @return Балансы найденных кошельков.
+     */
+    public Map<UUID, Long> getBalances(Collection<UUID> walletIds,
+                                       Function<Collection<UUID>, Map<UUID, Long>> loader) {
+        if (!enabled) {
+            return loader.apply(walletIds);
+        }
+        Map<UUID, Long> balances = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID walletId : walletIds) {
+            CachedBalance cached = cache.getIfPresent(walletId);
+            if (cached == null) {
+                missing.add(walletId);
+            } else if (cached.found()) {
+                balances.put(walletId, cached.balance());
+            }
+        }
+        if (missing.isEmpty()) {
+            return balances;
+        }
+
+        Map<UUID, Long> loaded = loader.apply(missing);
+        for (UUID walletId : missing) {
+            Long balance = loaded.get(walletId);
+            CachedBalance value = balance != null
+                    ? new CachedBalance(true, balance, LOADED)
+                    : new CachedBalance(false, 0, LOADED);
+            // Уже опубликованный после фиксации баланс новее загруженного.
+            CachedBalance current = cache.asMap().putIfAbsent(walletId, value);
+            CachedBalance effective = current != null ? current : value;
+            if (effective.found()) {
+                balances.put(walletId, effective.balance());
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Обновляет баланс в кэше после фиксации текущей транзакции.
+     * Вызывается, пока строка кошелька заблокирована транзакцией, чтобы порядковые номера
+     * обновлений одного кошелька совпадали с порядком фиксации.
+     *
+     * @param walletId ID кошелька.
+     * @param balance Новый баланс.
+     */
+    public void putAfterCommit(UUID walletId, long balance) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = writeSequence.incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(walletId, balance, sequence);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(walletId, balance, sequence);
+            }
+        });
+    }
+
+    /**
+     * Удаляет запись кошелька из кэша.
+     *
+     * @param walletId ID кошелька.
+     */
+    public void invalidate(UUID walletId) {
+        cache.invalidate(walletId);
+    }
+
+    /**
+     * Удаляет из кэша все записи о несуществующих кошельках. Вызывается после фиксации массового
+     * создания кошельков, чтобы новые кошельки не считались несуществующими до истечения времени жизни записей.
+     */
+    public void invalidateMissing() {
+        cache.asMap().values().removeIf(cached -> !cached.found());
+    }
+
+    /**
+     * @return Статистика попаданий, промахов и вытеснений.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return Приблизительное количество записей в кэше.
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "wallet.balances");
+    }
+
+    private void put(UUID walletId, long balance, long sequence) {
+        cache.asMap().merge(walletId, new CachedBalance(true, balance, sequence),
+                (current, updated) -> current.sequence() > updated.sequence() ? current : updated);
+    }
+
+    private record CachedBalance(boolean found, long balance, long sequence) {}
+}
@@ -0,0 +1,225 @@
+package ru.walletservice.service;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
+import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Сервис пакетного выполнения операций над кошельками.
+ * <p>
+ * Операции разбиваются на части заданного размера, каждая часть применяется в отдельной транзакции:
+ * все кошельки части блокируются одним запросом в едином порядке, операции применяются в порядке
+ * поступления, новые балансы сохраняются одним JDBC-пакетом. Отказ отдельной операции не прерывает пакет.
+ * Применённые операции записываются в журнал вторым JDBC-пакетом; операции с уже записанным ключом
+ * идемпотентности получают исходный результат без повторного применения.
+ * Часть пакета с кошельками с отложенной записью пополнений применяется после записи накопленных пополнений
+ * ({@link WalletCreditAccumulator#settled(java.util.Collection, Supplier)}), иначе баланс таких кошельков
+ * в памяти не увидел бы изменений пакета.
+ */
+@Service
+public class WalletBatchService {
+
+    private final WalletBatchRepository batchRepository;
+    private final WalletLedgerRepository ledgerRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletBalanceCache balanceCache;
+    private final WriteConcurrencyLimiter writeLimiter;
+    private final WalletContentionPolicy contentionPolicy;
+    private final WalletOutbox outbox;
+    private final WalletCreditAccumulator creditAccumulator;
+    private final int chunkSize;
+    private final boolean ledgerEnabled;
+
+    /**
+     * Конструктор сервиса.
+     * @param batchRepository Репозиторий пакетного доступа к кошелькам.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param transactionOperations Шаблон транзакций.
+     * @param balanceCache Кэш балансов.
+     * @param writeLimiter Ограничитель одновременных изменяющих транзакций.
+     * @param contentionPolicy Политика повторов транзакций, не получивших блокировку.
+     * @param outbox События об изменении балансов; {@code null}, если они выключены.
+     * @param creditAccumulator Отложенная запись пополнений; {@code null}, если она выключена.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletBatchService(WalletBatchRepository batchRepository,
+                              WalletLedgerRepository ledgerRepository,
+                              TransactionOperations transactionOperations,
+                              WalletBalanceCache balanceCache,
+                              WriteConcurrencyLimiter writeLimiter,
+                              WalletContentionPolicy contentionPolicy,
+                              @Nullable WalletOutbox outbox,
+                              @Nullable WalletCreditAccumulator creditAccumulator,
+                              WalletProperties properties) {
+        this.batchRepository = batchRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.transactionOperations = transactionOperations;
+        this.balanceCache = balanceCache;
+        this.writeLimiter = writeLimiter;
+        this.contentionPolicy = contentionPolicy;
+        this.outbox = outbox;
+        this.creditAccumulator = creditAccumulator;
+        this.chunkSize = properties.getBatch().getChunkSize();
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+    }
+
+    /**
+     * Выполняет пакет операций.
+     * Запросы читаются по мере обработки, поэтому пакет может поступать потоком.
+     *
+     * @param requests Операции в порядке применения.
+     * @return Результаты операций в порядке запросов.
+     */
+    public List<WalletOperationResult> operateOnWallets(Iterator<WalletOperationRequest> requests) {
+        List<WalletOperationResult> results = new ArrayList<>();
+        List<WalletOperationRequest> chunk = new ArrayList<>(chunkSize);
+        while (requests.hasNext()) {
+            chunk.add(requests.next());
+            if (chunk.size() == chunkSize) {
+                results.addAll(applyChunk(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(applyChunk(chunk));
+        }
+        return results;
+    }
+
+    /**
+     * Применяет часть пакета в одной транзакции.
+     * Транзакция, не получившая блокировки, повторяется целиком. Если блокировки так и не получены или ключ
+     * идемпотентности одновременно записан другой транзакцией, все операции части получают отказ CONFLICT.
+     */
+    private List<WalletOperationResult> applyChunk(List<WalletOperationRequest> chunk) {
+        WalletOperationResult[] results = new WalletOperationResult[chunk.size()];
+        Set<UUID> walletIds = new HashSet<>();
+        for (WalletOperationRequest request : chunk) {
+            if (request.walletId() != null) {
+                walletIds.add(request.walletId());
+            }
+        }
+        try {
+            settled(walletIds, () -> contentionPolicy.retry(() -> writeLimiter.execute(
+                    () -> transactionOperations.execute(status -> applyLocked(chunk, walletIds, results)))));
+        } catch (WalletConflictException | DataIntegrityViolationException ex) {
+            for (int i = 0; i < chunk.size(); i++) {
+                results[i] = WalletOperationResult.failure(chunk.get(i).walletId(),
+                        WalletOperationResult.Error.CONFLICT);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Блокирует кошельки части, применяет операции и сохраняет балансы, журнал и события.
+     */
+    private Void applyLocked(List<WalletOperationRequest> chunk, Set<UUID> walletIds,
+                             WalletOperationResult[] results) {
+        Map<UUID, Long> balances = batchRepository.findBalancesAndLock(walletIds);
+        Map<String, LedgerEntry> recorded = findRecorded(chunk);
+
+        Map<UUID, Long> changed = new LinkedHashMap<>();
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            results[i] = apply(chunk.get(i), balances, changed, recorded, entries);
+        }
+
+        batchRepository.updateBalances(changed);
+        if (ledgerEnabled) {
+            ledgerRepository.insertAll(entries);
+        }
+        if (outbox != null) {
+            outbox.appendAll(entries);
+        }
+        changed.forEach(balanceCache::putAfterCommit);
+        return null;
+    }
+
+    private <T> T settled(Set<UUID> walletIds, Supplier<T> action) {
+        return creditAccumulator != null ? creditAccumulator.settled(walletIds, action) : action.get();
+    }
+
+    /**
+     * Загружает из журнала операции, ключи идемпотентности которых встречаются в части пакета.
+     * Запрос выполняется после блокировки кошельков части.
+     */
+    private Map<String, LedgerEntry> findRecorded(List<WalletOperationRequest> chunk) {
+        if (!ledgerEnabled) {
+            return new HashMap<>();
+        }
+        Set<String> keys = new HashSet<>();
+        for (WalletOperationRequest request : chunk) {
+            if (request.idempotencyKey() != null) {
+                keys.add(request.idempotencyKey());
+            }
+        }
+        return keys.isEmpty() ? new HashMap<>() : ledgerRepository.findByIdempotencyKeys(keys);
+    }
+
+    private WalletOperationResult apply(WalletOperationRequest request,
+                                        Map<UUID, Long> balances,
+                                        Map<UUID, Long> changed,
+                                        Map<String, LedgerEntry> recorded,
+                                        List<LedgerEntry> entries) {
+        UUID walletId = request.walletId();
+        String key = request.idempotencyKey();
+        if (key != null && recorded.containsKey(key)) {
+            try {
+                return WalletOperationResult.success(walletId, WalletService.replay(recorded.get(key), request));
+            } catch (WalletIdempotencyConflictException ex) {
+                return WalletOperationResult.failure(walletId, WalletOperationResult.Error.IDEMPOTENCY_CONFLICT);
+            }
+        }
+        Long balance = balances.get(walletId);
+        if (balance == null) {
+            return WalletOperationResult.failure(walletId, WalletOperationResult.Error.WALLET_NOT_FOUND);
+        }
+        try {
+            long newBalance = WalletService.applyOperation(balance, request);
+            balances.put(walletId, newBalance);
+            changed.put(walletId, newBalance);
+            if (ledgerEnabled || outbox != null) {
+                LedgerEntry entry = LedgerEntry.of(request, newBalance);
+                entries.add(entry);
+                if (ledgerEnabled && key != null) {
+                    recorded.put(key, entry);
+                }
+            }
+            return WalletOperationResult.success(walletId, newBalance);
+        } catch (WalletInsufficientFundsException ex) {
+            return WalletOperationResult.failure(walletId, WalletOperationResult.Error.INSUFFICIENT_FUNDS);
+        } catch (WalletInvalidOperationTypeException ex) {
+            return WalletOperationResult.failure(walletId, WalletOperationResult.Error.INVALID_OPERATION_TYPE);
+        } catch (WalletInvalidAmountException ex) {
+            return WalletOperationResult.failure(walletId, WalletOperationResult.Error.INVALID_AMOUNT);
+        } catch (WalletBalanceOverflowException ex) {
+            return WalletOperationResult.failure(walletId, WalletOperationResult.Error.BALANCE_OVERFLOW);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.WalletChangeEvent;
+import ru.walletservice.repository.WalletOutboxRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лента изменений балансов для подписчиков (server-sent events).
+ * <p>
+ * Ретранслятор {@link WalletOutbox} нумерует события в таблице wallet_outbox и загружает в ленту
+ * пронумерованные после последнего загруженного; лента хранит в памяти последние
+ * {@code wallet.outbox.feed-capacity} событий, более ранние читает из таблицы. Номера общие для всех экземпляров
+ * сервиса, поэтому подписчик любого экземпляра получает все изменения. ID события в потоке — курсор (номер события);
+ * переподключившийся подписчик передаёт его в заголовке {@code Last-Event-ID} и продолжает с места обрыва,
+ * в том числе после перезапуска сервиса или на другом экземпляре.
+ * <p>
+ * Поток подписчика пишется из виртуального потока асинхронным ответом: поток сервлета освобождается сразу,
+ * а соединение закрывается через {@code wallet.outbox.subscription-timeout}. Если нужные подписчику события уже
+ * удалены по {@code wallet.outbox.retention} или курсор не разобран, в поток пишется событие {@code reset}:
+ * часть изменений пропущена, и балансы нужно перечитать (например, выгрузкой кошельков).
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.outbox", name = "enabled", havingValue = "true")
+public class WalletChangeFeed implements DisposableBean, MeterBinder {
+
+    /** Наибольшее количество событий, записываемых в поток подписчика за один сброс. */
+    private static final int MAX_EVENTS_PER_WRITE = 1000;
+
+    private final WalletOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+    /** Сериализатор событий без сброса после каждого события: пачка сбрасывается в поток один раз. */
+    private final ObjectWriter eventWriter;
+    private final WalletChangeEvent[] ring;
+    private final long heartbeatNanos;
+    private final long subscriptionTimeoutMillis;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    /** Номер последнего загруженного события. */
+    private long head;
+    /** Наименьший номер события в памяти: более ранние события читаются из таблицы. */
+    private long tail;
+    private volatile boolean closed;
+
+    /**
+     * Конструктор.
+     * @param outboxRepository Репозиторий исходящих событий.
+     * @param objectMapper Сериализатор событий.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletChangeFeed(WalletOutboxRepository outboxRepository, ObjectMapper objectMapper,
+                            WalletProperties properties) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+        this.eventWriter = objectMapper.writerFor(WalletChangeEvent.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        WalletProperties.Outbox settings = properties.getOutbox();
+        this.ring = new WalletChangeEvent[Math.max(1, settings.getFeedCapacity())];
+        this.heartbeatNanos = settings.getHeartbeat().toNanos();
+        this.subscriptionTimeoutMillis = settings.getSubscriptionTimeout().toMillis();
+        this.head = outboxRepository.lastPosition();
+        this.tail = head + 1;
+    }
+
+    /**
+     * Загружает события, пронумерованные после последнего загруженного, и будит ожидающих подписчиков.
+     *
+     * @param limit Наибольшее количество событий.
+     * @return Количество загруженных событий.
+     */
+    public int poll(int limit) {
+        List<WalletChangeEvent> events = outboxRepository.findRelayed(head(), limit);
+        publish(events);
+        return events.size();
+    }
+
+    /**
+     * Добавляет события в память и будит ожидающих подписчиков.
+     *
+     * @param events События в порядке номеров.
+     */
+    void publish(List<WalletChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (WalletChangeEvent event : events) {
+                if (event.position() <= head) {
+                    continue;
+                }
+                if (event.position() != head + 1) {
+                    // события между ними удалены по давности раньше, чем лента их загрузила
+                    tail = event.position();
+                }
+                head = event.position();
+                ring[(int) (head % ring.length)] = event;
+                published.increment();
+            }
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Подписывает клиента на ленту: события пишутся в асинхронный ответ из отдельного виртуального потока,
+     * пока подписчик не отключится, не истечёт {@code wallet.outbox.subscription-timeout} или сервис
+     * не остановится. Пока событий нет, раз в {@code wallet.outbox.heartbeat} пишется комментарий.
+     *
+     * @param cursor Курсор последнего полученного события; без курсора передаются только новые события.
+     * @return Асинхронный ответ с потоком событий.
+     */
+    public ResponseBodyEmitter subscribe(@Nullable String cursor) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(subscriptionTimeoutMillis);
+        // по тайм-ауту поток просто закрывается: клиент переподключится с курсором
+        emitter.onTimeout(emitter::complete);
+        long after = cursor == null ? head() : parseCursor(cursor);
+        Thread.ofVirtual().name("wallet-changes-subscriber").start(() -> stream(after, emitter));
+        return emitter;
+    }
+
+    /**
+     * Пишет события ленты подписчику, пока ответ не завершён.
+     *
+     * @param after Номер последнего полученного события; {@code -1}, если курсор недействителен.
+     * @param emitter Асинхронный ответ подписчику.
+     */
+    void stream(long after, ResponseBodyEmitter emitter) {
+        subscribers.incrementAndGet();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer)) {
+            generator.setRootValueSeparator(null);
+            while (!closed) {
+                Slice slice = read(after, MAX_EVENTS_PER_WRITE, heartbeatNanos);
+                if (slice.gap()) {
+                    writeEvent(generator, "reset", slice.first() - 1, null);
+                }
+                if (slice.events().isEmpty() && !slice.gap()) {
+                    generator.writeRaw(":\n\n");
+                }
+                after = slice.first() - 1;
+                for (WalletChangeEvent event : slice.events()) {
+                    writeEvent(generator, "balance", event.position(), event);
+                    after = event.position();
+                }
+                generator.flush();
+                emitter.send(buffer.toByteArray(), MediaType.TEXT_EVENT_STREAM);
+                buffer.reset();
+            }
+            emitter.complete();
+        } catch (IOException | IllegalStateException ex) {
+            // подписчик отключился или ответ завершён по тайм-ауту
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } finally {
+            subscribers.decrementAndGet();
+        }
+    }
+
+    private void writeEvent(JsonGenerator generator, String name, long position, @Nullable WalletChangeEvent event)
+            throws IOException {
+        generator.writeRaw("id:" + cursor(position) + "\nevent:" + name + "\ndata:");
+        if (event != null) {
+            eventWriter.writeValue(generator, event);
+        } else {
+            generator.writeRaw("{}");
+        }
+        generator.writeRaw("\n\n");
+    }
+
+    /**
+     * Читает события после заданного номера, ожидая их не дольше {@code timeoutNanos}. События, которых
+     * уже нет в памяти, читаются из таблицы.
+     *
+     * @param after Номер последнего полученного события; {@code -1}, если курсор недействителен.
+     * @param max Наибольшее количество событий.
+     * @param timeoutNanos Наибольшее время ожидания.
+     * @return Прочитанные события; признак пропуска, если часть событий после {@code after} уже удалена
+     * или курсор недействителен.
+     */
+    Slice read(long after, int max, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (after < 0) {
+                return new Slice(head + 1, List.of(), true);
+            }
+            long nanos = timeoutNanos;
+            // курсор другого экземпляра может опережать эту ленту: она догонит его при следующей загрузке
+            while (head <= after && !closed && nanos > 0) {
+                nanos = advanced.awaitNanos(nanos);
+            }
+            if (head <= after) {
+                return new Slice(after + 1, List.of(), false);
+            }
+            if (after + 1 >= oldest()) {
+                return fromMemory(after + 1, max, false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<WalletChangeEvent> events = outboxRepository.findRelayed(after, max);
+        if (events.isEmpty()) {
+            lock.lock();
+            try {
+                return fromMemory(oldest(), max, true);
+            } finally {
+                lock.unlock();
+            }
+        }
+        long first = events.get(0).position();
+        return new Slice(first, events, first != after + 1);
+    }
+
+    private long oldest() {
+        return Math.max(tail, head - ring.length + 1);
+    }
+
+    private Slice fromMemory(long first, int max, boolean gap) {
+        int count = (int) Math.max(0, Math.min(max, head - first + 1));
+        List<WalletChangeEvent> events = new ArrayList<>(count);
+        for (long position = first; position < first + count; position++) {
+            events.add(ring[(int) (position % ring.length)]);
+        }
+        return new Slice(first, events, gap);
+    }
+
+    /**
+     * @return Номер последнего загруженного события.
+     */
+    long head() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Номер события из курсора; {@code -1}, если курсор не разобран или такого события ещё не было.
+     */
+    long parseCursor(String cursor) {
+        long position;
+        try {
+            position = Long.parseLong(cursor);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        if (position < 0 || position > head() && position > outboxRepository.lastPosition()) {
+            return -1;
+        }
+        return position;
+    }
+
+    /**
+     * @return Курсор события с заданным номером.
+     */
+    String cursor(long position) {
+        return Long.toString(position);
+    }
+
+    /**
+     * Завершает потоки подписчиков.
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        lock.lock();
+        try {
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wallet.changes.published", published, LongAdder::sum)
+                .description("События об изменении балансов, загруженные в ленту")
+                .register(registry);
+        Gauge.builder("wallet.changes.subscribers", subscribers, AtomicInteger::get)
+                .description("Подключённые подписчики ленты изменений")
+                .register(registry);
+    }
+
+    /**
+     * События, прочитанные из ленты.
+     *
+     * @param first Номер первого события; при пропуске без событий — следующий за последним загруженным.
+     * @param events События по порядку номеров.
+     * @param gap Часть событий после курсора пропущена.
+     */
+    record Slice(long first, List<WalletChangeEvent> events, boolean gap) {}
+}
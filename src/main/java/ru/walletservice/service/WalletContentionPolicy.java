@@ -0,0 +1,216 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.PessimisticLockException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Политика поведения при конкуренции за блокировку кошелька.
+ * <p>
+ * Операции над одним кошельком допускаются не больше заданного числа одновременно: лишние запросы
+ * отклоняются сразу, не занимая соединение и не вставая в очередь на блокировку строки.
+ * Транзакция, не дождавшаяся блокировки за {@code lock_timeout}, откатывается и повторяется
+ * ограниченное число раз с экспоненциальной задержкой со случайным разбросом, чтобы повторы
+ * конкурирующих запросов не совпадали по времени.
+ * <p>
+ * Счётчики повторов, конфликтов и отклонённых запросов, а также число выполняемых операций
+ * над самыми нагруженными кошельками публикуются в реестр метрик.
+ */
+@Component
+public class WalletContentionPolicy implements MeterBinder {
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxInFlightPerWallet;
+    private final Duration retryAfter;
+    private final int hotWallets;
+    private final Map<UUID, Integer> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * Конструктор.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletContentionPolicy(WalletProperties properties) {
+        WalletProperties.Contention settings = properties.getContention();
+        this.maxAttempts = Math.max(1, settings.getMaxAttempts());
+        this.initialBackoffNanos = settings.getInitialBackoff().toNanos();
+        this.maxBackoffNanos = settings.getMaxBackoff().toNanos();
+        this.maxInFlightPerWallet = settings.getMaxInFlightPerWallet();
+        this.retryAfter = settings.getRetryAfter();
+        this.hotWallets = properties.getMetrics().getHotWallets();
+    }
+
+    /**
+     * Выполняет операцию над кошельком, если число уже выполняемых операций над ним не превышает предел.
+     * Число выполняемых операций учитывается и без предела, для метрик.
+     *
+     * @param walletId ID кошелька.
+     * @param action Операция.
+     * @return Результат операции.
+     * @throws WalletTooManyRequestsException Если над кошельком уже выполняется предельное число операций.
+     */
+    public <T> T admit(UUID walletId, Supplier<T> action) {
+        if (walletId == null) {
+            return action.get();
+        }
+        boolean[] admitted = new boolean[1];
+        inFlight.compute(walletId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (maxInFlightPerWallet > 0 && current >= maxInFlightPerWallet) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        if (!admitted[0]) {
+            shed.increment();
+            throw new WalletTooManyRequestsException("Too many concurrent operations on the wallet. Please try again.",
+                    retryAfter);
+        }
+        try {
+            return action.get();
+        } finally {
+            inFlight.computeIfPresent(walletId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Выполняет транзакцию, повторяя её, если она не получила блокировку.
+     *
+     * @param transaction Действие, открывающее транзакцию; при повторе выполняется целиком заново.
+     * @return Результат транзакции.
+     * @throws WalletConflictException Если блокировка не получена ни в одной из попыток.
+     */
+    public <T> T retry(Supplier<T> transaction) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.get();
+            } catch (RuntimeException ex) {
+                if (!isLockFailure(ex)) {
+                    throw ex;
+                }
+                if (attempt >= maxAttempts) {
+                    conflicts.increment();
+                    throw new WalletConflictException("Wallet was updated by another user. Please try again.",
+                            retryAfter);
+                }
+            }
+            retries.increment();
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * @return Количество повторов транзакций после неудачной попытки получить блокировку.
+     */
+    public long retryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return Количество операций, не получивших блокировку ни в одной из попыток.
+     */
+    public long conflictCount() {
+        return conflicts.sum();
+    }
+
+    /**
+     * @return Количество запросов, отклонённых пределом одновременных операций над кошельком.
+     */
+    public long shedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * @return Количество кошельков, над которыми сейчас выполняются операции.
+     */
+    public int inFlightWallets() {
+        return inFlight.size();
+    }
+
+    /**
+     * @param rank Место кошелька по числу выполняемых операций, начиная с 1.
+     * @return Число операций, выполняемых над кошельком на этом месте; 0, если такого кошелька нет.
+     */
+    int inFlightAtRank(int rank) {
+        List<Integer> counts = inFlight.values().stream()
+                .sorted(Comparator.reverseOrder())
+                .limit(rank)
+                .toList();
+        return counts.size() < rank ? 0 : counts.get(rank - 1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wallet.contention.retries", retries, LongAdder::sum)
+                .description("Повторы транзакций, не получивших блокировку кошелька")
+                .register(registry);
+        FunctionCounter.builder("wallet.contention.conflicts", conflicts, LongAdder::sum)
+                .description("Операции, не получившие блокировку ни в одной из попыток")
+                .register(registry);
+        FunctionCounter.builder("wallet.contention.shed", shed, LongAdder::sum)
+                .description("Запросы, отклонённые пределом одновременных операций над кошельком")
+                .register(registry);
+        Gauge.builder("wallet.operations.in.flight.wallets", inFlight, Map::size)
+                .description("Кошельки, над которыми сейчас выполняются операции")
+                .register(registry);
+        for (int rank = 1; rank <= hotWallets; rank++) {
+            int place = rank;
+            Gauge.builder("wallet.operations.in.flight.hot", this, policy -> policy.inFlightAtRank(place))
+                    .description("Операции, выполняемые над самыми нагруженными кошельками")
+                    .tag("rank", Integer.toString(rank))
+                    .register(registry);
+        }
+    }
+
+    static boolean isLockFailure(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockingFailureException
+                    || cause instanceof LockTimeoutException
+                    || cause instanceof PessimisticLockException
+                    || cause instanceof LockAcquisitionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ждёт случайное время от нуля до экспоненциально растущей границы (full jitter).
+     */
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1)));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WalletConflictException("Interrupted while waiting to retry.", retryAfter);
+        }
+    }
+}
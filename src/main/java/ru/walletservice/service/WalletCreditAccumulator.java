@@ -0,0 +1,516 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.ReplicaRouting;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.CreditLogCheckpointRepository;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Отложенная запись пополнений кошельков, которые только пополняются.
+ * <p>
+ * Пополнение такого кошелька не берёт блокировку строки: оно записывается в локальный журнал
+ * ({@link WalletCreditLog}), сбрасывается на диск и складывается в памяти, после чего клиент получает
+ * баланс с учётом всех подтверждённых пополнений. Накопленные суммы раз в {@code flush-interval}
+ * или после {@code flush-threshold} пополнений записываются в базу одним оператором UPDATE вместе
+ * с записями журнала операций и отметкой о применённых сегментах журнала пополнений; после фиксации
+ * эти сегменты удаляются. При запуске сегменты, оставшиеся после сбоя, применяются к базе до того,
+ * как сервис начнёт принимать запросы.
+ * <p>
+ * Для кошелька, баланс которого известен, баланс складывается из последнего баланса в базе,
+ * записываемых и накопленных пополнений. Другие операции над таким кошельком (снятие, пополнение
+ * с ключом идемпотентности) выполняются обычным образом после записи накопленных пополнений;
+ * на время такой операции приостанавливаются пополнения только этого кошелька.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.credit-accumulator", name = "enabled", havingValue = "true")
+public class WalletCreditAccumulator implements DisposableBean, MeterBinder {
+
+    private final WalletRepository walletRepository;
+    private final WalletBatchRepository walletBatchRepository;
+    private final WalletLedgerRepository ledgerRepository;
+    private final CreditLogCheckpointRepository checkpointRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletBalanceCache balanceCache;
+    private final WalletOutbox outbox;
+    private final Set<UUID> walletIds;
+    private final boolean sync;
+    private final int flushThreshold;
+    private final boolean ledgerEnabled;
+    private final WalletCreditLog log;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /** Упорядочивает запись в журнал и изменение накопленных сумм. Удерживается только на время изменений в памяти. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Блокировки кошельков: пополнение кошелька ждёт операцию над ним в {@link #settled(Collection, Supplier)}. */
+    private final Map<UUID, ReentrantLock> walletLocks;
+    /** Не даёт двум записям в базу выполняться одновременно. */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<UUID, Credits> credits = new HashMap<>();
+    private int pendingOperations;
+
+    /**
+     * Конструктор. Применяет к базе пополнения, оставшиеся в журнале после прошлого запуска.
+     * @param walletRepository Репозиторий для работы с кошельками.
+     * @param walletBatchRepository Репозиторий пакетного доступа к кошелькам.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param checkpointRepository Отметки о применённых сегментах журнала пополнений.
+     * @param transactionOperations Шаблон транзакций для записи пополнений в базу.
+     * @param balanceCache Кэш балансов.
+     * @param outbox События об изменении балансов; {@code null}, если они выключены.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletCreditAccumulator(WalletRepository walletRepository,
+                                   WalletBatchRepository walletBatchRepository,
+                                   WalletLedgerRepository ledgerRepository,
+                                   CreditLogCheckpointRepository checkpointRepository,
+                                   TransactionOperations transactionOperations,
+                                   WalletBalanceCache balanceCache,
+                                   @Nullable WalletOutbox outbox,
+                                   WalletProperties properties) {
+        this.walletRepository = walletRepository;
+        this.walletBatchRepository = walletBatchRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionOperations = transactionOperations;
+        this.balanceCache = balanceCache;
+        this.outbox = outbox;
+        WalletProperties.CreditAccumulator settings = properties.getCreditAccumulator();
+        this.walletIds = Set.copyOf(settings.getWalletIds());
+        Map<UUID, ReentrantLock> locks = new HashMap<>();
+        walletIds.forEach(walletId -> locks.put(walletId, new ReentrantLock()));
+        this.walletLocks = Map.copyOf(locks);
+        this.sync = settings.isSync();
+        this.flushThreshold = Math.max(1, settings.getFlushThreshold());
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+        this.log = new WalletCreditLog(Path.of(settings.getLogDirectory()),
+                (int) settings.getSegmentSize().toBytes(), checkpointRepository::findAppliedSegment);
+        recover();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-credit-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = settings.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Записываются ли пополнения кошелька отложенно.
+     */
+    public boolean isCreditWallet(UUID walletId) {
+        return walletId != null && walletIds.contains(walletId);
+    }
+
+    /**
+     * @return Можно ли выполнить операцию отложенной записью: пополнение кошелька из списка без ключа
+     * идемпотентности (повторы по ключу проверяются по журналу операций в базе).
+     */
+    public boolean accepts(WalletOperationRequest request) {
+        return request.operationType() == WalletOperationRequest.OperationType.DEPOSIT
+                && request.idempotencyKey() == null
+                && isCreditWallet(request.walletId());
+    }
+
+    /**
+     * Записывает пополнение в журнал и подтверждает его.
+     *
+     * @param request Пополнение кошелька из списка.
+     * @return Баланс кошелька с учётом всех подтверждённых пополнений.
+     * @throws WalletNotFoundException Если кошелек не найден.
+     * @throws WalletBalanceOverflowException Если баланс после пополнения не помещается в long.
+     */
+    public long deposit(WalletOperationRequest request) {
+        UUID walletId = request.walletId();
+        WalletCreditLog.Position position;
+        long balance;
+        boolean flushNow;
+        ReentrantLock walletLock = walletLocks.get(walletId);
+        walletLock.lock();
+        try {
+            // под блокировкой кошелька загруженный баланс не сбрасывается до конца пополнения
+            if (loadBase(walletId) == null) {
+                throw new WalletNotFoundException("Wallet not found.");
+            }
+            lock.lock();
+            try {
+                Credits walletCredits = credits.get(walletId);
+                try {
+                    balance = Math.addExact(walletCredits.balance(), request.amount());
+                } catch (ArithmeticException ex) {
+                    throw new WalletBalanceOverflowException("Balance overflow.");
+                }
+                position = log.append(walletId, request.amount());
+                walletCredits.pending.add(request.amount());
+                walletCredits.pendingSum += request.amount();
+                flushNow = ++pendingOperations >= flushThreshold;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            walletLock.unlock();
+        }
+        if (sync) {
+            WalletCreditLog.force(position);
+        }
+        if (flushNow && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+        return balance;
+    }
+
+    /**
+     * Возвращает баланс кошелька с учётом накопленных пополнений.
+     *
+     * @return Баланс или {@code null}, если кошелёк не найден.
+     */
+    public Long getBalance(UUID walletId) {
+        while (true) {
+            if (loadBase(walletId) == null) {
+                return null;
+            }
+            lock.lock();
+            try {
+                Credits walletCredits = credits.get(walletId);
+                // баланс мог быть сброшен операцией в settled после загрузки: тогда он загружается снова
+                if (walletCredits.base != null) {
+                    return walletCredits.balance();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Выполняет операцию над кошельком обычным образом после записи накопленных пополнений в базу.
+     * Пополнения этого кошелька на время операции приостанавливаются, баланс кошелька после
+     * операции перечитывается из базы. Пополнения и чтения балансов других кошельков не ждут операцию.
+     */
+    public <T> T settled(UUID walletId, Supplier<T> operation) {
+        return settled(List.of(walletId), operation);
+    }
+
+    /**
+     * Выполняет операцию над несколькими кошельками (часть пакета, перевод) так же, как
+     * {@link #settled(UUID, Supplier)}; кошельки не из списка не учитываются, и если таких нет,
+     * операция выполняется сразу.
+     */
+    public <T> T settled(Collection<UUID> walletIds, Supplier<T> operation) {
+        // кошельки блокируются в едином порядке, чтобы пересекающиеся переводы и пакеты не ждали друг друга по кругу
+        List<UUID> settling = walletIds.stream().filter(this::isCreditWallet).distinct().sorted().toList();
+        if (settling.isEmpty()) {
+            return operation.get();
+        }
+        int locked = 0;
+        try {
+            for (UUID walletId : settling) {
+                walletLocks.get(walletId).lock();
+                locked++;
+            }
+            // пополнения этих кошельков, подтверждённые до блокировки, записываются в базу до операции
+            flush();
+            invalidate(settling);
+            try {
+                return operation.get();
+            } finally {
+                invalidate(settling);
+            }
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                walletLocks.get(settling.get(i)).unlock();
+            }
+        }
+    }
+
+    /**
+     * Записывает накопленные пополнения в базу одной транзакцией.
+     * Если транзакция не удалась, пополнения остаются накопленными до следующей записи.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            long lastSegment;
+            Map<UUID, List<Long>> batch = new HashMap<>();
+            lock.lock();
+            try {
+                if (pendingOperations == 0) {
+                    return;
+                }
+                lastSegment = log.rotate();
+                credits.forEach((walletId, walletCredits) -> {
+                    if (!walletCredits.pending.isEmpty()) {
+                        walletCredits.startFlush();
+                        batch.put(walletId, walletCredits.flushing);
+                    }
+                });
+                pendingOperations = 0;
+            } finally {
+                lock.unlock();
+            }
+
+            Map<UUID, Long> balances;
+            try {
+                balances = apply(batch, lastSegment);
+            } catch (RuntimeException ex) {
+                lock.lock();
+                try {
+                    batch.keySet().forEach(walletId -> pendingOperations += credits.get(walletId).abortFlush());
+                } finally {
+                    lock.unlock();
+                }
+                throw ex;
+            }
+            lock.lock();
+            try {
+                batch.keySet().forEach(walletId -> credits.get(walletId).completeFlush(balances.get(walletId)));
+            } finally {
+                lock.unlock();
+            }
+            log.deleteThrough(lastSegment);
+            flushes.increment();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return Количество подтверждённых пополнений, ещё не записанных в базу.
+     */
+    public int pendingOperations() {
+        lock.lock();
+        try {
+            int pending = pendingOperations;
+            for (Credits walletCredits : credits.values()) {
+                pending += walletCredits.flushing.size();
+            }
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            log.close();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("wallet.credits.pending", this, WalletCreditAccumulator::pendingOperations)
+                .description("Подтверждённые пополнения, ещё не записанные в базу")
+                .register(registry);
+        FunctionCounter.builder("wallet.credits.flushes", flushes, LongAdder::sum)
+                .description("Записи накопленных пополнений в базу")
+                .register(registry);
+        FunctionCounter.builder("wallet.credits.flush.failures", flushFailures, LongAdder::sum)
+                .description("Неудачные записи накопленных пополнений в базу")
+                .register(registry);
+    }
+
+    /**
+     * Применяет к базе пополнения из сегментов журнала, оставшихся после прошлого запуска.
+     * Сегменты, уже отмеченные в базе как применённые, пропускаются.
+     */
+    private void recover() {
+        long applied = checkpointRepository.findAppliedSegment(log.logId());
+        Map<UUID, List<Long>> batch = new HashMap<>();
+        long lastSegment = log.replay(applied, record ->
+                batch.computeIfAbsent(record.walletId(), id -> new ArrayList<>()).add(record.amount()));
+        if (!batch.isEmpty()) {
+            apply(batch, lastSegment);
+        }
+        log.deleteThrough(lastSegment);
+    }
+
+    /**
+     * Прибавляет суммы пополнений к балансам, записывает пополнения в журнал операций и события в {@link WalletOutbox}
+     * и отмечает сегменты журнала пополнений как применённые в одной транзакции.
+     *
+     * @return Новые балансы кошельков.
+     */
+    private Map<UUID, Long> apply(Map<UUID, List<Long>> batch, long lastSegment) {
+        Map<UUID, Long> sums = new HashMap<>();
+        batch.forEach((walletId, amounts) -> sums.put(walletId, amounts.stream().mapToLong(Long::longValue).sum()));
+        return transactionOperations.execute(status -> {
+            Map<UUID, Long> balances = walletBatchRepository.addToBalances(sums);
+            if (ledgerEnabled || outbox != null) {
+                List<LedgerEntry> entries = new ArrayList<>();
+                balances.forEach((walletId, balanceAfter) -> {
+                    long balance = balanceAfter - sums.get(walletId);
+                    for (long amount : batch.get(walletId)) {
+                        balance += amount;
+                        entries.add(new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT,
+                                amount, balance, null));
+                    }
+                });
+                if (ledgerEnabled) {
+                    ledgerRepository.insertAll(entries);
+                }
+                if (outbox != null) {
+                    outbox.appendAll(entries);
+                }
+            }
+            checkpointRepository.markApplied(log.logId(), lastSegment);
+            balances.forEach(balanceCache::putAfterCommit);
+            return balances;
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            // пополнения остаются накопленными и будут записаны следующей попыткой
+            flushFailures.increment();
+        }
+    }
+
+    /**
+     * Загружает баланс кошелька из базы, если он не известен. Запрос к базе выполняется без {@link #lock},
+     * поэтому пополнения и чтения балансов других кошельков его не ждут. Прочитанный баланс сохраняется,
+     * только если за время запроса пополнения кошелька не записывались в базу и баланс не сбрасывался
+     * операцией в {@link #settled(Collection, Supplier)}; иначе он читается снова.
+     *
+     * @return Баланс в базе без записываемых пополнений или {@code null}, если кошелёк не найден.
+     */
+    private Long loadBase(UUID walletId) {
+        while (true) {
+            long version;
+            boolean flushInProgress;
+            lock.lock();
+            try {
+                Credits walletCredits = credits.computeIfAbsent(walletId, id -> new Credits());
+                if (walletCredits.base != null) {
+                    return walletCredits.base;
+                }
+                version = walletCredits.version;
+                flushInProgress = !walletCredits.flushing.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+            if (flushInProgress) {
+                // баланс в базе меняется записью, которая уже идёт: после неё он станет известен
+                flushLock.lock();
+                flushLock.unlock();
+                continue;
+            }
+            // накопленные суммы прибавляются к балансу основного сервера, отстающая реплика не подходит
+            Long base = ReplicaRouting.onPrimary(() -> walletRepository.findBalanceByWalletId(walletId));
+            lock.lock();
+            try {
+                Credits walletCredits = credits.get(walletId);
+                if (walletCredits.version == version) {
+                    walletCredits.base = base;
+                    return base;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void invalidate(List<UUID> walletIds) {
+        lock.lock();
+        try {
+            for (UUID walletId : walletIds) {
+                Credits walletCredits = credits.get(walletId);
+                if (walletCredits != null) {
+                    walletCredits.base = null;
+                    walletCredits.version++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Пополнения одного кошелька. Изменяется только под {@link #lock}.
+     */
+    private static final class Credits {
+        /** Баланс в базе без записываемых пополнений; {@code null}, если не известен. */
+        private Long base;
+        /** Меняется, когда баланс в базе мог измениться: при записи пополнений и при сбросе баланса. */
+        private long version;
+        private List<Long> flushing = new ArrayList<>();
+        private long flushingSum;
+        private List<Long> pending = new ArrayList<>();
+        private long pendingSum;
+
+        private long balance() {
+            return base + flushingSum + pendingSum;
+        }
+
+        private void startFlush() {
+            version++;
+            flushing = pending;
+            flushingSum = pendingSum;
+            pending = new ArrayList<>();
+            pendingSum = 0;
+        }
+
+        /**
+         * @return Количество пополнений, возвращённых в накопленные.
+         */
+        private int abortFlush() {
+            version++;
+            flushing.addAll(pending);
+            pending = flushing;
+            pendingSum += flushingSum;
+            int returned = flushing.size();
+            flushing = new ArrayList<>();
+            flushingSum = 0;
+            return returned;
+        }
+
+        private void completeFlush(Long balance) {
+            version++;
+            base = balance;
+            flushing = new ArrayList<>();
+            flushingSum = 0;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package ru.walletservice.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал упреждающей записи пополнений в отображённых в память файлах.
+ * <p>
+ * Журнал разбит на сегменты {@code credits-<номер>.log} фиксированного размера. Запись занимает
+ * {@value #RECORD_SIZE} байт: ID кошелька, сумма, контрольная сумма и признак записи, который пишется последним.
+ * При чтении журнал заканчивается на первой записи без признака или с неверной контрольной суммой,
+ * поэтому запись, оборванная сбоем, отбрасывается. Пополнение, для которого не завершился
+ * {@link #force(Position)}, не было подтверждено клиенту.
+ * <p>
+ * Идентификатор журнала хранится в файле {@code log.id}: по нему в базе отмечается, какие сегменты уже применены.
+ * Номера сегментов не повторяются: после чистой остановки каталог пуст, и нумерация продолжается после отметки
+ * в базе, иначе новые сегменты считались бы уже применёнными. Создание сегмента и {@code log.id} сбрасывается
+ * на диск вместе с каталогом.
+ * Класс не потокобезопасен, кроме {@link #force(Position)}: вызовы остальных методов упорядочивает владелец.
+ */
+final class WalletCreditLog implements AutoCloseable {
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int MARKER = 0x43524544;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("credits-(\\d+)\\.log");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final UUID logId;
+    private long segment;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Открывает журнал, сегменты которого ещё не отмечались как применённые.
+     *
+     * @param directory Каталог журнала.
+     * @param segmentSize Размер сегмента в байтах.
+     */
+    WalletCreditLog(Path directory, int segmentSize) {
+        this(directory, segmentSize, logId -> 0);
+    }
+
+    /**
+     * Открывает журнал в каталоге; новые записи пишутся в сегмент, следующий и за существующими,
+     * и за отмеченными как применённые.
+     *
+     * @param directory Каталог журнала.
+     * @param segmentSize Размер сегмента в байтах.
+     * @param appliedSegment Номер последнего применённого сегмента журнала по его ID.
+     */
+    WalletCreditLog(Path directory, int segmentSize, ToLongFunction<UUID> appliedSegment) {
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        try {
+            Files.createDirectories(directory);
+            this.logId = readOrCreateLogId(directory.resolve("log.id"));
+            List<Long> segments = segments();
+            long last = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+            this.segment = Math.max(last, appliedSegment.applyAsLong(logId)) + 1;
+            this.buffer = map(segment);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    UUID logId() {
+        return logId;
+    }
+
+    /**
+     * @return Номер сегмента, в который пишутся новые записи.
+     */
+    long currentSegment() {
+        return segment;
+    }
+
+    /**
+     * Записывает пополнение в отображённый сегмент без сброса на диск.
+     *
+     * @return Позиция записи для {@link #force(Position)}.
+     */
+    Position append(UUID walletId, long amount) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            rotate();
+        }
+        int offset = buffer.position();
+        buffer.putLong(walletId.getMostSignificantBits());
+        buffer.putLong(walletId.getLeastSignificantBits());
+        buffer.putLong(amount);
+        buffer.putInt(checksum(buffer, offset));
+        buffer.putInt(MARKER);
+        return new Position(buffer, offset);
+    }
+
+    /**
+     * Сбрасывает запись на диск. Может вызываться одновременно из нескольких потоков.
+     */
+    static void force(Position position) {
+        position.buffer().force(position.offset(), RECORD_SIZE);
+    }
+
+    /**
+     * Начинает новый сегмент.
+     *
+     * @return Номер последнего сегмента перед новым: все записи до вызова лежат в сегментах не старше него.
+     */
+    long rotate() {
+        long closed = segment;
+        segment++;
+        try {
+            buffer = map(segment);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return closed;
+    }
+
+    /**
+     * Читает записи сегментов, которые старше текущего и новее заданного.
+     *
+     * @param afterSegment Сегменты с номером не больше этого пропускаются.
+     * @param consumer Получатель записей.
+     * @return Номер последнего прочитанного сегмента; {@code afterSegment}, если таких нет.
+     */
+    long replay(long afterSegment, Consumer<Record> consumer) {
+        long last = afterSegment;
+        for (long number : segments()) {
+            if (number <= afterSegment || number >= segment) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (data.remaining() >= RECORD_SIZE) {
+                    int offset = data.position();
+                    long msb = data.getLong();
+                    long lsb = data.getLong();
+                    long amount = data.getLong();
+                    int crc = data.getInt();
+                    if (data.getInt() != MARKER || crc != checksum(data, offset)) {
+                        break;
+                    }
+                    consumer.accept(new Record(new UUID(msb, lsb), amount));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            last = number;
+        }
+        return last;
+    }
+
+    /**
+     * Удаляет сегменты с номером не больше заданного.
+     */
+    void deleteThrough(long lastSegment) {
+        for (long number : segments()) {
+            if (number <= lastSegment && number != segment) {
+                try {
+                    Files.deleteIfExists(segmentPath(number));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Номера существующих сегментов по возрастанию.
+     */
+    List<Long> segments() {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Удаляет пустой текущий сегмент, чтобы при следующем открытии не оставалось пустых файлов.
+     */
+    @Override
+    public void close() {
+        if (buffer.position() == 0) {
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private MappedByteBuffer map(long number) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        // без сброса каталога файл сегмента с подтверждёнными записями может пропасть после сбоя питания
+        syncDirectory(directory);
+        return mapped;
+    }
+
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("credits-%016d.log", number));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, 24));
+        return (int) crc.getValue();
+    }
+
+    private static UUID readOrCreateLogId(Path file) throws IOException {
+        if (Files.exists(file)) {
+            return UUID.fromString(Files.readString(file, StandardCharsets.US_ASCII).trim());
+        }
+        UUID logId = UUID.randomUUID();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(StandardCharsets.US_ASCII.encode(logId.toString()));
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getParent());
+        return logId;
+    }
+
+    /**
+     * Пополнение, прочитанное из журнала.
+     */
+    record Record(UUID walletId, long amount) {}
+
+    /**
+     * Положение записи в отображённом сегменте.
+     */
+    record Position(MappedByteBuffer buffer, int offset) {}
+}
@@ -0,0 +1,133 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.WalletExportRow;
+import ru.walletservice.repository.WalletExportRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Выгрузка всех кошельков в CSV или NDJSON для ночной сверки.
+ * <p>
+ * Строки пишутся в поток ответа по мере чтения из базы и не накапливаются в памяти.
+ * Если включён журнал операций, каждый баланс сверяется с журналом в том же запросе
+ * (см. {@link WalletExportRow}).
+ */
+@Service
+public class WalletExportService {
+
+    private final WalletExportRepository exportRepository;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final boolean ledgerEnabled;
+
+    /**
+     * Конструктор.
+     * @param exportRepository Репозиторий выгрузки кошельков.
+     * @param objectMapper Сериализатор строк NDJSON.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletExportService(WalletExportRepository exportRepository, ObjectMapper objectMapper,
+                               WalletProperties properties) {
+        this.exportRepository = exportRepository;
+        this.objectMapper = objectMapper;
+        this.fetchSize = Math.max(1, properties.getExport().getFetchSize());
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+    }
+
+    /**
+     * Пишет кошельки в CSV с заголовком {@code wallet_id,balance}
+     * и при сверке колонками {@code operations,ledger_balance,reconciled}.
+     *
+     * @param minBalance Наименьший баланс включительно или {@code null}.
+     * @param maxBalance Наибольший баланс включительно или {@code null}.
+     * @param reconcile Сверять балансы с журналом операций; без журнала не выполняется.
+     * @param out Поток ответа.
+     * @return Итог выгрузки.
+     */
+    public ExportSummary writeCsv(Long minBalance, Long maxBalance, boolean reconcile, OutputStream out)
+            throws IOException {
+        boolean reconciling = reconcile && ledgerEnabled;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(reconciling ? "wallet_id,balance,operations,ledger_balance,reconciled\n" : "wallet_id,balance\n");
+        ExportSummary summary = export(minBalance, maxBalance, reconciling, row -> {
+            try {
+                writer.write(row.walletId().toString());
+                writer.write(',');
+                writer.write(Long.toString(row.balance()));
+                if (reconciling) {
+                    writer.write(',');
+                    writer.write(Long.toString(row.operations()));
+                    writer.write(',');
+                    if (row.ledgerBalance() != null) {
+                        writer.write(Long.toString(row.ledgerBalance()));
+                    }
+                    writer.write(',');
+                    writer.write(row.reconciled().toString());
+                }
+                writer.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        writer.flush();
+        return summary;
+    }
+
+    /**
+     * Пишет кошельки в NDJSON: по одному объекту {@link WalletExportRow} на строку.
+     *
+     * @param minBalance Наименьший баланс включительно или {@code null}.
+     * @param maxBalance Наибольший баланс включительно или {@code null}.
+     * @param reconcile Сверять балансы с журналом операций; без журнала не выполняется.
+     * @param out Поток ответа.
+     * @return Итог выгрузки.
+     */
+    public ExportSummary writeNdjson(Long minBalance, Long maxBalance, boolean reconcile, OutputStream out)
+            throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // строки разделяются переводом строки, а не пробелом между корневыми значениями
+            generator.setRootValueSeparator(null);
+            return export(minBalance, maxBalance, reconcile && ledgerEnabled, row -> {
+                try {
+                    generator.writeObject(row);
+                    generator.writeRaw('\n');
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    private ExportSummary export(Long minBalance, Long maxBalance, boolean reconcile,
+                                 Consumer<WalletExportRow> writer) {
+        long[] counts = new long[2];
+        exportRepository.export(minBalance != null ? minBalance : Long.MIN_VALUE,
+                maxBalance != null ? maxBalance : Long.MAX_VALUE, reconcile, fetchSize, row -> {
+                    counts[0]++;
+                    if (Boolean.FALSE.equals(row.reconciled())) {
+                        counts[1]++;
+                    }
+                    writer.accept(row);
+                });
+        return new ExportSummary(counts[0], counts[1]);
+    }
+
+    /**
+     * Итог выгрузки.
+     *
+     * @param wallets Количество выгруженных кошельков.
+     * @param mismatches Количество кошельков, баланс которых не совпал с журналом.
+     */
+    public record ExportSummary(long wallets, long mismatches) {}
+}
@@ -0,0 +1,194 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletConflictException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Блокировки кошельков внутри процесса, разбитые на фиксированное число полос.
+ * <p>
+ * Операция над кошельком берёт блокировку полосы, соответствующей его ID, до открытия транзакции.
+ * Конкурирующие за один кошелёк запросы ждут друг друга на блокировке в JVM, а не на блокировке строки
+ * в базе, и не удерживают во время ожидания соединения из пула. Блокировка строки в базе остаётся
+ * и защищает кошелёк от операций других экземпляров сервиса.
+ * <p>
+ * Кошельки, попавшие в одну полосу, выполняются последовательно, поэтому полос должно быть заметно
+ * больше, чем одновременно изменяемых кошельков.
+ */
+@Component
+public class WalletLockStripes implements MeterBinder {
+
+    private final ReentrantLock[] stripes;
+    private final long acquireTimeoutNanos;
+    private final Duration retryAfter;
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Конструктор.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletLockStripes(WalletProperties properties) {
+        WalletProperties.LockStriping settings = properties.getLockStriping();
+        if (settings.isEnabled()) {
+            // степень двойки, чтобы номер полосы брался маской
+            int count = Integer.highestOneBit(Math.max(1, settings.getStripes() * 2 - 1));
+            this.stripes = new ReentrantLock[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new ReentrantLock(settings.isFair());
+            }
+        } else {
+            this.stripes = null;
+        }
+        this.acquireTimeoutNanos = settings.getAcquireTimeout().toNanos();
+        this.retryAfter = properties.getContention().getRetryAfter();
+    }
+
+    /**
+     * Выполняет операцию над кошельком, удерживая блокировку его полосы.
+     *
+     * @param walletId ID кошелька.
+     * @param action Операция.
+     * @return Результат операции.
+     * @throws WalletConflictException Если блокировка не получена за отведённое время.
+     */
+    public <T> T execute(UUID walletId, Supplier<T> action) {
+        if (stripes == null || walletId == null) {
+            return action.get();
+        }
+        ReentrantLock lock = stripes[stripeIndex(walletId)];
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Выполняет операцию над несколькими кошельками, удерживая блокировки всех их полос.
+     * Полосы берутся в порядке возрастания номера, поэтому операции над пересекающимися наборами
+     * кошельков не могут ждать друг друга по кругу.
+     *
+     * @param walletIds ID кошельков.
+     * @param action Операция.
+     * @return Результат операции.
+     * @throws WalletConflictException Если блокировка какой-либо полосы не получена за отведённое время.
+     */
+    public <T> T execute(Collection<UUID> walletIds, Supplier<T> action) {
+        if (stripes == null) {
+            return action.get();
+        }
+        int[] indexes = walletIds.stream()
+                .filter(Objects::nonNull)
+                .mapToInt(this::stripeIndex)
+                .sorted()
+                .distinct()
+                .toArray();
+        int acquired = 0;
+        try {
+            for (int index : indexes) {
+                acquire(stripes[index]);
+                acquired++;
+            }
+            return action.get();
+        } finally {
+            for (int i = acquired - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * @return Количество полос; 0, если блокировки выключены.
+     */
+    public int stripeCount() {
+        return stripes != null ? stripes.length : 0;
+    }
+
+    /**
+     * @return Количество операций, которым пришлось ждать занятую полосу.
+     */
+    public long waitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * @return Количество операций, не дождавшихся блокировки полосы.
+     */
+    public long timeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return Примерное число потоков, ожидающих блокировки полос.
+     */
+    public int waitingThreads() {
+        if (stripes == null) {
+            return 0;
+        }
+        int waiting = 0;
+        for (ReentrantLock stripe : stripes) {
+            waiting += stripe.getQueueLength();
+        }
+        return waiting;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("wallet.lock.stripe.waits", this,
+                        lockStripes -> lockStripes.waits.sum(),
+                        lockStripes -> lockStripes.waitNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Ожидания занятой полосы блокировок кошельков")
+                .register(registry);
+        FunctionCounter.builder("wallet.lock.stripe.timeouts", timeouts, LongAdder::sum)
+                .description("Операции, не дождавшиеся блокировки полосы")
+                .register(registry);
+        Gauge.builder("wallet.lock.stripe.waiting", this, WalletLockStripes::waitingThreads)
+                .description("Потоки, ожидающие блокировки полос")
+                .register(registry);
+    }
+
+    int stripeIndex(UUID walletId) {
+        long bits = walletId.getMostSignificantBits() ^ walletId.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private void acquire(ReentrantLock lock) {
+        try {
+            // tryLock с нулевым ожиданием, в отличие от tryLock(), соблюдает честность блокировки
+            if (lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+            long started = System.nanoTime();
+            boolean acquired = lock.tryLock(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+            waits.increment();
+            waitNanos.add(System.nanoTime() - started);
+            if (!acquired) {
+                timeouts.increment();
+                throw new WalletConflictException("Wallet is busy with other operations. Please try again.",
+                        retryAfter);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WalletConflictException("Interrupted while waiting for the wallet lock.", retryAfter);
+        }
+    }
+}
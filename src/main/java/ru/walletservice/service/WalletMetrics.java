@@ -0,0 +1,169 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
+import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.exception.walletException.WalletInvalidTransferException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики операций над кошельками.
+ * <p>
+ * Время операции записывается с разбивкой по типу операции и исходу, время транзакции —
+ * по фазам: ожидание блокировки, остальные SQL-операторы и фиксация. Все таймеры публикуют
+ * гистограммы, чтобы процентили можно было агрегировать по экземплярам сервиса.
+ * Таймеры создаются заранее, чтобы запись на горячем пути не искала их в реестре.
+ */
+@Component
+public class WalletMetrics {
+
+    private static final String UNKNOWN_TYPE = "unknown";
+
+    private final Timer[][] operationTimers;
+    private final Timer[] phaseTimers;
+    private final Timer balanceReadTimer;
+    private final Timer balanceNotFoundTimer;
+
+    /**
+     * Конструктор.
+     * @param registry Реестр метрик.
+     */
+    public WalletMetrics(MeterRegistry registry) {
+        WalletOperationRequest.OperationType[] types = WalletOperationRequest.OperationType.values();
+        this.operationTimers = new Timer[types.length + 1][Outcome.values().length];
+        for (int type = 0; type <= types.length; type++) {
+            String typeTag = type < types.length ? types[type].name().toLowerCase() : UNKNOWN_TYPE;
+            for (Outcome outcome : Outcome.values()) {
+                operationTimers[type][outcome.ordinal()] = Timer.builder("wallet.operation")
+                        .description("Время операции над кошельком")
+                        .tag("type", typeTag)
+                        .tag("outcome", outcome.tag)
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+        }
+        this.phaseTimers = new Timer[Phase.values().length];
+        for (Phase phase : Phase.values()) {
+            phaseTimers[phase.ordinal()] = Timer.builder("wallet.operation.phase")
+                    .description("Время фазы транзакции операции над кошельком")
+                    .tag("phase", phase.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        this.balanceReadTimer = balanceTimer(registry, "ok");
+        this.balanceNotFoundTimer = balanceTimer(registry, "not_found");
+    }
+
+    private static Timer balanceTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("wallet.balance.read")
+                .description("Время чтения баланса кошелька")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Записывает время выполнения операции над кошельком.
+     *
+     * @param type Тип операции; {@code null}, если тип не указан.
+     * @param outcome Исход операции.
+     * @param nanos Время выполнения в наносекундах.
+     */
+    public void recordOperation(WalletOperationRequest.OperationType type, Outcome outcome, long nanos) {
+        int typeIndex = type != null ? type.ordinal() : operationTimers.length - 1;
+        operationTimers[typeIndex][outcome.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Записывает время фазы транзакции.
+     *
+     * @param phase Фаза.
+     * @param nanos Время выполнения в наносекундах.
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Записывает время чтения баланса.
+     *
+     * @param found Найден ли кошелёк.
+     * @param nanos Время выполнения в наносекундах.
+     */
+    public void recordBalanceRead(boolean found, long nanos) {
+        (found ? balanceReadTimer : balanceNotFoundTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Исход операции над кошельком.
+     */
+    public enum Outcome {
+        OK("ok"),
+        NOT_FOUND("not_found"),
+        INSUFFICIENT_FUNDS("insufficient_funds"),
+        /** Блокировка не получена или запрос отклонён пределом одновременных операций. */
+        CONTENTION("contention"),
+        /** Прочие отказы: неверный тип операции, переполнение баланса, конфликт ключа идемпотентности. */
+        REJECTED("rejected"),
+        /** Непредвиденная ошибка. */
+        ERROR("error");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @param ex Исключение, которым завершилась операция.
+         * @return Исход, соответствующий исключению.
+         */
+        public static Outcome of(RuntimeException ex) {
+            if (ex instanceof WalletNotFoundException) {
+                return NOT_FOUND;
+            }
+            if (ex instanceof WalletInsufficientFundsException) {
+                return INSUFFICIENT_FUNDS;
+            }
+            if (ex instanceof WalletConflictException || ex instanceof WalletTooManyRequestsException
+                    || ex instanceof ConcurrentModificationException) {
+                return CONTENTION;
+            }
+            if (ex instanceof WalletInvalidOperationTypeException || ex instanceof WalletInvalidAmountException
+                    || ex instanceof WalletBalanceOverflowException
+                    || ex instanceof WalletIdempotencyConflictException || ex instanceof WalletInvalidTransferException) {
+                return REJECTED;
+            }
+            return ERROR;
+        }
+    }
+
+    /**
+     * Фаза транзакции операции над кошельком.
+     */
+    public enum Phase {
+        /** Оператор, берущий блокировку строки: SELECT ... FOR UPDATE или UPDATE ... RETURNING. */
+        LOCK_WAIT("lock_wait"),
+        /** Остальные операторы транзакции: сохранение баланса и запись в журнал. */
+        SQL("sql"),
+        /** Фиксация транзакции, включая сброс изменений JPA перед фиксацией. */
+        COMMIT("commit");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+}
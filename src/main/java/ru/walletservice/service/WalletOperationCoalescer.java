@@ -0,0 +1,267 @@
+package ru.walletservice.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Объединяет конкурентные операции над одним кошельком.
+ * <p>
+ * Запросы к одному кошельку складываются в очередь кошелька, которую разбирает единственный обработчик:
+ * накопленные операции применяются по порядку поступления, а итоговый баланс сохраняется
+ * одной транзакцией под одной блокировкой строки. Каждая операция получает свой баланс после применения,
+ * снятие сверх остатка отклоняется индивидуально и не влияет на остальные операции пачки.
+ * Операции с уже записанным в журнал ключом идемпотентности не применяются повторно, а получают
+ * исходный результат; ключи всей пачки проверяются одним запросом.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.coalescing", name = "enabled", havingValue = "true")
+public class WalletOperationCoalescer implements DisposableBean {
+
+    private final WalletRepository walletRepository;
+    private final WalletLedgerRepository ledgerRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletBalanceCache balanceCache;
+    private final WalletContentionPolicy contentionPolicy;
+    private final WalletOutbox outbox;
+    private final int maxBatchSize;
+    private final boolean ledgerEnabled;
+    private final ExecutorService executor;
+    private final ConcurrentMap<UUID, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор.
+     * @param walletRepository Репозиторий для работы с кошельками.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param transactionOperations Шаблон транзакций, в которых применяется пачка операций.
+     * @param balanceCache Кэш балансов.
+     * @param contentionPolicy Политика повторов транзакций, не получивших блокировку.
+     * @param outbox События об изменении балансов; {@code null}, если они выключены.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletOperationCoalescer(WalletRepository walletRepository,
+                                    WalletLedgerRepository ledgerRepository,
+                                    TransactionOperations transactionOperations,
+                                    WalletBalanceCache balanceCache,
+                                    WalletContentionPolicy contentionPolicy,
+                                    @Nullable WalletOutbox outbox,
+                                    WalletProperties properties) {
+        this.walletRepository = walletRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.transactionOperations = transactionOperations;
+        this.balanceCache = balanceCache;
+        this.contentionPolicy = contentionPolicy;
+        this.outbox = outbox;
+        this.maxBatchSize = properties.getCoalescing().getMaxBatchSize();
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.getCoalescing().getWorkerThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "wallet-coalescer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит операцию в очередь кошелька.
+     *
+     * @param request Запрос на операцию с кошельком.
+     * @return Future с балансом кошелька после применения именно этой операции.
+     */
+    public CompletableFuture<Long> submit(WalletOperationRequest request) {
+        PendingOperation operation = new PendingOperation(request);
+        // операция добавляется под блокировкой записи таблицы: очередь не может быть удалена между поиском и добавлением
+        Lane lane = lanes.compute(request.walletId(), (walletId, current) -> {
+            Lane target = current != null ? current : new Lane(walletId);
+            target.queue.add(operation);
+            return target;
+        });
+        if (lane.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(lane));
+        }
+        return operation.future;
+    }
+
+    /**
+     * Разбирает очередь кошелька, пока она не опустеет.
+     * Обработчик не снимает признак разбора до удаления очереди из таблицы, поэтому у кошелька всегда не больше
+     * одной разбираемой очереди; операция, добавленная перед удалением, оставляет очередь в таблице
+     * и будет разобрана этим же обработчиком.
+     */
+    private void drain(Lane lane) {
+        while (true) {
+            List<PendingOperation> batch = lane.poll(maxBatchSize);
+            if (batch.isEmpty()) {
+                if (retire(lane)) {
+                    return;
+                }
+                continue;
+            }
+            applyBatch(lane.walletId, batch);
+        }
+    }
+
+    /**
+     * Удаляет очередь из таблицы, если она всё ещё пуста. Проверка выполняется под той же блокировкой записи
+     * таблицы, под которой {@link #submit} добавляет операции.
+     *
+     * @return {@code true}, если очередь удалена.
+     */
+    private boolean retire(Lane lane) {
+        return lanes.computeIfPresent(lane.walletId,
+                (walletId, current) -> current == lane && lane.queue.isEmpty() ? null : current) == null;
+    }
+
+    /**
+     * Применяет пачку операций в одной транзакции и завершает future каждой операции после фиксации.
+     * Транзакция, не получившая блокировку, повторяется целиком.
+     */
+    private void applyBatch(UUID walletId, List<PendingOperation> batch) {
+        try {
+            contentionPolicy.retry(() -> transactionOperations.execute(status -> {
+                Wallet wallet = walletRepository.findByWalletIdAndLock(walletId);
+                if (wallet == null) {
+                    throw new WalletNotFoundException("Wallet not found.");
+                }
+
+                Map<String, LedgerEntry> recorded = findRecorded(batch);
+                List<LedgerEntry> entries = new ArrayList<>();
+                long balance = wallet.getBalance();
+                boolean changed = false;
+                for (PendingOperation operation : batch) {
+                    String key = operation.request.idempotencyKey();
+                    operation.failure = null;
+                    try {
+                        if (key != null && recorded.containsKey(key)) {
+                            operation.balance = WalletService.replay(recorded.get(key), operation.request);
+                            continue;
+                        }
+                        balance = WalletService.applyOperation(balance, operation.request);
+                        operation.balance = balance;
+                        changed = true;
+                        if (ledgerEnabled || outbox != null) {
+                            LedgerEntry entry = LedgerEntry.of(operation.request, balance);
+                            entries.add(entry);
+                            if (ledgerEnabled && key != null) {
+                                recorded.put(key, entry);
+                            }
+                        }
+                    } catch (RuntimeException ex) {
+                        operation.failure = ex;
+                    }
+                }
+
+                if (changed) {
+                    wallet.setBalance(balance);
+                    walletRepository.save(wallet);
+                    if (ledgerEnabled) {
+                        ledgerRepository.insertAll(entries);
+                    }
+                    if (outbox != null) {
+                        outbox.appendAll(entries);
+                    }
+                    balanceCache.putAfterCommit(walletId, balance);
+                }
+                return null;
+            }));
+        } catch (DataIntegrityViolationException ex) {
+            // тот же ключ идемпотентности одновременно записан операцией над другим кошельком
+            ConcurrentModificationException conflict =
+                    new ConcurrentModificationException("Wallet was updated by another user. Please try again.");
+            batch.forEach(operation -> operation.future.completeExceptionally(conflict));
+            return;
+        } catch (RuntimeException ex) {
+            batch.forEach(operation -> operation.future.completeExceptionally(ex));
+            return;
+        }
+
+        for (PendingOperation operation : batch) {
+            if (operation.failure != null) {
+                operation.future.completeExceptionally(operation.failure);
+            } else {
+                operation.future.complete(operation.balance);
+            }
+        }
+    }
+
+    /**
+     * Загружает из журнала операции, ключи идемпотентности которых встречаются в пачке.
+     * Запрос выполняется под блокировкой кошелька, поэтому повтор операции над тем же кошельком
+     * не может быть записан параллельно.
+     */
+    private Map<String, LedgerEntry> findRecorded(List<PendingOperation> batch) {
+        if (!ledgerEnabled) {
+            return new HashMap<>();
+        }
+        Set<String> keys = new HashSet<>();
+        for (PendingOperation operation : batch) {
+            if (operation.request.idempotencyKey() != null) {
+                keys.add(operation.request.idempotencyKey());
+            }
+        }
+        return keys.isEmpty() ? new HashMap<>() : ledgerRepository.findByIdempotencyKeys(keys);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static final class Lane {
+        private final UUID walletId;
+        private final Queue<PendingOperation> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Lane(UUID walletId) {
+            this.walletId = walletId;
+        }
+
+        private List<PendingOperation> poll(int limit) {
+            List<PendingOperation> batch = new ArrayList<>(Math.min(limit, 16));
+            PendingOperation operation;
+            while (batch.size() < limit && (operation = queue.poll()) != null) {
+                batch.add(operation);
+            }
+            return batch;
+        }
+    }
+
+    private static final class PendingOperation {
+        private final WalletOperationRequest request;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private long balance;
+        private RuntimeException failure;
+
+        private PendingOperation(WalletOperationRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.repository.WalletOutboxRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * События об изменении балансов (transactional outbox).
+ * <p>
+ * Сервисы записывают событие в таблицу wallet_outbox в той же транзакции, что и изменение баланса,
+ * поэтому событие появляется тогда и только тогда, когда изменение зафиксировано. Ретранслятор в фоновом потоке
+ * нумерует события пачками до {@code batch-size} одной транзакцией и загружает пронумерованные в
+ * {@link WalletChangeFeed}; после неполной пачки он ждёт {@code linger}, чтобы следующая пачка успела накопиться.
+ * <p>
+ * Номера присваивает ретранслятор одного экземпляра сервиса за раз (advisory-блокировка), остальные только
+ * загружают пронумерованные события в свои ленты. События одного кошелька записываются под блокировкой его строки,
+ * поэтому получают номера в порядке изменений. Строки не удаляются при ретрансляции: подписчик продолжает с курсора
+ * после перезапуска и на другом экземпляре; раз в минуту ретранслятор удаляет события старше {@code retention}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.outbox", name = "enabled", havingValue = "true")
+public class WalletOutbox implements DisposableBean, MeterBinder {
+
+    /** Период удаления устаревших событий. */
+    private static final long PURGE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final WalletOutboxRepository outboxRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletChangeFeed changeFeed;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final Duration retention;
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder relayFailures = new LongAdder();
+    private volatile Thread relay;
+
+    /**
+     * Конструктор.
+     * @param outboxRepository Репозиторий исходящих событий.
+     * @param transactionOperations Шаблон транзакций ретранслятора.
+     * @param changeFeed Лента изменений, в которую публикуются события.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletOutbox(WalletOutboxRepository outboxRepository,
+                        TransactionOperations transactionOperations,
+                        WalletChangeFeed changeFeed,
+                        WalletProperties properties) {
+        this.outboxRepository = outboxRepository;
+        this.transactionOperations = transactionOperations;
+        this.changeFeed = changeFeed;
+        WalletProperties.Outbox settings = properties.getOutbox();
+        this.batchSize = Math.max(1, settings.getBatchSize());
+        this.lingerMillis = settings.getLinger().toMillis();
+        this.retention = settings.getRetention();
+    }
+
+    /**
+     * Записывает событие об операции в текущей транзакции.
+     *
+     * @param entry Запись журнала операции.
+     */
+    public void append(LedgerEntry entry) {
+        outboxRepository.insert(entry);
+    }
+
+    /**
+     * Записывает события об операциях в текущей транзакции одним JDBC-пакетом.
+     *
+     * @param entries Записи журнала операций в порядке применения.
+     */
+    public void appendAll(List<LedgerEntry> entries) {
+        outboxRepository.insertAll(entries);
+    }
+
+    /**
+     * Запускает ретранслятор, когда сервис готов принимать запросы.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        relay = Thread.ofPlatform().daemon().name("wallet-outbox-relay").start(() -> {
+            try {
+                long nextPurge = System.nanoTime();
+                while (true) {
+                    if (System.nanoTime() - nextPurge >= 0) {
+                        purgeQuietly();
+                        nextPurge = System.nanoTime() + PURGE_INTERVAL_NANOS;
+                    }
+                    if (relayQuietly() < batchSize) {
+                        Thread.sleep(lingerMillis);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Нумерует одну пачку событий и загружает в ленту изменений следующую пачку пронумерованных
+     * (в том числе ретрансляторами других экземпляров).
+     *
+     * @return Наибольшее из количеств пронумерованных и загруженных событий; меньше {@code batch-size},
+     * если ретранслятор догнал очередь.
+     */
+    public int relay() {
+        int numbered = transactionOperations.execute(status -> outboxRepository.assignPositions(batchSize));
+        relayed.add(numbered);
+        return Math.max(numbered, changeFeed.poll(batchSize));
+    }
+
+    private int relayQuietly() {
+        try {
+            return relay();
+        } catch (RuntimeException ex) {
+            // события остаются в таблице и будут пронумерованы следующей попыткой
+            relayFailures.increment();
+            return 0;
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            outboxRepository.purge(Instant.now().minus(retention));
+        } catch (RuntimeException ex) {
+            // устаревшие события будут удалены следующей попыткой
+            relayFailures.increment();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Thread current = relay;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wallet.outbox.relayed", relayed, LongAdder::sum)
+                .description("События об изменении балансов, пронумерованные ретранслятором этого экземпляра")
+                .register(registry);
+        FunctionCounter.builder("wallet.outbox.relay.failures", relayFailures, LongAdder::sum)
+                .description("Неудачные попытки ретранслятора пронумеровать, загрузить или удалить события")
+                .register(registry);
+    }
+}
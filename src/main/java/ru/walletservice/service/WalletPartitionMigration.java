@@ -0,0 +1,149 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.repository.WalletPartitionRepository;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Перенос кошельков в секционированную таблицу без остановки сервиса.
+ * <p>
+ * После запуска сервиса строки прежней таблицы копируются частями по {@code chunk-size}, каждая часть —
+ * отдельной короткой транзакцией, с паузой {@code pause} между частями. Изменения, сделанные во время переноса,
+ * повторяет в секционированной таблице триггер миграции 005. После последней части таблицы подменяются:
+ * подмена ждёт блокировку таблицы не дольше {@code lock_timeout} и при неудаче повторяется.
+ * Прерванный перенос при следующем запуске начинается сначала; уже скопированные строки пропускаются.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.partition-migration", name = "enabled", havingValue = "true")
+public class WalletPartitionMigration implements DisposableBean, MeterBinder {
+
+    /** Количество попыток подряд для части или подмены таблиц, прежде чем перенос будет остановлен. */
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final WalletPartitionRepository partitionRepository;
+    private final TransactionOperations transactionOperations;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final LongAdder copiedRows = new LongAdder();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile Thread worker;
+
+    /**
+     * Конструктор.
+     * @param partitionRepository Репозиторий переноса кошельков.
+     * @param transactionOperations Шаблон транзакций для частей переноса.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletPartitionMigration(WalletPartitionRepository partitionRepository,
+                                    TransactionOperations transactionOperations,
+                                    WalletProperties properties) {
+        this.partitionRepository = partitionRepository;
+        this.transactionOperations = transactionOperations;
+        WalletProperties.PartitionMigration settings = properties.getPartitionMigration();
+        this.chunkSize = Math.max(1, settings.getChunkSize());
+        this.pauseMillis = settings.getPause().toMillis();
+    }
+
+    /**
+     * Запускает перенос в фоновом потоке, когда сервис готов принимать запросы.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Thread.ofPlatform().daemon().name("wallet-partition-migration").start(() -> {
+            try {
+                migrate();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Переносит кошельки и подменяет таблицу; ничего не делает, если таблица уже секционирована.
+     *
+     * @return Количество скопированных строк.
+     * @throws DataAccessException Если часть или подмена таблиц не удалась {@link #MAX_ATTEMPTS} раз подряд.
+     */
+    public long migrate() throws InterruptedException {
+        if (!partitionRepository.isMigrationPending()) {
+            completed.set(true);
+            return 0;
+        }
+        long copied = 0;
+        UUID after = null;
+        while (true) {
+            UUID cursor = after;
+            WalletPartitionRepository.CopiedChunk chunk = withRetries(() ->
+                    transactionOperations.execute(status -> partitionRepository.copyChunk(cursor, chunkSize)));
+            if (chunk == null) {
+                break;
+            }
+            copied += chunk.rows();
+            copiedRows.add(chunk.rows());
+            after = chunk.lastWalletId();
+            Thread.sleep(pauseMillis);
+        }
+        withRetries(() -> transactionOperations.execute(status -> {
+            partitionRepository.switchToPartitioned();
+            return null;
+        }));
+        completed.set(true);
+        return copied;
+    }
+
+    /**
+     * @return Завершён ли перенос.
+     */
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Выполняет шаг переноса, повторяя его после паузы при ошибке базы (в том числе истечении {@code lock_timeout}).
+     */
+    private <T> T withRetries(Supplier<T> step) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return step.get();
+            } catch (DataAccessException ex) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw ex;
+                }
+                Thread.sleep(pauseMillis * attempt);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Thread current = worker;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wallet.partition-migration.copied", copiedRows, LongAdder::sum)
+                .description("Строки кошельков, скопированные в секционированную таблицу")
+                .register(registry);
+        Gauge.builder("wallet.partition-migration.completed", completed, done -> done.get() ? 1 : 0)
+                .description("Завершён ли перенос кошельков в секционированную таблицу")
+                .register(registry);
+    }
+}
@@ -0,0 +1,307 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.postgresql.util.PSQLException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletAlreadyExistsException;
+import ru.walletservice.exception.walletException.WalletInvalidProvisioningException;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletProvisioningRepository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Массовое создание кошельков при подключении партнёров.
+ * <p>
+ * Кошельки загружаются командой COPY одной транзакцией (см. {@link WalletProvisioningRepository}): строки
+ * читаются из запроса или генерируются по мере отправки в базу. ID генерируются на стороне сервиса
+ * упорядоченными по времени (см. {@link TimeOrderedWalletIds}). Ход выполняющихся загрузок доступен
+ * через {@link #progress()}.
+ * <p>
+ * Создание кошелька не является операцией: начальный баланс не попадает ни в журнал операций,
+ * ни в ленту изменений.
+ */
+@Service
+public class WalletProvisioningService implements MeterBinder {
+
+    /** Заголовок CSV, как в выгрузке кошельков. */
+    private static final String CSV_HEADER = "wallet_id,balance";
+
+    private final WalletProvisioningRepository provisioningRepository;
+    private final WalletBalanceCache balanceCache;
+    private final long maxCount;
+    private final int bufferSize;
+    private final SecureRandom seeds = new SecureRandom();
+    private final Map<UUID, Load> loads = new ConcurrentHashMap<>();
+    private final LongAdder created = new LongAdder();
+
+    /**
+     * Конструктор.
+     * @param provisioningRepository Репозиторий массового создания кошельков.
+     * @param balanceCache Кэш балансов.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletProvisioningService(WalletProvisioningRepository provisioningRepository,
+                                     WalletBalanceCache balanceCache,
+                                     WalletProperties properties) {
+        this.provisioningRepository = provisioningRepository;
+        this.balanceCache = balanceCache;
+        WalletProperties.Provisioning settings = properties.getProvisioning();
+        this.maxCount = settings.getMaxCount();
+        this.bufferSize = (int) Math.min(Integer.MAX_VALUE, settings.getBufferSize().toBytes());
+    }
+
+    /**
+     * Создаёт кошельки со сгенерированными ID и после фиксации пишет их в CSV
+     * с заголовком {@code wallet_id,balance}.
+     *
+     * @param count Количество кошельков.
+     * @param initialBalance Начальный баланс каждого кошелька.
+     * @param out Поток ответа.
+     * @return Итог загрузки.
+     */
+    public ProvisioningSummary generate(long count, long initialBalance, OutputStream out) throws IOException {
+        if (count < 1 || count > maxCount) {
+            throw new WalletInvalidProvisioningException("Count must be between 1 and " + maxCount + ".");
+        }
+        if (initialBalance < 0) {
+            throw new WalletInvalidProvisioningException("Initial balance must not be negative.");
+        }
+        long startMillis = System.currentTimeMillis();
+        long seed = seeds.nextLong();
+        TimeOrderedWalletIds walletIds = new TimeOrderedWalletIds(startMillis, seed);
+        ProvisioningSummary summary = load(count, new Iterator<>() {
+            private long remaining = count;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Wallet next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return new Wallet(walletIds.next(), initialBalance);
+            }
+        });
+
+        // ID не хранятся в памяти: генератор с теми же временем начала и зерном повторяет последовательность
+        TimeOrderedWalletIds createdIds = new TimeOrderedWalletIds(startMillis, seed);
+        String balance = "," + initialBalance + "\n";
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER + "\n");
+        for (long i = 0; i < count; i++) {
+            writer.write(createdIds.next().toString());
+            writer.write(balance);
+        }
+        writer.flush();
+        return summary;
+    }
+
+    /**
+     * Создаёт кошельки из CSV со строками {@code wallet_id,balance}; заголовок в первой строке необязателен.
+     * Строки читаются по мере загрузки; при ошибке в любой строке не создаётся ни один кошелёк.
+     *
+     * @param in Поток запроса.
+     * @return Итог загрузки.
+     */
+    public ProvisioningSummary importCsv(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        ProvisioningSummary summary = load(null, new CsvWallets(reader));
+        // ID могли запросить до создания кошельков, и кэш помнит их несуществующими
+        balanceCache.invalidateMissing();
+        return summary;
+    }
+
+    /**
+     * @return Выполняющиеся загрузки в порядке начала.
+     */
+    public List<ProvisioningProgress> progress() {
+        return loads.values().stream()
+                .map(load -> new ProvisioningProgress(load.id(), load.startedAt(), load.wallets().get(),
+                        load.expected()))
+                .sorted(Comparator.comparing(ProvisioningProgress::startedAt))
+                .toList();
+    }
+
+    private ProvisioningSummary load(@Nullable Long expected, Iterator<Wallet> wallets) {
+        Load load = new Load(UUID.randomUUID(), Instant.now(), expected);
+        loads.put(load.id(), load);
+        long started = System.nanoTime();
+        try {
+            long copied = provisioningRepository.copy(new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return wallets.hasNext();
+                }
+
+                @Override
+                public Wallet next() {
+                    Wallet wallet = wallets.next();
+                    load.wallets().incrementAndGet();
+                    return wallet;
+                }
+            }, bufferSize);
+            created.add(copied);
+            return new ProvisioningSummary(copied, Duration.ofNanos(System.nanoTime() - started));
+        } catch (DuplicateKeyException ex) {
+            throw new WalletAlreadyExistsException(alreadyExists(ex));
+        } finally {
+            loads.remove(load.id());
+        }
+    }
+
+    private static String alreadyExists(DuplicateKeyException ex) {
+        // Detail сервера называет ID: "Key (wallet_id)=(...) already exists."
+        if (ex.getMostSpecificCause() instanceof PSQLException psql && psql.getServerErrorMessage() != null
+                && psql.getServerErrorMessage().getDetail() != null) {
+            return "Wallet already exists. " + psql.getServerErrorMessage().getDetail();
+        }
+        return "Wallet already exists.";
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wallet.provisioning.created", created, LongAdder::sum)
+                .description("Кошельки, созданные массовой загрузкой")
+                .register(registry);
+        Gauge.builder("wallet.provisioning.active", loads, Map::size)
+                .description("Выполняющиеся массовые загрузки кошельков")
+                .register(registry);
+    }
+
+    /**
+     * Кошельки из строк CSV, разбираемых по мере чтения.
+     */
+    private static final class CsvWallets implements Iterator<Wallet> {
+
+        private final BufferedReader reader;
+        private long lineNumber;
+        private Wallet next;
+
+        CsvWallets(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Wallet next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Wallet wallet = next;
+            next = null;
+            return wallet;
+        }
+
+        private Wallet read() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line.strip();
+                    if (line.isEmpty() || lineNumber == 1 && line.equalsIgnoreCase(CSV_HEADER)) {
+                        continue;
+                    }
+                    return parse(line);
+                }
+                return null;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private Wallet parse(String line) {
+            int separator = line.indexOf(',');
+            if (separator < 0 || line.indexOf(',', separator + 1) >= 0) {
+                throw new WalletInvalidProvisioningException(
+                        "Invalid row at line " + lineNumber + ": expected wallet_id,balance.");
+            }
+            Wallet wallet;
+            try {
+                wallet = new Wallet(UUID.fromString(line.substring(0, separator).strip()),
+                        Long.parseLong(line.substring(separator + 1).strip()));
+            } catch (IllegalArgumentException ex) {
+                throw new WalletInvalidProvisioningException(
+                        "Invalid row at line " + lineNumber + ": expected wallet_id,balance.");
+            }
+            if (wallet.getBalance() < 0) {
+                throw new WalletInvalidProvisioningException("Negative balance at line " + lineNumber + ".");
+            }
+            return wallet;
+        }
+    }
+
+    /**
+     * Выполняющаяся загрузка.
+     */
+    private record Load(UUID id, Instant startedAt, @Nullable Long expected, AtomicLong wallets) {
+        Load(UUID id, Instant startedAt, @Nullable Long expected) {
+            this(id, startedAt, expected, new AtomicLong());
+        }
+    }
+
+    /**
+     * Итог загрузки.
+     *
+     * @param wallets Количество созданных кошельков.
+     * @param elapsed Длительность загрузки.
+     */
+    public record ProvisioningSummary(long wallets, Duration elapsed) {
+
+        /**
+         * @return Скорость загрузки в кошельках в секунду.
+         */
+        public long walletsPerSecond() {
+            long nanos = Math.max(1, elapsed.toNanos());
+            return (long) (wallets * 1e9 / nanos);
+        }
+    }
+
+    /**
+     * Ход выполняющейся загрузки.
+     *
+     * @param loadId ID загрузки.
+     * @param startedAt Время начала.
+     * @param wallets Количество кошельков, отправленных в базу; создаются при фиксации загрузки.
+     * @param expectedWallets Количество создаваемых кошельков или {@code null}, если оно не известно заранее.
+     */
+    public record ProvisioningProgress(UUID loadId, Instant startedAt, long wallets, @Nullable Long expectedWallets) {}
+}
@@ -1,18 +1,34 @@
 package ru.walletservice.service;
 
-import jakarta.persistence.LockTimeoutException;
-import org.hibernate.exception.LockAcquisitionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.ReplicaRouting;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
 import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
 import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
 import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletRejectedException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.LedgerEntry;
 import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletBalance;
 import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
 import ru.walletservice.repository.WalletRepository;
 
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Сервис для управления кошельками.
@@ -21,28 +37,214 @@ import java.util.UUID;
 public class WalletService {
 
     private final WalletRepository walletRepository;
+    private final WalletBatchRepository walletBatchRepository;
+    private final WalletLedgerRepository ledgerRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletOperationCoalescer coalescer;
+    private final WalletBalanceCache balanceCache;
+    private final WriteConcurrencyLimiter writeLimiter;
+    private final WalletLockStripes lockStripes;
+    private final WalletContentionPolicy contentionPolicy;
+    private final WalletMetrics metrics;
+    private final WalletCreditAccumulator creditAccumulator;
+    private final WalletOutbox outbox;
+    private final WalletProperties.UpdateStrategy updateStrategy;
+    private final int readChunkSize;
+    private final boolean ledgerEnabled;
 
     /**
      * Конструктор сервиса.
      * @param walletRepository Репозиторий для работы с кошельками.
+     * @param walletBatchRepository Репозиторий пакетного доступа к кошелькам.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param transactionOperations Шаблон транзакций для операций над кошельком.
+     * @param coalescer Объединитель операций; {@code null}, если режим объединения выключен.
+     * @param balanceCache Кэш балансов.
+     * @param writeLimiter Ограничитель одновременных изменяющих транзакций.
+     * @param lockStripes Блокировки кошельков внутри процесса.
+     * @param contentionPolicy Политика поведения при конкуренции за блокировку кошелька.
+     * @param metrics Метрики операций над кошельками.
+     * @param creditAccumulator Отложенная запись пополнений; {@code null}, если она выключена.
+     * @param outbox События об изменении балансов; {@code null}, если они выключены.
+     * @param properties Настройки сервиса кошельков.
      */
-    public WalletService(WalletRepository walletRepository) {
+    public WalletService(WalletRepository walletRepository,
+                         WalletBatchRepository walletBatchRepository,
+                         WalletLedgerRepository ledgerRepository,
+                         TransactionOperations transactionOperations,
+                         @Nullable WalletOperationCoalescer coalescer,
+                         WalletBalanceCache balanceCache,
+                         WriteConcurrencyLimiter writeLimiter,
+                         WalletLockStripes lockStripes,
+                         WalletContentionPolicy contentionPolicy,
+                         WalletMetrics metrics,
+                         @Nullable WalletCreditAccumulator creditAccumulator,
+                         @Nullable WalletOutbox outbox,
+                         WalletProperties properties) {
         this.walletRepository = walletRepository;
+        this.walletBatchRepository = walletBatchRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.transactionOperations = transactionOperations;
+        this.coalescer = coalescer;
+        this.balanceCache = balanceCache;
+        this.writeLimiter = writeLimiter;
+        this.lockStripes = lockStripes;
+        this.contentionPolicy = contentionPolicy;
+        this.metrics = metrics;
+        this.creditAccumulator = creditAccumulator;
+        this.outbox = outbox;
+        this.updateStrategy = properties.getUpdateStrategy();
+        this.readChunkSize = properties.getBatch().getReadChunkSize();
+        this.ledgerEnabled = properties.getLedger().isEnabled();
     }
 
     /**
      * Выполняет операцию над кошельком (пополнение или снятие).
+     * <p>
+     * Транзакция открывается внутри метода, а не вокруг него: в режиме объединения вызывающий поток
+     * только ждёт результата и не должен удерживать соединение с базой.
+     * <p>
+     * Если запрос с тем же ключом идемпотентности уже был применён, транзакция откатывается
+     * и возвращается баланс, записанный в журнале при первом применении.
+     * До открытия транзакции берётся блокировка кошелька внутри процесса ({@link WalletLockStripes}),
+     * так что конкурирующие запросы ждут её, не занимая соединений.
+     * Транзакция, не получившая блокировку кошелька, повторяется согласно {@link WalletContentionPolicy}.
+     * Пополнения кошельков с отложенной записью подтверждаются после записи в журнал {@link WalletCreditAccumulator}.
      *
      * @param request Запрос на операцию с кошельком.
      * @return Новый баланс кошелька после операции.
-     * @throws ConcurrentModificationException Если возникли проблемы с получением пессимистической блокировки.
+     * @throws WalletTooManyRequestsException Если над кошельком уже выполняется предельное число операций.
+     * @throws WalletConflictException Если блокировка кошелька не получена ни в одной из попыток.
+     * @throws WalletIdempotencyConflictException Если ключ идемпотентности уже использован для другой операции.
+     * @throws WalletInvalidOperationTypeException Если тип операции не указан.
+     * @throws WalletInvalidAmountException Если сумма операции не положительна.
      */
-    @Transactional
-    public double operateOnWallet(WalletOperationRequest request) {
+    public long operateOnWallet(WalletOperationRequest request) {
+        long started = System.nanoTime();
         try {
-            return performOperateOnWallet(request);
-        }  catch (LockTimeoutException | LockAcquisitionException ex) {
-            throw new ConcurrentModificationException("Wallet was updated by another user. Please try again.");
+            requireOperationType(request);
+            validateAmount(request);
+            long balance = contentionPolicy.admit(request.walletId(), () -> {
+                if (creditAccumulator != null && creditAccumulator.isCreditWallet(request.walletId())) {
+                    return creditAccumulator.accepts(request)
+                            ? creditAccumulator.deposit(request)
+                            : creditAccumulator.settled(request.walletId(), () -> executeOperation(request));
+                }
+                return executeOperation(request);
+            });
+            metrics.recordOperation(request.operationType(), WalletMetrics.Outcome.OK, System.nanoTime() - started);
+            return balance;
+        } catch (RuntimeException ex) {
+            metrics.recordOperation(request.operationType(), WalletMetrics.Outcome.of(ex),
+                    System.nanoTime() - started);
+            throw ex;
+        }
+    }
+
+    private long executeOperation(WalletOperationRequest request) {
+        if (coalescer != null) {
+            return awaitCoalesced(request);
+        }
+        try {
+            return lockStripes.execute(request.walletId(), () -> contentionPolicy.retry(
+                    () -> writeLimiter.execute(() -> executeInTransaction(request))));
+        } catch (DuplicateOperationException ex) {
+            return replay(ledgerRepository.findByIdempotencyKey(request.idempotencyKey()), request);
+        } catch (WalletInsufficientFundsException | WalletBalanceOverflowException ex) {
+            return replayRejected(request, ex);
+        }
+    }
+
+    /**
+     * Повтор уже применённой операции может быть отклонён проверкой остатка раньше, чем дойдёт до журнала:
+     * например, повтор снятия, обнулившего кошелёк. Отказ запроса с ключом идемпотентности сверяется с журналом,
+     * и при найденной записи возвращается исходный результат. Исходная операция к этому моменту зафиксирована:
+     * повтор ждал её блокировку строки.
+     *
+     * @throws WalletRejectedException Исходный отказ, если операция с этим ключом не записана.
+     */
+    private long replayRejected(WalletOperationRequest request, WalletRejectedException rejection) {
+        if (!ledgerEnabled || request.idempotencyKey() == null) {
+            throw rejection;
+        }
+        LedgerEntry entry = ledgerRepository.findByIdempotencyKey(request.idempotencyKey());
+        if (entry == null) {
+            throw rejection;
+        }
+        return replay(entry, request);
+    }
+
+    /**
+     * Выполняет операцию в отдельной транзакции и записывает время её фиксации.
+     */
+    private long executeInTransaction(WalletOperationRequest request) {
+        long[] callbackFinished = new long[1];
+        Long balance = transactionOperations.execute(status -> {
+            long result = updateStrategy == WalletProperties.UpdateStrategy.ATOMIC
+                    ? performAtomicOperateOnWallet(request)
+                    : performOperateOnWallet(request);
+            callbackFinished[0] = System.nanoTime();
+            return result;
+        });
+        metrics.recordPhase(WalletMetrics.Phase.COMMIT, System.nanoTime() - callbackFinished[0]);
+        return balance;
+    }
+
+    /**
+     * Возвращает результат ранее применённой операции с тем же ключом идемпотентности.
+     *
+     * @param entry Запись журнала с этим ключом.
+     * @param request Повторный запрос.
+     * @return Баланс кошелька после исходной операции.
+     * @throws WalletIdempotencyConflictException Если ключ использован для другой операции.
+     */
+    static long replay(LedgerEntry entry, WalletOperationRequest request) {
+        if (entry == null || !entry.matches(request)) {
+            throw new WalletIdempotencyConflictException("Idempotency key was used for a different operation.");
+        }
+        return entry.balanceAfter();
+    }
+
+    /**
+     * Записывает операцию в журнал и событие об изменении баланса в {@link WalletOutbox} в текущей транзакции.
+     * Дубликат ключа идемпотентности определяется тем же оператором INSERT ... ON CONFLICT,
+     * поэтому на обычном пути дополнительного обращения к базе нет.
+     *
+     * @throws DuplicateOperationException Если операция с этим ключом уже записана; транзакция откатывается.
+     */
+    private void appendToLedger(WalletOperationRequest request, long balanceAfter) {
+        if (!ledgerEnabled && outbox == null) {
+            return;
+        }
+        LedgerEntry entry = LedgerEntry.of(request, balanceAfter);
+        if (ledgerEnabled && !ledgerRepository.insertIfAbsent(entry)) {
+            throw new DuplicateOperationException();
+        }
+        if (outbox != null) {
+            outbox.append(entry);
+        }
+    }
+
+    /**
+     * Повтор уже применённой операции; откатывает транзакцию, в которой операция была применена ещё раз.
+     */
+    static class DuplicateOperationException extends RuntimeException {
+        DuplicateOperationException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Передаёт операцию в очередь кошелька и ожидает её применения.
+     */
+    private long awaitCoalesced(WalletOperationRequest request) {
+        try {
+            return coalescer.submit(request).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
         }
     }
 
@@ -55,45 +257,214 @@ public class WalletService {
      * @throws WalletInsufficientFundsException Если на кошельке недостаточно средств для выполнения операции снятия.
      * @throws WalletInvalidOperationTypeException Если указан неверный тип операции.
      */
-    private double performOperateOnWallet(WalletOperationRequest request) {
-        Wallet wallet = walletRepository.findByWalletIdAndLock(request.getWalletId());
+    private long performOperateOnWallet(WalletOperationRequest request) {
+        long started = System.nanoTime();
+        Wallet wallet = walletRepository.findByWalletIdAndLock(request.walletId());
+        long locked = System.nanoTime();
+        metrics.recordPhase(WalletMetrics.Phase.LOCK_WAIT, locked - started);
         if (wallet == null) {
             throw new WalletNotFoundException("Wallet not found.");
         }
 
-        double newAmount = wallet.getBalance();
-        switch (request.getOperationType()) {
-            case DEPOSIT:
-                newAmount += request.getAmount();
-                break;
-            case WITHDRAW:
-                if (newAmount < request.getAmount()) {
+        long newAmount = applyOperation(wallet.getBalance(), request);
+
+        wallet.setBalance(newAmount);
+        walletRepository.save(wallet);
+        appendToLedger(request, newAmount);
+        metrics.recordPhase(WalletMetrics.Phase.SQL, System.nanoTime() - locked);
+        balanceCache.putAfterCommit(wallet.getWalletId(), newAmount);
+
+        return newAmount;
+    }
+
+    /**
+     * Выполняет операцию над кошельком одним оператором UPDATE ... RETURNING.
+     * Блокировка строки берётся и отпускается базой в пределах одного оператора.
+     *
+     * @param request Запрос на операцию с кошельком, содержащий ID кошелька, тип операции и сумму.
+     * @return Новый баланс кошелька после выполнения операции.
+     * @throws WalletNotFoundException Если кошелек с указанным ID не найден.
+     * @throws WalletInsufficientFundsException Если на кошельке недостаточно средств для выполнения операции снятия.
+     * @throws WalletInvalidOperationTypeException Если указан неверный тип операции.
+     */
+    private long performAtomicOperateOnWallet(WalletOperationRequest request) {
+        requireOperationType(request);
+        long started = System.nanoTime();
+        switch (request.operationType()) {
+            case DEPOSIT: {
+                Long newAmount;
+                try {
+                    newAmount = walletRepository.depositAndGetBalance(request.walletId(), request.amount());
+                } catch (DataIntegrityViolationException ex) {
+                    // bigint out of range
+                    throw new WalletBalanceOverflowException("Balance overflow.");
+                }
+                long updated = System.nanoTime();
+                metrics.recordPhase(WalletMetrics.Phase.LOCK_WAIT, updated - started);
+                if (newAmount == null) {
+                    throw new WalletNotFoundException("Wallet not found.");
+                }
+                appendToLedger(request, newAmount);
+                metrics.recordPhase(WalletMetrics.Phase.SQL, System.nanoTime() - updated);
+                balanceCache.putAfterCommit(request.walletId(), newAmount);
+                return newAmount;
+            }
+            case WITHDRAW: {
+                WalletRepository.WithdrawResult result =
+                        walletRepository.withdrawAndGetBalance(request.walletId(), request.amount());
+                long updated = System.nanoTime();
+                metrics.recordPhase(WalletMetrics.Phase.LOCK_WAIT, updated - started);
+                if (!result.getFound()) {
+                    throw new WalletNotFoundException("Wallet not found.");
+                }
+                if (result.getBalance() == null) {
                     throw new WalletInsufficientFundsException("Insufficient funds.");
                 }
-                newAmount -= request.getAmount();
-                break;
+                appendToLedger(request, result.getBalance());
+                metrics.recordPhase(WalletMetrics.Phase.SQL, System.nanoTime() - updated);
+                balanceCache.putAfterCommit(request.walletId(), result.getBalance());
+                return result.getBalance();
+            }
             default:
                 throw new WalletInvalidOperationTypeException("Invalid operation type.");
         }
+    }
 
-        wallet.setBalance(newAmount);
-        walletRepository.save(wallet);
+    /**
+     * Проверяет, что тип операции указан: без него switch по типу выбросил бы NullPointerException.
+     *
+     * @throws WalletInvalidOperationTypeException Если тип операции не указан.
+     */
+    private static void requireOperationType(WalletOperationRequest request) {
+        if (request.operationType() == null) {
+            throw new WalletInvalidOperationTypeException("Invalid operation type.");
+        }
+    }
 
-        return newAmount;
+    /**
+     * Проверяет сумму операции: отрицательное пополнение иначе сработало бы как снятие без проверки остатка.
+     *
+     * @throws WalletInvalidAmountException Если сумма не положительна.
+     */
+    static void validateAmount(WalletOperationRequest request) {
+        if (request.amount() <= 0) {
+            throw new WalletInvalidAmountException("Amount must be positive.");
+        }
+    }
+
+    /**
+     * Вычисляет баланс после применения операции к текущему балансу.
+     *
+     * @param balance Текущий баланс кошелька.
+     * @param request Запрос на операцию с кошельком.
+     * @return Баланс после операции.
+     * @throws WalletInsufficientFundsException Если на кошельке недостаточно средств для выполнения операции снятия.
+     * @throws WalletInvalidOperationTypeException Если указан неверный тип операции.
+     * @throws WalletBalanceOverflowException Если баланс после операции не помещается в long.
+     * @throws WalletInvalidAmountException Если сумма операции не положительна.
+     */
+    static long applyOperation(long balance, WalletOperationRequest request) {
+        requireOperationType(request);
+        validateAmount(request);
+        try {
+            switch (request.operationType()) {
+                case DEPOSIT:
+                    return Math.addExact(balance, request.amount());
+                case WITHDRAW:
+                    if (balance < request.amount()) {
+                        throw new WalletInsufficientFundsException("Insufficient funds.");
+                    }
+                    return Math.subtractExact(balance, request.amount());
+                default:
+                    throw new WalletInvalidOperationTypeException("Invalid operation type.");
+            }
+        } catch (ArithmeticException ex) {
+            throw new WalletBalanceOverflowException("Balance overflow.");
+        }
     }
 
     /**
      * Возвращает баланс кошелька.
+     * Баланс берётся из кэша, при промахе загружается из базы.
+     * Баланс кошелька с отложенной записью пополнений включает ещё не записанные в базу пополнения.
      *
      * @param walletId ID кошелька.
      * @return Баланс кошелька.
      * @throws WalletNotFoundException Если кошелек не найден.
      */
-    public double getBalance(UUID walletId) {
-        Wallet wallet = walletRepository.findByWalletId(walletId);
-        if (wallet == null) {
+    public long getBalance(UUID walletId) {
+        return getBalance(walletId, false);
+    }
+
+    /**
+     * Возвращает баланс кошелька.
+     *
+     * @param walletId ID кошелька.
+     * @param fromPrimary Прочитать баланс с основного сервера в обход кэша и реплик
+     *                    (клиент только что изменил кошелёк, см. {@link ReplicaReadPolicy}).
+     * @return Баланс кошелька.
+     * @throws WalletNotFoundException Если кошелек не найден.
+     */
+    public long getBalance(UUID walletId, boolean fromPrimary) {
+        long started = System.nanoTime();
+        Long balance;
+        if (creditAccumulator != null && creditAccumulator.isCreditWallet(walletId)) {
+            balance = creditAccumulator.getBalance(walletId);
+        } else if (fromPrimary) {
+            balance = ReplicaRouting.onPrimary(() -> walletRepository.findBalanceByWalletId(walletId));
+        } else {
+            balance = balanceCache.getBalance(walletId, walletRepository::findBalanceByWalletId);
+        }
+        metrics.recordBalanceRead(balance != null, System.nanoTime() - started);
+        if (balance == null) {
             throw new WalletNotFoundException("Wallet not found");
         }
-        return wallet.getBalance();
+        return balance;
+    }
+
+    /**
+     * Возвращает балансы нескольких кошельков.
+     * Кошельки обрабатываются частями: балансы из кэша отдаются без обращения к базе,
+     * остальные загружаются одним запросом на часть. Результаты передаются потребителю
+     * по мере готовности в порядке запроса, не накапливаясь в памяти.
+     *
+     * @param walletIds ID кошельков.
+     * @param consumer Получатель балансов; для ненайденных кошельков баланс равен {@code null}.
+     */
+    public void getBalances(Iterable<UUID> walletIds, Consumer<WalletBalance> consumer) {
+        getBalances(walletIds, false, consumer);
+    }
+
+    /**
+     * Возвращает балансы нескольких кошельков.
+     *
+     * @param walletIds ID кошельков.
+     * @param fromPrimary Прочитать балансы с основного сервера в обход кэша и реплик.
+     * @param consumer Получатель балансов; для ненайденных кошельков баланс равен {@code null}.
+     */
+    public void getBalances(Iterable<UUID> walletIds, boolean fromPrimary, Consumer<WalletBalance> consumer) {
+        List<UUID> chunk = new ArrayList<>(readChunkSize);
+        for (UUID walletId : walletIds) {
+            chunk.add(walletId);
+            if (chunk.size() == readChunkSize) {
+                emitBalances(chunk, fromPrimary, consumer);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            emitBalances(chunk, fromPrimary, consumer);
+        }
+    }
+
+    private void emitBalances(List<UUID> walletIds, boolean fromPrimary, Consumer<WalletBalance> consumer) {
+        Map<UUID, Long> balances = fromPrimary
+                ? ReplicaRouting.onPrimary(() -> walletBatchRepository.findBalances(walletIds))
+                : balanceCache.getBalances(walletIds, walletBatchRepository::findBalances);
+        for (UUID walletId : walletIds) {
+            Long balance = creditAccumulator != null && creditAccumulator.isCreditWallet(walletId)
+                    ? creditAccumulator.getBalance(walletId)
+                    : balances.get(walletId);
+            consumer.accept(new WalletBalance(walletId, balance));
+        }
     }
 }
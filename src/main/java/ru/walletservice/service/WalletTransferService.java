@@ -0,0 +1,296 @@
+package ru.walletservice.service;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidTransferException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletTransferRequest;
+import ru.walletservice.model.WalletTransferResult;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Сервис переводов между кошельками.
+ * <p>
+ * Списание с кошелька отправителя и зачисления всем получателям выполняются в одной транзакции.
+ * Блокировки берутся в едином порядке: полосы блокировок внутри процесса — по возрастанию номера полосы,
+ * строки кошельков — одним запросом по возрастанию ID. Поэтому встречные переводы и переводы
+ * с пересекающимися получателями ждут друг друга, но не блокируют друг друга по кругу.
+ * <p>
+ * Перевод записывается в журнал списанием и зачислениями с общим ID перевода; ключ идемпотентности
+ * хранится в записи списания. Повтор перевода с тем же ключом возвращает исходный результат из журнала.
+ */
+@Service
+public class WalletTransferService {
+
+    private final WalletBatchRepository batchRepository;
+    private final WalletLedgerRepository ledgerRepository;
+    private final TransactionOperations transactionOperations;
+    private final WalletBalanceCache balanceCache;
+    private final WriteConcurrencyLimiter writeLimiter;
+    private final WalletLockStripes lockStripes;
+    private final WalletContentionPolicy contentionPolicy;
+    private final WalletMetrics metrics;
+    private final WalletCreditAccumulator creditAccumulator;
+    private final WalletOutbox outbox;
+    private final int maxLegs;
+    private final boolean ledgerEnabled;
+
+    /**
+     * Конструктор сервиса.
+     * @param batchRepository Репозиторий пакетного доступа к кошелькам.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param transactionOperations Шаблон транзакций.
+     * @param balanceCache Кэш балансов.
+     * @param writeLimiter Ограничитель одновременных изменяющих транзакций.
+     * @param lockStripes Блокировки кошельков внутри процесса.
+     * @param contentionPolicy Политика поведения при конкуренции за блокировку кошелька.
+     * @param metrics Метрики операций над кошельками.
+     * @param creditAccumulator Отложенная запись пополнений; {@code null}, если она выключена.
+     * @param outbox События об изменении балансов; {@code null}, если они выключены.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WalletTransferService(WalletBatchRepository batchRepository,
+                                 WalletLedgerRepository ledgerRepository,
+                                 TransactionOperations transactionOperations,
+                                 WalletBalanceCache balanceCache,
+                                 WriteConcurrencyLimiter writeLimiter,
+                                 WalletLockStripes lockStripes,
+                                 WalletContentionPolicy contentionPolicy,
+                                 WalletMetrics metrics,
+                                 @Nullable WalletCreditAccumulator creditAccumulator,
+                                 @Nullable WalletOutbox outbox,
+                                 WalletProperties properties) {
+        this.batchRepository = batchRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.transactionOperations = transactionOperations;
+        this.balanceCache = balanceCache;
+        this.writeLimiter = writeLimiter;
+        this.lockStripes = lockStripes;
+        this.contentionPolicy = contentionPolicy;
+        this.metrics = metrics;
+        this.creditAccumulator = creditAccumulator;
+        this.outbox = outbox;
+        this.maxLegs = properties.getTransfer().getMaxLegs();
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+    }
+
+    /**
+     * Переводит средства с одного кошелька на один или несколько других.
+     * <p>
+     * С кошелька отправителя списывается сумма всех зачислений; если её не хватает, перевод не выполняется.
+     * Транзакция, не получившая блокировки кошельков, повторяется согласно {@link WalletContentionPolicy}.
+     *
+     * @param request Перевод.
+     * @return Балансы отправителя и получателей после перевода.
+     * @throws WalletInvalidTransferException Если перевод задан неверно.
+     * @throws WalletNotFoundException Если кошелёк отправителя или получателя не найден.
+     * @throws WalletInsufficientFundsException Если на кошельке отправителя недостаточно средств.
+     * @throws WalletBalanceOverflowException Если сумма перевода или баланс получателя не помещается в long.
+     * @throws WalletTooManyRequestsException Если над одним из кошельков уже выполняется предельное число операций.
+     * @throws WalletConflictException Если блокировки кошельков не получены ни в одной из попыток.
+     * @throws WalletIdempotencyConflictException Если ключ идемпотентности уже использован для другой операции.
+     */
+    public WalletTransferResult transfer(WalletTransferRequest request) {
+        long started = System.nanoTime();
+        try {
+            long total = validate(request);
+            List<UUID> walletIds = new ArrayList<>(walletIds(request));
+            WalletTransferResult result = admit(walletIds, 0,
+                    () -> settled(walletIds, () -> executeTransfer(request, walletIds, total)));
+            metrics.recordOperation(WalletOperationRequest.OperationType.TRANSFER, WalletMetrics.Outcome.OK,
+                    System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException ex) {
+            metrics.recordOperation(WalletOperationRequest.OperationType.TRANSFER, WalletMetrics.Outcome.of(ex),
+                    System.nanoTime() - started);
+            throw ex;
+        }
+    }
+
+    /**
+     * Проверяет перевод до обращения к базе.
+     *
+     * @return Сумма всех зачислений.
+     */
+    private long validate(WalletTransferRequest request) {
+        List<WalletTransferRequest.Leg> legs = request.getLegs();
+        if (request.getFromWalletId() == null) {
+            throw new WalletInvalidTransferException("Source wallet is not specified.");
+        }
+        if (legs == null || legs.isEmpty()) {
+            throw new WalletInvalidTransferException("Transfer has no legs.");
+        }
+        if (legs.size() > maxLegs) {
+            throw new WalletInvalidTransferException("Transfer has more than " + maxLegs + " legs.");
+        }
+        long total = 0;
+        for (WalletTransferRequest.Leg leg : legs) {
+            if (leg == null || leg.toWalletId() == null) {
+                throw new WalletInvalidTransferException("Destination wallet is not specified.");
+            }
+            if (leg.toWalletId().equals(request.getFromWalletId())) {
+                throw new WalletInvalidTransferException("Transfer to the source wallet.");
+            }
+            if (leg.amount() <= 0) {
+                throw new WalletInvalidTransferException("Transfer amount must be positive.");
+            }
+            try {
+                total = Math.addExact(total, leg.amount());
+            } catch (ArithmeticException ex) {
+                throw rejected(request, new WalletBalanceOverflowException("Balance overflow."));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Кошелёк отправителя и кошельки получателей без повторов.
+     */
+    private static LinkedHashSet<UUID> walletIds(WalletTransferRequest request) {
+        LinkedHashSet<UUID> walletIds = new LinkedHashSet<>();
+        walletIds.add(request.getFromWalletId());
+        for (WalletTransferRequest.Leg leg : request.getLegs()) {
+            walletIds.add(leg.toWalletId());
+        }
+        return walletIds;
+    }
+
+    /**
+     * Допускает перевод пределом одновременных операций каждого из кошельков.
+     */
+    private <T> T admit(List<UUID> walletIds, int index, Supplier<T> action) {
+        if (index == walletIds.size()) {
+            return action.get();
+        }
+        return contentionPolicy.admit(walletIds.get(index), () -> admit(walletIds, index + 1, action));
+    }
+
+    /**
+     * Выполняет перевод после записи накопленных пополнений кошельков с отложенной записью.
+     */
+    private <T> T settled(List<UUID> walletIds, Supplier<T> action) {
+        return creditAccumulator != null ? creditAccumulator.settled(walletIds, action) : action.get();
+    }
+
+    private WalletTransferResult executeTransfer(WalletTransferRequest request, List<UUID> walletIds, long total) {
+        try {
+            return lockStripes.execute(walletIds, () -> contentionPolicy.retry(() -> writeLimiter.execute(
+                    () -> transactionOperations.execute(status -> performTransfer(request, walletIds, total)))));
+        } catch (WalletService.DuplicateOperationException ex) {
+            return replay(request);
+        }
+    }
+
+    /**
+     * Блокирует все кошельки перевода, списывает и зачисляет суммы и записывает перевод в журнал.
+     */
+    private WalletTransferResult performTransfer(WalletTransferRequest request, List<UUID> walletIds, long total) {
+        long started = System.nanoTime();
+        Map<UUID, Long> balances = batchRepository.findBalancesAndLock(walletIds);
+        long locked = System.nanoTime();
+        metrics.recordPhase(WalletMetrics.Phase.LOCK_WAIT, locked - started);
+        if (balances.size() < walletIds.size()) {
+            throw new WalletNotFoundException("Wallet not found.");
+        }
+
+        UUID fromWalletId = request.getFromWalletId();
+        long balance = balances.get(fromWalletId);
+        if (balance < total) {
+            throw rejected(request, new WalletInsufficientFundsException("Insufficient funds."));
+        }
+        balance -= total;
+        balances.put(fromWalletId, balance);
+
+        UUID transferId = UUID.randomUUID();
+        List<WalletBalance> legs = new ArrayList<>(request.getLegs().size());
+        List<LedgerEntry> credits = new ArrayList<>(request.getLegs().size());
+        for (WalletTransferRequest.Leg leg : request.getLegs()) {
+            long legBalance;
+            try {
+                legBalance = Math.addExact(balances.get(leg.toWalletId()), leg.amount());
+            } catch (ArithmeticException ex) {
+                throw new WalletBalanceOverflowException("Balance overflow.");
+            }
+            balances.put(leg.toWalletId(), legBalance);
+            legs.add(new WalletBalance(leg.toWalletId(), legBalance));
+            credits.add(LedgerEntry.transfer(transferId, leg.toWalletId(), leg.amount(), legBalance, null));
+        }
+
+        LedgerEntry debit = LedgerEntry.transfer(transferId, fromWalletId, -total, balance,
+                request.getIdempotencyKey());
+        // списание записывается первым: дубликат ключа обнаруживается до изменения балансов
+        if (ledgerEnabled && !ledgerRepository.insertIfAbsent(debit)) {
+            throw new WalletService.DuplicateOperationException();
+        }
+        batchRepository.updateBalances(balances);
+        if (ledgerEnabled) {
+            ledgerRepository.insertAll(credits);
+        }
+        if (outbox != null) {
+            List<LedgerEntry> entries = new ArrayList<>(credits.size() + 1);
+            entries.add(debit);
+            entries.addAll(credits);
+            outbox.appendAll(entries);
+        }
+        metrics.recordPhase(WalletMetrics.Phase.SQL, System.nanoTime() - locked);
+        balances.forEach(balanceCache::putAfterCommit);
+        return new WalletTransferResult(transferId, balance, legs);
+    }
+
+    /**
+     * Отказ перевода проверкой остатка. Повтор уже выполненного перевода, исчерпавшего остаток отправителя,
+     * не должен получить отказ: если ключ идемпотентности уже записан, перевод откатывается как дубликат
+     * и возвращается исходный результат. Журнал проверяется под блокировками кошельков, только при отказе.
+     */
+    private RuntimeException rejected(WalletTransferRequest request, RuntimeException rejection) {
+        if (ledgerEnabled && request.getIdempotencyKey() != null
+                && ledgerRepository.findByIdempotencyKey(request.getIdempotencyKey()) != null) {
+            return new WalletService.DuplicateOperationException();
+        }
+        return rejection;
+    }
+
+    /**
+     * Возвращает результат ранее выполненного перевода с тем же ключом идемпотентности.
+     *
+     * @throws WalletIdempotencyConflictException Если ключ использован для другой операции.
+     */
+    private WalletTransferResult replay(WalletTransferRequest request) {
+        LedgerEntry debit = ledgerRepository.findByIdempotencyKey(request.getIdempotencyKey());
+        if (debit == null || debit.transferId() == null || !debit.walletId().equals(request.getFromWalletId())) {
+            throw new WalletIdempotencyConflictException("Idempotency key was used for a different operation.");
+        }
+        List<LedgerEntry> entries = ledgerRepository.findByTransferId(debit.transferId());
+        List<WalletTransferRequest.Leg> legs = request.getLegs();
+        if (entries.size() != legs.size() + 1) {
+            throw new WalletIdempotencyConflictException("Idempotency key was used for a different operation.");
+        }
+        List<WalletBalance> balances = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            LedgerEntry credit = entries.get(i + 1);
+            if (!credit.walletId().equals(legs.get(i).toWalletId()) || credit.amount() != legs.get(i).amount()) {
+                throw new WalletIdempotencyConflictException("Idempotency key was used for a different operation.");
+            }
+            balances.add(new WalletBalance(credit.walletId(), credit.balanceAfter()));
+        }
+        return new WalletTransferResult(debit.transferId(), debit.balanceAfter(), balances);
+    }
+}
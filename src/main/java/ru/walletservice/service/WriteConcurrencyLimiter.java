@@ -0,0 +1,66 @@
+package ru.walletservice.service;
+
+import org.springframework.stereotype.Component;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ограничивает число одновременно выполняемых изменяющих транзакций.
+ * <p>
+ * Ожидание разрешения происходит до открытия транзакции и не занимает соединение с базой,
+ * а виртуальный поток на время ожидания освобождает поток-носитель. Так конкурирующие за один кошелёк
+ * операции не могут занять весь пул соединений и оставить без соединений чтения других кошельков.
+ */
+@Component
+public class WriteConcurrencyLimiter {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+    private final Duration retryAfter;
+
+    /**
+     * Конструктор.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public WriteConcurrencyLimiter(WalletProperties properties) {
+        WalletProperties.WriteConcurrency settings = properties.getWriteConcurrency();
+        this.permits = settings.getMaxConcurrentWrites() > 0 ? new Semaphore(settings.getMaxConcurrentWrites(), true) : null;
+        this.acquireTimeoutNanos = settings.getAcquireTimeout().toNanos();
+        this.retryAfter = properties.getContention().getRetryAfter();
+    }
+
+    /**
+     * Выполняет изменяющее действие, дождавшись свободного разрешения.
+     *
+     * @param action Действие, открывающее транзакцию.
+     * @return Результат действия.
+     * @throws WalletTooManyRequestsException Если разрешение не получено за отведённое время.
+     */
+    public <T> T execute(Supplier<T> action) {
+        if (permits == null) {
+            return action.get();
+        }
+        acquire();
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new WalletTooManyRequestsException("Too many concurrent operations. Please try again.", retryAfter);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WalletTooManyRequestsException("Interrupted while waiting for a write slot.", retryAfter);
+        }
+    }
+}
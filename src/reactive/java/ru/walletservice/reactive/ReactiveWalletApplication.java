@@ -0,0 +1,38 @@
+package ru.walletservice.reactive;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import ru.walletservice.config.WalletProperties;
+
+/**
+ * Реактивный вариант API кошельков: WebFlux на Netty и R2DBC.
+ * <p>
+ * Настройки читаются из {@code reactive.properties}, а не из {@code application.properties}
+ * основного сервиса. Схему базы создают миграции основного сервиса.
+ * <p>
+ * Запросы обслуживают несколько потоков цикла событий Netty: приложение явно запускается как реактивное
+ * на Netty, даже если на classpath есть Spring MVC и Tomcat, например при запуске рядом с основным сервисом.
+ */
+@SpringBootApplication
+@EnableConfigurationProperties(WalletProperties.class)
+public class ReactiveWalletApplication {
+
+    public static void main(String[] args) {
+        application().run(args);
+    }
+
+    public static SpringApplicationBuilder application() {
+        return new SpringApplicationBuilder(ReactiveWalletApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties("spring.config.name=reactive");
+    }
+
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,66 @@
+package ru.walletservice.reactive.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import ru.walletservice.controller.CoarseClock;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.reactive.service.ReactiveWalletService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Те же эндпоинты {@code /api/v1/wallets}, что и в основном сервисе, с теми же форматами ответов.
+ * Пакетные операции ({@code /wallets/batch}) реактивным вариантом не поддерживаются.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class ReactiveWalletController {
+
+    private final ReactiveWalletService walletService;
+
+    public ReactiveWalletController(ReactiveWalletService walletService) {
+        this.walletService = walletService;
+    }
+
+    @PostMapping("/wallets")
+    public Mono<BalanceResponse> operateOnWallet(@RequestBody WalletOperationRequest request) {
+        return walletService.operateOnWallet(request)
+                .map(newAmount -> new BalanceResponse(CoarseClock.now(), HttpStatus.OK.value(), newAmount));
+    }
+
+    @GetMapping("/wallets/{walletId}")
+    public Mono<BalanceResponse> getBalance(@PathVariable UUID walletId) {
+        return walletService.getBalance(walletId)
+                .map(balance -> new BalanceResponse(CoarseClock.now(), HttpStatus.OK.value(), balance));
+    }
+
+    @PostMapping("/wallets/balances")
+    public Mono<BalancesResponse> getBalances(@RequestBody List<UUID> walletIds) {
+        return balances(walletIds);
+    }
+
+    @GetMapping(value = "/wallets", params = "ids")
+    public Mono<BalancesResponse> getBalancesByIds(@RequestParam("ids") List<UUID> walletIds) {
+        return balances(walletIds);
+    }
+
+    private Mono<BalancesResponse> balances(List<UUID> walletIds) {
+        return walletService.getBalances(walletIds)
+                .collectList()
+                .map(balances -> new BalancesResponse(CoarseClock.now(), HttpStatus.OK.value(), balances));
+    }
+
+    public record BalanceResponse(LocalDateTime timestamp, int status, long amount) {}
+
+    public record BalancesResponse(LocalDateTime timestamp, int status, List<WalletBalance> balances) {}
+}
@@ -0,0 +1,77 @@
+package ru.walletservice.reactive.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.walletservice.controller.CoarseClock;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
+import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Отображение исключений сервиса кошельков на HTTP-ответы, как в основном сервисе.
+ */
+@RestControllerAdvice
+public class ReactiveExceptionHandler {
+
+    @ExceptionHandler(WalletNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleWalletNotFoundException(WalletNotFoundException ex,
+                                                                       ServerHttpRequest request) {
+        return error(HttpStatus.NOT_FOUND, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler({WalletInvalidOperationTypeException.class, WalletInvalidAmountException.class,
+            WalletInsufficientFundsException.class, WalletBalanceOverflowException.class})
+    public ResponseEntity<ErrorResponse> handleWalletInvalidOperationTypeException(RuntimeException ex,
+                                                                                   ServerHttpRequest request) {
+        return error(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler(WalletIdempotencyConflictException.class)
+    public ResponseEntity<ErrorResponse> handleWalletIdempotencyConflictException(WalletIdempotencyConflictException ex,
+                                                                                 ServerHttpRequest request) {
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage(), request);
+    }
+
+    @ExceptionHandler(WalletConflictException.class)
+    public ResponseEntity<ErrorResponse> handleWalletConflictException(WalletConflictException ex,
+                                                                       ServerHttpRequest request) {
+        return retryLater(HttpStatus.CONFLICT, ex.getMessage(), ex.getRetryAfter(), request);
+    }
+
+    @ExceptionHandler(WalletTooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> handleWalletTooManyRequestsException(WalletTooManyRequestsException ex,
+                                                                             ServerHttpRequest request) {
+        return retryLater(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), ex.getRetryAfter(), request);
+    }
+
+    private static ResponseEntity<ErrorResponse> error(HttpStatus status, String message, ServerHttpRequest request) {
+        return new ResponseEntity<>(errorResponse(status, message, request), status);
+    }
+
+    private static ResponseEntity<ErrorResponse> retryLater(HttpStatus status, String message, Duration retryAfter,
+                                                            ServerHttpRequest request) {
+        // Retry-After задаётся в целых секундах
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+                .body(errorResponse(status, message, request));
+    }
+
+    private static ErrorResponse errorResponse(HttpStatus status, String message, ServerHttpRequest request) {
+        return new ErrorResponse(CoarseClock.now(), status.value(), message, request.getPath().value());
+    }
+
+    public record ErrorResponse(LocalDateTime timestamp, int status, String error, String path) {}
+}
@@ -0,0 +1,57 @@
+package ru.walletservice.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.util.UUID;
+
+/**
+ * Журнал операций над кошельками (таблица wallet_operations) через R2DBC.
+ */
+@Repository
+public class ReactiveLedgerRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveLedgerRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Добавляет запись, если операция с таким ключом идемпотентности ещё не записана.
+     *
+     * @return {@code false}, если операция с таким ключом уже есть в журнале.
+     */
+    public Mono<Boolean> insertIfAbsent(LedgerEntry entry) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("insert into wallet_operations "
+                        + "(wallet_id, operation_type, amount, balance_after, idempotency_key) "
+                        + "values (:walletId, :operationType, :amount, :balanceAfter, :idempotencyKey) "
+                        + "on conflict (idempotency_key) where idempotency_key is not null do nothing")
+                .bind("walletId", entry.walletId())
+                .bind("operationType", entry.operationType().name())
+                .bind("amount", entry.amount())
+                .bind("balanceAfter", entry.balanceAfter());
+        spec = entry.idempotencyKey() != null
+                ? spec.bind("idempotencyKey", entry.idempotencyKey())
+                : spec.bindNull("idempotencyKey", String.class);
+        return spec.fetch().rowsUpdated().map(inserted -> inserted > 0);
+    }
+
+    /**
+     * @return Запись операции с этим ключом; пустой результат, если её нет.
+     */
+    public Mono<LedgerEntry> findByIdempotencyKey(String idempotencyKey) {
+        return databaseClient.sql("select * from wallet_operations where idempotency_key = :idempotencyKey")
+                .bind("idempotencyKey", idempotencyKey)
+                .map(row -> new LedgerEntry(
+                        row.get("wallet_id", UUID.class),
+                        WalletOperationRequest.OperationType.valueOf(row.get("operation_type", String.class)),
+                        row.get("amount", Long.class),
+                        row.get("balance_after", Long.class),
+                        row.get("idempotency_key", String.class)))
+                .one();
+    }
+}
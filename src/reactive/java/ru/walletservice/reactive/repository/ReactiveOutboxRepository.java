@@ -0,0 +1,34 @@
+package ru.walletservice.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import ru.walletservice.model.LedgerEntry;
+
+/**
+ * Исходящие события об изменении балансов (таблица wallet_outbox) через R2DBC.
+ * События нумерует и раздаёт подписчикам ретранслятор основного сервиса.
+ */
+@Repository
+public class ReactiveOutboxRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveOutboxRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Записывает событие об операции из журнала.
+     *
+     * @param entry Запись журнала операции.
+     */
+    public Mono<Void> insert(LedgerEntry entry) {
+        return databaseClient.sql("insert into wallet_outbox (wallet_id, amount, balance) "
+                        + "values (:walletId, :amount, :balance)")
+                .bind("walletId", entry.walletId())
+                .bind("amount", entry.signedAmount())
+                .bind("balance", entry.balanceAfter())
+                .then();
+    }
+}
@@ -0,0 +1,91 @@
+package ru.walletservice.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.walletservice.model.WalletBalance;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Неблокирующий доступ к кошелькам через R2DBC.
+ * Баланс изменяется теми же операторами UPDATE ... RETURNING, что и в основном сервисе
+ * со стратегией {@code ATOMIC}: блокировка строки берётся и отпускается базой в пределах одного оператора.
+ */
+@Repository
+public class ReactiveWalletRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveWalletRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Пополняет кошелёк одним оператором UPDATE.
+     *
+     * @return Новый баланс; пустой результат, если кошелёк не найден.
+     */
+    public Mono<Long> depositAndGetBalance(UUID walletId, long amount) {
+        return databaseClient.sql("update wallets set balance = balance + :amount where wallet_id = :walletId "
+                        + "returning balance")
+                .bind("amount", amount)
+                .bind("walletId", walletId)
+                .map(row -> row.get("balance", Long.class))
+                .one();
+    }
+
+    /**
+     * Списывает средства одним оператором UPDATE, только если их достаточно.
+     * В том же операторе проверяется существование кошелька.
+     */
+    public Mono<WithdrawResult> withdrawAndGetBalance(UUID walletId, long amount) {
+        return databaseClient.sql("""
+                        with updated as (
+                            update wallets set balance = balance - :amount
+                            where wallet_id = :walletId and balance >= :amount
+                            returning balance)
+                        select (select balance from updated) as balance,
+                               exists (select 1 from wallets where wallet_id = :walletId) as found
+                        """)
+                .bind("amount", amount)
+                .bind("walletId", walletId)
+                .map(row -> new WithdrawResult(row.get("balance", Long.class),
+                        Boolean.TRUE.equals(row.get("found", Boolean.class))))
+                .one();
+    }
+
+    /**
+     * @return Баланс кошелька; пустой результат, если кошелёк не найден.
+     */
+    public Mono<Long> findBalance(UUID walletId) {
+        return databaseClient.sql("select balance from wallets where wallet_id = :walletId")
+                .bind("walletId", walletId)
+                .map(row -> row.get("balance", Long.class))
+                .one();
+    }
+
+    /**
+     * @return Балансы найденных кошельков в произвольном порядке.
+     */
+    public Flux<WalletBalance> findBalances(Collection<UUID> walletIds) {
+        // соединение с unnest отсекает секции таблицы кошельков и при общем плане подготовленного оператора
+        return databaseClient.sql("""
+                        select w.wallet_id, w.balance from unnest(:walletIds) as ids(wallet_id)
+                        join wallets w on w.wallet_id = ids.wallet_id
+                        """)
+                .bind("walletIds", walletIds.toArray(UUID[]::new))
+                .map(row -> new WalletBalance(row.get("wallet_id", UUID.class), row.get("balance", Long.class)))
+                .all();
+    }
+
+    /**
+     * Результат условного списания.
+     *
+     * @param balance Новый баланс или {@code null}, если списание не выполнено.
+     * @param found Существует ли кошелёк.
+     */
+    public record WithdrawResult(Long balance, boolean found) {}
+}
@@ -0,0 +1,284 @@
+package ru.walletservice.reactive.service;
+
+import io.r2dbc.spi.R2dbcException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
+import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.reactive.repository.ReactiveLedgerRepository;
+import ru.walletservice.reactive.repository.ReactiveOutboxRepository;
+import ru.walletservice.reactive.repository.ReactiveWalletRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реактивный сервис для управления кошельками.
+ * <p>
+ * Ни один поток не ждёт базу: ожидание соединения, блокировки строки и задержка перед повтором
+ * занимают только память под подписку. Чтобы очередь к одному кошельку не росла без ограничений,
+ * над кошельком выполняется не больше {@code wallet.contention.max-in-flight-per-wallet} операций,
+ * остальные сразу отклоняются с предложением повторить позже. Транзакция, не получившая блокировку
+ * за {@code lock_timeout}, повторяется с экспоненциальной задержкой, как и в основном сервисе.
+ * <p>
+ * При {@code wallet.outbox.enabled} изменение баланса, как и в основном сервисе, записывает событие в wallet_outbox
+ * в той же транзакции. Ретранслятора и ленты изменений в реактивном варианте нет: события нумерует и раздаёт
+ * подписчикам основной сервис, работающий с той же базой.
+ */
+@Service
+public class ReactiveWalletService {
+
+    /** Коды SQLSTATE отказа в блокировке: lock_not_available, deadlock_detected, serialization_failure. */
+    private static final Set<String> LOCK_FAILURE_STATES = Set.of("55P03", "40P01", "40001");
+
+    /** Код SQLSTATE numeric_value_out_of_range. */
+    private static final String OUT_OF_RANGE_STATE = "22003";
+
+    private final ReactiveWalletRepository walletRepository;
+    private final ReactiveLedgerRepository ledgerRepository;
+    private final ReactiveOutboxRepository outboxRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final int maxInFlightPerWallet;
+    private final Duration retryAfter;
+    private final boolean ledgerEnabled;
+    private final boolean outboxEnabled;
+    private final int readChunkSize;
+    private final Map<UUID, Integer> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор сервиса.
+     * @param walletRepository Репозиторий кошельков.
+     * @param ledgerRepository Журнал операций над кошельками.
+     * @param outboxRepository Исходящие события об изменении балансов.
+     * @param transactionalOperator Оператор транзакций R2DBC.
+     * @param properties Настройки сервиса кошельков.
+     */
+    public ReactiveWalletService(ReactiveWalletRepository walletRepository,
+                                 ReactiveLedgerRepository ledgerRepository,
+                                 ReactiveOutboxRepository outboxRepository,
+                                 TransactionalOperator transactionalOperator,
+                                 WalletProperties properties) {
+        this.walletRepository = walletRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.outboxRepository = outboxRepository;
+        this.transactionalOperator = transactionalOperator;
+        WalletProperties.Contention contention = properties.getContention();
+        this.maxAttempts = Math.max(1, contention.getMaxAttempts());
+        this.initialBackoff = contention.getInitialBackoff();
+        this.maxBackoff = contention.getMaxBackoff();
+        this.maxInFlightPerWallet = contention.getMaxInFlightPerWallet();
+        this.retryAfter = contention.getRetryAfter();
+        this.ledgerEnabled = properties.getLedger().isEnabled();
+        this.outboxEnabled = properties.getOutbox().isEnabled();
+        this.readChunkSize = properties.getBatch().getReadChunkSize();
+    }
+
+    /**
+     * Выполняет операцию над кошельком (пополнение или снятие) в отдельной транзакции.
+     * Повтор запроса с уже применённым ключом идемпотентности возвращает баланс из журнала.
+     *
+     * @param request Запрос на операцию с кошельком.
+     * @return Новый баланс кошелька после операции; при отказе — ошибка с теми же исключениями,
+     * что и в основном сервисе, в том числе {@link WalletConflictException}, если блокировка не получена
+     * ни в одной из попыток, и {@link WalletTooManyRequestsException}, если над кошельком уже выполняется
+     * предельное число операций.
+     */
+    public Mono<Long> operateOnWallet(WalletOperationRequest request) {
+        UUID walletId = request.walletId();
+        return Mono.defer(() -> {
+            if (!admit(walletId)) {
+                return Mono.error(new WalletTooManyRequestsException(
+                        "Too many concurrent operations on the wallet. Please try again.", retryAfter));
+            }
+            return executeWithRetry(request).doFinally(signal -> release(walletId));
+        });
+    }
+
+    private Mono<Long> executeWithRetry(WalletOperationRequest request) {
+        return Mono.defer(() -> performOperateOnWallet(request))
+                .as(transactionalOperator::transactional)
+                .retryWhen(Retry.backoff(maxAttempts - 1, initialBackoff)
+                        .maxBackoff(maxBackoff)
+                        .filter(ReactiveWalletService::isLockFailure)
+                        .onRetryExhaustedThrow((spec, signal) -> new WalletConflictException(
+                                "Wallet was updated by another user. Please try again.", retryAfter)))
+                .onErrorResume(DuplicateOperationException.class, ex ->
+                        ledgerRepository.findByIdempotencyKey(request.idempotencyKey())
+                                .filter(entry -> entry.matches(request))
+                                .map(LedgerEntry::balanceAfter)
+                                .switchIfEmpty(Mono.error(() -> new WalletIdempotencyConflictException(
+                                        "Idempotency key was used for a different operation."))))
+                .onErrorResume(ex -> ex instanceof WalletInsufficientFundsException
+                        || ex instanceof WalletBalanceOverflowException, ex -> replayRejected(request, ex));
+    }
+
+    /**
+     * Отказ повтора уже применённой операции (например, снятия, обнулившего кошелёк) сверяется с журналом:
+     * при найденной записи с тем же ключом возвращается исходный результат, иначе — исходный отказ.
+     */
+    private Mono<Long> replayRejected(WalletOperationRequest request, Throwable rejection) {
+        if (!ledgerEnabled || request.idempotencyKey() == null) {
+            return Mono.error(rejection);
+        }
+        return ledgerRepository.findByIdempotencyKey(request.idempotencyKey())
+                .flatMap(entry -> entry.matches(request)
+                        ? Mono.just(entry.balanceAfter())
+                        : Mono.<Long>error(new WalletIdempotencyConflictException(
+                                "Idempotency key was used for a different operation.")))
+                .switchIfEmpty(Mono.error(rejection));
+    }
+
+    /**
+     * Изменяет баланс одним оператором UPDATE ... RETURNING и записывает операцию в журнал.
+     */
+    private Mono<Long> performOperateOnWallet(WalletOperationRequest request) {
+        if (request.operationType() == null) {
+            return Mono.error(new WalletInvalidOperationTypeException("Invalid operation type."));
+        }
+        if (request.amount() <= 0) {
+            return Mono.error(new WalletInvalidAmountException("Amount must be positive."));
+        }
+        return switch (request.operationType()) {
+            case DEPOSIT -> walletRepository.depositAndGetBalance(request.walletId(), request.amount())
+                    .onErrorMap(ex -> OUT_OF_RANGE_STATE.equals(sqlState(ex)),
+                            ex -> new WalletBalanceOverflowException("Balance overflow."))
+                    .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Wallet not found.")))
+                    .flatMap(balance -> appendToLedger(request, balance));
+            case WITHDRAW -> walletRepository.withdrawAndGetBalance(request.walletId(), request.amount())
+                    .flatMap(result -> {
+                        if (!result.found()) {
+                            return Mono.error(new WalletNotFoundException("Wallet not found."));
+                        }
+                        if (result.balance() == null) {
+                            return Mono.error(new WalletInsufficientFundsException("Insufficient funds."));
+                        }
+                        return appendToLedger(request, result.balance());
+                    });
+            case TRANSFER -> Mono.error(new WalletInvalidOperationTypeException("Invalid operation type."));
+        };
+    }
+
+    /**
+     * Записывает операцию в журнал и событие об изменении баланса в wallet_outbox в текущей транзакции.
+     * Если операция с этим ключом уже записана, транзакция откатывается.
+     */
+    private Mono<Long> appendToLedger(WalletOperationRequest request, long balanceAfter) {
+        if (!ledgerEnabled && !outboxEnabled) {
+            return Mono.just(balanceAfter);
+        }
+        LedgerEntry entry = LedgerEntry.of(request, balanceAfter);
+        Mono<Boolean> recorded = ledgerEnabled ? ledgerRepository.insertIfAbsent(entry) : Mono.just(true);
+        return recorded.flatMap(inserted -> {
+            if (!inserted) {
+                return Mono.error(new DuplicateOperationException());
+            }
+            return outboxEnabled ? outboxRepository.insert(entry).thenReturn(balanceAfter) : Mono.just(balanceAfter);
+        });
+    }
+
+    /**
+     * Возвращает баланс кошелька.
+     *
+     * @param walletId ID кошелька.
+     * @return Баланс кошелька; ошибка {@link WalletNotFoundException}, если кошелёк не найден.
+     */
+    public Mono<Long> getBalance(UUID walletId) {
+        return walletRepository.findBalance(walletId)
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Wallet not found")));
+    }
+
+    /**
+     * Возвращает балансы нескольких кошельков в порядке запроса.
+     * Балансы загружаются частями по одному запросу на часть.
+     *
+     * @param walletIds ID кошельков.
+     * @return Балансы; для ненайденных кошельков баланс равен {@code null}.
+     */
+    public Flux<WalletBalance> getBalances(List<UUID> walletIds) {
+        return Flux.fromIterable(walletIds)
+                .buffer(readChunkSize)
+                .concatMap(chunk -> walletRepository.findBalances(chunk)
+                        .collectMap(WalletBalance::walletId, WalletBalance::balance)
+                        .flatMapIterable(balances -> chunk.stream()
+                                .map(walletId -> new WalletBalance(walletId, balances.get(walletId)))
+                                .toList()));
+    }
+
+    /**
+     * @return Количество кошельков, над которыми сейчас выполняются операции.
+     */
+    public int inFlightWallets() {
+        return inFlight.size();
+    }
+
+    private boolean admit(UUID walletId) {
+        if (walletId == null) {
+            return true;
+        }
+        boolean[] admitted = new boolean[1];
+        inFlight.compute(walletId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (maxInFlightPerWallet > 0 && current >= maxInFlightPerWallet) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        return admitted[0];
+    }
+
+    private void release(UUID walletId) {
+        if (walletId != null) {
+            inFlight.computeIfPresent(walletId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    static boolean isLockFailure(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockingFailureException) {
+                return true;
+            }
+        }
+        String sqlState = sqlState(ex);
+        return sqlState != null && LOCK_FAILURE_STATES.contains(sqlState);
+    }
+
+    private static String sqlState(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbcException) {
+                return r2dbcException.getSqlState();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Повтор уже применённой операции; откатывает транзакцию, в которой операция была применена ещё раз.
+     */
+    private static class DuplicateOperationException extends RuntimeException {
+        DuplicateOperationException() {
+            super(null, null, false, false);
+        }
+    }
+}
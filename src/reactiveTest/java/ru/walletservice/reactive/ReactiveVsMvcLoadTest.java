@@ -0,0 +1,204 @@
+package ru.walletservice.reactive;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.walletservice.WalletServiceApplication;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнение реактивного варианта и основного сервиса под нагрузкой с большим числом одновременных клиентов.
+ * <p>
+ * Оба приложения запускаются в одном процессе против одной базы с одинаковым размером пула соединений.
+ * Тест запускается, только если задана переменная окружения {@code WALLET_TEST_DATASOURCE_URL}.
+ */
+@EnabledIfEnvironmentVariable(named = "WALLET_TEST_DATASOURCE_URL", matches = ".+")
+class ReactiveVsMvcLoadTest {
+
+    private static final int CLIENTS = 500;
+    private static final int REQUESTS_PER_CLIENT = 20;
+    private static final int WALLETS = 1_000;
+    private static final int POOL_SIZE = 10;
+    private static final int WARMUP_CLIENTS = 50;
+    private static final int WARMUP_REQUESTS_PER_CLIENT = 10;
+    private static final long DEPOSIT_AMOUNT = 2;
+
+    private static ConfigurableApplicationContext mvcContext;
+    private static ConfigurableApplicationContext reactiveContext;
+    private static List<UUID> walletIds;
+
+    @BeforeAll
+    static void startApplications() {
+        String url = System.getenv("WALLET_TEST_DATASOURCE_URL");
+        String username = System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr");
+        String password = System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd");
+
+        mvcContext = new SpringApplicationBuilder(WalletServiceApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=" + username,
+                "--spring.datasource.password=" + password,
+                "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                // реактивный вариант балансы не кэширует
+                "--wallet.cache.enabled=false",
+                // как и ожидание соединения R2DBC ниже: запросы ждут очереди, а не получают 409 под нагрузкой
+                "--wallet.lock-striping.acquire-timeout=1m",
+                "--spring.autoconfigure.exclude="
+                        + "org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration");
+        reactiveContext = ReactiveWalletApplication.application().run(
+                "--server.port=0",
+                "--spring.r2dbc.url=" + url.replaceFirst("^jdbc:", "r2dbc:"),
+                "--spring.r2dbc.username=" + username,
+                "--spring.r2dbc.password=" + password,
+                "--spring.r2dbc.pool.max-size=" + POOL_SIZE,
+                "--spring.r2dbc.pool.max-acquire-time=1m",
+                "--spring.autoconfigure.exclude="
+                        + "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration");
+
+        WalletRepository walletRepository = mvcContext.getBean(WalletRepository.class);
+        walletIds = new ArrayList<>(WALLETS);
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 0L)).getWalletId());
+        }
+    }
+
+    @AfterAll
+    static void stopApplications() {
+        if (reactiveContext != null) {
+            reactiveContext.close();
+        }
+        if (mvcContext != null) {
+            mvcContext.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Нагрузочный тест: реактивный вариант обслуживает тех же клиентов меньшим числом потоков")
+    void testReactiveServesFanInWithFewerThreads() throws Exception {
+        long balanceBefore = totalBalance();
+
+        Result mvc = run(mvcContext, CLIENTS, REQUESTS_PER_CLIENT);
+        Result reactive = run(reactiveContext, CLIENTS, REQUESTS_PER_CLIENT);
+
+        assertEquals(0, mvc.failures());
+        assertEquals(0, reactive.failures());
+        // половина запросов — пополнения, каждое из двух приложений выполнило прогон
+        assertEquals(balanceBefore + CLIENTS * REQUESTS_PER_CLIENT * DEPOSIT_AMOUNT, totalBalance());
+        assertTrue(reactive.serverThreads() < mvc.serverThreads());
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Пропускная способность обоих вариантов при 500 одновременных клиентах")
+    void testThroughput() throws Exception {
+        // прогрев обоих приложений
+        run(mvcContext, WARMUP_CLIENTS, WARMUP_REQUESTS_PER_CLIENT);
+        run(reactiveContext, WARMUP_CLIENTS, WARMUP_REQUESTS_PER_CLIENT);
+
+        Result mvc = run(mvcContext, CLIENTS, REQUESTS_PER_CLIENT);
+        Result reactive = run(reactiveContext, CLIENTS, REQUESTS_PER_CLIENT);
+
+        System.out.printf("%d clients x %d requests: MVC %.0f req/s with %d request threads, "
+                        + "reactive %.0f req/s with %d request threads%n",
+                CLIENTS, REQUESTS_PER_CLIENT, mvc.requestsPerSecond(), mvc.serverThreads(),
+                reactive.requestsPerSecond(), reactive.serverThreads());
+    }
+
+    /**
+     * Каждый клиент поочерёдно пополняет случайный кошелёк и читает его баланс.
+     * Число потоков сервера, обслуживающих запросы, снимается отдельным потоком раз в 50 мс.
+     */
+    private Result run(ConfigurableApplicationContext context, int clients, int requestsPerClient) throws Exception {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        URI operations = URI.create("http://localhost:" + port + "/api/v1/wallets");
+        AtomicInteger failures = new AtomicInteger();
+        String threadPrefix = context == mvcContext ? "http-nio-" : "reactor-http-";
+        AtomicInteger peakThreads = new AtomicInteger();
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakThreads.accumulateAndGet(countThreads(threadPrefix), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        });
+
+        long started = System.nanoTime();
+        try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerClient; i += 2) {
+                        UUID walletId = walletIds.get(ThreadLocalRandom.current().nextInt(walletIds.size()));
+                        HttpRequest deposit = HttpRequest.newBuilder(operations)
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString("{\"walletId\":\"" + walletId
+                                        + "\",\"operationType\":\"DEPOSIT\",\"amount\":" + DEPOSIT_AMOUNT + "}"))
+                                .build();
+                        HttpRequest balance = HttpRequest.newBuilder(operations.resolve("wallets/" + walletId)).build();
+                        for (HttpRequest request : List.of(deposit, balance)) {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            sampler.interrupt();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return new Result((long) clients * requestsPerClient / seconds, peakThreads.get(), failures.get());
+    }
+
+    private static int countThreads(String prefix) {
+        return (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith(prefix))
+                .count();
+    }
+
+    private long totalBalance() {
+        WalletRepository walletRepository = mvcContext.getBean(WalletRepository.class);
+        return walletIds.stream()
+                .mapToLong(walletId -> walletRepository.findByWalletId(walletId).getBalance())
+                .sum();
+    }
+
+    private record Result(double requestsPerSecond, int serverThreads, int failures) {}
+}
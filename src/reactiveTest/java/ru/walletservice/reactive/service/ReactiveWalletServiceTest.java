@@ -0,0 +1,180 @@
+package ru.walletservice.reactive.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.reactive.repository.ReactiveLedgerRepository;
+import ru.walletservice.reactive.repository.ReactiveOutboxRepository;
+import ru.walletservice.reactive.repository.ReactiveWalletRepository;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveWalletServiceTest {
+
+    private final UUID walletId = UUID.randomUUID();
+    private ReactiveWalletRepository walletRepository;
+    private ReactiveLedgerRepository ledgerRepository;
+    private ReactiveOutboxRepository outboxRepository;
+    private TransactionalOperator transactionalOperator;
+    private WalletProperties properties;
+    private ReactiveWalletService walletService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        walletRepository = mock(ReactiveWalletRepository.class);
+        ledgerRepository = mock(ReactiveLedgerRepository.class);
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(Mono.just(true));
+        outboxRepository = mock(ReactiveOutboxRepository.class);
+        when(outboxRepository.insert(any())).thenReturn(Mono.empty());
+        transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        properties = new WalletProperties();
+        properties.getContention().setMaxAttempts(3);
+        properties.getContention().setInitialBackoff(Duration.ofMillis(1));
+        properties.getContention().setMaxBackoff(Duration.ofMillis(5));
+        properties.getContention().setMaxInFlightPerWallet(1);
+        walletService = new ReactiveWalletService(walletRepository, ledgerRepository, outboxRepository,
+                transactionalOperator, properties);
+    }
+
+    private WalletOperationRequest deposit(long amount, String idempotencyKey) {
+        return new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, amount, idempotencyKey);
+    }
+
+    @Test
+    @DisplayName("Пополнение возвращает новый баланс и записывается в журнал")
+    void testDeposit() {
+        when(walletRepository.depositAndGetBalance(walletId, 100)).thenReturn(Mono.just(1100L));
+
+        long balance = walletService.operateOnWallet(deposit(100, "key-1")).block();
+
+        assertEquals(1100L, balance);
+        verify(ledgerRepository).insertIfAbsent(new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT,
+                100, 1100, "key-1"));
+    }
+
+    @Test
+    @DisplayName("При включённом outbox изменение баланса записывает событие, повтор по ключу — нет")
+    void testDepositWritesOutboxEvent() {
+        properties.getOutbox().setEnabled(true);
+        ReactiveWalletService withOutbox = new ReactiveWalletService(walletRepository, ledgerRepository,
+                outboxRepository, transactionalOperator, properties);
+        LedgerEntry entry = new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 100, 1100, "key-1");
+        when(walletRepository.depositAndGetBalance(walletId, 100)).thenReturn(Mono.just(1100L));
+        when(ledgerRepository.insertIfAbsent(entry)).thenReturn(Mono.just(true), Mono.just(false));
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(Mono.just(entry));
+
+        assertEquals(1100L, withOutbox.operateOnWallet(deposit(100, "key-1")).block());
+        assertEquals(1100L, withOutbox.operateOnWallet(deposit(100, "key-1")).block());
+
+        verify(outboxRepository).insert(entry);
+    }
+
+    @Test
+    @DisplayName("Снятие при нехватке средств и операция с несуществующим кошельком отклоняются")
+    void testWithdrawFailures() {
+        when(walletRepository.withdrawAndGetBalance(eq(walletId), anyLong()))
+                .thenReturn(Mono.just(new ReactiveWalletRepository.WithdrawResult(null, true)));
+        when(walletRepository.depositAndGetBalance(eq(walletId), anyLong())).thenReturn(Mono.empty());
+
+        assertThrows(WalletInsufficientFundsException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100)).block());
+        assertThrows(WalletNotFoundException.class, () -> walletService.operateOnWallet(deposit(100, null)).block());
+    }
+
+    @Test
+    @DisplayName("Транзакция, не получившая блокировку, повторяется")
+    void testRetryOnLockFailure() {
+        AtomicInteger attempts = new AtomicInteger();
+        when(walletRepository.depositAndGetBalance(walletId, 100)).thenReturn(Mono.defer(() ->
+                attempts.incrementAndGet() < 3
+                        ? Mono.error(new CannotAcquireLockException("lock timeout"))
+                        : Mono.just(100L)));
+
+        assertEquals(100L, walletService.operateOnWallet(deposit(100, null)).block());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("После исчерпания попыток возвращается конфликт")
+    void testConflictAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        when(walletRepository.depositAndGetBalance(walletId, 100)).thenReturn(Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new CannotAcquireLockException("lock timeout"));
+        }));
+
+        assertThrows(WalletConflictException.class, () -> walletService.operateOnWallet(deposit(100, null)).block());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Операция сверх предела одновременных операций над кошельком отклоняется сразу")
+    void testShedWhenWalletBusy() {
+        Sinks.One<Long> pending = Sinks.one();
+        when(walletRepository.depositAndGetBalance(walletId, 100)).thenReturn(pending.asMono());
+
+        Mono<Long> first = walletService.operateOnWallet(deposit(100, null)).cache();
+        first.subscribe();
+
+        assertThrows(WalletTooManyRequestsException.class,
+                () -> walletService.operateOnWallet(deposit(100, null)).block());
+        pending.tryEmitValue(100L);
+        assertEquals(100L, first.block());
+        assertEquals(0, walletService.inFlightWallets());
+    }
+
+    @Test
+    @DisplayName("Повтор запроса с тем же ключом возвращает исходный баланс, с другой операцией — конфликт")
+    void testIdempotentReplay() {
+        when(walletRepository.depositAndGetBalance(eq(walletId), anyLong())).thenReturn(Mono.just(1200L));
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(Mono.just(false));
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(Mono.just(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 100, 1100, "key-1")));
+
+        assertEquals(1100L, walletService.operateOnWallet(deposit(100, "key-1")).block());
+        assertThrows(WalletIdempotencyConflictException.class,
+                () -> walletService.operateOnWallet(deposit(200, "key-1")).block());
+    }
+
+    @Test
+    @DisplayName("Повтор снятия, обнулившего кошелёк, возвращает исходный баланс, а не отказ")
+    void testDrainedWithdrawalReplay() {
+        when(walletRepository.withdrawAndGetBalance(walletId, 100))
+                .thenReturn(Mono.just(new ReactiveWalletRepository.WithdrawResult(null, true)));
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(Mono.just(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100, 0, "key-1")));
+        when(ledgerRepository.findByIdempotencyKey("key-2")).thenReturn(Mono.empty());
+
+        assertEquals(0L, walletService.operateOnWallet(new WalletOperationRequest(walletId,
+                WalletOperationRequest.OperationType.WITHDRAW, 100, "key-1")).block());
+        assertThrows(WalletInsufficientFundsException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100, "key-2"))
+                .block());
+    }
+}
@@ -0,0 +1,208 @@
+package ru.walletservice;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletRepository;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Время запуска сервиса и время до первого успешного запроса в обычном режиме и в режиме быстрого старта.
+ * <p>
+ * Каждый вариант запускается в отдельной JVM из исполняемого jar сборки (свойство {@code wallet.startup.jar}),
+ * распакованного так же, как в образе docker/Dockerfile: архив CDS не принимает классы из каталогов и из вложенных jar.
+ * Режим AOT замеряется, если сборка запущена с {@code -PfastStartup}. Архив CDS создаётся пробным запуском
+ * перед замером.
+ * <p>
+ * Запускается только задачей {@code ./gradlew startupBenchmark}, которая собирает jar и передаёт путь к нему.
+ */
+@PostgresIntegrationTest
+@Tag("startup")
+@EnabledIfSystemProperty(named = "wallet.startup.jar", matches = ".+")
+class StartupTimeBenchmarkTest {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final Pattern PROCESS_RUNNING = Pattern.compile("process running for ([0-9.]+)\\)");
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @TempDir
+    private Path tempDir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    @DisplayName("Время запуска и первого успешного запроса: обычный режим, быстрый старт, AOT и CDS")
+    void testStartupTime() throws Exception {
+        UUID walletId = walletRepository.save(new Wallet(null, 0)).getWalletId();
+        Path jar = extract(Path.of(System.getProperty("wallet.startup.jar")));
+
+        List<Startup> startups = new ArrayList<>();
+        startups.add(start("default", jar, List.of(), walletId));
+        List<String> fastStartup = List.of("-Dspring.profiles.active=fast-startup");
+        startups.add(start("fast-startup", jar, fastStartup, walletId));
+        String name = "fast-startup";
+        if (Boolean.getBoolean("wallet.startup.aot")) {
+            fastStartup = with(fastStartup, "-Dspring.aot.enabled=true");
+            name += " + AOT";
+            startups.add(start(name, jar, fastStartup, walletId));
+        }
+
+        Path archive = tempDir.resolve("application.jsa");
+        train(jar, with(fastStartup, "-XX:ArchiveClassesAtExit=" + archive));
+        assertTrue(Files.exists(archive));
+        startups.add(start(name + " + CDS", jar, with(fastStartup, "-XX:SharedArchiveFile=" + archive), walletId));
+
+        for (Startup startup : startups) {
+            System.out.printf("startup %-26s started in %5d ms, first successful request after %5d ms%n",
+                    startup.name(), startup.startedMillis(), startup.firstRequestMillis());
+        }
+    }
+
+    /**
+     * Запускает сервис и ждёт первого успешного запроса баланса.
+     *
+     * @return Время запуска по журналу Spring Boot и время от запуска JVM до ответа 200.
+     */
+    private Startup start(String name, Path jar, List<String> options, UUID walletId) throws Exception {
+        int port = freePort();
+        Path log = tempDir.resolve(name.replaceAll("\\W+", "-") + ".log");
+        long launched = System.nanoTime();
+        Process process = launch(jar, options, log, "--server.port=" + port);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/api/v1/wallets/" + walletId)).build();
+            while (!succeeded(request)) {
+                if (!process.isAlive()) {
+                    fail(name + " exited with " + process.exitValue() + ":\n" + Files.readString(log));
+                }
+                if (System.nanoTime() - launched > TIMEOUT.toNanos()) {
+                    fail(name + " did not answer within " + TIMEOUT + ":\n" + Files.readString(log));
+                }
+                Thread.sleep(10);
+            }
+            long firstRequestMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched);
+            Matcher started = PROCESS_RUNNING.matcher(Files.readString(log));
+            assertTrue(started.find(), "no startup line in the log of " + name);
+            return new Startup(name, (long) (Double.parseDouble(started.group(1)) * 1000), firstRequestMillis);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Пробный запуск для архива CDS: контекст поднимается и закрывается после обновления, до запуска веб-сервера.
+     */
+    private void train(Path jar, List<String> options) throws Exception {
+        Path log = tempDir.resolve("training.log");
+        await("training run", launch(jar, with(options, "-Dspring.context.exit=onRefresh"), log), log);
+    }
+
+    /**
+     * Распаковывает исполняемый jar: приложение и зависимости отдельными jar-файлами.
+     *
+     * @return Jar приложения.
+     */
+    private Path extract(Path bootJar) throws Exception {
+        Path destination = tempDir.resolve("application");
+        Path log = tempDir.resolve("extract.log");
+        Process process = new ProcessBuilder(java(), "-Djarmode=tools", "-jar", bootJar.toString(),
+                "extract", "--destination", destination.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        await("extraction", process, log);
+        return destination.resolve(bootJar.getFileName());
+    }
+
+    private static void await(String name, Process process, Path log) throws Exception {
+        if (!process.waitFor(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            fail(name + " did not finish within " + TIMEOUT + ":\n" + Files.readString(log));
+        }
+        assertEquals(0, process.exitValue(), () -> name + " failed:\n" + readQuietly(log));
+    }
+
+    private Process launch(Path jar, List<String> options, Path log, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(java());
+        command.addAll(options);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile());
+        // та же база, что у @PostgresIntegrationTest
+        Map<String, String> test = System.getenv();
+        Map<String, String> environment = builder.environment();
+        environment.put("SPRING_DATASOURCE_URL", test.get("WALLET_TEST_DATASOURCE_URL"));
+        environment.put("SPRING_DATASOURCE_USERNAME", test.getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr"));
+        environment.put("SPRING_DATASOURCE_PASSWORD", test.getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd"));
+        return builder.start();
+    }
+
+    private boolean succeeded(HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException ex) {
+            // сервер ещё не слушает порт
+            return false;
+        }
+    }
+
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static List<String> with(List<String> options, String option) {
+        List<String> result = new ArrayList<>(options);
+        result.add(option);
+        return result;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String readQuietly(Path log) {
+        try {
+            return Files.readString(log);
+        } catch (IOException ex) {
+            return ex.toString();
+        }
+    }
+
+    private record Startup(String name, long startedMillis, long firstRequestMillis) {}
+}
@@ -0,0 +1,20 @@
+package ru.walletservice.config;
+
+import org.junit.jupiter.api.Tag;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Замер производительности: печатает время и пропускную способность, не проверяя их.
+ * <p>
+ * Такие тесты исключены из {@code ./gradlew test}, чтобы результат сборки не зависел от скорости машины;
+ * их запускает задача {@code ./gradlew benchmark}, которая показывает вывод тестов в консоли.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Tag("benchmark")
+public @interface PerformanceTest {
+}
@@ -0,0 +1,27 @@
+package ru.walletservice.config;
+
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Интеграционный тест против настоящего PostgreSQL.
+ * <p>
+ * Тест запускается, только если задана переменная окружения {@code WALLET_TEST_DATASOURCE_URL},
+ * например для базы из docker/docker-compose.yml:
+ * {@code WALLET_TEST_DATASOURCE_URL=jdbc:postgresql://localhost:5432/walletservice ./gradlew test}.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@SpringBootTest(properties = {
+        "spring.datasource.url=${WALLET_TEST_DATASOURCE_URL}",
+        "spring.datasource.username=${WALLET_TEST_DATASOURCE_USERNAME:usr}",
+        "spring.datasource.password=${WALLET_TEST_DATASOURCE_PASSWORD:pwd}"
+})
+@EnabledIfEnvironmentVariable(named = "WALLET_TEST_DATASOURCE_URL", matches = ".+")
+public @interface PostgresIntegrationTest {
+}
@@ -0,0 +1,112 @@
+package ru.walletservice.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource firstReplica;
+    private DataSource secondReplica;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = dataSource();
+        firstReplica = dataSource();
+        secondReplica = dataSource();
+    }
+
+    private static DataSource dataSource() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        return dataSource;
+    }
+
+    private ReplicaRoutingDataSource routing(WalletProperties.ReplicaSelection selection) {
+        return new ReplicaRoutingDataSource(primary, List.of(firstReplica, secondReplica), selection);
+    }
+
+    @Test
+    @DisplayName("Реплики выдают соединения по очереди")
+    void testRoundRobin() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(WalletProperties.ReplicaSelection.ROUND_ROBIN);
+
+        for (int i = 0; i < 4; i++) {
+            routing.getConnection().close();
+        }
+
+        assertEquals(List.of(2L, 2L), routing.replicaReads());
+        assertEquals(0, routing.primaryReads());
+    }
+
+    @Test
+    @DisplayName("Соединение берётся с реплики с наименьшим числом занятых соединений")
+    void testLeastLoaded() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(WalletProperties.ReplicaSelection.LEAST_LOADED);
+
+        Connection held = routing.getConnection();
+        routing.getConnection().close();
+        routing.getConnection().close();
+
+        assertEquals(List.of(1L, 2L), routing.replicaReads());
+        held.close();
+        held.close();
+        routing.getConnection().close();
+        routing.getConnection().close();
+        assertEquals(List.of(2L, 3L), routing.replicaReads());
+    }
+
+    @Test
+    @DisplayName("Внутри onPrimary чтение выполняется на основном сервере")
+    void testPinnedToPrimary() {
+        ReplicaRoutingDataSource routing = routing(WalletProperties.ReplicaSelection.ROUND_ROBIN);
+
+        ReplicaRouting.onPrimary(() -> {
+            try (Connection connection = routing.getConnection()) {
+                return connection;
+            } catch (SQLException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        assertEquals(1, routing.primaryReads());
+        assertEquals(List.of(0L, 0L), routing.replicaReads());
+    }
+
+    @Test
+    @DisplayName("Недоступная реплика пропускается, без реплик чтение выполняется на основном сервере")
+    void testFailover() throws SQLException {
+        when(firstReplica.getConnection()).thenThrow(new SQLException("connection refused"));
+        ReplicaRoutingDataSource routing = routing(WalletProperties.ReplicaSelection.ROUND_ROBIN);
+
+        routing.getConnection().close();
+        routing.getConnection().close();
+        assertEquals(List.of(0L, 2L), routing.replicaReads());
+
+        when(secondReplica.getConnection()).thenThrow(new SQLException("connection refused"));
+        routing.getConnection().close();
+        assertEquals(1, routing.primaryReads());
+    }
+
+    @Test
+    @DisplayName("Соединение с явными учётными данными выдаёт основной сервер")
+    void testCredentialsGoToPrimary() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(primary.getConnection("usr", "pwd")).thenReturn(connection);
+        ReplicaRoutingDataSource routing = routing(WalletProperties.ReplicaSelection.ROUND_ROBIN);
+
+        assertSame(connection, routing.getConnection("usr", "pwd"));
+        assertEquals(List.of(0L, 0L), routing.replicaReads());
+    }
+}
@@ -0,0 +1,65 @@
+package ru.walletservice.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletRepository;
+import ru.walletservice.service.WalletService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Маршрутизация чтений на реплику. Роль реплики играет та же база, подключённая отдельным пулом.
+ */
+@PostgresIntegrationTest
+@TestPropertySource(properties = {
+        "wallet.replicas.enabled=true",
+        "wallet.replicas.urls=${WALLET_TEST_DATASOURCE_URL}",
+        "wallet.replicas.maximum-pool-size=2",
+        "wallet.cache.enabled=false"
+})
+class ReplicaRoutingIntegrationTest {
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaDataSource;
+
+    @Test
+    @DisplayName("Чтения выполняются на реплике, изменения и чтения своих записей — на основном сервере")
+    void testReadsRoutedToReplica() {
+        UUID walletId = walletRepository.save(new Wallet(null, 100)).getWalletId();
+        long replicaReads = replicaReads();
+        long primaryReads = replicaDataSource.primaryReads();
+
+        assertEquals(100L, walletService.getBalance(walletId));
+        List<WalletBalance> balances = new ArrayList<>();
+        walletService.getBalances(List.of(walletId), balances::add);
+        assertEquals(List.of(new WalletBalance(walletId, 100L)), balances);
+        assertEquals(replicaReads + 2, replicaReads());
+
+        assertEquals(150L, walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50)));
+        assertEquals(replicaReads + 2, replicaReads());
+
+        assertEquals(150L, walletService.getBalance(walletId, true));
+        assertEquals(replicaReads + 2, replicaReads());
+        assertEquals(primaryReads + 1, replicaDataSource.primaryReads());
+    }
+
+    private long replicaReads() {
+        return replicaDataSource.replicaReads().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -4,7 +4,13 @@ import org.mockito.Mockito;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import ru.walletservice.service.ReplicaReadPolicy;
+import ru.walletservice.service.WalletBatchService;
+import ru.walletservice.service.WalletChangeFeed;
+import ru.walletservice.service.WalletExportService;
+import ru.walletservice.service.WalletProvisioningService;
 import ru.walletservice.service.WalletService;
+import ru.walletservice.service.WalletTransferService;
 
 @TestConfiguration
 public class WalletTestConfiguration {
@@ -13,4 +19,41 @@ public class WalletTestConfiguration {
     WalletService walletService() {
         return Mockito.mock(WalletService.class);
     }
+
+    @Bean
+    @Primary
+    WalletBatchService walletBatchService() {
+        return Mockito.mock(WalletBatchService.class);
+    }
+
+    @Bean
+    @Primary
+    WalletTransferService walletTransferService() {
+        return Mockito.mock(WalletTransferService.class);
+    }
+
+    @Bean
+    @Primary
+    WalletExportService walletExportService() {
+        return Mockito.mock(WalletExportService.class);
+    }
+
+    @Bean
+    @Primary
+    WalletProvisioningService walletProvisioningService() {
+        return Mockito.mock(WalletProvisioningService.class);
+    }
+
+    @Bean
+    @Primary
+    WalletChangeFeed walletChangeFeed() {
+        return Mockito.mock(WalletChangeFeed.class);
+    }
+
+    @Bean
+    ReplicaReadPolicy replicaReadPolicy() {
+        WalletProperties properties = new WalletProperties();
+        properties.getReplicas().setEnabled(true);
+        return new ReplicaReadPolicy(properties);
+    }
 }
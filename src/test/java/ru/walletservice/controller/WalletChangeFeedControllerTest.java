@@ -0,0 +1,76 @@
+package ru.walletservice.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.walletservice.config.WalletTestConfiguration;
+import ru.walletservice.service.WalletChangeFeed;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = WalletChangeFeedController.class, properties = "wallet.outbox.enabled=true")
+@Import(WalletTestConfiguration.class)
+class WalletChangeFeedControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletChangeFeed changeFeed;
+
+    @Test
+    @DisplayName("Лента изменений отдаётся асинхронным потоком server-sent events с курсора из Last-Event-ID")
+    void testChangesFromLastEventId() throws Exception {
+        when(changeFeed.subscribe("7")).thenReturn(completed("id:8\nevent:balance\ndata:{}\n\n"));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/wallets/changes")
+                        .header("Last-Event-ID", "7")
+                        .param("cursor", "1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/event-stream;charset=UTF-8"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().string("id:8\nevent:balance\ndata:{}\n\n"));
+    }
+
+    @Test
+    @DisplayName("Без Last-Event-ID используется курсор из параметра запроса")
+    void testChangesFromCursorParameter() throws Exception {
+        when(changeFeed.subscribe("3")).thenReturn(completed(":\n\n"));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/wallets/changes")
+                        .param("cursor", "3")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().string(":\n\n"));
+    }
+
+    private static ResponseBodyEmitter completed(String events) throws Exception {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        emitter.send(events.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_EVENT_STREAM);
+        emitter.complete();
+        return emitter;
+    }
+}
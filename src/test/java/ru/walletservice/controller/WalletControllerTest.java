@@ -13,18 +13,39 @@ import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.walletservice.config.WalletTestConfiguration;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
 import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
 import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
+import ru.walletservice.exception.walletException.WalletInvalidTransferException;
 import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.WalletBalance;
 import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.model.WalletTransferRequest;
+import ru.walletservice.model.WalletTransferResult;
+import ru.walletservice.service.ReplicaReadPolicy;
+import ru.walletservice.service.WalletBatchService;
 import ru.walletservice.service.WalletService;
+import ru.walletservice.service.WalletTransferService;
 
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -40,11 +61,17 @@ class WalletControllerTest {
     @Autowired
     private WalletService walletService;
 
+    @Autowired
+    private WalletBatchService walletBatchService;
+
+    @Autowired
+    private WalletTransferService walletTransferService;
+
     @Test
     @DisplayName("Успешное получение баланса кошелька по uuid")
     void testGetBalanceSuccess() throws Exception {
         UUID walletId = UUID.randomUUID();
-        double balance = 100.50;
+        long balance = 10050;
         when(walletService.getBalance(walletId)).thenReturn(balance);
 
         mockMvc.perform(get("/api/v1/wallets/{walletId}", walletId)
@@ -75,8 +102,8 @@ class WalletControllerTest {
     void testOperateOnWalletSuccess(
             UUID walletId,
             WalletOperationRequest.OperationType operationType,
-            double amount,
-            double expectedAmount) throws Exception {
+            long amount,
+            long expectedAmount) throws Exception {
 
         WalletOperationRequest request = new WalletOperationRequest(
                 walletId, WalletOperationRequest.OperationType.DEPOSIT, amount);
@@ -94,6 +121,16 @@ class WalletControllerTest {
                 .andExpect(jsonPath("$.timestamp").exists());
     }
 
+    @Test
+    @DisplayName("Дробная сумма отклоняется, а не округляется")
+    void testOperateOnWalletRejectsFractionalAmount() throws Exception {
+        mockMvc.perform(post("/api/v1/wallets")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"walletId\":\"" + UUID.randomUUID()
+                                + "\",\"operationType\":\"DEPOSIT\",\"amount\":10.99}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @ParameterizedTest
     @MethodSource("provideWalletOperationErrorData")
     @DisplayName("Ошибки выполнения операций над кошельком")
@@ -121,27 +158,198 @@ class WalletControllerTest {
                 .andExpect(jsonPath("$.path").value("/api/v1/wallets"));
     }
 
+    @Test
+    @DisplayName("Отклонённый запрос сообщает, когда повторить")
+    void testOperateOnWalletRetryAfter() throws Exception {
+        WalletOperationRequest request =
+                new WalletOperationRequest(UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, 10);
+        when(walletService.operateOnWallet(any())).thenThrow(
+                new WalletTooManyRequestsException("Too many concurrent operations", Duration.ofMillis(1500)));
+
+        mockMvc.perform(post("/api/v1/wallets")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(request)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+    }
+
+    @Test
+    @DisplayName("Пакет операций возвращает результат по каждой операции")
+    void testOperateOnWalletsBatch() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        UUID missingWalletId = UUID.randomUUID();
+        when(walletBatchService.operateOnWallets(any())).thenReturn(List.of(
+                WalletOperationResult.success(walletId, 150L),
+                WalletOperationResult.failure(missingWalletId, WalletOperationResult.Error.WALLET_NOT_FOUND)));
+        String requestBody = new ObjectMapper().writeValueAsString(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50),
+                new WalletOperationRequest(missingWalletId, WalletOperationRequest.OperationType.DEPOSIT, 50)));
+
+        mockMvc.perform(post("/api/v1/wallets/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].balance").value(150L))
+                .andExpect(jsonPath("$.results[1].error").value("WALLET_NOT_FOUND"));
+    }
+
+    @Test
+    @DisplayName("Пакет операций в формате NDJSON")
+    void testOperateOnWalletsNdjson() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        when(walletBatchService.operateOnWallets(any())).thenAnswer(invocation -> {
+            Iterator<WalletOperationRequest> requests = invocation.getArgument(0);
+            int count = 0;
+            while (requests.hasNext()) {
+                requests.next();
+                count++;
+            }
+            return List.of(WalletOperationResult.success(walletId, count));
+        });
+        ObjectMapper objectMapper = new ObjectMapper();
+        String requestBody = objectMapper.writeValueAsString(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 1)) + "\n"
+                + objectMapper.writeValueAsString(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 1)) + "\n";
+
+        mockMvc.perform(post("/api/v1/wallets/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(requestBody))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].balance").value(2L));
+    }
+
+    @Test
+    @DisplayName("Чтение с токеном согласованности после изменения выполняется на основном сервере")
+    void testReadYourWritesToken() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        WalletOperationRequest request = new WalletOperationRequest(
+                walletId, WalletOperationRequest.OperationType.DEPOSIT, 100);
+        when(walletService.operateOnWallet(ArgumentMatchers.refEq(request))).thenReturn(100L);
+        when(walletService.getBalance(walletId, true)).thenReturn(100L);
+        when(walletService.getBalance(walletId)).thenReturn(0L);
+
+        String token = mockMvc.perform(post("/api/v1/wallets")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER))
+                .andReturn().getResponse().getHeader(ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER);
+
+        mockMvc.perform(get("/api/v1/wallets/{walletId}", walletId)
+                        .header(ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.amount").value(100L));
+        mockMvc.perform(get("/api/v1/wallets/{walletId}", walletId)
+                        .header(ReplicaReadPolicy.CONSISTENCY_TOKEN_HEADER, "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.amount").value(0L));
+    }
+
+    @Test
+    @DisplayName("Массовое получение балансов потоком")
+    void testGetBalances() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        UUID missingWalletId = UUID.randomUUID();
+        doAnswer(invocation -> {
+            Consumer<WalletBalance> consumer = invocation.getArgument(1);
+            consumer.accept(new WalletBalance(walletId, 100L));
+            consumer.accept(new WalletBalance(missingWalletId, null));
+            return null;
+        }).when(walletService).getBalances(any(), any());
+
+        MvcResult result = mockMvc.perform(post("/api/v1/wallets/balances")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(List.of(walletId, missingWalletId))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.timestamp").exists())
+                .andExpect(jsonPath("$.balances[0].walletId").value(walletId.toString()))
+                .andExpect(jsonPath("$.balances[0].balance").value(100L))
+                .andExpect(jsonPath("$.balances[1].balance").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Массовое получение балансов по повторяющемуся параметру ids")
+    void testGetBalancesByIds() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        doAnswer(invocation -> {
+            Consumer<WalletBalance> consumer = invocation.getArgument(1);
+            consumer.accept(new WalletBalance(walletId, 100L));
+            return null;
+        }).when(walletService).getBalances(any(), any());
+
+        MvcResult result = mockMvc.perform(get("/api/v1/wallets").param("ids", walletId.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balances[0].balance").value(100L));
+    }
+
+    @Test
+    @DisplayName("Перевод возвращает балансы отправителя и получателей")
+    void testTransfer() throws Exception {
+        UUID fromWalletId = UUID.randomUUID();
+        UUID toWalletId = UUID.randomUUID();
+        UUID transferId = UUID.randomUUID();
+        doReturn(new WalletTransferResult(transferId, 70L, List.of(new WalletBalance(toWalletId, 30L))))
+                .when(walletTransferService).transfer(any());
+
+        mockMvc.perform(post("/api/v1/wallets/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(
+                                new WalletTransferRequest(fromWalletId, toWalletId, 30))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.transferId").value(transferId.toString()))
+                .andExpect(jsonPath("$.balance").value(70))
+                .andExpect(jsonPath("$.legs[0].walletId").value(toWalletId.toString()))
+                .andExpect(jsonPath("$.legs[0].balance").value(30));
+    }
+
+    @Test
+    @DisplayName("Неверный перевод отклоняется с кодом 400")
+    void testInvalidTransfer() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        doThrow(new WalletInvalidTransferException("Transfer to the source wallet."))
+                .when(walletTransferService).transfer(any());
+
+        mockMvc.perform(post("/api/v1/wallets/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(
+                                new WalletTransferRequest(walletId, walletId, 30))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Transfer to the source wallet."))
+                .andExpect(jsonPath("$.path").value("/api/v1/wallets/transfers"));
+    }
+
     private static Stream<Arguments> provideWalletOperationSuccessData() {
         return Stream.of(
                 Arguments.of(UUID.randomUUID(),
                         WalletOperationRequest.OperationType.DEPOSIT,
-                        100.50,
-                        200.50
+                        10050,
+                        20050
                 ),
                 Arguments.of(UUID.randomUUID(),
                         WalletOperationRequest.OperationType.DEPOSIT,
-                        294.20,
-                        529.63
+                        29420,
+                        52963
                 ),
                 Arguments.of(UUID.randomUUID(),
                         WalletOperationRequest.OperationType.WITHDRAW,
-                        200.43,
-                        1198.17
+                        20043,
+                        119817
                 ),
                 Arguments.of(UUID.randomUUID(),
                         WalletOperationRequest.OperationType.WITHDRAW,
-                        1000.0,
-                        2.0
+                        100000,
+                        200
                 )
         );
     }
@@ -165,6 +373,30 @@ class WalletControllerTest {
                         new WalletInsufficientFundsException("Insufficient funds"),
                         "Insufficient funds",
                         400
+                ),
+                Arguments.of(UUID.randomUUID(),
+                        WalletOperationRequest.OperationType.DEPOSIT,
+                        new ConcurrentModificationException("Wallet was updated by another user"),
+                        "Wallet was updated by another user",
+                        409
+                ),
+                Arguments.of(UUID.randomUUID(),
+                        WalletOperationRequest.OperationType.DEPOSIT,
+                        new WalletConflictException("Wallet was updated by another user", Duration.ofSeconds(1)),
+                        "Wallet was updated by another user",
+                        409
+                ),
+                Arguments.of(UUID.randomUUID(),
+                        WalletOperationRequest.OperationType.DEPOSIT,
+                        new WalletTooManyRequestsException("Too many concurrent operations", Duration.ofSeconds(1)),
+                        "Too many concurrent operations",
+                        429
+                ),
+                Arguments.of(UUID.randomUUID(),
+                        WalletOperationRequest.OperationType.DEPOSIT,
+                        new WalletIdempotencyConflictException("Idempotency key was used for a different operation"),
+                        "Idempotency key was used for a different operation",
+                        422
                 )
         );
     }
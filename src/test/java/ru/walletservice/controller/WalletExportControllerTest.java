@@ -0,0 +1,71 @@
+package ru.walletservice.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.walletservice.config.WalletTestConfiguration;
+import ru.walletservice.service.WalletExportService;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(WalletExportController.class)
+@Import(WalletTestConfiguration.class)
+class WalletExportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletExportService exportService;
+
+    @Test
+    @DisplayName("Выгрузка в CSV вложением с границами баланса из параметров")
+    void testExportCsv() throws Exception {
+        when(exportService.writeCsv(eq(10L), isNull(), eq(false), any())).thenAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(3);
+            out.write("wallet_id,balance\n".getBytes(StandardCharsets.UTF_8));
+            return new WalletExportService.ExportSummary(0, 0);
+        });
+
+        mockMvc.perform(get("/api/v1/wallets/export")
+                        .param("minBalance", "10")
+                        .param("reconcile", "false")
+                        .accept(WalletExportController.TEXT_CSV_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"wallets.csv\""))
+                .andExpect(content().string("wallet_id,balance\n"));
+    }
+
+    @Test
+    @DisplayName("Выгрузка в NDJSON со сверкой по умолчанию")
+    void testExportNdjson() throws Exception {
+        when(exportService.writeNdjson(isNull(), isNull(), eq(true), any())).thenAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(3);
+            out.write("{\"walletId\":\"00000000-0000-0000-0000-000000000001\",\"balance\":5}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            return new WalletExportService.ExportSummary(1, 0);
+        });
+
+        mockMvc.perform(get("/api/v1/wallets/export")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"walletId\":\"00000000-0000-0000-0000-000000000001\",\"balance\":5}\n"));
+    }
+}
@@ -0,0 +1,82 @@
+package ru.walletservice.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.walletservice.config.WalletTestConfiguration;
+import ru.walletservice.exception.walletException.WalletAlreadyExistsException;
+import ru.walletservice.service.WalletProvisioningService;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(WalletProvisioningController.class)
+@Import(WalletTestConfiguration.class)
+class WalletProvisioningControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletProvisioningService provisioningService;
+
+    @Test
+    @DisplayName("Кошельки со сгенерированными ID создаются и возвращаются в CSV")
+    void testGenerate() throws Exception {
+        when(provisioningService.generate(eq(2L), eq(50L), any())).thenAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("wallet_id,balance\n".getBytes(StandardCharsets.UTF_8));
+            return new WalletProvisioningService.ProvisioningSummary(2, Duration.ofMillis(1));
+        });
+
+        mockMvc.perform(post("/api/v1/wallets/provisioning")
+                        .param("count", "2")
+                        .param("initialBalance", "50"))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string("wallet_id,balance\n"));
+    }
+
+    @Test
+    @DisplayName("Загрузка CSV возвращает количество созданных кошельков и скорость")
+    void testImportCsv() throws Exception {
+        doReturn(new WalletProvisioningService.ProvisioningSummary(3, Duration.ofMillis(2)))
+                .when(provisioningService).importCsv(any(InputStream.class));
+
+        mockMvc.perform(post("/api/v1/wallets/provisioning")
+                        .contentType(WalletExportController.TEXT_CSV_VALUE)
+                        .content("wallet_id,balance\n"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.wallets").value(3))
+                .andExpect(jsonPath("$.elapsedMillis").value(2))
+                .andExpect(jsonPath("$.walletsPerSecond").value(1500));
+    }
+
+    @Test
+    @DisplayName("Загрузка с существующим кошельком возвращает 409")
+    void testImportExistingWallet() throws Exception {
+        doThrow(new WalletAlreadyExistsException("Wallet already exists."))
+                .when(provisioningService).importCsv(any(InputStream.class));
+
+        mockMvc.perform(post("/api/v1/wallets/provisioning")
+                        .contentType(WalletExportController.TEXT_CSV_VALUE)
+                        .content("00000000-0000-0000-0000-000000000001,1\n"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("Wallet already exists."));
+    }
+}
@@ -0,0 +1,169 @@
+package ru.walletservice.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Задержка изменения баланса в зависимости от размера таблицы: прежняя таблица кошельков (одна куча,
+ * fillfactor 100) и секционированная таблица миграции 005 (16 секций, fillfactor 80).
+ * <p>
+ * Таблицы создаются в отдельной схеме. Для каждого размера выводятся медиана и 99-й перцентиль задержки
+ * {@code UPDATE ... SET balance = balance + 1}, доля HOT-обновлений и прирост размера таблицы с индексами;
+ * замер запускается задачей {@code ./gradlew benchmark}.
+ */
+@PostgresIntegrationTest
+@PerformanceTest
+class WalletPartitioningBenchmarkTest {
+
+    private static final String SCHEMA = "partitioning_benchmark";
+    private static final int[] TABLE_SIZES = {100_000, 1_000_000};
+    private static final int CLIENTS = 8;
+    private static final int WARMUP_UPDATES_PER_CLIENT = 1_000;
+    private static final int UPDATES_PER_CLIENT = 5_000;
+    /** Таблица и её секции; pg_partition_tree не возвращает строк для несекционированной таблицы. */
+    private static final String RELATIONS = "select ?::regclass union select relid from pg_partition_tree(?::regclass)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String url;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        jdbcTemplate.execute("create schema " + SCHEMA);
+        String baseUrl = System.getenv("WALLET_TEST_DATASOURCE_URL");
+        url = baseUrl + (baseUrl.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA + ",public";
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        // страницы таблиц теста записываются на диск сейчас, а не во время следующих тестов
+        jdbcTemplate.execute("checkpoint");
+    }
+
+    @Test
+    @DisplayName("Задержка изменения баланса в одной куче и в секционированной таблице при росте числа кошельков")
+    void testUpdateLatencyByTableSize() throws Exception {
+        for (int size : TABLE_SIZES) {
+            Result plain = measure("plain_wallets", size, """
+                    create table plain_wallets (wallet_id uuid primary key, balance bigint not null default 0)
+                    """);
+            Result partitioned = measure("wallets_partitioned", size, "select create_partitioned_wallets(16, 80)");
+            System.out.printf("%,d wallets: plain p50 %d us, p99 %d us, HOT %d%%, +%d kB; "
+                            + "partitioned p50 %d us, p99 %d us, HOT %d%%, +%d kB%n", size,
+                    plain.p50Micros(), plain.p99Micros(), plain.hotPercent(), plain.growthKb(),
+                    partitioned.p50Micros(), partitioned.p99Micros(), partitioned.hotPercent(),
+                    partitioned.growthKb());
+        }
+    }
+
+    private Result measure(String table, int size, String ddl) throws Exception {
+        JdbcTemplate schema = new JdbcTemplate(new DriverManagerDataSource(url, username(), password()));
+        schema.execute("drop table if exists " + table);
+        schema.execute(ddl);
+        schema.update("insert into " + table + " (wallet_id, balance) "
+                + "select uuid_generate_v4(), 0 from generate_series(1, ?)", size);
+        schema.execute("vacuum analyze " + table);
+        List<UUID> walletIds = schema.queryForList("select wallet_id from " + table, UUID.class);
+        String update = "update " + table + " set balance = balance + 1 where wallet_id = ?";
+
+        run(walletIds, update, WARMUP_UPDATES_PER_CLIENT);
+        long sizeBefore = totalSize(schema, table);
+        Counters before = counters(schema, table);
+        long[] latencies = run(walletIds, update, UPDATES_PER_CLIENT);
+        // статистика таблиц передаётся серверу с задержкой
+        Thread.sleep(1_000);
+        Counters after = counters(schema, table);
+        long growthKb = (totalSize(schema, table) - sizeBefore) / 1024;
+
+        assertEquals((long) CLIENTS * (WARMUP_UPDATES_PER_CLIENT + UPDATES_PER_CLIENT),
+                schema.queryForObject("select sum(balance) from " + table, Long.class));
+        Arrays.sort(latencies);
+        long updates = after.updates() - before.updates();
+        long hotPercent = updates == 0 ? 0 : 100 * (after.hotUpdates() - before.hotUpdates()) / updates;
+        return new Result(latencies[latencies.length / 2] / 1_000,
+                latencies[(int) (latencies.length * 0.99)] / 1_000, hotPercent, growthKb);
+    }
+
+    /**
+     * Каждый клиент на своём соединении изменяет балансы случайных кошельков.
+     *
+     * @return Задержки всех изменений в наносекундах.
+     */
+    private long[] run(List<UUID> walletIds, String update, int updatesPerClient) throws Exception {
+        long[] latencies = new long[CLIENTS * updatesPerClient];
+        try (ExecutorService executor = Executors.newFixedThreadPool(CLIENTS)) {
+            List<Future<?>> futures = new ArrayList<>(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                int offset = c * updatesPerClient;
+                futures.add(executor.submit(() -> {
+                    try (Connection connection = DriverManager.getConnection(url, username(), password());
+                         PreparedStatement statement = connection.prepareStatement(update)) {
+                        for (int i = 0; i < updatesPerClient; i++) {
+                            statement.setObject(1, walletIds.get(ThreadLocalRandom.current().nextInt(walletIds.size())));
+                            long started = System.nanoTime();
+                            statement.executeUpdate();
+                            latencies[offset + i] = System.nanoTime() - started;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * @return Размер таблицы вместе с индексами; для секционированной — сумма по секциям.
+     */
+    private static long totalSize(JdbcTemplate schema, String table) {
+        return schema.queryForObject("""
+                select sum(pg_total_relation_size(relid)) from pg_stat_user_tables where relid in (%s)
+                """.formatted(RELATIONS), Long.class, table, table);
+    }
+
+    private static Counters counters(JdbcTemplate schema, String table) {
+        return schema.queryForObject("""
+                select coalesce(sum(n_tup_upd), 0), coalesce(sum(n_tup_hot_upd), 0)
+                from pg_stat_user_tables where relid in (%s)
+                """.formatted(RELATIONS), (rs, row) -> new Counters(rs.getLong(1), rs.getLong(2)), table, table);
+    }
+
+    private static String username() {
+        return System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr");
+    }
+
+    private static String password() {
+        return System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd");
+    }
+
+    private record Counters(long updates, long hotUpdates) {}
+
+    private record Result(long p50Micros, long p99Micros, long hotPercent, long growthKb) {}
+}
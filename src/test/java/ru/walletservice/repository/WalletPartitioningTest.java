@@ -0,0 +1,81 @@
+package ru.walletservice.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.model.Wallet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Секционированная таблица кошельков: каждый запрос к одному кошельку читает одну секцию.
+ */
+@PostgresIntegrationTest
+class WalletPartitioningTest {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletBatchRepository walletBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Таблица кошельков секционирована по хешу ID, в секциях оставлено место для HOT-обновлений")
+    void testWalletsTableIsHashPartitioned() {
+        assertEquals("p", jdbcTemplate.queryForObject(
+                "select relkind::text from pg_class where oid = 'wallets'::regclass", String.class));
+        List<String> options = jdbcTemplate.queryForList("""
+                select array_to_string(c.reloptions, ',') from pg_inherits i join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'wallets'::regclass
+                """, String.class);
+        assertEquals(16, options.size());
+        options.forEach(option -> assertEquals("fillfactor=80", option));
+    }
+
+    @Test
+    @DisplayName("Чтения и изменения кошелька затрагивают только его секцию")
+    void testQueriesArePartitionPruned() {
+        UUID walletId = walletRepository.save(new Wallet(null, 100)).getWalletId();
+
+        assertEquals(1, partitionsScanned(id -> walletRepository.findBalanceByWalletId(id), walletId));
+        assertEquals(1, partitionsScanned(id -> walletRepository.depositAndGetBalance(id, 1), walletId));
+        assertEquals(1, partitionsScanned(id -> walletRepository.withdrawAndGetBalance(id, 1), walletId));
+        assertEquals(1, partitionsScanned(id -> walletBatchRepository.findBalances(List.of(id)), walletId));
+        assertEquals(1, partitionsScanned(id -> walletBatchRepository.findBalancesAndLock(List.of(id)), walletId));
+        assertEquals(1, partitionsScanned(id -> walletBatchRepository.addToBalances(Map.of(id, 1L)), walletId));
+        // каждый запрос выполнен семь раз: +7 пополнениями, -7 списаниями, +7 пакетным пополнением
+        assertEquals(107L, walletRepository.findBalanceByWalletId(walletId));
+    }
+
+    /**
+     * Выполняет запрос в отдельной транзакции и возвращает число секций, которые он прочитал,
+     * по счётчикам текущей транзакции ({@code pg_stat_xact_user_tables}).
+     */
+    private int partitionsScanned(Consumer<UUID> query, UUID walletId) {
+        // после пяти выполнений pgjdbc выполняет запрос серверным подготовленным оператором
+        for (int i = 0; i < 6; i++) {
+            query.accept(walletId);
+        }
+        return transactionTemplate.execute(status -> {
+            query.accept(walletId);
+            return jdbcTemplate.queryForObject("""
+                    select count(*) from pg_stat_xact_user_tables s join pg_inherits i on i.inhrelid = s.relid
+                    where i.inhparent = 'wallets'::regclass and s.seq_scan + coalesce(s.idx_scan, 0) > 0
+                    """, Integer.class);
+        });
+    }
+}
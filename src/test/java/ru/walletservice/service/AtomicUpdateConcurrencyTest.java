@@ -0,0 +1,74 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@PostgresIntegrationTest
+@TestPropertySource(properties = "wallet.update-strategy=ATOMIC")
+class AtomicUpdateConcurrencyTest {
+
+    private static final int WRITERS = 64;
+    private static final int OPERATIONS_PER_WRITER = 100;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Test
+    @DisplayName("64 параллельных писателя не теряют обновлений")
+    void testNoLostUpdatesUnderParallelWriters() throws Exception {
+        UUID walletId = walletRepository.save(new Wallet(null, 0)).getWalletId();
+
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> withdrawals = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            withdrawals.add(writers.submit(() -> {
+                start.await();
+                int succeeded = 0;
+                for (int j = 0; j < OPERATIONS_PER_WRITER; j++) {
+                    walletService.operateOnWallet(
+                            new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 2));
+                    try {
+                        walletService.operateOnWallet(
+                                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 3));
+                        succeeded++;
+                    } catch (WalletInsufficientFundsException ignored) {
+                        // Допустимый исход: списание не должно уводить баланс в минус.
+                    }
+                }
+                return succeeded;
+            }));
+        }
+        start.countDown();
+
+        int succeededWithdrawals = 0;
+        for (Future<Integer> future : withdrawals) {
+            succeededWithdrawals += future.get(2, TimeUnit.MINUTES);
+        }
+        writers.shutdown();
+
+        long expected = 2L * WRITERS * OPERATIONS_PER_WRITER - 3L * succeededWithdrawals;
+        assertEquals(expected, walletService.getBalance(walletId));
+    }
+}
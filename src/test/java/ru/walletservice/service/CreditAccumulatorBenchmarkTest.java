@@ -0,0 +1,195 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.CreditLogCheckpointRepository;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@PostgresIntegrationTest
+class CreditAccumulatorBenchmarkTest {
+
+    private static final int CLIENTS = 64;
+    private static final int DEPOSITS_PER_CLIENT = 200;
+    private static final int WALLETS = 10;
+
+    @TempDir
+    private Path logDirectory;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletBatchRepository walletBatchRepository;
+
+    @Autowired
+    private WalletLedgerRepository ledgerRepository;
+
+    @Autowired
+    private CreditLogCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private WalletBalanceCache balanceCache;
+
+    @Autowired
+    private WriteConcurrencyLimiter writeLimiter;
+
+    @Autowired
+    private WalletLockStripes lockStripes;
+
+    @Autowired
+    private WalletContentionPolicy contentionPolicy;
+
+    @Autowired
+    private WalletMetrics metrics;
+
+    @Test
+    @DisplayName("Одновременные пополнения горячих кошельков с отложенной записью все доходят до базы")
+    void testConcurrentDepositsReachDatabase() throws Exception {
+        List<UUID> walletIds = createWallets();
+        WalletCreditAccumulator accumulator = accumulator(walletIds);
+        try {
+            depositConcurrently(walletService(accumulator), walletIds);
+        } finally {
+            accumulator.destroy();
+        }
+
+        assertEquals((long) CLIENTS * DEPOSITS_PER_CLIENT, totalBalance(walletIds));
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Пропускная способность пополнений горячих кошельков с отложенной записью и без неё")
+    void testAccumulatorThroughput() throws Exception {
+        List<UUID> direct = createWallets();
+        List<UUID> accumulated = createWallets();
+        WalletCreditAccumulator accumulator = accumulator(accumulated);
+        WalletService accumulating = walletService(accumulator);
+        try {
+            // прогрев JIT и пула соединений, чтобы он не достался первому замеру
+            depositConcurrently(walletService, direct);
+            depositConcurrently(accumulating, accumulated);
+
+            double baseline = depositConcurrently(walletService, direct);
+            double withAccumulator = depositConcurrently(accumulating, accumulated);
+            System.out.printf("%d clients x %d deposits on %d wallets: direct %.0f ops/s, "
+                            + "write-behind %.0f ops/s (x%.1f)%n",
+                    CLIENTS, DEPOSITS_PER_CLIENT, WALLETS, baseline, withAccumulator, withAccumulator / baseline);
+        } finally {
+            accumulator.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("После сбоя подтверждённые пополнения применяются к базе при запуске")
+    void testRecoveryAfterCrash() {
+        List<UUID> walletIds = createWallets();
+        WalletProperties properties = new WalletProperties();
+        properties.getCreditAccumulator().setFlushInterval(Duration.ofHours(1));
+        WalletCreditAccumulator crashed = accumulator(walletIds, properties);
+        WalletService crashedService = walletService(crashed);
+        for (UUID walletId : walletIds) {
+            crashedService.operateOnWallet(deposit(walletId));
+        }
+
+        // сбой: журнал не закрыт, пополнения не записаны в базу
+        assertEquals(0, totalBalance(walletIds));
+        WalletCreditAccumulator restarted = accumulator(walletIds);
+        try {
+            assertEquals(WALLETS, totalBalance(walletIds));
+            assertEquals(1L, walletService(restarted).getBalance(walletIds.get(0)));
+        } finally {
+            restarted.destroy();
+        }
+        accumulator(walletIds).destroy();
+        assertEquals(WALLETS, totalBalance(walletIds));
+    }
+
+    private WalletCreditAccumulator accumulator(List<UUID> walletIds) {
+        return accumulator(walletIds, new WalletProperties());
+    }
+
+    private WalletCreditAccumulator accumulator(List<UUID> walletIds, WalletProperties properties) {
+        properties.getCreditAccumulator().setEnabled(true);
+        properties.getCreditAccumulator().setWalletIds(new HashSet<>(walletIds));
+        properties.getCreditAccumulator().setLogDirectory(logDirectory.toString());
+        return new WalletCreditAccumulator(walletRepository, walletBatchRepository, ledgerRepository,
+                checkpointRepository, transactionOperations, balanceCache, null, properties);
+    }
+
+    private WalletService walletService(WalletCreditAccumulator accumulator) {
+        return new WalletService(walletRepository, walletBatchRepository, ledgerRepository,
+                transactionOperations, null, balanceCache, writeLimiter, lockStripes, contentionPolicy,
+                metrics, accumulator, null, new WalletProperties());
+    }
+
+    /**
+     * {@link #CLIENTS} клиентов одновременно пополняют кошельки по кругу.
+     *
+     * @return Пополнений в секунду.
+     */
+    private static double depositConcurrently(WalletService service, List<UUID> walletIds) throws Exception {
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < DEPOSITS_PER_CLIENT; i++) {
+                        service.operateOnWallet(deposit(walletIds.get((client + i) % walletIds.size())));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return (double) CLIENTS * DEPOSITS_PER_CLIENT * 1e9 / (System.nanoTime() - started);
+    }
+
+    private static WalletOperationRequest deposit(UUID walletId) {
+        return new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 1);
+    }
+
+    private List<UUID> createWallets() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 0)).getWalletId());
+        }
+        return walletIds;
+    }
+
+    private long totalBalance(List<UUID> walletIds) {
+        return walletIds.stream()
+                .mapToLong(walletId -> walletRepository.findByWalletId(walletId).getBalance())
+                .sum();
+    }
+}
@@ -0,0 +1,115 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@PostgresIntegrationTest
+class LedgerOverheadBenchmarkTest {
+
+    private static final int OPERATIONS = 5_000;
+    private static final int WALLETS = 100;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletBatchRepository walletBatchRepository;
+
+    @Autowired
+    private WalletLedgerRepository ledgerRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private WalletBalanceCache balanceCache;
+
+    @Autowired
+    private WriteConcurrencyLimiter writeLimiter;
+
+    @Autowired
+    private WalletLockStripes lockStripes;
+
+    @Autowired
+    private WalletContentionPolicy contentionPolicy;
+
+    @Autowired
+    private WalletMetrics metrics;
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Пропускная способность одиночных операций с журналом и без него")
+    void testLedgerOverhead() {
+        WalletProperties properties = new WalletProperties();
+        properties.getLedger().setEnabled(false);
+        WalletService withoutLedger = new WalletService(walletRepository, walletBatchRepository, ledgerRepository,
+                transactionOperations, null, balanceCache, writeLimiter, lockStripes, contentionPolicy,
+                metrics, null, null, properties);
+
+        // прогрев JIT и пула соединений, чтобы он не достался первому замеру
+        opsPerSecond(withoutLedger, deposits(createWallets(), null));
+        opsPerSecond(walletService, deposits(createWallets(), UUID.randomUUID().toString()));
+
+        double baseline = opsPerSecond(withoutLedger, deposits(createWallets(), null));
+        double withLedger = opsPerSecond(walletService, deposits(createWallets(), UUID.randomUUID().toString()));
+
+        System.out.printf("%d deposits: without ledger %.0f ops/s, with ledger %.0f ops/s (%.1f%% overhead)%n",
+                OPERATIONS, baseline, withLedger, (baseline - withLedger) / baseline * 100);
+    }
+
+    @Test
+    @DisplayName("Повтор операции с тем же ключом не изменяет баланс")
+    void testReplayDoesNotReapply() {
+        UUID walletId = walletRepository.save(new Wallet(null, 0)).getWalletId();
+        WalletOperationRequest request = new WalletOperationRequest(
+                walletId, WalletOperationRequest.OperationType.DEPOSIT, 100, UUID.randomUUID().toString());
+
+        long first = walletService.operateOnWallet(request);
+        long replayed = walletService.operateOnWallet(request);
+
+        assertEquals(first, replayed);
+        assertEquals(100L, walletRepository.findByWalletId(walletId).getBalance());
+    }
+
+    private static double opsPerSecond(WalletService service, List<WalletOperationRequest> requests) {
+        long started = System.nanoTime();
+        requests.forEach(service::operateOnWallet);
+        return requests.size() * 1e9 / (System.nanoTime() - started);
+    }
+
+    private List<UUID> createWallets() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 0)).getWalletId());
+        }
+        return walletIds;
+    }
+
+    private static List<WalletOperationRequest> deposits(List<UUID> walletIds, String keyPrefix) {
+        List<WalletOperationRequest> requests = new ArrayList<>(OPERATIONS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            requests.add(new WalletOperationRequest(walletIds.get(i % walletIds.size()),
+                    WalletOperationRequest.OperationType.DEPOSIT, 1, keyPrefix != null ? keyPrefix + "-" + i : null));
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,121 @@
+package ru.walletservice.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.walletservice.WalletServiceApplication;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пропускная способность чтений и операций с настройками JDBC и Hibernate по умолчанию и в профиле {@code performance}.
+ * <p>
+ * Оба варианта запускаются в одном процессе против одной базы, кэш балансов выключен, чтобы чтения доходили до базы.
+ * Пропускная способность печатается только в {@code ./gradlew benchmark}. Тест запускается, только если задана переменная окружения {@code WALLET_TEST_DATASOURCE_URL}.
+ */
+@EnabledIfEnvironmentVariable(named = "WALLET_TEST_DATASOURCE_URL", matches = ".+")
+class PerformanceProfileBenchmarkTest {
+
+    private static final int CLIENTS = 16;
+    private static final int OPERATIONS_PER_CLIENT = 500;
+    private static final int WALLETS = 1_000;
+
+    @Test
+    @DisplayName("С настройками по умолчанию и в профиле performance чтение баланса не загружает сущности")
+    void testReadsLoadNoEntities() throws Exception {
+        // баланс читается скалярным запросом, сущности кошельков не загружаются
+        assertEquals(0, measure().entitiesLoadedByReads());
+        assertEquals(0, measure("performance").entitiesLoadedByReads());
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Пропускная способность с настройками по умолчанию и в профиле performance")
+    void testPerformanceProfileThroughput() throws Exception {
+        Result defaults = measure();
+        Result tuned = measure("performance");
+
+        System.out.printf("%d clients x %d: reads %.0f -> %.0f ops/s, deposits %.0f -> %.0f ops/s%n",
+                CLIENTS, OPERATIONS_PER_CLIENT, defaults.readsPerSecond(), tuned.readsPerSecond(),
+                defaults.depositsPerSecond(), tuned.depositsPerSecond());
+    }
+
+    private Result measure(String... profiles) throws Exception {
+        String username = System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr");
+        String password = System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd");
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profiles)
+                .run(
+                        "--spring.datasource.url=" + System.getenv("WALLET_TEST_DATASOURCE_URL"),
+                        "--spring.datasource.username=" + username,
+                        "--spring.datasource.password=" + password,
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--wallet.cache.enabled=false",
+                        "--wallet.contention.max-in-flight-per-wallet=0")) {
+            WalletService walletService = context.getBean(WalletService.class);
+            WalletRepository walletRepository = context.getBean(WalletRepository.class);
+            Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class)
+                    .getStatistics();
+            List<UUID> walletIds = new ArrayList<>(WALLETS);
+            for (int i = 0; i < WALLETS; i++) {
+                walletIds.add(walletRepository.save(new Wallet(null, 0)).getWalletId());
+            }
+            Consumer<UUID> read = walletService::getBalance;
+            Consumer<UUID> deposit = walletId -> walletService.operateOnWallet(
+                    new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 1));
+
+            // прогрев JIT, пула соединений и кэша подготовленных операторов
+            opsPerSecond(walletIds, read);
+            opsPerSecond(walletIds, deposit);
+
+            long entitiesLoaded = statistics.getEntityLoadCount();
+            double reads = opsPerSecond(walletIds, read);
+            long entitiesLoadedByReads = statistics.getEntityLoadCount() - entitiesLoaded;
+            double deposits = opsPerSecond(walletIds, deposit);
+            long total = walletIds.stream().mapToLong(walletService::getBalance).sum();
+            assertEquals(2L * CLIENTS * OPERATIONS_PER_CLIENT, total);
+            return new Result(reads, deposits, entitiesLoadedByReads);
+        }
+    }
+
+    private static double opsPerSecond(List<UUID> walletIds, Consumer<UUID> operation) throws Exception {
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                        operation.accept(walletIds.get((client * OPERATIONS_PER_CLIENT + i) % walletIds.size()));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return (double) CLIENTS * OPERATIONS_PER_CLIENT * 1e9 / (System.nanoTime() - started);
+    }
+
+    private record Result(double readsPerSecond, double depositsPerSecond, long entitiesLoadedByReads) {}
+}
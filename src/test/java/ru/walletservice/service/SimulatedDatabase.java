@@ -0,0 +1,176 @@
+package ru.walletservice.service;
+
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Имитация базы данных для нагрузочных тестов сервиса.
+ * <p>
+ * Каждое обращение к базе стоит заданную задержку. Транзакция занимает соединение из пула на всё время
+ * выполнения, блокировка строки удерживается до фиксации, как и в PostgreSQL: транзакция, ожидающая
+ * блокировку, продолжает удерживать своё соединение.
+ */
+final class SimulatedDatabase implements TransactionOperations {
+
+    private final long roundTripMillis;
+    private final Semaphore connections;
+    private final AtomicInteger connectionsInUse = new AtomicInteger();
+    private final AtomicInteger peakConnectionsInUse = new AtomicInteger();
+    private final AtomicInteger contendedRowLocks = new AtomicInteger();
+    private final Map<UUID, Long> balances = new ConcurrentHashMap<>();
+    private final Map<UUID, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    private final ThreadLocal<ReentrantLock> heldLock = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> inTransaction = ThreadLocal.withInitial(() -> false);
+    private final WalletRepository repository = mock(WalletRepository.class);
+    private final WalletLedgerRepository ledgerRepository = mock(WalletLedgerRepository.class);
+
+    /**
+     * @param roundTripMillis Задержка одного обращения к базе.
+     * @param poolSize Размер пула соединений; 0 — без ограничения.
+     */
+    SimulatedDatabase(long roundTripMillis, int poolSize) {
+        this.roundTripMillis = roundTripMillis;
+        this.connections = poolSize > 0 ? new Semaphore(poolSize, true) : null;
+        when(repository.findByWalletIdAndLock(any())).thenAnswer(invocation -> {
+            UUID walletId = invocation.getArgument(0);
+            roundTrip();
+            ReentrantLock lock = rowLocks.get(walletId);
+            if (lock == null) {
+                return null;
+            }
+            if (!lock.tryLock()) {
+                contendedRowLocks.incrementAndGet();
+                lock.lock();
+            }
+            heldLock.set(lock);
+            return new Wallet(walletId, balances.get(walletId));
+        });
+        when(repository.findBalanceByWalletId(any())).thenAnswer(invocation -> {
+            UUID walletId = invocation.getArgument(0);
+            boolean ownConnection = !inTransaction.get();
+            if (ownConnection) {
+                acquireConnection();
+            }
+            try {
+                roundTrip();
+                return balances.get(walletId);
+            } finally {
+                if (ownConnection) {
+                    releaseConnection();
+                }
+            }
+        });
+        when(repository.save(any())).thenAnswer(invocation -> {
+            Wallet wallet = invocation.getArgument(0);
+            roundTrip();
+            balances.put(wallet.getWalletId(), wallet.getBalance());
+            return wallet;
+        });
+        when(ledgerRepository.insertIfAbsent(any())).thenAnswer(invocation -> {
+            roundTrip();
+            return true;
+        });
+        doAnswer(invocation -> {
+            roundTrip();
+            return null;
+        }).when(ledgerRepository).insertAll(any());
+    }
+
+    WalletRepository repository() {
+        return repository;
+    }
+
+    /**
+     * Журнал операций: каждая запись (или пакет записей) стоит одно обращение к базе.
+     */
+    WalletLedgerRepository ledgerRepository() {
+        return ledgerRepository;
+    }
+
+    UUID createWallet(long balance) {
+        UUID walletId = UUID.randomUUID();
+        rowLocks.put(walletId, new ReentrantLock());
+        balances.put(walletId, balance);
+        return walletId;
+    }
+
+    long balance(UUID walletId) {
+        return balances.get(walletId);
+    }
+
+    /**
+     * @return Блокировка строки кошелька: тест может удерживать её, как транзакция другого экземпляра сервиса.
+     */
+    ReentrantLock rowLock(UUID walletId) {
+        return rowLocks.get(walletId);
+    }
+
+    /**
+     * @return Наибольшее число одновременно занятых соединений.
+     */
+    int peakConnectionsInUse() {
+        return peakConnectionsInUse.get();
+    }
+
+    /**
+     * @return Сколько раз транзакции пришлось ждать блокировку строки, удерживаемую другой транзакцией.
+     */
+    int contendedRowLocks() {
+        return contendedRowLocks.get();
+    }
+
+    @Override
+    public <T> T execute(TransactionCallback<T> action) {
+        acquireConnection();
+        inTransaction.set(true);
+        try {
+            return action.doInTransaction(null);
+        } finally {
+            roundTrip();
+            ReentrantLock lock = heldLock.get();
+            if (lock != null) {
+                heldLock.remove();
+                lock.unlock();
+            }
+            inTransaction.set(false);
+            releaseConnection();
+        }
+    }
+
+    private void acquireConnection() {
+        if (connections != null) {
+            connections.acquireUninterruptibly();
+        }
+        peakConnectionsInUse.accumulateAndGet(connectionsInUse.incrementAndGet(), Math::max);
+    }
+
+    private void releaseConnection() {
+        connectionsInUse.decrementAndGet();
+        if (connections != null) {
+            connections.release();
+        }
+    }
+
+    private void roundTrip() {
+        try {
+            Thread.sleep(roundTripMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
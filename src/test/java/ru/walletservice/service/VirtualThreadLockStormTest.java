@@ -0,0 +1,199 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class VirtualThreadLockStormTest {
+
+    private static final int POOL_SIZE = 10;
+    private static final int TOMCAT_THREADS = 200;
+    private static final int STORM = 400;
+    private static final int READS = 50;
+
+    @Test
+    @DisplayName("Пока пополнения ждут блокировку строки, лимит записей оставляет соединения для чтения других")
+    void testLockStormLeavesConnectionsForReads() throws Exception {
+        SimulatedDatabase database = new SimulatedDatabase(1, POOL_SIZE);
+        WalletService walletService = walletService(database, POOL_SIZE - 2);
+        UUID hotWalletId = database.createWallet(0);
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        // блокировку строки держит транзакция другого экземпляра: пополнения ждут её, удерживая соединения
+        ReentrantLock rowLock = database.rowLock(hotWalletId);
+        rowLock.lock();
+        try {
+            List<Future<?>> storm = startStorm(requests, walletService, hotWalletId);
+            awaitConnectionsInUse(database, POOL_SIZE - 2);
+
+            for (Future<Long> read : startReads(requests, walletService, otherWallets(database))) {
+                read.get(10, TimeUnit.SECONDS);
+            }
+
+            assertTrue(storm.stream().noneMatch(Future::isDone));
+            rowLock.unlock();
+            for (Future<?> operation : storm) {
+                operation.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(STORM, database.balance(hotWalletId));
+        } finally {
+            if (rowLock.isHeldByCurrentThread()) {
+                rowLock.unlock();
+            }
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Без лимита записей пополнения, ждущие блокировку строки, занимают все соединения, и чтения ждут")
+    void testLockStormWithoutWriteLimitStarvesReads() throws Exception {
+        SimulatedDatabase database = new SimulatedDatabase(1, POOL_SIZE);
+        WalletService walletService = walletService(database, 0);
+        UUID hotWalletId = database.createWallet(0);
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        ReentrantLock rowLock = database.rowLock(hotWalletId);
+        rowLock.lock();
+        try {
+            List<Future<?>> storm = startStorm(requests, walletService, hotWalletId);
+            awaitConnectionsInUse(database, POOL_SIZE);
+
+            List<Future<Long>> reads = startReads(requests, walletService, otherWallets(database));
+
+            assertThrows(TimeoutException.class, () -> reads.get(0).get(500, TimeUnit.MILLISECONDS));
+            rowLock.unlock();
+            for (Future<Long> read : reads) {
+                read.get(1, TimeUnit.MINUTES);
+            }
+            for (Future<?> operation : storm) {
+                operation.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(STORM, database.balance(hotWalletId));
+        } finally {
+            if (rowLock.isHeldByCurrentThread()) {
+                rowLock.unlock();
+            }
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Нагрузочный тест: задержка чтения во время шторма блокировок на одном кошельке")
+    void testLockStormReadLatency() throws Exception {
+        Duration platformThreads = storm(Executors.newFixedThreadPool(TOMCAT_THREADS), 0);
+        Duration virtualThreads = storm(Executors.newVirtualThreadPerTaskExecutor(), POOL_SIZE - 2);
+
+        System.out.printf("Max read latency during lock storm: %d platform threads %d ms, "
+                        + "virtual threads with write limit %d ms%n",
+                TOMCAT_THREADS, platformThreads.toMillis(), virtualThreads.toMillis());
+    }
+
+    /**
+     * Запускает шторм пополнений одного кошелька и во время него читает балансы других кошельков.
+     * Все пополнения и чтения должны завершиться.
+     *
+     * @return Наибольшая задержка чтения с момента поступления запроса.
+     */
+    private Duration storm(ExecutorService requests, int maxConcurrentWrites) throws Exception {
+        SimulatedDatabase database = new SimulatedDatabase(1, POOL_SIZE);
+        WalletService walletService = walletService(database, maxConcurrentWrites);
+        UUID hotWalletId = database.createWallet(0);
+        List<UUID> otherWalletIds = otherWallets(database);
+
+        try {
+            List<Future<?>> storm = startStorm(requests, walletService, hotWalletId);
+            Thread.sleep(50);
+
+            long maxLatencyNanos = 0;
+            for (Future<Long> read : startReads(requests, walletService, otherWalletIds)) {
+                maxLatencyNanos = Math.max(maxLatencyNanos, read.get(1, TimeUnit.MINUTES));
+            }
+            for (Future<?> operation : storm) {
+                operation.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(STORM, database.balance(hotWalletId));
+            return Duration.ofNanos(maxLatencyNanos);
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    private static WalletService walletService(SimulatedDatabase database, int maxConcurrentWrites) {
+        WalletProperties properties = new WalletProperties();
+        properties.getCache().setEnabled(false);
+        // сравнивается ожидание блокировки строки с удержанием соединения
+        properties.getLockStriping().setEnabled(false);
+        // все пополнения шторма должны дойти до базы, а не получить 429
+        properties.getContention().setMaxInFlightPerWallet(0);
+        properties.getWriteConcurrency().setMaxConcurrentWrites(maxConcurrentWrites);
+        properties.getWriteConcurrency().setAcquireTimeout(Duration.ofMinutes(1));
+        return new WalletService(database.repository(), mock(WalletBatchRepository.class),
+                database.ledgerRepository(), database, null, new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletLockStripes(properties),
+                new WalletContentionPolicy(properties), new WalletMetrics(new SimpleMeterRegistry()), null, null,
+                properties);
+    }
+
+    private static List<UUID> otherWallets(SimulatedDatabase database) {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < READS; i++) {
+            walletIds.add(database.createWallet(100));
+        }
+        return walletIds;
+    }
+
+    private static List<Future<?>> startStorm(ExecutorService requests, WalletService walletService,
+                                              UUID hotWalletId) {
+        List<Future<?>> storm = new ArrayList<>();
+        for (int i = 0; i < STORM; i++) {
+            storm.add(requests.submit(() -> walletService.operateOnWallet(
+                    new WalletOperationRequest(hotWalletId, WalletOperationRequest.OperationType.DEPOSIT, 1))));
+        }
+        return storm;
+    }
+
+    /**
+     * Читает балансы кошельков.
+     *
+     * @return Задержки чтений с момента поступления запроса, нс.
+     */
+    private static List<Future<Long>> startReads(ExecutorService requests, WalletService walletService,
+                                                 List<UUID> walletIds) {
+        List<Future<Long>> reads = new ArrayList<>();
+        for (UUID walletId : walletIds) {
+            long submitted = System.nanoTime();
+            reads.add(requests.submit(() -> {
+                walletService.getBalance(walletId);
+                return System.nanoTime() - submitted;
+            }));
+        }
+        return reads;
+    }
+
+    private static void awaitConnectionsInUse(SimulatedDatabase database, int connections) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (database.peakConnectionsInUse() < connections) {
+            assertTrue(System.nanoTime() < deadline, "storm did not take " + connections + " connections");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.walletservice.service;
+
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Label;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.LongRange;
+import ru.walletservice.exception.walletException.WalletBalanceOverflowException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.model.WalletOperationRequest;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalletArithmeticPropertyTest {
+
+    private static final int OPERATIONS_PER_TRY = 100_000;
+    private static final UUID WALLET_ID = UUID.randomUUID();
+
+    @Property(tries = 20)
+    @Label("Баланс в копейках не расходится с точным значением после миллионов случайных операций")
+    void noDriftAfterRandomOperations(@ForAll long seed) {
+        Random random = new Random(seed);
+        long balance = 0;
+        BigInteger expected = BigInteger.ZERO;
+
+        for (int i = 0; i < OPERATIONS_PER_TRY; i++) {
+            long amount = 1 + random.nextInt(100_000_00);
+            BigInteger exactAmount = BigInteger.valueOf(amount);
+            if (random.nextBoolean()) {
+                balance = WalletService.applyOperation(balance, request(WalletOperationRequest.OperationType.DEPOSIT, amount));
+                expected = expected.add(exactAmount);
+            } else if (expected.compareTo(exactAmount) >= 0) {
+                balance = WalletService.applyOperation(balance, request(WalletOperationRequest.OperationType.WITHDRAW, amount));
+                expected = expected.subtract(exactAmount);
+            } else {
+                long current = balance;
+                assertThrows(WalletInsufficientFundsException.class, () -> WalletService.applyOperation(
+                        current, request(WalletOperationRequest.OperationType.WITHDRAW, amount)));
+            }
+        }
+
+        assertEquals(expected, BigInteger.valueOf(balance));
+    }
+
+    @Property
+    @Label("Переполнение баланса отклоняется, а не заворачивается")
+    void overflowIsRejected(@ForAll @LongRange(min = 1, max = Long.MAX_VALUE) long amount) {
+        long balance = Long.MAX_VALUE - amount + 1;
+        assertTrue(balance > 0);
+
+        assertThrows(WalletBalanceOverflowException.class, () -> WalletService.applyOperation(
+                balance, request(WalletOperationRequest.OperationType.DEPOSIT, amount)));
+    }
+
+    private static WalletOperationRequest request(WalletOperationRequest.OperationType type, long amount) {
+        return new WalletOperationRequest(WALLET_ID, type, amount);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.walletservice.config.WalletProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class WalletBalanceCacheTest {
+
+    private final WalletBalanceCache cache = new WalletBalanceCache(new WalletProperties());
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Баланс попадает в кэш только после фиксации транзакции")
+    void testBalanceIsPublishedAfterCommit() {
+        UUID walletId = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.putAfterCommit(walletId, 150L);
+        assertEquals(0, cache.size());
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(150L, cache.getBalance(walletId, id -> 0L));
+    }
+
+    @Test
+    @DisplayName("Откатившаяся операция не попадает в кэш")
+    void testRolledBackBalanceIsNotPublished() {
+        UUID walletId = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.putAfterCommit(walletId, 150L);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(100L, cache.getBalance(walletId, id -> 100L));
+    }
+
+    @Test
+    @DisplayName("Запоздавшее обновление не перезаписывает более новое")
+    void testOutOfOrderCommitsKeepLatestBalance() {
+        UUID walletId = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.putAfterCommit(walletId, 150L);
+        cache.putAfterCommit(walletId, 200L);
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.get(1).afterCommit();
+        synchronizations.get(0).afterCommit();
+
+        assertEquals(200L, cache.getBalance(walletId, id -> 0L));
+    }
+
+    @Test
+    @DisplayName("Статистика попаданий и промахов")
+    void testStats() {
+        UUID walletId = UUID.randomUUID();
+
+        cache.getBalance(walletId, id -> 100L);
+        cache.getBalance(walletId, id -> 100L);
+        cache.getBalance(walletId, id -> 100L);
+
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    @DisplayName("Загрузка баланса не блокирует обновление того же кошелька после фиксации")
+    void testLoadDoesNotBlockPublishedBalance() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Long> reader = CompletableFuture.supplyAsync(() -> cache.getBalance(walletId, id -> {
+            loading.countDown();
+            try {
+                // загрузчик ждёт, как ждал бы соединения из исчерпанного пула
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return 100L;
+        }));
+        loading.await();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> cache.putAfterCommit(walletId, 150L));
+        release.countDown();
+
+        assertEquals(150L, reader.get(5, TimeUnit.SECONDS));
+        assertEquals(150L, cache.getBalance(walletId, id -> 0L));
+    }
+}
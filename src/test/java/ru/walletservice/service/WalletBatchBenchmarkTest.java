@@ -0,0 +1,83 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@PostgresIntegrationTest
+class WalletBatchBenchmarkTest {
+
+    private static final int OPERATIONS = 10_000;
+    private static final int WALLETS = 100;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletBatchService walletBatchService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Test
+    @DisplayName("Пакет из 10 000 пополнений применяется целиком")
+    void testBatchAppliesAllOperations() {
+        List<UUID> walletIds = createWallets();
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(deposits(walletIds).iterator());
+
+        assertEquals(OPERATIONS, results.size());
+        assertTrue(results.stream().allMatch(result -> result.error() == null));
+        assertEquals(OPERATIONS, walletIds.stream()
+                .mapToLong(walletRepository::findBalanceByWalletId)
+                .sum());
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("10 000 одиночных операций против одного пакета")
+    void testBatchVersusSingleCalls() {
+        List<WalletOperationRequest> singleRequests = deposits(createWallets());
+        long started = System.nanoTime();
+        singleRequests.forEach(walletService::operateOnWallet);
+        long singleNanos = System.nanoTime() - started;
+
+        List<WalletOperationRequest> batchRequests = deposits(createWallets());
+        started = System.nanoTime();
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(batchRequests.iterator());
+        long batchNanos = System.nanoTime() - started;
+
+        System.out.printf("%d deposits: single calls %d ms, batch %d ms (%d results)%n",
+                OPERATIONS, singleNanos / 1_000_000, batchNanos / 1_000_000, results.size());
+    }
+
+    private List<UUID> createWallets() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 0)).getWalletId());
+        }
+        return walletIds;
+    }
+
+    private static List<WalletOperationRequest> deposits(List<UUID> walletIds) {
+        List<WalletOperationRequest> requests = new ArrayList<>(OPERATIONS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            requests.add(new WalletOperationRequest(
+                    walletIds.get(i % walletIds.size()), WalletOperationRequest.OperationType.DEPOSIT, 1));
+        }
+        return requests;
+    }
+}
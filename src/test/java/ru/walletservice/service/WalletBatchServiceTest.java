@@ -0,0 +1,194 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletBatchServiceTest {
+
+    @Mock
+    private WalletBatchRepository batchRepository;
+
+    @Mock
+    private WalletLedgerRepository ledgerRepository;
+
+    private WalletBatchService walletBatchService;
+
+    @BeforeEach
+    void setUp() {
+        WalletProperties properties = new WalletProperties();
+        properties.getBatch().setChunkSize(2);
+        walletBatchService = new WalletBatchService(batchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletContentionPolicy(properties), null, null, properties);
+    }
+
+    @Test
+    @DisplayName("Пакет применяется по порядку, отказы возвращаются по каждой операции")
+    void testPerItemResults() {
+        UUID walletId = UUID.randomUUID();
+        UUID missingWalletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 80),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 80),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, -80),
+                new WalletOperationRequest(missingWalletId, WalletOperationRequest.OperationType.DEPOSIT, 10)
+        ).iterator());
+
+        assertEquals(List.of(
+                WalletOperationResult.success(walletId, 20L),
+                WalletOperationResult.failure(walletId, WalletOperationResult.Error.INSUFFICIENT_FUNDS),
+                WalletOperationResult.failure(walletId, WalletOperationResult.Error.INVALID_AMOUNT),
+                WalletOperationResult.failure(missingWalletId, WalletOperationResult.Error.WALLET_NOT_FOUND)
+        ), results);
+        verify(batchRepository, times(2)).findBalancesAndLock(anyCollection());
+        verify(batchRepository).updateBalances(Map.of(walletId, 20L));
+    }
+
+    @Test
+    @DisplayName("Операция без типа отклоняется, остальные операции пакета применяются")
+    void testMissingOperationTypeIsRejectedPerItem() {
+        UUID walletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, null, 10),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10)
+        ).iterator());
+
+        assertEquals(List.of(
+                WalletOperationResult.failure(walletId, WalletOperationResult.Error.INVALID_OPERATION_TYPE),
+                WalletOperationResult.success(walletId, 110L)
+        ), results);
+        verify(batchRepository).updateBalances(Map.of(walletId, 110L));
+    }
+
+    @Test
+    @DisplayName("Часть пакета, не получившая блокировку, отклоняется целиком")
+    void testLockFailureMarksChunkAsConflict() {
+        UUID walletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10)
+        ).iterator());
+
+        assertEquals(List.of(WalletOperationResult.failure(walletId, WalletOperationResult.Error.CONFLICT)), results);
+        verify(batchRepository, times(0)).updateBalances(any());
+    }
+
+    @Test
+    @DisplayName("Операции с записанным ключом идемпотентности не применяются повторно")
+    void testDuplicatesAreReplayed() {
+        UUID walletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+        when(ledgerRepository.findByIdempotencyKeys(anyCollection())).thenReturn(new HashMap<>(Map.of("key-1",
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, 60, "key-1"))));
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, "key-1"),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 10, "key-1")
+        ).iterator());
+
+        assertEquals(List.of(
+                WalletOperationResult.success(walletId, 60L),
+                WalletOperationResult.failure(walletId, WalletOperationResult.Error.IDEMPOTENCY_CONFLICT)
+        ), results);
+        verify(batchRepository).updateBalances(Map.of());
+        verify(ledgerRepository).insertAll(List.of());
+    }
+
+    @Test
+    @DisplayName("Повтор ключа внутри одной части пакета применяется один раз")
+    void testDuplicateWithinChunkIsAppliedOnce() {
+        UUID walletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+        when(ledgerRepository.findByIdempotencyKeys(anyCollection())).thenReturn(new HashMap<>());
+
+        List<WalletOperationResult> results = walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, "key-1"),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, "key-1")
+        ).iterator());
+
+        assertEquals(List.of(
+                WalletOperationResult.success(walletId, 110L),
+                WalletOperationResult.success(walletId, 110L)
+        ), results);
+        verify(ledgerRepository).insertAll(List.of(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, 110, "key-1")));
+    }
+
+    @Test
+    @DisplayName("Без ключей идемпотентности журнал не запрашивается")
+    void testNoLedgerLookupWithoutKeys() {
+        UUID walletId = UUID.randomUUID();
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+
+        walletBatchService.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10)
+        ).iterator());
+
+        verify(ledgerRepository, never()).findByIdempotencyKeys(anyCollection());
+        verify(ledgerRepository).insertAll(List.of(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10, 110, null)));
+    }
+
+    @Test
+    @DisplayName("События о применённых операциях пакета записываются в outbox одним пакетом")
+    void testAppliedOperationsAreAppendedToOutbox() {
+        UUID walletId = UUID.randomUUID();
+        WalletOutbox outbox = mock(WalletOutbox.class);
+        WalletProperties properties = new WalletProperties();
+        properties.getLedger().setEnabled(false);
+        WalletBatchService service = new WalletBatchService(batchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletContentionPolicy(properties), outbox, null, properties);
+        when(batchRepository.findBalancesAndLock(anyCollection()))
+                .thenAnswer(invocation -> new HashMap<>(Map.of(walletId, 100L)));
+
+        service.operateOnWallets(List.of(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 80),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 80),
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 5)
+        ).iterator());
+
+        verify(outbox).appendAll(List.of(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.WITHDRAW, 80, 20, null),
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 5, 25, null)));
+        verify(ledgerRepository, never()).insertAll(any());
+    }
+}
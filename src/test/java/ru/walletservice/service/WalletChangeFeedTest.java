@@ -0,0 +1,171 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.WalletChangeEvent;
+import ru.walletservice.repository.WalletOutboxRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WalletChangeFeedTest {
+
+    private static final UUID WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final Instant CREATED_AT = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final WalletOutboxRepository outboxRepository = mock(WalletOutboxRepository.class);
+    private final WalletChangeFeed feed = feed(3);
+
+    @AfterEach
+    void tearDown() {
+        feed.destroy();
+    }
+
+    @Test
+    @DisplayName("События читаются после курсора по порядку номеров")
+    void testReadAfterCursor() throws Exception {
+        feed.publish(List.of(event(1, 10), event(2, 20)));
+
+        WalletChangeFeed.Slice slice = feed.read(1, 10, 0);
+
+        assertEquals(2, slice.first());
+        assertEquals(List.of(event(2, 20)), slice.events());
+        assertFalse(slice.gap());
+    }
+
+    @Test
+    @DisplayName("Лента загружает события, пронумерованные ретранслятором, начиная с последнего номера в таблице")
+    void testPollFromLastPosition() throws Exception {
+        when(outboxRepository.lastPosition()).thenReturn(7L);
+        WalletChangeFeed restarted = feed(3);
+        when(outboxRepository.findRelayed(7, 100)).thenReturn(List.of(event(8, 80), event(9, 90)));
+
+        assertEquals(2, restarted.poll(100));
+
+        assertEquals(9, restarted.head());
+        assertEquals(List.of(event(9, 90)), restarted.read(8, 10, 0).events());
+        restarted.destroy();
+    }
+
+    @Test
+    @DisplayName("Вытесненные из памяти события читаются из таблицы; удалённые по давности отмечаются пропуском")
+    void testReadFromTable() throws Exception {
+        feed.publish(List.of(event(1, 10), event(2, 20), event(3, 30), event(4, 40), event(5, 50)));
+        when(outboxRepository.findRelayed(1, 10)).thenReturn(List.of(event(2, 20), event(3, 30)));
+        when(outboxRepository.findRelayed(0, 10)).thenReturn(List.of(event(2, 20), event(3, 30)));
+
+        WalletChangeFeed.Slice lagging = feed.read(1, 10, 0);
+        WalletChangeFeed.Slice purged = feed.read(0, 10, 0);
+
+        assertFalse(lagging.gap());
+        assertEquals(List.of(event(2, 20), event(3, 30)), lagging.events());
+        assertTrue(purged.gap());
+        assertEquals(2, purged.first());
+    }
+
+    @Test
+    @DisplayName("Неразобранный курсор и курсор дальше последнего номера недействительны")
+    void testInvalidCursor() throws Exception {
+        feed.publish(List.of(event(1, 10), event(2, 20)));
+        when(outboxRepository.lastPosition()).thenReturn(3L);
+
+        WalletChangeFeed.Slice slice = feed.read(feed.parseCursor("stale-1"), 10, 0);
+
+        assertTrue(slice.gap());
+        assertEquals(3, slice.first());
+        assertEquals(List.of(), slice.events());
+        assertEquals(3, feed.parseCursor("3"));
+        assertEquals(-1, feed.parseCursor("4"));
+    }
+
+    @Test
+    @DisplayName("Подписчик, дочитавший ленту, ждёт новых событий")
+    void testReadWaitsForPublish() throws Exception {
+        CompletableFuture<WalletChangeFeed.Slice> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return feed.read(0, 10, TimeUnit.SECONDS.toNanos(10));
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        feed.publish(List.of(event(1, 10)));
+
+        assertEquals(List.of(event(1, 10)), waiting.get(5, TimeUnit.SECONDS).events());
+    }
+
+    @Test
+    @DisplayName("Поток подписчика: событие balance с курсором, reset при пропуске, комментарий без событий")
+    void testStreamFormat() {
+        feed.publish(List.of(event(1, 10), event(2, 20), event(3, 30), event(4, 40)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // подписчик отключается после первой записи в поток
+        feed.stream(4, new DisconnectingEmitter(out));
+        feed.stream(-1, new DisconnectingEmitter(out));
+        feed.stream(2, new DisconnectingEmitter(out));
+
+        assertEquals(":\n\n"
+                        + "id:4\nevent:reset\ndata:{}\n\n"
+                        + "id:3\nevent:balance\ndata:{\"eventId\":3,"
+                        + "\"walletId\":\"00000000-0000-0000-0000-000000000001\",\"amount\":30,\"balance\":30,"
+                        + "\"createdAt\":\"2026-01-01T00:00:00Z\",\"position\":3}\n\n"
+                        + "id:4\nevent:balance\ndata:{\"eventId\":4,"
+                        + "\"walletId\":\"00000000-0000-0000-0000-000000000001\",\"amount\":40,\"balance\":40,"
+                        + "\"createdAt\":\"2026-01-01T00:00:00Z\",\"position\":4}\n\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    private WalletChangeFeed feed(int capacity) {
+        WalletProperties properties = new WalletProperties();
+        properties.getOutbox().setFeedCapacity(capacity);
+        properties.getOutbox().setHeartbeat(Duration.ofMillis(10));
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return new WalletChangeFeed(outboxRepository, objectMapper, properties);
+    }
+
+    private static WalletChangeEvent event(long position, long amount) {
+        return new WalletChangeEvent(position, WALLET_ID, amount, amount, CREATED_AT, position);
+    }
+
+    /**
+     * Ответ подписчику, который отключается при первой записи.
+     */
+    private static final class DisconnectingEmitter extends ResponseBodyEmitter {
+
+        private final ByteArrayOutputStream out;
+
+        DisconnectingEmitter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) throws IOException {
+            out.writeBytes((byte[]) object);
+            throw new IOException("Subscriber disconnected.");
+        }
+    }
+}
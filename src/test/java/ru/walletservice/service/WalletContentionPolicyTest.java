@@ -0,0 +1,113 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WalletContentionPolicyTest {
+
+    private static WalletContentionPolicy policy(int maxAttempts, int maxInFlightPerWallet) {
+        WalletProperties properties = new WalletProperties();
+        properties.getContention().setMaxAttempts(maxAttempts);
+        properties.getContention().setInitialBackoff(Duration.ofMillis(1));
+        properties.getContention().setMaxBackoff(Duration.ofMillis(5));
+        properties.getContention().setMaxInFlightPerWallet(maxInFlightPerWallet);
+        return new WalletContentionPolicy(properties);
+    }
+
+    @Test
+    @DisplayName("Транзакция, не получившая блокировку, повторяется")
+    void testRetryOnLockFailure() {
+        WalletContentionPolicy policy = policy(3, 0);
+        AtomicInteger attempts = new AtomicInteger();
+
+        long result = policy.retry(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return 42L;
+        });
+
+        assertEquals(42L, result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, policy.retryCount());
+    }
+
+    @Test
+    @DisplayName("После исчерпания попыток возвращается конфликт")
+    void testConflictAfterMaxAttempts() {
+        WalletContentionPolicy policy = policy(2, 0);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(WalletConflictException.class, () -> policy.retry(() -> {
+            attempts.incrementAndGet();
+            throw new CannotAcquireLockException("lock timeout");
+        }));
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, policy.conflictCount());
+    }
+
+    @Test
+    @DisplayName("Ошибки, не связанные с блокировкой, не повторяются")
+    void testNoRetryOnBusinessError() {
+        WalletContentionPolicy policy = policy(3, 0);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(WalletInsufficientFundsException.class, () -> policy.retry(() -> {
+            attempts.incrementAndGet();
+            throw new WalletInsufficientFundsException("Insufficient funds.");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, policy.retryCount());
+    }
+
+    @Test
+    @DisplayName("Операции сверх предела для кошелька отклоняются сразу")
+    void testShedOverPerWalletLimit() {
+        WalletContentionPolicy policy = policy(3, 1);
+        UUID walletId = UUID.randomUUID();
+
+        assertThrows(WalletTooManyRequestsException.class, () ->
+                policy.admit(walletId, () -> policy.admit(walletId, () -> 1L)));
+        long otherWallet = policy.admit(walletId, () -> policy.admit(UUID.randomUUID(), () -> 1L));
+
+        assertEquals(1L, otherWallet);
+        assertEquals(1, policy.shedCount());
+        assertEquals(0, policy.inFlightWallets());
+    }
+
+    @Test
+    @DisplayName("Число выполняемых операций публикуется для самых нагруженных кошельков")
+    void testHotWalletGauges() {
+        WalletContentionPolicy policy = policy(3, 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        policy.bindTo(registry);
+        UUID hotWalletId = UUID.randomUUID();
+
+        double[] observed = policy.admit(hotWalletId, () -> policy.admit(hotWalletId, () ->
+                policy.admit(UUID.randomUUID(), () -> new double[] {
+                        registry.get("wallet.operations.in.flight.hot").tag("rank", "1").gauge().value(),
+                        registry.get("wallet.operations.in.flight.hot").tag("rank", "2").gauge().value(),
+                        registry.get("wallet.operations.in.flight.hot").tag("rank", "3").gauge().value()
+                })));
+
+        assertEquals(2.0, observed[0]);
+        assertEquals(1.0, observed[1]);
+        assertEquals(0.0, observed[2]);
+        assertEquals(0.0, registry.get("wallet.operations.in.flight.wallets").gauge().value());
+    }
+}
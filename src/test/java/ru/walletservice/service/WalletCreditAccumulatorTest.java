@@ -0,0 +1,375 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletOperationResult;
+import ru.walletservice.repository.CreditLogCheckpointRepository;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WalletCreditAccumulatorTest {
+
+    @TempDir
+    private Path directory;
+
+    private final UUID walletId = UUID.randomUUID();
+    private final UUID otherWalletId = UUID.randomUUID();
+    /** Балансы в базе. */
+    private final Map<UUID, Long> balances = new ConcurrentHashMap<>();
+    /** Отметки о применённых сегментах в базе. */
+    private final Map<UUID, Long> checkpoints = new ConcurrentHashMap<>();
+
+    private WalletRepository walletRepository;
+    private WalletBatchRepository walletBatchRepository;
+    private WalletLedgerRepository ledgerRepository;
+    private CreditLogCheckpointRepository checkpointRepository;
+    private WalletProperties properties;
+    private WalletCreditAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        balances.put(walletId, 1000L);
+        walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findBalanceByWalletId(any()))
+                .thenAnswer(invocation -> balances.get(invocation.<UUID>getArgument(0)));
+        walletBatchRepository = mock(WalletBatchRepository.class);
+        when(walletBatchRepository.addToBalances(anyMap())).thenAnswer(invocation -> {
+            Map<UUID, Long> amounts = invocation.getArgument(0);
+            Map<UUID, Long> updated = new HashMap<>();
+            amounts.forEach((id, amount) -> {
+                if (balances.containsKey(id)) {
+                    updated.put(id, balances.merge(id, amount, Long::sum));
+                }
+            });
+            return updated;
+        });
+        when(walletBatchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation -> {
+            Map<UUID, Long> found = new HashMap<>();
+            invocation.<Collection<UUID>>getArgument(0).forEach(id -> {
+                if (balances.containsKey(id)) {
+                    found.put(id, balances.get(id));
+                }
+            });
+            return found;
+        });
+        doAnswer(invocation -> {
+            balances.putAll(invocation.getArgument(0));
+            return null;
+        }).when(walletBatchRepository).updateBalances(anyMap());
+        ledgerRepository = mock(WalletLedgerRepository.class);
+        checkpointRepository = mock(CreditLogCheckpointRepository.class);
+        when(checkpointRepository.findAppliedSegment(any()))
+                .thenAnswer(invocation -> checkpoints.getOrDefault(invocation.getArgument(0), 0L));
+        doAnswer(invocation -> checkpoints.merge(invocation.getArgument(0), invocation.getArgument(1), Math::max))
+                .when(checkpointRepository).markApplied(any(), any(Long.class));
+
+        properties = new WalletProperties();
+        WalletProperties.CreditAccumulator settings = properties.getCreditAccumulator();
+        settings.setEnabled(true);
+        settings.setWalletIds(Set.of(walletId, otherWalletId));
+        settings.setLogDirectory(directory.toString());
+        settings.setSegmentSize(DataSize.ofKilobytes(4));
+        settings.setFlushInterval(Duration.ofHours(1));
+        settings.setFlushThreshold(1_000_000);
+        accumulator = newAccumulator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        accumulator.destroy();
+    }
+
+    private WalletCreditAccumulator newAccumulator() {
+        return new WalletCreditAccumulator(walletRepository, walletBatchRepository, ledgerRepository,
+                checkpointRepository, TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                null, properties);
+    }
+
+    private static WalletOperationRequest deposit(UUID walletId, long amount) {
+        return new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, amount);
+    }
+
+    @Test
+    @DisplayName("Пополнение подтверждается до записи в базу, баланс включает незаписанные пополнения")
+    void testBalanceIncludesUnflushedCredits() {
+        assertEquals(1100L, accumulator.deposit(deposit(walletId, 100)));
+        assertEquals(1150L, accumulator.deposit(deposit(walletId, 50)));
+
+        assertEquals(1150L, accumulator.getBalance(walletId));
+        assertEquals(1000L, balances.get(walletId));
+        assertEquals(2, accumulator.pendingOperations());
+        verify(walletBatchRepository, never()).addToBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Накопленные пополнения записываются одним изменением на кошелёк вместе с журналом операций")
+    void testFlushAppliesSummedUpdate() {
+        for (int i = 0; i < 10; i++) {
+            accumulator.deposit(deposit(walletId, 10));
+        }
+
+        accumulator.flush();
+
+        verify(walletBatchRepository).addToBalances(Map.of(walletId, 100L));
+        assertEquals(1100L, balances.get(walletId));
+        assertEquals(1100L, accumulator.getBalance(walletId));
+        assertEquals(0, accumulator.pendingOperations());
+        verify(ledgerRepository).insertAll(argThat((List<LedgerEntry> entries) ->
+                entries.size() == 10 && entries.get(9).balanceAfter() == 1100L && entries.get(0).balanceAfter() == 1010L));
+        verify(checkpointRepository).markApplied(any(), eq(1L));
+    }
+
+    @Test
+    @DisplayName("После сбоя подтверждённые пополнения применяются при запуске один раз")
+    void testRecoveryAfterCrash() {
+        accumulator.deposit(deposit(walletId, 100));
+        accumulator.deposit(deposit(walletId, 200));
+
+        // сбой: процесс завершается без записи в базу и без закрытия журнала
+        accumulator = newAccumulator();
+
+        assertEquals(1300L, balances.get(walletId));
+        assertEquals(1300L, accumulator.getBalance(walletId));
+        accumulator.destroy();
+
+        accumulator = newAccumulator();
+        assertEquals(1300L, balances.get(walletId));
+        verify(walletBatchRepository, times(1)).addToBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Пополнение, подтверждённое после чистого перезапуска, применяется после сбоя")
+    void testRecoveryAfterCleanRestart() {
+        for (int i = 0; i < 5; i++) {
+            accumulator.deposit(deposit(walletId, 1));
+            accumulator.flush();
+        }
+        // чистая остановка: пустой текущий сегмент удаляется, в каталоге остаётся только log.id
+        accumulator.destroy();
+
+        accumulator = newAccumulator();
+        accumulator.deposit(deposit(walletId, 777));
+        // сбой до записи в базу
+        accumulator = newAccumulator();
+
+        assertEquals(1782L, balances.get(walletId));
+        assertEquals(1782L, accumulator.getBalance(walletId));
+    }
+
+    @Test
+    @DisplayName("Сегменты, отмеченные в базе как применённые, не применяются повторно")
+    void testCheckpointPreventsReapplication() {
+        accumulator.deposit(deposit(walletId, 100));
+        // сбой после фиксации, но до удаления сегмента
+        WalletCreditLog log = new WalletCreditLog(directory, (int) DataSize.ofKilobytes(4).toBytes());
+        checkpoints.put(log.logId(), log.currentSegment() - 1);
+        balances.put(walletId, 1100L);
+
+        accumulator = newAccumulator();
+
+        assertEquals(1100L, balances.get(walletId));
+        verify(walletBatchRepository, never()).addToBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Неудачная запись в базу оставляет пополнения накопленными до следующей попытки")
+    void testFailedFlushIsRetried() {
+        accumulator.deposit(deposit(walletId, 100));
+        when(walletBatchRepository.addToBalances(anyMap())).thenThrow(new QueryTimeoutException("timeout"));
+
+        assertThrows(QueryTimeoutException.class, accumulator::flush);
+        assertEquals(1100L, accumulator.getBalance(walletId));
+        assertEquals(1, accumulator.pendingOperations());
+
+        reset(walletBatchRepository);
+        when(walletBatchRepository.addToBalances(anyMap())).thenReturn(Map.of(walletId, 1200L));
+        accumulator.deposit(deposit(walletId, 100));
+        accumulator.flush();
+
+        verify(walletBatchRepository).addToBalances(Map.of(walletId, 200L));
+        assertEquals(0, accumulator.pendingOperations());
+    }
+
+    @Test
+    @DisplayName("Пополнения записываются в базу после заданного количества, не дожидаясь периода")
+    void testFlushThreshold() throws InterruptedException {
+        accumulator.destroy();
+        properties.getCreditAccumulator().setFlushThreshold(3);
+        accumulator = newAccumulator();
+
+        for (int i = 0; i < 3; i++) {
+            accumulator.deposit(deposit(walletId, 1));
+        }
+        for (int i = 0; i < 100 && accumulator.pendingOperations() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, accumulator.pendingOperations());
+        assertEquals(1003L, balances.get(walletId));
+    }
+
+    @Test
+    @DisplayName("Принимаются только пополнения кошельков из списка без ключа идемпотентности")
+    void testAccepts() {
+        assertTrue(accumulator.accepts(deposit(walletId, 1)));
+        assertFalse(accumulator.accepts(deposit(UUID.randomUUID(), 1)));
+        assertFalse(accumulator.accepts(new WalletOperationRequest(walletId,
+                WalletOperationRequest.OperationType.DEPOSIT, 1, "key-1")));
+        assertFalse(accumulator.accepts(new WalletOperationRequest(walletId,
+                WalletOperationRequest.OperationType.WITHDRAW, 1)));
+
+        assertThrows(WalletNotFoundException.class, () -> accumulator.deposit(deposit(otherWalletId, 1)));
+        assertNull(accumulator.getBalance(otherWalletId));
+    }
+
+    @Test
+    @DisplayName("Другая операция над кошельком выполняется после записи накопленных пополнений")
+    void testSettledFlushesFirst() {
+        accumulator.deposit(deposit(walletId, 100));
+
+        long balance = accumulator.settled(walletId, () -> {
+            assertEquals(1100L, balances.get(walletId));
+            return balances.merge(walletId, -500L, Long::sum);
+        });
+
+        assertEquals(600L, balance);
+        assertEquals(600L, accumulator.getBalance(walletId));
+        assertEquals(700L, accumulator.deposit(deposit(walletId, 100)));
+    }
+
+    @Test
+    @DisplayName("Пакетное снятие с кошелька выполняется после записи пополнений и обновляет его баланс в памяти")
+    void testBatchOperationSettlesCreditWallet() {
+        WalletBatchService batchService = new WalletBatchService(walletBatchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletContentionPolicy(properties), null, accumulator,
+                properties);
+        accumulator.deposit(deposit(walletId, 100));
+
+        List<WalletOperationResult> results = batchService.operateOnWallets(List.of(new WalletOperationRequest(
+                walletId, WalletOperationRequest.OperationType.WITHDRAW, 300)).iterator());
+
+        assertEquals(List.of(WalletOperationResult.success(walletId, 800L)), results);
+        assertEquals(800L, balances.get(walletId));
+        assertEquals(800L, accumulator.getBalance(walletId));
+        assertEquals(850L, accumulator.deposit(deposit(walletId, 50)));
+    }
+
+    @Test
+    @DisplayName("Операция над кошельком приостанавливает пополнения только этого кошелька")
+    void testSettledBlocksOnlyItsWallet() throws Exception {
+        balances.put(otherWalletId, 500L);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> settled = executor.submit(() -> accumulator.settled(walletId, () -> {
+                entered.countDown();
+                awaitQuietly(release);
+                return balances.merge(walletId, -400L, Long::sum);
+            }));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(510L, accumulator.deposit(deposit(otherWalletId, 10)));
+                assertEquals(510L, accumulator.getBalance(otherWalletId));
+            });
+            Future<Long> blocked = executor.submit(() -> accumulator.deposit(deposit(walletId, 100)));
+            assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertEquals(600L, settled.get(5, TimeUnit.SECONDS));
+            assertEquals(700L, blocked.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Медленная загрузка баланса одного кошелька не задерживает пополнения других")
+    void testSlowBaseLoadBlocksOnlyItsWallet() throws Exception {
+        balances.put(otherWalletId, 500L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(walletRepository.findBalanceByWalletId(walletId)).thenAnswer(invocation -> {
+            loading.countDown();
+            awaitQuietly(release);
+            return balances.get(walletId);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> slowDeposit = executor.submit(() -> accumulator.deposit(deposit(walletId, 100)));
+            Future<Long> slowRead = executor.submit(() -> accumulator.getBalance(walletId));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(510L, accumulator.deposit(deposit(otherWalletId, 10)));
+                assertEquals(510L, accumulator.getBalance(otherWalletId));
+            });
+            assertFalse(slowDeposit.isDone());
+
+            release.countDown();
+            assertEquals(1100L, slowDeposit.get(5, TimeUnit.SECONDS));
+            long read = slowRead.get(5, TimeUnit.SECONDS);
+            assertTrue(read == 1000L || read == 1100L);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
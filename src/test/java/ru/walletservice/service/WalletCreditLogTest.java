@@ -0,0 +1,85 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WalletCreditLogTest {
+
+    private static final int SEGMENT_SIZE = 4 * WalletCreditLog.RECORD_SIZE;
+
+    @TempDir
+    private Path directory;
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Test
+    @DisplayName("Записи, сброшенные на диск, читаются после сбоя без закрытия журнала")
+    void testReplayAfterCrash() {
+        WalletCreditLog crashed = new WalletCreditLog(directory, SEGMENT_SIZE);
+        for (long amount = 1; amount <= 6; amount++) {
+            WalletCreditLog.force(crashed.append(walletId, amount));
+        }
+
+        WalletCreditLog restarted = new WalletCreditLog(directory, SEGMENT_SIZE);
+        List<WalletCreditLog.Record> records = new ArrayList<>();
+        long lastSegment = restarted.replay(0, records::add);
+
+        assertEquals(crashed.logId(), restarted.logId());
+        assertEquals(2, lastSegment);
+        assertEquals(3, restarted.currentSegment());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), records.stream().map(WalletCreditLog.Record::amount).toList());
+        assertEquals(walletId, records.get(0).walletId());
+    }
+
+    @Test
+    @DisplayName("Оборванная и повреждённая записи в конце сегмента отбрасываются")
+    void testTornTailIsDropped() throws IOException {
+        WalletCreditLog crashed = new WalletCreditLog(directory, SEGMENT_SIZE);
+        WalletCreditLog.force(crashed.append(walletId, 100));
+        WalletCreditLog.force(crashed.append(walletId, 200));
+        WalletCreditLog.force(crashed.append(walletId, 300));
+        Path segment = directory.resolve("credits-0000000000000001.log");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // сумма второй записи изменена, контрольная сумма не сходится
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, 999), WalletCreditLog.RECORD_SIZE + 16);
+        }
+
+        List<WalletCreditLog.Record> records = new ArrayList<>();
+        new WalletCreditLog(directory, SEGMENT_SIZE).replay(0, records::add);
+
+        assertEquals(List.of(new WalletCreditLog.Record(walletId, 100)), records);
+    }
+
+    @Test
+    @DisplayName("Применённые сегменты пропускаются при чтении и удаляются")
+    void testCheckpointAndDelete() {
+        WalletCreditLog log = new WalletCreditLog(directory, SEGMENT_SIZE);
+        log.append(walletId, 1);
+        long firstSegment = log.rotate();
+        log.append(walletId, 2);
+        log.rotate();
+
+        List<WalletCreditLog.Record> records = new ArrayList<>();
+        long lastSegment = log.replay(firstSegment, records::add);
+        log.deleteThrough(firstSegment);
+
+        assertEquals(List.of(new WalletCreditLog.Record(walletId, 2)), records);
+        assertEquals(List.of(lastSegment, log.currentSegment()), log.segments());
+
+        log.deleteThrough(lastSegment);
+        log.close();
+        assertEquals(List.of(), log.segments());
+    }
+}
@@ -0,0 +1,119 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.repository.WalletExportRepository;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Выгрузка двух миллионов кошельков со сверкой в отдельной JVM с кучей 32 МБ.
+ * <p>
+ * Все строки выгрузки занимают в памяти сотни мегабайт, так что выгрузка укладывается в кучу,
+ * только если строки читаются курсором и сразу пишутся в поток. Таблицы создаются в отдельной схеме.
+ */
+@PostgresIntegrationTest
+class WalletExportMemoryTest {
+
+    private static final String SCHEMA = "export_memory_test";
+    private static final int WALLETS = 2_000_000;
+    private static final String MAX_HEAP = "-Xmx32m";
+
+    @Autowired
+    private JdbcTemplate publicJdbcTemplate;
+
+    private String url;
+
+    @BeforeEach
+    void setUp() {
+        publicJdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        publicJdbcTemplate.execute("create schema " + SCHEMA);
+        String baseUrl = System.getenv("WALLET_TEST_DATASOURCE_URL");
+        url = baseUrl + (baseUrl.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA + ",public";
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(url, username(), password()));
+        jdbcTemplate.execute("create table wallets (wallet_id uuid primary key, balance bigint not null default 0)");
+        jdbcTemplate.execute("create table wallet_operations (like public.wallet_operations including all)");
+        jdbcTemplate.update("insert into wallets (wallet_id, balance) "
+                + "select uuid_generate_v4(), 100 from generate_series(1, ?)", WALLETS);
+        // у каждого кошелька одно пополнение на весь баланс
+        jdbcTemplate.update("""
+                insert into wallet_operations (wallet_id, operation_type, amount, balance_after, created_at)
+                select wallet_id, 'DEPOSIT', 100, 100, now() from wallets
+                """);
+        // баланс одного кошелька расходится с журналом
+        jdbcTemplate.update("update wallets set balance = 101 where wallet_id = (select wallet_id from wallets limit 1)");
+        jdbcTemplate.execute("vacuum analyze wallets");
+        jdbcTemplate.execute("vacuum analyze wallet_operations");
+    }
+
+    @AfterEach
+    void tearDown() {
+        publicJdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        // страницы таблиц теста записываются на диск сейчас, а не во время следующих тестов
+        publicJdbcTemplate.execute("checkpoint");
+    }
+
+    @Test
+    @DisplayName("Выгрузка двух миллионов кошельков со сверкой укладывается в кучу 32 МБ")
+    void testExportUnderHeapCap() throws Exception {
+        String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        Process process = new ProcessBuilder(List.of(java, MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+                WalletExportMemoryTest.class.getName(), url, username(), password()))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), output);
+        assertEquals(0, process.exitValue(), output);
+
+        String[] counts = output.substring(output.lastIndexOf('\n') + 1).split(" ");
+        assertEquals(WALLETS, Long.parseLong(counts[0]), output);
+        assertEquals(1, Long.parseLong(counts[1]), output);
+    }
+
+    /**
+     * Выгрузка в дочерней JVM: выводит количество выгруженных кошельков и расхождений с журналом.
+     *
+     * @param args URL базы, пользователь и пароль.
+     */
+    public static void main(String[] args) throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(args[0], args[1], args[2]);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(true);
+        WalletExportService exportService = new WalletExportService(
+                new WalletExportRepository(new JdbcTemplate(dataSource)), new ObjectMapper(), new WalletProperties());
+        WalletExportService.ExportSummary summary = transactionTemplate.execute(status -> {
+            try {
+                return exportService.writeCsv(null, null, true, OutputStream.nullOutputStream());
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        System.out.println(summary.wallets() + " " + summary.mismatches());
+    }
+
+    private static String username() {
+        return System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr");
+    }
+
+    private static String password() {
+        return System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd");
+    }
+}
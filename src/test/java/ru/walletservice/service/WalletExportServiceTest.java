@@ -0,0 +1,109 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.WalletExportRow;
+import ru.walletservice.repository.WalletExportRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WalletExportServiceTest {
+
+    private static final UUID FIRST_WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID SECOND_WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final UUID THIRD_WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000003");
+
+    @Mock
+    private WalletExportRepository exportRepository;
+
+    @Test
+    @DisplayName("CSV со сверкой: колонки сверки, пустой баланс по журналу у кошелька без операций")
+    void testCsvWithReconciliation() throws Exception {
+        returnRows(List.of(
+                new WalletExportRow(FIRST_WALLET_ID, 100, 2L, 100L, true),
+                new WalletExportRow(SECOND_WALLET_ID, 101, 1L, 100L, false),
+                new WalletExportRow(THIRD_WALLET_ID, 0, 0L, null, true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WalletExportService.ExportSummary summary = service(new WalletProperties()).writeCsv(null, null, true, out);
+
+        assertEquals(new WalletExportService.ExportSummary(3, 1), summary);
+        assertEquals("""
+                wallet_id,balance,operations,ledger_balance,reconciled
+                00000000-0000-0000-0000-000000000001,100,2,100,true
+                00000000-0000-0000-0000-000000000002,101,1,100,false
+                00000000-0000-0000-0000-000000000003,0,0,,true
+                """, out.toString(StandardCharsets.UTF_8));
+        verify(exportRepository).export(eq(Long.MIN_VALUE), eq(Long.MAX_VALUE), eq(true), eq(1000), any());
+    }
+
+    @Test
+    @DisplayName("Без журнала операций выгрузка не сверяется")
+    void testCsvWithoutLedger() throws Exception {
+        returnRows(List.of(WalletExportRow.of(FIRST_WALLET_ID, 100)));
+        WalletProperties properties = new WalletProperties();
+        properties.getLedger().setEnabled(false);
+        properties.getExport().setFetchSize(50);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WalletExportService.ExportSummary summary = service(properties).writeCsv(10L, 200L, true, out);
+
+        assertEquals(new WalletExportService.ExportSummary(1, 0), summary);
+        assertEquals("""
+                wallet_id,balance
+                00000000-0000-0000-0000-000000000001,100
+                """, out.toString(StandardCharsets.UTF_8));
+        verify(exportRepository).export(eq(10L), eq(200L), eq(false), eq(50), any());
+    }
+
+    @Test
+    @DisplayName("NDJSON: по одному кошельку на строку, поля сверки только при сверке")
+    void testNdjson() throws Exception {
+        returnRows(List.of(
+                WalletExportRow.of(FIRST_WALLET_ID, 100),
+                new WalletExportRow(SECOND_WALLET_ID, 101, 1L, 100L, false)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WalletExportService.ExportSummary summary = service(new WalletProperties()).writeNdjson(null, 500L, true, out);
+
+        assertEquals(new WalletExportService.ExportSummary(2, 1), summary);
+        assertEquals("""
+                {"walletId":"00000000-0000-0000-0000-000000000001","balance":100}
+                {"walletId":"00000000-0000-0000-0000-000000000002","balance":101,"operations":1,\
+                "ledgerBalance":100,"reconciled":false}
+                """, out.toString(StandardCharsets.UTF_8));
+        verify(exportRepository).export(eq(Long.MIN_VALUE), eq(500L), eq(true), eq(1000), any());
+    }
+
+    private WalletExportService service(WalletProperties properties) {
+        return new WalletExportService(exportRepository, new ObjectMapper(), properties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void returnRows(List<WalletExportRow> rows) {
+        doAnswer(invocation -> {
+            Consumer<WalletExportRow> consumer = invocation.getArgument(4);
+            rows.forEach(consumer);
+            return null;
+        }).when(exportRepository).export(anyLong(), anyLong(), anyBoolean(), anyInt(), any());
+    }
+}
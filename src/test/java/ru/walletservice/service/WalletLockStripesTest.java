@@ -0,0 +1,196 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletConflictException;
+import ru.walletservice.exception.walletException.WalletTooManyRequestsException;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class WalletLockStripesTest {
+
+    private static final int POOL_SIZE = 20;
+    private static final int CLIENTS = 500;
+
+    @Test
+    @DisplayName("Количество полос округляется вверх до степени двойки")
+    void testStripeCountRoundedToPowerOfTwo() {
+        WalletProperties properties = new WalletProperties();
+        properties.getLockStriping().setStripes(1000);
+
+        WalletLockStripes lockStripes = new WalletLockStripes(properties);
+
+        assertEquals(1024, lockStripes.stripeCount());
+        for (int i = 0; i < 100; i++) {
+            int index = lockStripes.stripeIndex(UUID.randomUUID());
+            assertTrue(index >= 0 && index < 1024);
+        }
+    }
+
+    @Test
+    @DisplayName("Операция, не дождавшаяся блокировки полосы, завершается конфликтом")
+    void testConflictOnAcquireTimeout() throws Exception {
+        WalletProperties properties = new WalletProperties();
+        properties.getLockStriping().setAcquireTimeout(Duration.ofMillis(20));
+        WalletLockStripes lockStripes = new WalletLockStripes(properties);
+        UUID walletId = UUID.randomUUID();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = Thread.ofVirtual().start(() -> lockStripes.execute(walletId, () -> {
+            locked.countDown();
+            try {
+                return release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }));
+        try {
+            locked.await();
+            assertThrows(WalletConflictException.class, () -> lockStripes.execute(walletId, () -> 1L));
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        assertEquals(1, lockStripes.waitCount());
+        assertEquals(1, lockStripes.timeoutCount());
+        assertEquals(1L, lockStripes.execute(walletId, () -> 1L));
+    }
+
+    @Test
+    @DisplayName("Встречные операции над двумя кошельками не блокируют друг друга по кругу")
+    void testOppositeOrderDoesNotDeadlock() throws Exception {
+        WalletProperties properties = new WalletProperties();
+        properties.getLockStriping().setAcquireTimeout(Duration.ofMinutes(1));
+        WalletLockStripes lockStripes = new WalletLockStripes(properties);
+        UUID first = UUID.randomUUID();
+        UUID second = walletInOtherStripe(lockStripes, first);
+        int iterations = 10_000;
+        long[] counter = new long[1];
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<?> forward = executor.submit(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    lockStripes.execute(List.of(first, second), () -> counter[0]++);
+                }
+            });
+            Future<?> backward = executor.submit(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    lockStripes.execute(List.of(second, first), () -> counter[0]++);
+                }
+            });
+            forward.get(1, TimeUnit.MINUTES);
+            backward.get(1, TimeUnit.MINUTES);
+        }
+
+        assertEquals(2L * iterations, counter[0]);
+    }
+
+    @Test
+    @DisplayName("Полосы, взятые до конфликта, освобождаются")
+    void testAcquiredStripesReleasedOnConflict() throws Exception {
+        WalletProperties properties = new WalletProperties();
+        properties.getLockStriping().setAcquireTimeout(Duration.ofMillis(20));
+        WalletLockStripes lockStripes = new WalletLockStripes(properties);
+        UUID first = UUID.randomUUID();
+        UUID second = walletInOtherStripe(lockStripes, first);
+        UUID busy = lockStripes.stripeIndex(first) > lockStripes.stripeIndex(second) ? first : second;
+        UUID free = busy == first ? second : first;
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = Thread.ofVirtual().start(() -> lockStripes.execute(busy, () -> {
+            locked.countDown();
+            try {
+                return release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }));
+        try {
+            locked.await();
+            assertThrows(WalletConflictException.class, () -> lockStripes.execute(List.of(first, second), () -> 1L));
+            // полоса с меньшим номером была взята и должна быть свободна для другого потока
+            try (ExecutorService other = Executors.newSingleThreadExecutor()) {
+                assertEquals(1L, other.submit(() -> lockStripes.execute(free, () -> 1L)).get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+
+    private static UUID walletInOtherStripe(WalletLockStripes lockStripes, UUID walletId) {
+        UUID other = UUID.randomUUID();
+        while (lockStripes.stripeIndex(other) == lockStripes.stripeIndex(walletId)) {
+            other = UUID.randomUUID();
+        }
+        return other;
+    }
+
+    @Test
+    @DisplayName("При шторме операций на одном кошельке с полосами блокировок занято одно соединение")
+    void testLockStormHoldsSingleConnection() throws Exception {
+        assertEquals(POOL_SIZE, peakConnections(false));
+        assertEquals(1, peakConnections(true));
+    }
+
+    /**
+     * Запускает {@link #CLIENTS} одновременных пополнений одного кошелька. Сверх
+     * {@code wallet.contention.max-in-flight-per-wallet} пополнения отклоняются, остальные применяются.
+     *
+     * @return Наибольшее число одновременно занятых соединений.
+     */
+    private int peakConnections(boolean lockStriping) throws Exception {
+        SimulatedDatabase database = new SimulatedDatabase(1, POOL_SIZE);
+        WalletProperties properties = new WalletProperties();
+        properties.getCache().setEnabled(false);
+        properties.getLockStriping().setEnabled(lockStriping);
+        properties.getLockStriping().setAcquireTimeout(Duration.ofMinutes(1));
+        WalletService walletService = new WalletService(database.repository(), mock(WalletBatchRepository.class),
+                database.ledgerRepository(), database, null, new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletLockStripes(properties),
+                new WalletContentionPolicy(properties), new WalletMetrics(new SimpleMeterRegistry()), null, null,
+                properties);
+        UUID walletId = database.createWallet(0);
+        int rejected = 0;
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> operations = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                operations.add(clients.submit(() -> walletService.operateOnWallet(
+                        new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 1))));
+            }
+            for (Future<Long> operation : operations) {
+                try {
+                    operation.get(1, TimeUnit.MINUTES);
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof WalletTooManyRequestsException);
+                    rejected++;
+                }
+            }
+        }
+        assertTrue(rejected > 0);
+        assertEquals(CLIENTS - rejected, database.balance(walletId));
+        return database.peakConnectionsInUse();
+    }
+}
@@ -0,0 +1,218 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class WalletOperationCoalescerTest {
+
+    private static final int CLIENTS = 32;
+
+    private SimulatedDatabase database;
+    private WalletOperationCoalescer coalescer;
+    private WalletService coalescingService;
+    private WalletService pessimisticService;
+
+    @BeforeEach
+    void setUp() {
+        database = new SimulatedDatabase(1, 0);
+        WalletProperties properties = new WalletProperties();
+        properties.getCoalescing().setEnabled(true);
+        WalletBalanceCache balanceCache = new WalletBalanceCache(properties);
+        WalletContentionPolicy contentionPolicy = new WalletContentionPolicy(properties);
+        coalescer = new WalletOperationCoalescer(database.repository(), database.ledgerRepository(), database,
+                balanceCache, contentionPolicy, null, properties);
+        WriteConcurrencyLimiter writeLimiter = new WriteConcurrencyLimiter(properties);
+        WalletLockStripes lockStripes = new WalletLockStripes(properties);
+        WalletMetrics metrics = new WalletMetrics(new SimpleMeterRegistry());
+        coalescingService = new WalletService(database.repository(), mock(WalletBatchRepository.class),
+                database.ledgerRepository(), database, coalescer, balanceCache, writeLimiter, lockStripes,
+                contentionPolicy, metrics, null, null, properties);
+        pessimisticService = new WalletService(database.repository(), mock(WalletBatchRepository.class),
+                database.ledgerRepository(), database, null, balanceCache, writeLimiter, lockStripes,
+                contentionPolicy, metrics, null, null, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.destroy();
+    }
+
+    @Test
+    @DisplayName("Конкурентные пополнения не теряются, каждый получает свой баланс")
+    void testConcurrentDepositsAreAppliedExactlyOnce() throws Exception {
+        UUID walletId = database.createWallet(100);
+        int operations = 500;
+
+        List<Long> balances = runConcurrently(coalescingService, walletId, operations,
+                WalletOperationRequest.OperationType.DEPOSIT, 1);
+
+        Set<Long> expected = new HashSet<>();
+        for (int i = 1; i <= operations; i++) {
+            expected.add(100L + i);
+        }
+        assertEquals(expected, new HashSet<>(balances));
+        assertEquals(100L + operations, database.balance(walletId));
+    }
+
+    @Test
+    @DisplayName("Снятие сверх остатка отклоняется индивидуально")
+    void testOverdraftIsRejectedPerOperation() throws Exception {
+        UUID walletId = database.createWallet(100);
+
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(clients.submit(() -> coalescingService.operateOnWallet(
+                    new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 60))));
+        }
+        clients.shutdown();
+
+        int succeeded = 0;
+        int rejected = 0;
+        for (Future<Long> result : results) {
+            try {
+                assertEquals(40L, result.get());
+                succeeded++;
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof WalletInsufficientFundsException);
+                rejected++;
+            }
+        }
+        assertEquals(1, succeeded);
+        assertEquals(2, rejected);
+        assertEquals(40L, database.balance(walletId));
+    }
+
+    @Test
+    @DisplayName("Ошибка при операции с несуществующим кошельком в режиме объединения")
+    void testWalletNotFound() {
+        assertThrows(WalletNotFoundException.class, () -> coalescingService.operateOnWallet(
+                new WalletOperationRequest(UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, 1)));
+    }
+
+    @Test
+    @DisplayName("На одном горячем кошельке оба режима применяют все операции")
+    void testHotWalletAppliesAllOperations() throws Exception {
+        int operations = 300;
+
+        UUID pessimisticWallet = database.createWallet(0);
+        runConcurrently(pessimisticService, pessimisticWallet, operations, WalletOperationRequest.OperationType.DEPOSIT, 1);
+        UUID coalescedWallet = database.createWallet(0);
+        runConcurrently(coalescingService, coalescedWallet, operations, WalletOperationRequest.OperationType.DEPOSIT, 1);
+
+        assertEquals(operations, database.balance(pessimisticWallet));
+        assertEquals(operations, database.balance(coalescedWallet));
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Пропускная способность на одном горячем кошельке: блокировка строки и объединение операций")
+    void testHotWalletThroughput() throws Exception {
+        int operations = 1000;
+        // прогрев JIT и пулов потоков, чтобы он не достался первому замеру
+        runConcurrently(pessimisticService, database.createWallet(0), 100, WalletOperationRequest.OperationType.DEPOSIT, 1);
+        runConcurrently(coalescingService, database.createWallet(0), 100, WalletOperationRequest.OperationType.DEPOSIT, 1);
+
+        UUID pessimisticWallet = database.createWallet(0);
+        long started = System.nanoTime();
+        runConcurrently(pessimisticService, pessimisticWallet, operations, WalletOperationRequest.OperationType.DEPOSIT, 1);
+        double pessimisticOpsPerSecond = operations / ((System.nanoTime() - started) / 1e9);
+
+        UUID coalescedWallet = database.createWallet(0);
+        started = System.nanoTime();
+        runConcurrently(coalescingService, coalescedWallet, operations, WalletOperationRequest.OperationType.DEPOSIT, 1);
+        double coalescedOpsPerSecond = operations / ((System.nanoTime() - started) / 1e9);
+
+        System.out.printf("Hot wallet, %d clients, 1 ms per round trip: pessimistic %.0f ops/sec, coalesced %.0f ops/sec "
+                + "(x%.1f)%n", CLIENTS, pessimisticOpsPerSecond, coalescedOpsPerSecond,
+                coalescedOpsPerSecond / pessimisticOpsPerSecond);
+    }
+
+    @Test
+    @DisplayName("Очередь кошелька, опустевшая во время добавления операции, не раздваивается")
+    void testLaneRetirementRace() throws Exception {
+        SimulatedDatabase instantDatabase = new SimulatedDatabase(0, 0);
+        WalletProperties properties = new WalletProperties();
+        WalletOperationCoalescer racingCoalescer = new WalletOperationCoalescer(instantDatabase.repository(),
+                instantDatabase.ledgerRepository(), instantDatabase, new WalletBalanceCache(properties),
+                new WalletContentionPolicy(properties), null, properties);
+        List<UUID> wallets = new ArrayList<>();
+        for (int i = 0; i < CLIENTS / 2; i++) {
+            wallets.add(instantDatabase.createWallet(0));
+        }
+        int rounds = 5000;
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int client = 0; client < CLIENTS; client++) {
+                UUID walletId = wallets.get(client % wallets.size());
+                results.add(clients.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        // ожидание ответа даёт очереди опустеть, и следующая операция попадает на её удаление
+                        racingCoalescer.submit(new WalletOperationRequest(walletId,
+                                WalletOperationRequest.OperationType.DEPOSIT, 1));
+                        racingCoalescer.submit(new WalletOperationRequest(walletId,
+                                WalletOperationRequest.OperationType.DEPOSIT, 1)).get(30, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            clients.shutdownNow();
+            racingCoalescer.destroy();
+        }
+
+        for (UUID walletId : wallets) {
+            assertEquals(2L * rounds * CLIENTS / wallets.size(), instantDatabase.balance(walletId));
+        }
+        // транзакции одного кошелька выполняет единственный обработчик его очереди и не ждут друг друга
+        assertEquals(0, instantDatabase.contendedRowLocks());
+    }
+
+    private List<Long> runConcurrently(WalletService service, UUID walletId, int operations,
+                                        WalletOperationRequest.OperationType type, long amount) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < operations; i++) {
+                futures.add(clients.submit(() -> service.operateOnWallet(new WalletOperationRequest(walletId, type, amount))));
+            }
+            List<Long> balances = new ArrayList<>();
+            for (Future<Long> future : futures) {
+                balances.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return balances;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ru.walletservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletChangeEvent;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+import ru.walletservice.repository.WalletOutboxRepository;
+import ru.walletservice.repository.WalletRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Запись событий об изменении балансов и их ретрансляция в ленту изменений.
+ * <p>
+ * Фоновый ретранслятор нумерует события при запуске и затем ждёт {@code linger}; события,
+ * записанные тестами, нумеруются вызовами {@link WalletOutbox#relay()} из теста.
+ */
+@PostgresIntegrationTest
+@TestPropertySource(properties = {"wallet.outbox.enabled=true", "wallet.outbox.linger=1h"})
+class WalletOutboxBenchmarkTest {
+
+    private static final int OPERATIONS = 5_000;
+    private static final int WALLETS = 100;
+    private static final int ROUNDS = 3;
+    private static final int RELAYED_EVENTS = 100_000;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletBatchRepository walletBatchRepository;
+
+    @Autowired
+    private WalletLedgerRepository ledgerRepository;
+
+    @Autowired
+    private WalletOutboxRepository outboxRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private WalletBalanceCache balanceCache;
+
+    @Autowired
+    private WriteConcurrencyLimiter writeLimiter;
+
+    @Autowired
+    private WalletLockStripes lockStripes;
+
+    @Autowired
+    private WalletContentionPolicy contentionPolicy;
+
+    @Autowired
+    private WalletMetrics metrics;
+
+    @Autowired
+    private WalletOutbox outbox;
+
+    @Autowired
+    private WalletChangeFeed changeFeed;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @DisplayName("Изменения баланса попадают в ленту по порядку с балансом после операции")
+    void testChangesReachFeed() throws Exception {
+        drain();
+        long head = changeFeed.head();
+        UUID walletId = walletRepository.save(new Wallet(null, 0)).getWalletId();
+
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 100));
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 30));
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 5));
+        drain();
+
+        List<WalletChangeEvent> events = changeFeed.read(head, 100, 0).events().stream()
+                .filter(event -> event.walletId().equals(walletId))
+                .toList();
+        assertEquals(List.of(100L, -30L, 5L), events.stream().map(WalletChangeEvent::amount).toList());
+        assertEquals(List.of(100L, 70L, 75L), events.stream().map(WalletChangeEvent::balance).toList());
+    }
+
+    @Test
+    @DisplayName("Ретранслированные события остаются в таблице: лента после перезапуска продолжает с курсора")
+    void testFeedResumesFromTable() throws Exception {
+        drain();
+        long cursor = changeFeed.head();
+        UUID walletId = walletRepository.save(new Wallet(null, 0)).getWalletId();
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 100));
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 5));
+        drain();
+
+        // новая лента, как после перезапуска или на другом экземпляре: в памяти событий нет
+        WalletChangeFeed restarted = new WalletChangeFeed(outboxRepository, objectMapper, new WalletProperties());
+        WalletChangeFeed.Slice resumed = restarted.read(cursor, 100, 0);
+        outboxRepository.purge(Instant.now().plusSeconds(60));
+        WalletChangeFeed.Slice purged = restarted.read(cursor, 100, 0);
+        restarted.destroy();
+
+        assertEquals(List.of(100L, 5L), resumed.events().stream()
+                .filter(event -> event.walletId().equals(walletId))
+                .map(WalletChangeEvent::amount)
+                .toList());
+        assertEquals(cursor + 1, resumed.first());
+        assertTrue(purged.gap());
+        assertEquals(outboxRepository.lastPosition(), purged.first());
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Задержка одиночной операции с записью события и пропускная способность ретранслятора")
+    void testOutboxOverhead() {
+        WalletService withoutOutbox = new WalletService(walletRepository, walletBatchRepository, ledgerRepository,
+                transactionOperations, null, balanceCache, writeLimiter, lockStripes, contentionPolicy,
+                metrics, null, null, new WalletProperties());
+
+        // прогрев JIT и пула соединений, чтобы он не достался первому замеру
+        microsPerOperation(withoutOutbox, deposits(createWallets()));
+        microsPerOperation(walletService, deposits(createWallets()));
+
+        // замеры чередуются, берётся лучший: время фиксации транзакции зависит от фоновой нагрузки на диск
+        double baseline = Double.MAX_VALUE;
+        double withOutbox = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            baseline = Math.min(baseline, microsPerOperation(withoutOutbox, deposits(createWallets())));
+            withOutbox = Math.min(withOutbox, microsPerOperation(walletService, deposits(createWallets())));
+        }
+        drain();
+
+        jdbcTemplate.update("insert into wallet_outbox (wallet_id, amount, balance) "
+                + "select ?, 1, n from generate_series(1, ?) as n", UUID.randomUUID(), RELAYED_EVENTS);
+        long started = System.nanoTime();
+        long relayed = drain();
+        double eventsPerSecond = relayed * 1e9 / (System.nanoTime() - started);
+
+        System.out.printf("%d deposits: without outbox %.1f us/op, with outbox %.1f us/op (+%.1f us/op); "
+                        + "relay: %d events at %.0f events/s%n",
+                OPERATIONS, baseline, withOutbox, withOutbox - baseline, relayed, eventsPerSecond);
+    }
+
+    /**
+     * Забирает все накопившиеся события в ленту.
+     *
+     * @return Количество ретранслированных событий.
+     */
+    private long drain() {
+        long relayed = 0;
+        int batch;
+        while ((batch = outbox.relay()) > 0) {
+            relayed += batch;
+        }
+        return relayed;
+    }
+
+    private static double microsPerOperation(WalletService service, List<WalletOperationRequest> requests) {
+        long started = System.nanoTime();
+        requests.forEach(service::operateOnWallet);
+        return (System.nanoTime() - started) / 1e3 / requests.size();
+    }
+
+    private List<UUID> createWallets() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, 0)).getWalletId());
+        }
+        return walletIds;
+    }
+
+    private static List<WalletOperationRequest> deposits(List<UUID> walletIds) {
+        List<WalletOperationRequest> requests = new ArrayList<>(OPERATIONS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            requests.add(new WalletOperationRequest(walletIds.get(i % walletIds.size()),
+                    WalletOperationRequest.OperationType.DEPOSIT, 1));
+        }
+        return requests;
+    }
+}
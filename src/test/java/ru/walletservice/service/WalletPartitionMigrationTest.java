@@ -0,0 +1,131 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.repository.WalletPartitionRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Перенос кошельков в секционированную таблицу при одновременных пополнениях и создании кошельков.
+ * <p>
+ * Прежняя таблица создаётся в отдельной схеме: функции миграции 005 из схемы public работают с таблицами,
+ * найденными по search_path соединения.
+ */
+@PostgresIntegrationTest
+class WalletPartitionMigrationTest {
+
+    private static final String SCHEMA = "partition_migration_test";
+    private static final int WALLETS = 5_000;
+    private static final int WRITERS = 4;
+
+    @Autowired
+    private JdbcTemplate publicJdbcTemplate;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        publicJdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        publicJdbcTemplate.execute("create schema " + SCHEMA);
+        String url = System.getenv("WALLET_TEST_DATASOURCE_URL");
+        dataSource = new DriverManagerDataSource(
+                url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA + ",public",
+                System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_USERNAME", "usr"),
+                System.getenv().getOrDefault("WALLET_TEST_DATASOURCE_PASSWORD", "pwd"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table wallets (wallet_id uuid primary key, balance bigint not null default 0)");
+        jdbcTemplate.update("insert into wallets (wallet_id, balance) "
+                + "select uuid_generate_v4(), 10 from generate_series(1, ?)", WALLETS);
+        // то же состояние, что оставляет миграция 005 для большой таблицы
+        jdbcTemplate.execute("select create_partitioned_wallets(4, 80)");
+        jdbcTemplate.execute("create trigger copy_wallet_to_partitioned after insert or update or delete on wallets "
+                + "for each row execute function copy_wallet_to_partitioned()");
+    }
+
+    @AfterEach
+    void tearDown() {
+        publicJdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+    }
+
+    @Test
+    @DisplayName("Перенос по частям не теряет пополнений и кошельков, созданных во время переноса")
+    void testMigrationUnderConcurrentWrites() throws Exception {
+        List<UUID> walletIds = jdbcTemplate.queryForList("select wallet_id from wallets", UUID.class);
+        WalletProperties properties = new WalletProperties();
+        properties.getPartitionMigration().setChunkSize(500);
+        properties.getPartitionMigration().setPause(Duration.ofMillis(5));
+        WalletPartitionMigration migration = new WalletPartitionMigration(new WalletPartitionRepository(jdbcTemplate),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), properties);
+
+        AtomicBoolean migrating = new AtomicBoolean(true);
+        long copied;
+        long deposits = 0;
+        long created = 0;
+        try (ExecutorService writers = Executors.newFixedThreadPool(WRITERS)) {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                results.add(writers.submit(() -> write(walletIds, migrating)));
+            }
+            copied = migration.migrate();
+            migrating.set(false);
+            for (Future<long[]> result : results) {
+                long[] counts = result.get(1, TimeUnit.MINUTES);
+                deposits += counts[0];
+                created += counts[1];
+            }
+        }
+
+        assertTrue(migration.isCompleted());
+        assertTrue(copied >= WALLETS);
+        assertTrue(deposits > 0);
+        assertEquals("p", jdbcTemplate.queryForObject(
+                "select relkind::text from pg_class where oid = 'wallets'::regclass", String.class));
+        assertEquals(WALLETS + created, jdbcTemplate.queryForObject("select count(*) from wallets", Long.class));
+        assertEquals(10L * WALLETS + deposits + created,
+                jdbcTemplate.queryForObject("select sum(balance) from wallets", Long.class));
+        assertEquals(0, migration.migrate());
+    }
+
+    /**
+     * Пополняет случайные кошельки и изредка создаёт новые, пока идёт перенос, и немного после подмены таблиц.
+     *
+     * @return Количество пополнений и созданных кошельков.
+     */
+    private long[] write(List<UUID> walletIds, AtomicBoolean migrating) {
+        JdbcTemplate writer = new JdbcTemplate(dataSource);
+        long deposits = 0;
+        long created = 0;
+        int afterSwitch = 20;
+        while (migrating.get() || afterSwitch-- > 0) {
+            UUID walletId = walletIds.get(ThreadLocalRandom.current().nextInt(walletIds.size()));
+            deposits += writer.update("update wallets set balance = balance + 1 where wallet_id = ?", walletId);
+            if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                created += writer.update("insert into wallets (wallet_id, balance) values (?, 1)", UUID.randomUUID());
+            }
+        }
+        return new long[] {deposits, created};
+    }
+}
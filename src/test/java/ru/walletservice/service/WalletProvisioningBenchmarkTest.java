@@ -0,0 +1,124 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.walletservice.config.PerformanceTest;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.exception.walletException.WalletAlreadyExistsException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Массовое создание кошельков командой COPY против {@code saveAll} репозитория JPA.
+ */
+@PostgresIntegrationTest
+class WalletProvisioningBenchmarkTest {
+
+    private static final int COPIED_WALLETS = 200_000;
+    private static final int SAVED_WALLETS = 20_000;
+
+    @Autowired
+    private WalletProvisioningService provisioningService;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("COPY создаёт запрошенное количество кошельков с начальным балансом и возвращает их ID")
+    void testCopyCreatesWallets() throws Exception {
+        long before = countWallets();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WalletProvisioningService.ProvisioningSummary copied = provisioningService.generate(1000, 100, out);
+
+        assertEquals(1000, copied.wallets());
+        assertEquals(1000, countWallets() - before);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(1001, lines.size());
+        for (String line : List.of(lines.get(1), lines.get(lines.size() - 1))) {
+            assertEquals(100, walletService.getBalance(UUID.fromString(line.split(",")[0])));
+        }
+    }
+
+    @Test
+    @PerformanceTest
+    @DisplayName("Скорость создания кошельков: COPY со сгенерированными ID и saveAll")
+    void testCopyVersusSaveAll() throws Exception {
+        // прогрев JIT и пула соединений, чтобы он не достался первому замеру
+        walletRepository.saveAll(wallets(1000));
+        provisioningService.generate(10_000, 0, OutputStream.nullOutputStream());
+
+        WalletProvisioningService.ProvisioningSummary copied =
+                provisioningService.generate(COPIED_WALLETS, 100, OutputStream.nullOutputStream());
+
+        List<Wallet> wallets = wallets(SAVED_WALLETS);
+        long started = System.nanoTime();
+        walletRepository.saveAll(wallets);
+        double savedPerSecond = SAVED_WALLETS * 1e9 / (System.nanoTime() - started);
+
+        System.out.printf("wallet provisioning: COPY %d wallets at %d wallets/s, saveAll %d wallets at %.0f wallets/s "
+                        + "(x%.1f)%n", copied.wallets(), copied.walletsPerSecond(), SAVED_WALLETS, savedPerSecond,
+                copied.walletsPerSecond() / savedPerSecond);
+    }
+
+    @Test
+    @DisplayName("Загрузка с уже существующим кошельком не создаёт ни одного кошелька")
+    void testExistingWalletRollsBackLoad() {
+        UUID existing = walletRepository.save(new Wallet(null, 0)).getWalletId();
+        UUID created = UUID.randomUUID();
+
+        assertThrows(WalletAlreadyExistsException.class,
+                () -> provisioningService.importCsv(csv(created + ",10\n" + existing + ",10\n")));
+
+        assertFalse(walletRepository.existsById(created));
+        assertEquals(0, walletService.getBalance(existing));
+    }
+
+    @Test
+    @DisplayName("Кошелёк, запрошенный до загрузки, после неё не считается несуществующим")
+    void testImportedWalletVisibleAfterMissingLookup() {
+        UUID walletId = UUID.randomUUID();
+        assertThrows(WalletNotFoundException.class, () -> walletService.getBalance(walletId));
+
+        provisioningService.importCsv(csv("wallet_id,balance\n" + walletId + ",42\n"));
+
+        assertEquals(42, walletService.getBalance(walletId));
+    }
+
+    private long countWallets() {
+        return jdbcTemplate.queryForObject("select count(*) from wallets", Long.class);
+    }
+
+    private static List<Wallet> wallets(int count) {
+        List<Wallet> wallets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            wallets.add(new Wallet(null, 100));
+        }
+        return wallets;
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
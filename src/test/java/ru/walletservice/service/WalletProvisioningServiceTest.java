@@ -0,0 +1,141 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletAlreadyExistsException;
+import ru.walletservice.exception.walletException.WalletInvalidProvisioningException;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.repository.WalletProvisioningRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletProvisioningServiceTest {
+
+    private static final UUID WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID OTHER_WALLET_ID = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Mock
+    private WalletProvisioningRepository provisioningRepository;
+
+    @Mock
+    private WalletBalanceCache balanceCache;
+
+    private final List<Wallet> copied = new ArrayList<>();
+
+    private WalletProvisioningService provisioningService;
+
+    @BeforeEach
+    void setUp() {
+        WalletProperties properties = new WalletProperties();
+        properties.getProvisioning().setMaxCount(10_000);
+        provisioningService = new WalletProvisioningService(provisioningRepository, balanceCache, properties);
+    }
+
+    @Test
+    @DisplayName("Сгенерированные ID возрастают, и после загрузки возвращаются те же кошельки")
+    void testGenerate() throws Exception {
+        drainCopy();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        WalletProvisioningService.ProvisioningSummary summary = provisioningService.generate(5000, 100, out);
+
+        assertEquals(5000, summary.wallets());
+        assertEquals(5000, copied.size());
+        for (int i = 1; i < copied.size(); i++) {
+            assertTrue(copied.get(i - 1).getWalletId().compareTo(copied.get(i).getWalletId()) < 0);
+            assertEquals(7, copied.get(i).getWalletId().version());
+            assertEquals(2, copied.get(i).getWalletId().variant());
+        }
+        StringBuilder expected = new StringBuilder("wallet_id,balance\n");
+        copied.forEach(wallet -> expected.append(wallet.getWalletId()).append(",100\n"));
+        assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+        assertTrue(copied.stream().allMatch(wallet -> wallet.getBalance() == 100));
+        assertTrue(provisioningService.progress().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Количество вне допустимых границ и отрицательный баланс отклоняются до загрузки")
+    void testGenerateValidation() {
+        assertThrows(WalletInvalidProvisioningException.class,
+                () -> provisioningService.generate(0, 0, new ByteArrayOutputStream()));
+        assertThrows(WalletInvalidProvisioningException.class,
+                () -> provisioningService.generate(10_001, 0, new ByteArrayOutputStream()));
+        assertThrows(WalletInvalidProvisioningException.class,
+                () -> provisioningService.generate(1, -1, new ByteArrayOutputStream()));
+        verifyNoInteractions(provisioningRepository);
+    }
+
+    @Test
+    @DisplayName("Строки CSV загружаются с необязательным заголовком, записи о несуществующих кошельках сбрасываются")
+    void testImportCsv() {
+        drainCopy();
+
+        WalletProvisioningService.ProvisioningSummary summary = provisioningService.importCsv(csv(
+                "wallet_id,balance\n" + WALLET_ID + ",10\n\n " + OTHER_WALLET_ID + " , 0 \n"));
+
+        assertEquals(2, summary.wallets());
+        assertEquals(List.of(WALLET_ID, OTHER_WALLET_ID), copied.stream().map(Wallet::getWalletId).toList());
+        assertEquals(List.of(10L, 0L), copied.stream().map(Wallet::getBalance).toList());
+        verify(balanceCache).invalidateMissing();
+    }
+
+    @Test
+    @DisplayName("Ошибка в строке CSV называет номер строки и прерывает загрузку")
+    void testImportInvalidRow() {
+        drainCopy();
+
+        WalletInvalidProvisioningException malformed = assertThrows(WalletInvalidProvisioningException.class,
+                () -> provisioningService.importCsv(csv(WALLET_ID + ",10\nnot-a-uuid,5\n")));
+        WalletInvalidProvisioningException negative = assertThrows(WalletInvalidProvisioningException.class,
+                () -> provisioningService.importCsv(csv(WALLET_ID + ",-10\n")));
+
+        assertEquals("Invalid row at line 2: expected wallet_id,balance.", malformed.getMessage());
+        assertEquals("Negative balance at line 1.", negative.getMessage());
+        verify(balanceCache, never()).invalidateMissing();
+    }
+
+    @Test
+    @DisplayName("Существующий кошелёк в загрузке отклоняет её целиком")
+    void testImportExistingWallet() {
+        when(provisioningRepository.copy(any(), anyInt())).thenThrow(new DuplicateKeyException("duplicate key"));
+
+        assertThrows(WalletAlreadyExistsException.class,
+                () -> provisioningService.importCsv(csv(WALLET_ID + ",10\n")));
+        assertTrue(provisioningService.progress().isEmpty());
+    }
+
+    private void drainCopy() {
+        when(provisioningRepository.copy(any(), anyInt())).thenAnswer(invocation -> {
+            Iterator<Wallet> wallets = invocation.getArgument(0);
+            wallets.forEachRemaining(copied::add);
+            return (long) copied.size();
+        });
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
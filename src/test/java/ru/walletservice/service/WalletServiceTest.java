@@ -1,21 +1,41 @@
 package ru.walletservice.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
 import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidAmountException;
+import ru.walletservice.exception.walletException.WalletInvalidOperationTypeException;
 import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.LedgerEntry;
 import ru.walletservice.model.Wallet;
 import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
 import ru.walletservice.repository.WalletRepository;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -25,18 +45,61 @@ class WalletServiceTest {
     @Mock
     private WalletRepository walletRepository;
 
-    @InjectMocks
+    @Mock
+    private WalletBatchRepository walletBatchRepository;
+
+    @Mock
+    private WalletLedgerRepository ledgerRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private WalletService walletService;
 
+    @BeforeEach
+    void setUp() {
+        lenient().when(ledgerRepository.insertIfAbsent(any())).thenReturn(true);
+        walletService = walletService(new WalletProperties());
+    }
+
+    private WalletService walletService(WalletProperties properties) {
+        return walletService(properties, null);
+    }
+
+    private WalletService walletService(WalletProperties properties, WalletOutbox outbox) {
+        return new WalletService(walletRepository, walletBatchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), null, new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletLockStripes(properties),
+                new WalletContentionPolicy(properties), new WalletMetrics(meterRegistry), null, outbox, properties);
+    }
+
+    private WalletService atomicWalletService() {
+        WalletProperties properties = new WalletProperties();
+        properties.setUpdateStrategy(WalletProperties.UpdateStrategy.ATOMIC);
+        return walletService(properties);
+    }
+
+    private static WalletRepository.WithdrawResult withdrawResult(Long balance, boolean found) {
+        return new WalletRepository.WithdrawResult() {
+            @Override
+            public Long getBalance() {
+                return balance;
+            }
+
+            @Override
+            public boolean getFound() {
+                return found;
+            }
+        };
+    }
+
     @Test
     @DisplayName("Успешное получение баланса кошелька по uuid")
     void testGetBalanceSuccess() throws Exception {
         UUID walletId = UUID.randomUUID();
-        double expectedBalance = 100.0;
-        Wallet wallet = new Wallet(walletId, expectedBalance);
-        when(walletRepository.findByWalletId(walletId)).thenReturn(wallet);
+        long expectedBalance = 100L;
+        when(walletRepository.findBalanceByWalletId(walletId)).thenReturn(expectedBalance);
 
-        double actualBalance = walletService.getBalance(walletId);
+        long actualBalance = walletService.getBalance(walletId);
 
         assertEquals(expectedBalance, actualBalance);
     }
@@ -45,7 +108,7 @@ class WalletServiceTest {
     @DisplayName("Ошибка получения баланска кошелька: кошелёк не найден")
     void testGetBalanceWalletNotFound() {
         UUID walletId = UUID.randomUUID();
-        when(walletRepository.findByWalletId(walletId)).thenReturn(null);
+        when(walletRepository.findBalanceByWalletId(walletId)).thenReturn(null);
 
         assertThrows(WalletNotFoundException.class, () -> walletService.getBalance(walletId));
     }
@@ -54,13 +117,13 @@ class WalletServiceTest {
     @DisplayName("Успешное пополнение кошелька")
     void testOperateOnWalletDepositSuccess() {
         UUID walletId = UUID.randomUUID();
-        double initialBalance = 100.0;
-        double depositAmount = 50.0;
+        long initialBalance = 100L;
+        long depositAmount = 50L;
         Wallet wallet = new Wallet(walletId, initialBalance);
 
         when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(wallet);
 
-        double newBalance = walletService.operateOnWallet(
+        long newBalance = walletService.operateOnWallet(
                 new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, depositAmount));
 
         assertEquals(initialBalance + depositAmount, newBalance);
@@ -71,13 +134,13 @@ class WalletServiceTest {
     @DisplayName("Успешное снятие средств с кошелька")
     void testOperateOnWalletWithdrawSuccess() {
         UUID walletId = UUID.randomUUID();
-        double initialBalance = 100.0;
-        double withdrawAmount = 50.0;
+        long initialBalance = 100L;
+        long withdrawAmount = 50L;
         Wallet wallet = new Wallet(walletId, initialBalance);
 
         when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(wallet);
 
-        double newBalance = walletService.operateOnWallet(
+        long newBalance = walletService.operateOnWallet(
                 new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, withdrawAmount));
 
         assertEquals(initialBalance - withdrawAmount, newBalance);
@@ -93,21 +156,284 @@ class WalletServiceTest {
 
         assertThrows(WalletNotFoundException.class, () ->
                 walletService.operateOnWallet(
-                        new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50.0)));
+                        new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L)));
     }
 
     @Test
     @DisplayName("Ошибка при попытке снятия средств с недостаточным балансом")
     void testOperateOnWalletInsufficientFunds() {
         UUID walletId = UUID.randomUUID();
-        double initialBalance = 100.0;
-        double withdrawAmount = 150.0;
+        long initialBalance = 100L;
+        long withdrawAmount = 150L;
         Wallet wallet = new Wallet(walletId, initialBalance);
 
         when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(wallet);
 
-        assertThrows(WalletInsufficientFundsException.class, () ->
+        WalletInsufficientFundsException ex = assertThrows(WalletInsufficientFundsException.class, () ->
                 walletService.operateOnWallet(
                         new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, withdrawAmount)));
+        // отказ — штатный ответ, стек вызовов не заполняется
+        assertEquals(0, ex.getStackTrace().length);
+    }
+
+    @Test
+    @DisplayName("Операция с неположительной суммой отклоняется до обращения к базе")
+    void testOperateOnWalletRejectsNonPositiveAmount() {
+        UUID walletId = UUID.randomUUID();
+
+        assertThrows(WalletInvalidAmountException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, -100L)));
+        assertThrows(WalletInvalidAmountException.class, () -> atomicWalletService().operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 0L)));
+        verify(walletRepository, never()).findByWalletIdAndLock(any());
+        verify(walletRepository, never()).withdrawAndGetBalance(any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Операция без типа отклоняется до обращения к базе")
+    void testOperateOnWalletRejectsMissingOperationType() {
+        UUID walletId = UUID.randomUUID();
+
+        assertThrows(WalletInvalidOperationTypeException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, null, 100L)));
+        assertThrows(WalletInvalidOperationTypeException.class, () -> atomicWalletService().operateOnWallet(
+                new WalletOperationRequest(walletId, null, 100L)));
+        verify(walletRepository, never()).findByWalletIdAndLock(any());
+        verify(walletRepository, never()).depositAndGetBalance(any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Атомарное пополнение кошелька без блокирующей выборки")
+    void testAtomicDepositSuccess() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.depositAndGetBalance(walletId, 50L)).thenReturn(150L);
+
+        long newBalance = atomicWalletService().operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L));
+
+        assertEquals(150L, newBalance);
+        verify(walletRepository, never()).findByWalletIdAndLock(walletId);
+    }
+
+    @Test
+    @DisplayName("Атомарное снятие средств с кошелька")
+    void testAtomicWithdrawSuccess() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.withdrawAndGetBalance(walletId, 50L)).thenReturn(withdrawResult(50L, true));
+
+        long newBalance = atomicWalletService().operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 50L));
+
+        assertEquals(50L, newBalance);
+    }
+
+    @Test
+    @DisplayName("Атомарное снятие: недостаточно средств")
+    void testAtomicWithdrawInsufficientFunds() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.withdrawAndGetBalance(walletId, 150L)).thenReturn(withdrawResult(null, true));
+
+        assertThrows(WalletInsufficientFundsException.class, () ->
+                atomicWalletService().operateOnWallet(
+                        new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 150L)));
+    }
+
+    @Test
+    @DisplayName("Атомарные операции: кошелёк не найден")
+    void testAtomicWalletNotFound() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.depositAndGetBalance(walletId, 50L)).thenReturn(null);
+        when(walletRepository.withdrawAndGetBalance(walletId, 50L)).thenReturn(withdrawResult(null, false));
+        WalletService atomicWalletService = atomicWalletService();
+
+        assertThrows(WalletNotFoundException.class, () -> atomicWalletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L)));
+        assertThrows(WalletNotFoundException.class, () -> atomicWalletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 50L)));
+    }
+
+    @Test
+    @DisplayName("Повторное чтение баланса обслуживается из кэша")
+    void testGetBalanceServedFromCache() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findBalanceByWalletId(walletId)).thenReturn(100L);
+
+        walletService.getBalance(walletId);
+        long balance = walletService.getBalance(walletId);
+
+        assertEquals(100L, balance);
+        verify(walletRepository, times(1)).findBalanceByWalletId(walletId);
+    }
+
+    @Test
+    @DisplayName("Несуществующий кошелёк кэшируется")
+    void testGetBalanceNotFoundIsCached() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findBalanceByWalletId(walletId)).thenReturn(null);
+
+        assertThrows(WalletNotFoundException.class, () -> walletService.getBalance(walletId));
+        assertThrows(WalletNotFoundException.class, () -> walletService.getBalance(walletId));
+
+        verify(walletRepository, times(1)).findBalanceByWalletId(walletId);
+    }
+
+    @Test
+    @DisplayName("Операция над кошельком обновляет закэшированный баланс")
+    void testOperateOnWalletUpdatesCache() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 100L);
+        when(walletRepository.findBalanceByWalletId(walletId)).thenReturn(100L);
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(wallet);
+
+        walletService.getBalance(walletId);
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L));
+
+        assertEquals(150L, walletService.getBalance(walletId));
+        verify(walletRepository, times(1)).findBalanceByWalletId(walletId);
+    }
+
+    @Test
+    @DisplayName("Массовое получение балансов: закэшированные кошельки не запрашиваются из базы")
+    void testGetBalancesUsesCacheAndSingleQuery() {
+        UUID cachedWalletId = UUID.randomUUID();
+        UUID walletId = UUID.randomUUID();
+        UUID missingWalletId = UUID.randomUUID();
+        when(walletRepository.findBalanceByWalletId(cachedWalletId)).thenReturn(10L);
+        when(walletBatchRepository.findBalances(List.of(walletId, missingWalletId))).thenReturn(Map.of(walletId, 20L));
+        walletService.getBalance(cachedWalletId);
+
+        List<WalletBalance> balances = new ArrayList<>();
+        walletService.getBalances(List.of(cachedWalletId, walletId, missingWalletId), balances::add);
+
+        assertEquals(List.of(
+                new WalletBalance(cachedWalletId, 10L),
+                new WalletBalance(walletId, 20L),
+                new WalletBalance(missingWalletId, null)
+        ), balances);
+        verify(walletBatchRepository, times(1)).findBalances(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Операция записывается в журнал вместе с ключом идемпотентности")
+    void testOperateOnWalletAppendsToLedger() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(new Wallet(walletId, 100L));
+
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, "key-1"));
+
+        verify(ledgerRepository).insertIfAbsent(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, 150L, "key-1"));
+        verify(ledgerRepository, never()).findByIdempotencyKey(any());
+    }
+
+    @Test
+    @DisplayName("Повтор запроса с тем же ключом возвращает исходный баланс")
+    void testOperateOnWalletReplaysDuplicate() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.depositAndGetBalance(walletId, 50L)).thenReturn(200L);
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(false);
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, 150L, "key-1"));
+
+        long balance = atomicWalletService().operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, "key-1"));
+
+        assertEquals(150L, balance);
+    }
+
+    @Test
+    @DisplayName("Повтор снятия, обнулившего кошелёк, возвращает исходный баланс, а не отказ")
+    void testOperateOnWalletReplaysDrainedWithdrawal() {
+        UUID walletId = UUID.randomUUID();
+        WalletOperationRequest request =
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100L, "key-1");
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(new Wallet(walletId, 0L));
+        when(walletRepository.withdrawAndGetBalance(walletId, 100L)).thenReturn(withdrawResult(null, true));
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100L, 0L, "key-1"));
+
+        assertEquals(0L, walletService.operateOnWallet(request));
+        assertEquals(0L, atomicWalletService().operateOnWallet(request));
+        verify(ledgerRepository, never()).insertIfAbsent(any());
+    }
+
+    @Test
+    @DisplayName("Отказ запроса с ключом, не записанным в журнал, не подменяется")
+    void testOperateOnWalletRejectsUnrecordedWithdrawal() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(new Wallet(walletId, 0L));
+
+        assertThrows(WalletInsufficientFundsException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 100L, "key-1")));
+        verify(ledgerRepository).findByIdempotencyKey("key-1");
+    }
+
+    @Test
+    @DisplayName("Ключ идемпотентности, использованный для другой операции, отклоняется")
+    void testOperateOnWalletIdempotencyConflict() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(new Wallet(walletId, 100L));
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(false);
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 10L, 110L, "key-1"));
+
+        assertThrows(WalletIdempotencyConflictException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 50L, "key-1")));
+    }
+
+    @Test
+    @DisplayName("Событие об изменении баланса записывается в outbox и без журнала операций")
+    void testOperateOnWalletAppendsToOutbox() {
+        UUID walletId = UUID.randomUUID();
+        WalletOutbox outbox = mock(WalletOutbox.class);
+        WalletProperties properties = new WalletProperties();
+        properties.getLedger().setEnabled(false);
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenReturn(new Wallet(walletId, 100L));
+
+        walletService(properties, outbox).operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 30L));
+
+        verify(outbox).append(new LedgerEntry(walletId, WalletOperationRequest.OperationType.WITHDRAW, 30L, 70L, null));
+        verify(ledgerRepository, never()).insertIfAbsent(any());
+    }
+
+    @Test
+    @DisplayName("Повтор операции с тем же ключом не записывает событие ещё раз")
+    void testReplayedOperationIsNotAppendedToOutbox() {
+        UUID walletId = UUID.randomUUID();
+        WalletOutbox outbox = mock(WalletOutbox.class);
+        WalletProperties properties = new WalletProperties();
+        properties.setUpdateStrategy(WalletProperties.UpdateStrategy.ATOMIC);
+        when(walletRepository.depositAndGetBalance(walletId, 50L)).thenReturn(200L);
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(false);
+        when(ledgerRepository.findByIdempotencyKey("key-1")).thenReturn(
+                new LedgerEntry(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, 150L, "key-1"));
+
+        walletService(properties, outbox).operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L, "key-1"));
+
+        verify(outbox, never()).append(any());
+    }
+
+    @Test
+    @DisplayName("Время операций записывается по типу операции, исходу и фазам транзакции")
+    void testOperateOnWalletRecordsMetrics() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findByWalletIdAndLock(walletId)).thenAnswer(invocation -> new Wallet(walletId, 100L));
+
+        walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, 50L));
+        assertThrows(WalletInsufficientFundsException.class, () -> walletService.operateOnWallet(
+                new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, 500L)));
+
+        assertEquals(1, meterRegistry.get("wallet.operation")
+                .tags("type", "deposit", "outcome", "ok").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.operation")
+                .tags("type", "withdraw", "outcome", "insufficient_funds").timer().count());
+        assertEquals(2, meterRegistry.get("wallet.operation.phase").tag("phase", "lock_wait").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.operation.phase").tag("phase", "sql").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.operation.phase").tag("phase", "commit").timer().count());
     }
 }
@@ -0,0 +1,135 @@
+package ru.walletservice.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import ru.walletservice.config.PostgresIntegrationTest;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.model.Wallet;
+import ru.walletservice.model.WalletTransferRequest;
+import ru.walletservice.repository.WalletRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест переводов: тысячи случайных переводов и выплат между небольшим числом кошельков,
+ * так что встречные переводы постоянно конкурируют за одни и те же строки.
+ * <p>
+ * Блокировки внутри процесса выключены: от взаимных блокировок защищает только порядок блокировки строк в базе.
+ */
+@PostgresIntegrationTest
+@TestPropertySource(properties = "wallet.lock-striping.enabled=false")
+class WalletTransferConcurrencyTest {
+
+    private static final int WALLETS = 20;
+    private static final long INITIAL_BALANCE = 10_000;
+    private static final int CLIENTS = 16;
+    private static final int TRANSFERS_PER_CLIENT = 300;
+    private static final int MAX_LEGS = 4;
+
+    @Autowired
+    private WalletTransferService transferService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Случайные встречные переводы сохраняют сумму балансов и не вызывают взаимных блокировок")
+    void testRandomConcurrentTransfers() throws Exception {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletRepository.save(new Wallet(null, INITIAL_BALANCE)).getWalletId());
+        }
+        long deadlocksBefore = deadlocks();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger insufficientFunds = new AtomicInteger();
+
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService clients = Executors.newFixedThreadPool(CLIENTS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                futures.add(clients.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < TRANSFERS_PER_CLIENT; i++) {
+                        try {
+                            transferService.transfer(randomTransfer(walletIds));
+                            completed.incrementAndGet();
+                        } catch (WalletInsufficientFundsException ignored) {
+                            // Допустимый исход: перевод не должен уводить баланс в минус.
+                            insufficientFunds.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        }
+        // статистика базы передаётся серверу с задержкой
+        Thread.sleep(1_000);
+
+        assertEquals(CLIENTS * TRANSFERS_PER_CLIENT, completed.get() + insufficientFunds.get());
+        assertTrue(completed.get() > 0);
+        assertEquals(0, deadlocks() - deadlocksBefore);
+
+        Map<UUID, Long> balances = new HashMap<>();
+        jdbcTemplate.query("select wallet_id, balance from wallets where wallet_id = any(?)",
+                rs -> {
+                    balances.put(rs.getObject(1, UUID.class), rs.getLong(2));
+                }, (Object) walletIds.toArray(UUID[]::new));
+        assertEquals(WALLETS * INITIAL_BALANCE, balances.values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(balances.values().stream().allMatch(balance -> balance >= 0));
+        // журнал каждого кошелька сходится с его балансом
+        jdbcTemplate.query("""
+                        select wallet_id, sum(amount) from wallet_operations
+                        where wallet_id = any(?) and operation_type = 'TRANSFER' group by wallet_id
+                        """,
+                rs -> {
+                    UUID walletId = rs.getObject(1, UUID.class);
+                    assertEquals(balances.get(walletId) - INITIAL_BALANCE, rs.getLong(2));
+                }, (Object) walletIds.toArray(UUID[]::new));
+    }
+
+    /**
+     * Перевод со случайного кошелька на один или несколько других случайных кошельков.
+     */
+    private static WalletTransferRequest randomTransfer(List<UUID> walletIds) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID fromWalletId = walletIds.get(random.nextInt(walletIds.size()));
+        int legCount = random.nextInt(4) == 0 ? 2 + random.nextInt(MAX_LEGS - 1) : 1;
+        List<WalletTransferRequest.Leg> legs = new ArrayList<>(legCount);
+        while (legs.size() < legCount) {
+            UUID toWalletId = walletIds.get(random.nextInt(walletIds.size()));
+            if (!toWalletId.equals(fromWalletId)) {
+                legs.add(new WalletTransferRequest.Leg(toWalletId, 1 + random.nextInt(500)));
+            }
+        }
+        return new WalletTransferRequest(fromWalletId, legs, null);
+    }
+
+    private long deadlocks() {
+        return jdbcTemplate.queryForObject(
+                "select deadlocks from pg_stat_database where datname = current_database()", Long.class);
+    }
+}
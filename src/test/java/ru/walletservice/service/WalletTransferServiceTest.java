@@ -0,0 +1,213 @@
+package ru.walletservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.walletservice.config.WalletProperties;
+import ru.walletservice.exception.walletException.WalletIdempotencyConflictException;
+import ru.walletservice.exception.walletException.WalletInsufficientFundsException;
+import ru.walletservice.exception.walletException.WalletInvalidTransferException;
+import ru.walletservice.exception.walletException.WalletNotFoundException;
+import ru.walletservice.model.LedgerEntry;
+import ru.walletservice.model.WalletBalance;
+import ru.walletservice.model.WalletOperationRequest;
+import ru.walletservice.model.WalletTransferRequest;
+import ru.walletservice.model.WalletTransferResult;
+import ru.walletservice.repository.WalletBatchRepository;
+import ru.walletservice.repository.WalletLedgerRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletTransferServiceTest {
+
+    private final UUID fromWalletId = UUID.randomUUID();
+    private final UUID firstWalletId = UUID.randomUUID();
+    private final UUID secondWalletId = UUID.randomUUID();
+
+    @Mock
+    private WalletBatchRepository batchRepository;
+
+    @Mock
+    private WalletLedgerRepository ledgerRepository;
+
+    private WalletTransferService transferService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(ledgerRepository.insertIfAbsent(any())).thenReturn(true);
+        WalletProperties properties = new WalletProperties();
+        properties.getTransfer().setMaxLegs(3);
+        transferService = new WalletTransferService(batchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletLockStripes(properties),
+                new WalletContentionPolicy(properties), new WalletMetrics(new SimpleMeterRegistry()), null, null, properties);
+    }
+
+    @Test
+    @DisplayName("Перевод списывает сумму всех зачислений и записывает в журнал суммы со знаком")
+    void testFanOutTransfer() {
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 100L, firstWalletId, 5L, secondWalletId, 0L)));
+
+        WalletTransferResult result = transferService.transfer(new WalletTransferRequest(fromWalletId, List.of(
+                new WalletTransferRequest.Leg(firstWalletId, 30),
+                new WalletTransferRequest.Leg(secondWalletId, 20),
+                new WalletTransferRequest.Leg(firstWalletId, 10)), "payout-1"));
+
+        assertEquals(40, result.balance());
+        assertEquals(List.of(new WalletBalance(firstWalletId, 35L), new WalletBalance(secondWalletId, 20L),
+                new WalletBalance(firstWalletId, 45L)), result.legs());
+        verify(batchRepository).findBalancesAndLock(List.of(fromWalletId, firstWalletId, secondWalletId));
+        verify(batchRepository).updateBalances(Map.of(fromWalletId, 40L, firstWalletId, 45L, secondWalletId, 20L));
+        verify(ledgerRepository).insertIfAbsent(
+                LedgerEntry.transfer(result.transferId(), fromWalletId, -60, 40, "payout-1"));
+        verify(ledgerRepository).insertAll(List.of(
+                LedgerEntry.transfer(result.transferId(), firstWalletId, 30, 35, null),
+                LedgerEntry.transfer(result.transferId(), secondWalletId, 20, 20, null),
+                LedgerEntry.transfer(result.transferId(), firstWalletId, 10, 45, null)));
+    }
+
+    @Test
+    @DisplayName("Перевод при недостатке средств не изменяет балансы")
+    void testInsufficientFunds() {
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 10L, firstWalletId, 0L)));
+
+        assertThrows(WalletInsufficientFundsException.class,
+                () -> transferService.transfer(new WalletTransferRequest(fromWalletId, firstWalletId, 11)));
+        verify(batchRepository, never()).updateBalances(anyMap());
+        verify(ledgerRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Перевод на несуществующий кошелёк отклоняется")
+    void testDestinationNotFound() {
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 10L)));
+
+        assertThrows(WalletNotFoundException.class,
+                () -> transferService.transfer(new WalletTransferRequest(fromWalletId, firstWalletId, 1)));
+        verify(batchRepository, never()).updateBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Неверный перевод отклоняется без обращения к базе")
+    void testInvalidTransfer() {
+        assertThrows(WalletInvalidTransferException.class,
+                () -> transferService.transfer(new WalletTransferRequest(fromWalletId, fromWalletId, 1)));
+        assertThrows(WalletInvalidTransferException.class,
+                () -> transferService.transfer(new WalletTransferRequest(fromWalletId, firstWalletId, 0)));
+        assertThrows(WalletInvalidTransferException.class,
+                () -> transferService.transfer(new WalletTransferRequest(fromWalletId, List.of(), null)));
+        assertThrows(WalletInvalidTransferException.class,
+                () -> transferService.transfer(new WalletTransferRequest(null, firstWalletId, 1)));
+        assertThrows(WalletInvalidTransferException.class, () -> transferService.transfer(
+                new WalletTransferRequest(fromWalletId, List.of(
+                        new WalletTransferRequest.Leg(firstWalletId, 1), new WalletTransferRequest.Leg(firstWalletId, 1),
+                        new WalletTransferRequest.Leg(firstWalletId, 1), new WalletTransferRequest.Leg(firstWalletId, 1)),
+                        null)));
+        verify(batchRepository, never()).findBalancesAndLock(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Повтор перевода с тем же ключом возвращает исходный результат из журнала")
+    void testReplayByIdempotencyKey() {
+        UUID transferId = UUID.randomUUID();
+        LedgerEntry debit = LedgerEntry.transfer(transferId, fromWalletId, -30, 70, "transfer-1");
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 70L, firstWalletId, 30L)));
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(false);
+        when(ledgerRepository.findByIdempotencyKey("transfer-1")).thenReturn(debit);
+        when(ledgerRepository.findByTransferId(transferId)).thenReturn(List.of(debit,
+                LedgerEntry.transfer(transferId, firstWalletId, 30, 30, null)));
+
+        WalletTransferResult result = transferService.transfer(
+                new WalletTransferRequest(fromWalletId, List.of(new WalletTransferRequest.Leg(firstWalletId, 30)),
+                        "transfer-1"));
+
+        assertEquals(new WalletTransferResult(transferId, 70, List.of(new WalletBalance(firstWalletId, 30L))), result);
+        verify(batchRepository, never()).updateBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Повтор перевода, исчерпавшего остаток, возвращает исходный результат, а не отказ")
+    void testReplayOfDrainingTransfer() {
+        UUID transferId = UUID.randomUUID();
+        LedgerEntry debit = LedgerEntry.transfer(transferId, fromWalletId, -100, 0, "transfer-1");
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 0L, firstWalletId, 100L)));
+        when(ledgerRepository.findByIdempotencyKey("transfer-1")).thenReturn(debit);
+        when(ledgerRepository.findByTransferId(transferId)).thenReturn(List.of(debit,
+                LedgerEntry.transfer(transferId, firstWalletId, 100, 100, null)));
+
+        WalletTransferResult result = transferService.transfer(
+                new WalletTransferRequest(fromWalletId, List.of(new WalletTransferRequest.Leg(firstWalletId, 100)),
+                        "transfer-1"));
+
+        assertEquals(new WalletTransferResult(transferId, 0, List.of(new WalletBalance(firstWalletId, 100L))), result);
+        verify(ledgerRepository, never()).insertIfAbsent(any());
+        verify(batchRepository, never()).updateBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Ключ идемпотентности другой операции или другого перевода отклоняется")
+    void testIdempotencyConflict() {
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 100L, firstWalletId, 0L, secondWalletId, 0L)));
+        when(ledgerRepository.insertIfAbsent(any())).thenReturn(false);
+        when(ledgerRepository.findByIdempotencyKey("deposit-1")).thenReturn(
+                new LedgerEntry(fromWalletId, WalletOperationRequest.OperationType.DEPOSIT, 30, 100, "deposit-1"));
+        UUID transferId = UUID.randomUUID();
+        LedgerEntry debit = LedgerEntry.transfer(transferId, fromWalletId, -30, 70, "transfer-1");
+        when(ledgerRepository.findByIdempotencyKey("transfer-1")).thenReturn(debit);
+        when(ledgerRepository.findByTransferId(transferId)).thenReturn(List.of(debit,
+                LedgerEntry.transfer(transferId, firstWalletId, 30, 30, null)));
+
+        assertThrows(WalletIdempotencyConflictException.class, () -> transferService.transfer(
+                new WalletTransferRequest(fromWalletId, List.of(new WalletTransferRequest.Leg(firstWalletId, 30)),
+                        "deposit-1")));
+        assertThrows(WalletIdempotencyConflictException.class, () -> transferService.transfer(
+                new WalletTransferRequest(fromWalletId, List.of(new WalletTransferRequest.Leg(secondWalletId, 30)),
+                        "transfer-1")));
+    }
+
+    @Test
+    @DisplayName("Без журнала перевод не записывается и ключ идемпотентности не проверяется")
+    void testWithoutLedger() {
+        WalletProperties properties = new WalletProperties();
+        properties.getLedger().setEnabled(false);
+        WalletTransferService service = new WalletTransferService(batchRepository, ledgerRepository,
+                TransactionOperations.withoutTransaction(), new WalletBalanceCache(properties),
+                new WriteConcurrencyLimiter(properties), new WalletLockStripes(properties),
+                new WalletContentionPolicy(properties), new WalletMetrics(new SimpleMeterRegistry()), null, null, properties);
+        when(batchRepository.findBalancesAndLock(anyCollection())).thenAnswer(invocation ->
+                new HashMap<>(Map.of(fromWalletId, 100L, firstWalletId, 0L)));
+
+        WalletTransferResult result = service.transfer(new WalletTransferRequest(fromWalletId, firstWalletId, 25));
+
+        assertEquals(75, result.balance());
+        verify(batchRepository).updateBalances(Map.of(fromWalletId, 75L, firstWalletId, 25L));
+        verify(ledgerRepository, never()).insertIfAbsent(any());
+        verify(ledgerRepository, never()).insertAll(anyList());
+    }
+}